@@ -0,0 +1,201 @@
+/*
+ * Licensed to the LookML Authors under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.
+ * The LookML Authors license this file to you under the Apache
+ * License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License.  You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package net.hydromatic.lookml;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+import static java.util.Objects.requireNonNull;
+
+/** Reference, such as <code>${TABLE}</code>, <code>${field}</code> or
+ * <code>${view.field}</code>, in a code block.
+ *
+ * <p>Call {@link #scan(String, Consumer)} to find the references in a code
+ * block, or wrap a handler using
+ * {@link LaxHandlers#codeReferences(ObjectHandler, Handler)} to find them
+ * in every code block of a document.
+ *
+ * <p>A reference is described by its offset and length within the code
+ * block, and by the offset and length of each of its parts (the
+ * dot-separated segments between the braces). To avoid allocating memory
+ * for each reference, the scanner passes the same mutable object to the
+ * consumer for each reference in a code block, and does not create a string
+ * until you call a method such as {@link #part(int)}. A consumer that needs
+ * to keep a reference after it returns must call {@link #copy()}. */
+public class CodeReference {
+  private String code = "";
+  private int offset;
+  private int length;
+  private int partCount;
+  /** Offset of the dot (or, for the first part, the brace) before each
+   * part, followed by the offset of the closing brace. */
+  private int[] separators;
+
+  private CodeReference(int capacity) {
+    this.separators = new int[capacity];
+  }
+
+  /** Calls a consumer for each reference in a code block, in order.
+   *
+   * <p>A reference starts with "${" and ends with the next "}". A "${"
+   * without a matching "}", and the empty reference "${}", are ignored.
+   *
+   * <p>The consumer is called with the same {@code CodeReference} object
+   * for each reference; its contents are only valid during the call. */
+  public static void scan(String code, Consumer<CodeReference> consumer) {
+    requireNonNull(consumer, "consumer");
+    CodeReference reference = null;
+    final int n = code.length();
+    int i = code.indexOf('$');
+    while (i >= 0 && i + 1 < n) {
+      if (code.charAt(i + 1) != '{') {
+        i = code.indexOf('$', i + 1);
+        continue;
+      }
+      if (reference == null) {
+        reference = new CodeReference(4);
+        reference.code = code;
+      }
+      reference.partCount = 0;
+      reference.add(i + 1);
+      int j = i + 2;
+      for (;;) {
+        if (j == n) {
+          return; // no closing brace
+        }
+        final char c = code.charAt(j);
+        if (c == '}') {
+          break;
+        }
+        if (c == '.') {
+          reference.add(j);
+        }
+        ++j;
+      }
+      if (j > i + 2) {
+        reference.separators[reference.partCount] = j;
+        reference.offset = i;
+        reference.length = j + 1 - i;
+        consumer.accept(reference);
+      }
+      i = code.indexOf('$', j + 1);
+    }
+  }
+
+  /** Records the start of a part. */
+  private void add(int separator) {
+    // Keep room for the closing brace after the last part
+    if (partCount + 1 == separators.length) {
+      separators = Arrays.copyOf(separators, separators.length * 2);
+    }
+    separators[partCount++] = separator;
+  }
+
+  /** Returns a copy of this reference that remains valid after the scan
+   * moves on. */
+  public CodeReference copy() {
+    final CodeReference reference = new CodeReference(partCount + 1);
+    reference.code = code;
+    reference.offset = offset;
+    reference.length = length;
+    reference.partCount = partCount;
+    System.arraycopy(separators, 0, reference.separators, 0, partCount + 1);
+    return reference;
+  }
+
+  /** Returns the code block that contains this reference. */
+  public String code() {
+    return code;
+  }
+
+  /** Returns the offset of the reference, that is of its "$", within the
+   * code block. */
+  public int offset() {
+    return offset;
+  }
+
+  /** Returns the length of the reference, including "${" and "}". */
+  public int length() {
+    return length;
+  }
+
+  /** Returns the number of parts; for example, 2 for
+   * <code>${view.field}</code>. */
+  public int partCount() {
+    return partCount;
+  }
+
+  /** Returns the offset of the {@code i}th part within the code block. */
+  public int partOffset(int i) {
+    checkElementIndex(i, partCount);
+    return separators[i] + 1;
+  }
+
+  /** Returns the length of the {@code i}th part. */
+  public int partLength(int i) {
+    checkElementIndex(i, partCount);
+    return separators[i + 1] - separators[i] - 1;
+  }
+
+  /** Returns the {@code i}th part; for example, "field" is part 1 of
+   * <code>${view.field}</code>. */
+  public String part(int i) {
+    return code.substring(partOffset(i), separators[i + 1]);
+  }
+
+  /** Returns whether the {@code i}th part is equal to a given string,
+   * without creating a string. */
+  public boolean partEquals(int i, String s) {
+    return partLength(i) == s.length()
+        && code.regionMatches(partOffset(i), s, 0, s.length());
+  }
+
+  /** Returns the text between the braces; for example, "view.field" for
+   * <code>${view.field}</code>. */
+  public String name() {
+    return code.substring(offset + 2, offset + length - 1);
+  }
+
+  /** Returns whether this is the reference <code>${TABLE}</code>. */
+  public boolean isTable() {
+    return partCount == 1 && partEquals(0, "TABLE");
+  }
+
+  @Override public String toString() {
+    return code.substring(offset, offset + length);
+  }
+
+  /** Receives the references in the code blocks of a document.
+   *
+   * @see LaxHandlers#codeReferences(ObjectHandler, Handler) */
+  @FunctionalInterface
+  public interface Handler {
+    /** Called for each reference in a code block.
+     *
+     * @param pos Position of the code property
+     * @param propertyName Name of the code property, e.g. "sql"
+     * @param reference Reference; only valid during the call
+     */
+    void reference(Pos pos, String propertyName, CodeReference reference);
+  }
+}
+
+// End CodeReference.java
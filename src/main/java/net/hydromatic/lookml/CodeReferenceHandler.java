@@ -0,0 +1,56 @@
+/*
+ * Licensed to the LookML Authors under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.
+ * The LookML Authors license this file to you under the Apache
+ * License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License.  You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package net.hydromatic.lookml;
+
+import static java.util.Objects.requireNonNull;
+
+/** Object handler that finds the references in each code block, passes
+ * them to a {@link CodeReference.Handler}, and forwards all events to a
+ * consumer.
+ *
+ * @see LaxHandlers#codeReferences(ObjectHandler, CodeReference.Handler) */
+class CodeReferenceHandler extends FilterObjectHandler {
+  private final CodeReference.Handler handler;
+
+  CodeReferenceHandler(ObjectHandler consumer,
+      CodeReference.Handler handler) {
+    super(consumer);
+    this.handler = requireNonNull(handler, "handler");
+  }
+
+  @Override public ObjectHandler code(Pos pos, String propertyName,
+      String value) {
+    CodeReference.scan(value,
+        reference -> handler.reference(pos, propertyName, reference));
+    return super.code(pos, propertyName, value);
+  }
+
+  @Override public ObjectHandler objOpen(Pos pos, String propertyName) {
+    return new CodeReferenceHandler(consumer.objOpen(pos, propertyName),
+        handler);
+  }
+
+  @Override public ObjectHandler objOpen(Pos pos, String propertyName,
+      String name) {
+    return new CodeReferenceHandler(
+        consumer.objOpen(pos, propertyName, name), handler);
+  }
+}
+
+// End CodeReferenceHandler.java
@@ -0,0 +1,205 @@
+/*
+ * Licensed to the LookML Authors under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.
+ * The LookML Authors license this file to you under the Apache
+ * License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License.  You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package net.hydromatic.lookml;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+/** Hash of the content of a named object: its properties, including
+ * unnamed objects, but not the named objects it contains.
+ *
+ * <p>The hash ignores the order of properties, and white space in code
+ * blocks outside quotes; the order of elements in a list is
+ * significant. Comments and
+ * positions are never added. {@link MerkleTree} and
+ * {@link DependencyGraph} both use this class, so a named object has the
+ * same content hash in each. */
+class ContentHash {
+  /** Object that contains this unnamed object; null for a named object. */
+  private final @Nullable ContentHash parent;
+  private final String propertyName;
+  /** Hashes of the properties. */
+  private final List<HashCode> properties = new ArrayList<>();
+
+  /** Creates the content hash of a named object. */
+  ContentHash() {
+    this(null, "");
+  }
+
+  private ContentHash(@Nullable ContentHash parent, String propertyName) {
+    this.parent = parent;
+    this.propertyName = propertyName;
+  }
+
+  /** Adds a string to a hash, preceded by its length, so that the
+   * boundaries between strings are part of the hash. */
+  static Hasher put(Hasher hasher, String s) {
+    return hasher.putInt(s.length()).putString(s, UTF_8);
+  }
+
+  /** Adds hashes to a hash, in an order that does not depend on the order
+   * of the list. */
+  private static Hasher putUnordered(Hasher hasher, List<HashCode> hashes) {
+    hashes.sort(Comparator.comparing(HashCode::toString));
+    hasher.putInt(hashes.size());
+    hashes.forEach(h -> hasher.putBytes(h.asBytes()));
+    return hasher;
+  }
+
+  private static Hasher newHasher() {
+    return Hashing.murmur3_128().newHasher();
+  }
+
+  private void property(char kind, String propertyName, String value) {
+    properties.add(
+        put(put(newHasher().putChar(kind), propertyName), value).hash());
+  }
+
+  void number(String propertyName, Number value) {
+    property('#', propertyName, value.toString());
+  }
+
+  void string(String propertyName, String value) {
+    property('"', propertyName, value);
+  }
+
+  void identifier(String propertyName, String value) {
+    property('i', propertyName, value);
+  }
+
+  /** Adds a code property, normalizing the white space in its value. */
+  void code(String propertyName, String value) {
+    property('c', propertyName, normalize(value));
+  }
+
+  /** Trims a code block, and replaces each run of white space with a
+   * single space; but leaves white space inside a SQL string literal or
+   * quoted identifier (delimited by {@code '}, {@code "} or {@code `})
+   * unchanged. A doubled quote inside a literal, such as
+   * {@code 'it''s'}, ends and restarts the literal, so is handled
+   * correctly. */
+  private static String normalize(String code) {
+    final String s = code.trim();
+    final StringBuilder b = new StringBuilder(s.length());
+    char quote = 0;
+    boolean space = false;
+    for (int i = 0; i < s.length(); i++) {
+      final char c = s.charAt(i);
+      if (quote == 0 && Character.isWhitespace(c)) {
+        space = true;
+        continue;
+      }
+      if (space) {
+        b.append(' ');
+        space = false;
+      }
+      b.append(c);
+      if (c == quote) {
+        quote = 0;
+      } else if (quote == 0 && (c == '\'' || c == '"' || c == '`')) {
+        quote = c;
+      }
+    }
+    return b.toString();
+  }
+
+  /** Starts a list property; the list's hash is added when the returned
+   * handler is closed. */
+  ListHash list(String propertyName) {
+    return new ListHash(put(newHasher().putChar('['), propertyName), this);
+  }
+
+  /** Starts an unnamed object property; its hash is added when
+   * {@link #close()} is called on the returned object. */
+  ContentHash object(String propertyName) {
+    return new ContentHash(this, propertyName);
+  }
+
+  /** Completes an unnamed object, adding its hash to the enclosing
+   * object. */
+  void close() {
+    requireNonNull(parent, "parent").properties.add(
+        putUnordered(put(newHasher().putChar('{'), propertyName),
+            properties).hash());
+  }
+
+  /** Returns the hash of the properties added so far. */
+  HashCode hash() {
+    return putUnordered(newHasher(), properties).hash();
+  }
+
+  /** Handler that adds the elements of a list, in order, to a hash. */
+  static class ListHash implements ListHandler {
+    private final Hasher hasher;
+    /** Object to which to add the hash on close; null for a nested
+     * list. */
+    private final @Nullable ContentHash parent;
+
+    private ListHash(Hasher hasher, @Nullable ContentHash parent) {
+      this.hasher = hasher;
+      this.parent = parent;
+    }
+
+    @Override public ListHandler string(Pos pos, String value) {
+      put(hasher.putChar('"'), value);
+      return this;
+    }
+
+    @Override public ListHandler number(Pos pos, Number value) {
+      put(hasher.putChar('#'), value.toString());
+      return this;
+    }
+
+    @Override public ListHandler identifier(Pos pos, String value) {
+      put(hasher.putChar('i'), value);
+      return this;
+    }
+
+    @Override public ListHandler pair(Pos pos, String ref,
+        String identifier) {
+      put(put(hasher.putChar('p'), ref), identifier);
+      return this;
+    }
+
+    @Override public ListHandler listOpen(Pos pos) {
+      hasher.putChar('[');
+      return new ListHash(hasher, null);
+    }
+
+    @Override public void close(Pos pos) {
+      if (parent == null) {
+        hasher.putChar(']');
+      } else {
+        parent.properties.add(hasher.hash());
+      }
+    }
+  }
+}
+
+// End ContentHash.java
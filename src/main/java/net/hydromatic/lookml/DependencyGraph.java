@@ -0,0 +1,545 @@
+/*
+ * Licensed to the LookML Authors under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.
+ * The LookML Authors license this file to you under the Apache
+ * License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License.  You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package net.hydromatic.lookml;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+import static java.util.Objects.hash;
+import static java.util.Objects.requireNonNull;
+
+/** Graph of the dependencies between the named objects in a set of LookML
+ * documents.
+ *
+ * <p>Each node is a named object, identified by its type and path as in
+ * {@link SymbolIndex}. There is an edge from a node to each named object
+ * that it references, via a property of type
+ * {@link LookmlSchema.Type#REF REF},
+ * {@link LookmlSchema.Type#REF_LIST REF_LIST} or
+ * {@link LookmlSchema.Type#REF_STRING_MAP REF_STRING_MAP} (such as
+ * {@code from}, {@code view_name} or {@code drill_fields}), or via a
+ * reference such as <code>${view.field}</code> or <code>${field}</code>
+ * in a code block (such as {@code sql}). A reference made by an unnamed
+ * object belongs to the innermost named object that encloses it. References
+ * resolve as in {@link SymbolIndex}.
+ *
+ * <p>Each document is added by a handler returned from
+ * {@link #indexer(String, Consumer)}, typically downstream of a validator.
+ * If a document with the same key has been added before, its nodes and
+ * edges are replaced, and the cost of the update is proportional to the
+ * size of the document and of the nodes whose edges change, not to the size
+ * of the graph. The handler then reports the nodes that are invalidated: the
+ * nodes whose definition changed, were added or were removed, the nodes
+ * whose references now resolve differently, and all of their transitive
+ * dependents.
+ *
+ * <p>A node's definition changes if its content hash, as in
+ * {@link MerkleTree}, changes; so positions, comments, the order of
+ * properties, and white space in code blocks are ignored. A node also
+ * depends on the named objects it contains, so if a dimension changes, the
+ * dimension, its view, and the explores that reference the view, are
+ * invalidated.
+ *
+ * <p>Documents may be parsed concurrently; each update is applied to the
+ * graph atomically when its handler is closed. */
+public class DependencyGraph {
+  private final Map<String, ? extends Collection<String>> targetTypes;
+
+  /** Definitions of the named objects. */
+  private final Map<Node, Definition> definitions = new HashMap<>();
+  /** Types of the named objects at each path. */
+  private final Map<String, Set<String>> typesByPath = new HashMap<>();
+  /** Contents of each document. */
+  private final Map<String, Document> documents = new HashMap<>();
+  /** References, indexed by each path to which they might resolve. */
+  private final Map<String, Set<Reference>> referencesByPath =
+      new HashMap<>();
+  /** Resolved references, indexed by their source. */
+  private final Map<Node, Set<Reference>> outgoing = new HashMap<>();
+  /** Resolved references, indexed by their target. */
+  private final Map<Node, Set<Reference>> incoming = new HashMap<>();
+
+  private DependencyGraph(
+      Map<String, ? extends Collection<String>> targetTypes) {
+    this.targetTypes = ImmutableMap.copyOf(targetTypes);
+  }
+
+  /** Creates an empty graph.
+   *
+   * @param targetTypes Map from the name of a reference property (such as
+   *   "from" or "sql") to the types of the named objects that it may
+   *   reference (such as "view"), in order of preference; if a property is
+   *   not in the map, it may reference a named object of any type
+   */
+  public static DependencyGraph create(
+      Map<String, ? extends Collection<String>> targetTypes) {
+    return new DependencyGraph(targetTypes);
+  }
+
+  /** Returns a handler that adds a document to this graph, replacing the
+   * previous version of the document, if any.
+   *
+   * <p>When the handler is closed, it updates the graph and passes the set
+   * of invalidated nodes to {@code invalidated}.
+   *
+   * @param document Key of the document, such as its file name
+   * @param invalidated Receives the nodes invalidated by the update
+   */
+  public PropertyHandler indexer(String document,
+      Consumer<Set<Node>> invalidated) {
+    requireNonNull(document, "document");
+    requireNonNull(invalidated, "invalidated");
+    final Document d = new Document();
+    return new IndexingHandler(d, null, new ContentHash(),
+        () -> invalidated.accept(update(document, d)));
+  }
+
+  /** Removes a document from this graph, and returns the nodes that are
+   * invalidated. */
+  public synchronized Set<Node> remove(String document) {
+    return documents.containsKey(document)
+        ? update(document, null)
+        : ImmutableSet.of();
+  }
+
+  /** Returns the position of the definition of a node, or null if it is not
+   * in the graph. */
+  public synchronized @Nullable Pos definition(Node node) {
+    final Definition definition = definitions.get(node);
+    return definition == null ? null : definition.pos;
+  }
+
+  /** Returns the number of nodes. */
+  public synchronized int nodeCount() {
+    return definitions.size();
+  }
+
+  /** Returns the number of edges. A node that references another node
+   * more than once has one edge for each reference. */
+  public synchronized int edgeCount() {
+    int count = 0;
+    for (Set<Reference> references : outgoing.values()) {
+      count += references.size();
+    }
+    return count;
+  }
+
+  /** Returns the nodes that a node references directly. */
+  public synchronized Set<Node> dependencies(Node node) {
+    final Set<Node> nodes = new TreeSet<>();
+    for (Reference r : outgoing.getOrDefault(node, ImmutableSet.of())) {
+      nodes.add(requireNonNull(r.target));
+    }
+    return nodes;
+  }
+
+  /** Returns the nodes that reference a node directly. */
+  public synchronized Set<Node> dependents(Node node) {
+    final Set<Node> nodes = new TreeSet<>();
+    for (Reference r : incoming.getOrDefault(node, ImmutableSet.of())) {
+      nodes.add(r.source);
+    }
+    return nodes;
+  }
+
+  /** Returns the given nodes and all of the nodes that depend on them,
+   * directly or indirectly, including the named objects that contain
+   * them. */
+  public synchronized Set<Node> transitiveDependents(
+      Collection<Node> nodes) {
+    final Set<Node> result = new LinkedHashSet<>(nodes);
+    final Deque<Node> queue = new ArrayDeque<>(nodes);
+    while (!queue.isEmpty()) {
+      final Node node = queue.pop();
+      for (Reference r : incoming.getOrDefault(node, ImmutableSet.of())) {
+        if (result.add(r.source)) {
+          queue.add(r.source);
+        }
+      }
+      final Definition definition = definitions.get(node);
+      if (definition != null
+          && definition.parent != null
+          && result.add(definition.parent)) {
+        queue.add(definition.parent);
+      }
+    }
+    return result;
+  }
+
+  /** Replaces the contents of a document, and returns the invalidated
+   * nodes.
+   *
+   * @param key Key of the document
+   * @param document New contents, or null to remove the document
+   */
+  private synchronized Set<Node> update(String key,
+      @Nullable Document document) {
+    final Document previous =
+        document == null ? documents.remove(key) : documents.put(key, document);
+    final Set<Node> changed = new LinkedHashSet<>();
+    final Set<String> changedPaths = new LinkedHashSet<>();
+
+    // Remove the previous version of the document
+    final Map<Node, Definition> removed = new HashMap<>();
+    if (previous != null) {
+      for (Reference r : previous.references) {
+        for (String path : r.candidatePaths) {
+          removeFrom(referencesByPath, path, r);
+        }
+        unresolve(r);
+      }
+      previous.definitions.forEach((node, definition) -> {
+        if (definitions.get(node) == definition) {
+          definitions.remove(node);
+          removeFrom(typesByPath, node.path, node.type);
+          removed.put(node, definition);
+        }
+      });
+    }
+
+    // Add the new version
+    if (document != null) {
+      document.definitions.forEach((node, definition) -> {
+        if (definitions.putIfAbsent(node, definition) == null) {
+          typesByPath.computeIfAbsent(node.path, p -> new TreeSet<>())
+              .add(node.type);
+          final Definition old = removed.remove(node);
+          if (old == null) {
+            changed.add(node);
+            changedPaths.add(node.path);
+          } else if (!old.hash.equals(definition.hash)) {
+            changed.add(node);
+          }
+        }
+      });
+    }
+
+    // A node that was removed invalidates the node that contained it
+    removed.forEach((node, definition) -> {
+      changed.add(node);
+      changedPaths.add(node.path);
+      if (definition.parent != null
+          && definitions.containsKey(definition.parent)) {
+        changed.add(definition.parent);
+      }
+    });
+
+    // Re-resolve references that might resolve to a node that was added or
+    // removed. A node whose reference resolves differently is invalidated.
+    for (String path : changedPaths) {
+      for (Reference r
+          : ImmutableList.copyOf(
+              referencesByPath.getOrDefault(path, ImmutableSet.of()))) {
+        final Node target = r.target;
+        unresolve(r);
+        resolve(r);
+        if (!Objects.equals(target, r.target)) {
+          changed.add(r.source);
+        }
+      }
+    }
+
+    if (document != null) {
+      for (Reference r : document.references) {
+        for (String path : r.candidatePaths) {
+          referencesByPath.computeIfAbsent(path, p -> new LinkedHashSet<>())
+              .add(r);
+        }
+        resolve(r);
+      }
+    }
+    return ImmutableSet.copyOf(transitiveDependents(changed));
+  }
+
+  /** Sets the target of a reference, and adds it to the edge indexes if it
+   * resolves. */
+  private void resolve(Reference r) {
+    final @Nullable Collection<String> types =
+        targetTypes.get(r.propertyName);
+    for (String path : r.candidatePaths) {
+      final Set<String> pathTypes = typesByPath.get(path);
+      if (pathTypes == null) {
+        continue;
+      }
+      for (String type : types == null ? pathTypes : types) {
+        if (pathTypes.contains(type)) {
+          r.target = new Node(type, path);
+          outgoing.computeIfAbsent(r.source, n -> new LinkedHashSet<>())
+              .add(r);
+          incoming.computeIfAbsent(r.target, n -> new LinkedHashSet<>())
+              .add(r);
+          return;
+        }
+      }
+    }
+  }
+
+  /** Removes a reference from the edge indexes. */
+  private void unresolve(Reference r) {
+    if (r.target != null) {
+      removeFrom(outgoing, r.source, r);
+      removeFrom(incoming, r.target, r);
+      r.target = null;
+    }
+  }
+
+  private static <K, V> void removeFrom(Map<K, Set<V>> map, K key, V value) {
+    final Set<V> set = map.get(key);
+    if (set != null && set.remove(value) && set.isEmpty()) {
+      map.remove(key);
+    }
+  }
+
+  /** Calls a consumer with the name of each reference in a code block:
+   * "v.f" for <code>${v.f}</code>, and "v" for
+   * <code>${v.SQL_TABLE_NAME}</code>; <code>${TABLE}</code> is not a
+   * reference to a named object. */
+  static void codeReferences(String code, Consumer<String> consumer) {
+    CodeReference.scan(code, reference -> {
+      final int n = reference.partCount();
+      if (reference.isTable()) {
+        return;
+      }
+      if (n > 1 && reference.partEquals(n - 1, "SQL_TABLE_NAME")) {
+        consumer.accept(
+            code.substring(reference.partOffset(0),
+                reference.partOffset(n - 1) - 1));
+      } else {
+        consumer.accept(reference.name());
+      }
+    });
+  }
+
+  /** Named object; a node in the graph. */
+  public static class Node implements Comparable<Node> {
+    /** Type of the named object, e.g. "view". */
+    public final String type;
+    /** Path of the named object, e.g. "m.v". */
+    public final String path;
+
+    public Node(String type, String path) {
+      this.type = requireNonNull(type, "type");
+      this.path = requireNonNull(path, "path");
+    }
+
+    @Override public int hashCode() {
+      return hash(type, path);
+    }
+
+    @Override public boolean equals(Object o) {
+      return o == this
+          || o instanceof Node
+          && type.equals(((Node) o).type)
+          && path.equals(((Node) o).path);
+    }
+
+    @Override public int compareTo(Node o) {
+      final int c = path.compareTo(o.path);
+      return c != 0 ? c : type.compareTo(o.type);
+    }
+
+    @Override public String toString() {
+      return type + " " + path;
+    }
+  }
+
+  /** Definition of a named object in a document. */
+  private static class Definition {
+    final Pos pos;
+    /** Hash of the properties of the named object, excluding the named
+     * objects it contains; equal to its {@link MerkleTree.Node#contentHash}.
+     */
+    final HashCode hash;
+    /** Named object that contains this one; null if it is at the root. */
+    final @Nullable Node parent;
+
+    Definition(Pos pos, HashCode hash, @Nullable Node parent) {
+      this.pos = pos;
+      this.hash = hash;
+      this.parent = parent;
+    }
+  }
+
+  /** Named objects and references in a document. */
+  private static class Document {
+    final Map<Node, Definition> definitions = new HashMap<>();
+    final List<Reference> references = new ArrayList<>();
+  }
+
+  /** Reference from a node to a named object. Its target is null if it
+   * does not resolve. */
+  private static class Reference {
+    final Node source;
+    final String propertyName;
+    /** Paths to which the reference might resolve, innermost scope
+     * first. */
+    final List<String> candidatePaths;
+    @Nullable Node target;
+
+    Reference(Node source, String propertyName, String name) {
+      this.source = source;
+      this.propertyName = propertyName;
+      final ImmutableList.Builder<String> paths = ImmutableList.builder();
+      String path = source.path;
+      while (!path.isEmpty()) {
+        paths.add(path + "." + name);
+        final int dot = path.lastIndexOf('.');
+        path = dot < 0 ? "" : path.substring(0, dot);
+      }
+      paths.add(name);
+      this.candidatePaths = paths.build();
+    }
+  }
+
+  /** Handler that collects the named objects and references of a document,
+   * computing the content hash of each named object. */
+  private static class IndexingHandler implements PropertyHandler {
+    private final Document document;
+    /** Innermost enclosing named object; null at the root. */
+    private final @Nullable Node node;
+    private final ContentHash content;
+    private final Runnable onClose;
+
+    IndexingHandler(Document document, @Nullable Node node,
+        ContentHash content, Runnable onClose) {
+      this.document = document;
+      this.node = node;
+      this.content = content;
+      this.onClose = onClose;
+    }
+
+    private void addReference(String propertyName, String name) {
+      if (node != null) {
+        document.references.add(new Reference(node, propertyName, name));
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override public PropertyHandler property(Pos pos,
+        LookmlSchema.Property property, Object value) {
+      final String name = property.name();
+      switch (property.type()) {
+      case STRING:
+        content.string(name, (String) value);
+        break;
+      case NUMBER:
+        content.number(name, (Number) value);
+        break;
+      case CODE:
+        content.code(name, (String) value);
+        codeReferences((String) value, ref -> addReference(name, ref));
+        break;
+      case REF:
+        content.identifier(name, (String) value);
+        addReference(name, (String) value);
+        break;
+      case REF_LIST:
+        final ListHandler list = listOpen(pos, property);
+        ((List<String>) value).forEach(v -> list.identifier(pos, v));
+        list.close(pos);
+        break;
+      default:
+        content.identifier(name, String.valueOf(value));
+        break;
+      }
+      return this;
+    }
+
+    @Override public ListHandler listOpen(Pos pos,
+        LookmlSchema.Property property) {
+      final ListHandler list = content.list(property.name());
+      switch (property.type()) {
+      case REF_LIST:
+      case REF_STRING_MAP:
+        return new ReferencingListHandler(list,
+            name -> addReference(property.name(), name));
+      default:
+        return list;
+      }
+    }
+
+    @Override public PropertyHandler objOpen(Pos pos,
+        LookmlSchema.Property property) {
+      final ContentHash objContent = content.object(property.name());
+      return new IndexingHandler(document, node, objContent,
+          objContent::close);
+    }
+
+    @Override public PropertyHandler objOpen(Pos pos,
+        LookmlSchema.Property property, String name) {
+      final String path =
+          node == null ? name : node.path + "." + name;
+      final Node child = new Node(property.name(), path);
+      final ContentHash childContent = new ContentHash();
+      return new IndexingHandler(document, child, childContent, () ->
+          document.definitions.putIfAbsent(child,
+              new Definition(pos, childContent.hash(), node)));
+    }
+
+    @Override public void close(Pos pos) {
+      onClose.run();
+    }
+  }
+
+  /** Handler that records each identifier or pair in a list as a
+   * reference. */
+  private static class ReferencingListHandler extends FilterListHandler {
+    private final Consumer<String> references;
+
+    ReferencingListHandler(ListHandler consumer,
+        Consumer<String> references) {
+      super(consumer);
+      this.references = references;
+    }
+
+    @Override public ListHandler identifier(Pos pos, String value) {
+      references.accept(value);
+      return super.identifier(pos, value);
+    }
+
+    @Override public ListHandler pair(Pos pos, String ref,
+        String identifier) {
+      references.accept(ref);
+      return super.pair(pos, ref, identifier);
+    }
+
+    @Override public ListHandler listOpen(Pos pos) {
+      return new ReferencingListHandler(consumer.listOpen(pos), references);
+    }
+  }
+}
+
+// End DependencyGraph.java
@@ -0,0 +1,273 @@
+/*
+ * Licensed to the LookML Authors under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.
+ * The LookML Authors license this file to you under the Apache
+ * License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License.  You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package net.hydromatic.lookml;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/** Iterator over the events generated by a producer.
+ *
+ * <p>The producer (typically the parser) runs as a task in an executor,
+ * and converts each call to a handler into a {@link LookmlEvent} in a
+ * bounded queue. The consumer pulls events from the queue at its own pace.
+ * When the queue is full, the producer waits; so however large the
+ * document, at most {@code capacity} events are in memory at a time.
+ *
+ * <p>Closing the iterator before it is exhausted stops the producer.
+ *
+ * @see LaxHandlers#events */
+class EventIterator implements Iterator<LookmlEvent>, AutoCloseable {
+  /** Sent after the producer has finished. */
+  private static final Object END = new Object();
+
+  /** Each element is a {@link LookmlEvent}, {@link #END}, or a
+   * {@link Failure}. */
+  private final BlockingQueue<Object> queue;
+  private volatile boolean closed;
+  /** Thread that is running the producer; null if the producer has not
+   * started or has finished. Guarded by {@code this}. */
+  private @Nullable Thread producerThread;
+  private @Nullable Object next;
+  private boolean finished;
+
+  private EventIterator(int capacity) {
+    checkArgument(capacity > 0, "capacity must be positive");
+    this.queue = new ArrayBlockingQueue<>(capacity);
+  }
+
+  /** Creates a stream of the events generated by {@code producer}, running
+   * the producer as a task in {@code executor}. */
+  static Stream<LookmlEvent> stream(Consumer<ObjectHandler> producer,
+      int capacity, Executor executor) {
+    final EventIterator iterator = new EventIterator(capacity);
+    executor.execute(() -> iterator.produce(producer));
+    return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.NONNULL),
+            false)
+        .onClose(iterator::close);
+  }
+
+  /** Calls the handlers that correspond to a sequence of events.
+   *
+   * <p>Events must be properly nested, and must start at depth 0. */
+  static void replay(Iterator<LookmlEvent> events, ObjectHandler handler) {
+    Object[] handlers = {handler};
+    while (events.hasNext()) {
+      final LookmlEvent e = events.next();
+      final int d = e.depth;
+      final Object h = handlers[d];
+      final Object h2;
+      switch (e.kind) {
+      case COMMENT:
+        if (h instanceof ListHandler) {
+          ((ListHandler) h).comment(e.pos, (String) e.value);
+        } else {
+          ((ObjectHandler) h).comment(e.pos, (String) e.value);
+        }
+        continue;
+      case NUMBER:
+        if (h instanceof ListHandler) {
+          ((ListHandler) h).number(e.pos, (Number) e.value);
+        } else {
+          ((ObjectHandler) h).number(e.pos, e.propertyName,
+              (Number) e.value);
+        }
+        continue;
+      case STRING:
+        if (h instanceof ListHandler) {
+          ((ListHandler) h).string(e.pos, (String) e.value);
+        } else {
+          ((ObjectHandler) h).string(e.pos, e.propertyName,
+              (String) e.value);
+        }
+        continue;
+      case IDENTIFIER:
+        if (h instanceof ListHandler) {
+          ((ListHandler) h).identifier(e.pos, (String) e.value);
+        } else {
+          ((ObjectHandler) h).identifier(e.pos, e.propertyName,
+              (String) e.value);
+        }
+        continue;
+      case CODE:
+        ((ObjectHandler) h).code(e.pos, e.propertyName, (String) e.value);
+        continue;
+      case PAIR:
+        ((ListHandler) h).pair(e.pos, e.name, (String) e.value);
+        continue;
+      case LIST_OPEN:
+        h2 = h instanceof ListHandler
+            ? ((ListHandler) h).listOpen(e.pos)
+            : ((ObjectHandler) h).listOpen(e.pos, e.propertyName);
+        break;
+      case OBJ_OPEN:
+        h2 = e.name == null
+            ? ((ObjectHandler) h).objOpen(e.pos, e.propertyName)
+            : ((ObjectHandler) h).objOpen(e.pos, e.propertyName, e.name);
+        break;
+      case LIST_CLOSE:
+        ((ListHandler) h).close(e.pos);
+        handlers[d] = null;
+        continue;
+      case OBJ_CLOSE:
+        ((ObjectHandler) h).close(e.pos);
+        handlers[d] = null;
+        continue;
+      default:
+        throw new AssertionError(e.kind);
+      }
+      if (d + 1 >= handlers.length) {
+        handlers = Arrays.copyOf(handlers, handlers.length * 2);
+      }
+      handlers[d + 1] = h2;
+    }
+  }
+
+  // Producer side
+
+  private void produce(Consumer<ObjectHandler> producer) {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      producerThread = Thread.currentThread();
+    }
+    try {
+      producer.accept(new EventSink(this::put).root());
+      put(END);
+    } catch (CancellationException e) {
+      // The iterator was closed; the consumer is no longer listening.
+    } catch (Throwable e) {
+      try {
+        put(new Failure(e));
+      } catch (CancellationException e2) {
+        // ignore
+      }
+    } finally {
+      synchronized (this) {
+        producerThread = null;
+        if (closed) {
+          // Clear the interrupt sent by close, so that it does not affect
+          // the executor's next task on this thread
+          Thread.interrupted();
+        }
+      }
+    }
+  }
+
+  /** Adds an element to the queue, waiting if the queue is full. Throws
+   * {@link CancellationException} if the iterator is closed, which
+   * interrupts the wait. */
+  private void put(Object o) {
+    if (closed) {
+      throw new CancellationException();
+    }
+    try {
+      queue.put(o);
+    } catch (InterruptedException e) {
+      if (!closed) {
+        // Interrupted by someone else, such as the executor shutting down
+        Thread.currentThread().interrupt();
+      }
+      throw new CancellationException();
+    }
+  }
+
+  // Consumer side
+
+  @Override public boolean hasNext() {
+    if (next == null && !finished) {
+      try {
+        next = queue.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        close();
+        throw new CancellationException("interrupted");
+      }
+      if (next == END) {
+        next = null;
+        finished = true;
+      } else if (next instanceof Failure) {
+        final Throwable e = ((Failure) next).e;
+        next = null;
+        finished = true;
+        if (e instanceof RuntimeException) {
+          throw (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+          throw (Error) e;
+        }
+        throw new RuntimeException(e);
+      }
+    }
+    return next != null;
+  }
+
+  @Override public LookmlEvent next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    final LookmlEvent event = (LookmlEvent) next;
+    next = null;
+    return event;
+  }
+
+  /** Stops the producer, and discards any events that it has queued.
+   *
+   * <p>If the producer is waiting for space in the queue, interrupts it,
+   * so that it stops at once rather than when it next checks. */
+  @Override public void close() {
+    synchronized (this) {
+      closed = true;
+      if (producerThread != null) {
+        producerThread.interrupt();
+      }
+    }
+    finished = true;
+    next = null;
+    queue.clear();
+  }
+
+  /** Wraps an exception thrown by the producer. */
+  private static class Failure {
+    final Throwable e;
+
+    Failure(Throwable e) {
+      this.e = e;
+    }
+  }
+
+}
+
+// End EventIterator.java
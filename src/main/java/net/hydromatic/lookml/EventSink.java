@@ -0,0 +1,182 @@
+/*
+ * Licensed to the LookML Authors under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.
+ * The LookML Authors license this file to you under the Apache
+ * License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License.  You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package net.hydromatic.lookml;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/** Handler that converts each call into a {@link LookmlEvent}.
+ *
+ * <p>As with {@link TeeCache}, the handlers for sub-objects and sub-lists
+ * are reused, one per depth, because events are properly nested.
+ *
+ * @see LaxHandlers#eventSink
+ * @see EventIterator */
+class EventSink {
+  private final Consumer<LookmlEvent> consumer;
+
+  /** Handlers, indexed by depth. */
+  private ObjectProxy[] objectProxies = new ObjectProxy[8];
+  private ListProxy[] listProxies = new ListProxy[8];
+
+  EventSink(Consumer<LookmlEvent> consumer) {
+    this.consumer = consumer;
+  }
+
+  /** Returns the handler for the document, at depth 0. */
+  ObjectHandler root() {
+    return objectProxy(0);
+  }
+
+  private void add(LookmlEvent.Kind kind, int depth, Pos pos,
+      @Nullable String propertyName, @Nullable String name,
+      @Nullable Object value) {
+    consumer.accept(
+        new LookmlEvent(kind, depth, pos, propertyName, name, value));
+  }
+
+  private ObjectProxy objectProxy(int depth) {
+    if (depth >= objectProxies.length) {
+      objectProxies = Arrays.copyOf(objectProxies, depth * 2);
+    }
+    ObjectProxy proxy = objectProxies[depth];
+    if (proxy == null) {
+      proxy = objectProxies[depth] = new ObjectProxy(depth);
+    }
+    return proxy;
+  }
+
+  private ListProxy listProxy(int depth) {
+    if (depth >= listProxies.length) {
+      listProxies = Arrays.copyOf(listProxies, depth * 2);
+    }
+    ListProxy proxy = listProxies[depth];
+    if (proxy == null) {
+      proxy = listProxies[depth] = new ListProxy(depth);
+    }
+    return proxy;
+  }
+
+  /** Implementation of {@link ObjectHandler}. */
+  private class ObjectProxy implements ObjectHandler {
+    private final int depth;
+
+    ObjectProxy(int depth) {
+      this.depth = depth;
+    }
+
+    @Override public ObjectHandler comment(Pos pos, String comment) {
+      add(LookmlEvent.Kind.COMMENT, depth, pos, null, null, comment);
+      return this;
+    }
+
+    @Override public ObjectHandler number(Pos pos, String propertyName,
+        Number value) {
+      add(LookmlEvent.Kind.NUMBER, depth, pos, propertyName, null, value);
+      return this;
+    }
+
+    @Override public ObjectHandler string(Pos pos, String propertyName,
+        String value) {
+      add(LookmlEvent.Kind.STRING, depth, pos, propertyName, null, value);
+      return this;
+    }
+
+    @Override public ObjectHandler identifier(Pos pos, String propertyName,
+        String value) {
+      add(LookmlEvent.Kind.IDENTIFIER, depth, pos, propertyName, null,
+          value);
+      return this;
+    }
+
+    @Override public ObjectHandler code(Pos pos, String propertyName,
+        String value) {
+      add(LookmlEvent.Kind.CODE, depth, pos, propertyName, null, value);
+      return this;
+    }
+
+    @Override public ListHandler listOpen(Pos pos, String propertyName) {
+      add(LookmlEvent.Kind.LIST_OPEN, depth, pos, propertyName, null, null);
+      return listProxy(depth + 1);
+    }
+
+    @Override public ObjectHandler objOpen(Pos pos, String propertyName) {
+      add(LookmlEvent.Kind.OBJ_OPEN, depth, pos, propertyName, null, null);
+      return objectProxy(depth + 1);
+    }
+
+    @Override public ObjectHandler objOpen(Pos pos, String propertyName,
+        String name) {
+      add(LookmlEvent.Kind.OBJ_OPEN, depth, pos, propertyName, name, null);
+      return objectProxy(depth + 1);
+    }
+
+    @Override public void close(Pos pos) {
+      add(LookmlEvent.Kind.OBJ_CLOSE, depth, pos, null, null, null);
+    }
+  }
+
+  /** Implementation of {@link ListHandler}. */
+  private class ListProxy implements ListHandler {
+    private final int depth;
+
+    ListProxy(int depth) {
+      this.depth = depth;
+    }
+
+    @Override public ListHandler comment(Pos pos, String comment) {
+      add(LookmlEvent.Kind.COMMENT, depth, pos, null, null, comment);
+      return this;
+    }
+
+    @Override public ListHandler string(Pos pos, String value) {
+      add(LookmlEvent.Kind.STRING, depth, pos, null, null, value);
+      return this;
+    }
+
+    @Override public ListHandler number(Pos pos, Number value) {
+      add(LookmlEvent.Kind.NUMBER, depth, pos, null, null, value);
+      return this;
+    }
+
+    @Override public ListHandler identifier(Pos pos, String value) {
+      add(LookmlEvent.Kind.IDENTIFIER, depth, pos, null, null, value);
+      return this;
+    }
+
+    @Override public ListHandler pair(Pos pos, String ref,
+        String identifier) {
+      add(LookmlEvent.Kind.PAIR, depth, pos, null, ref, identifier);
+      return this;
+    }
+
+    @Override public ListHandler listOpen(Pos pos) {
+      add(LookmlEvent.Kind.LIST_OPEN, depth, pos, null, null, null);
+      return listProxy(depth + 1);
+    }
+
+    @Override public void close(Pos pos) {
+      add(LookmlEvent.Kind.LIST_CLOSE, depth, pos, null, null, null);
+    }
+  }
+}
+
+// End EventSink.java
@@ -18,15 +18,19 @@
  */
 package net.hydromatic.lookml;
 
+import net.hydromatic.lookml.util.ImmutablePairList;
 import net.hydromatic.lookml.util.PairList;
 
 import com.google.common.collect.ImmutableList;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /** Various implementations of {@link ObjectHandler} */
 public class LaxHandlers {
@@ -91,24 +95,150 @@ public static ErrorHandler errorLogger(Consumer<String> list) {
     return new LoggingErrorHandler(list);
   }
 
+  /** Creates an object handler that records metrics about each event,
+   * and the time that {@code consumer} takes to handle it, under the name
+   * {@code stage}; then writes the event to {@code consumer}.
+   *
+   * <p>Typical stage names are "validate", "build" and "write". Time is
+   * exclusive: it does not include time spent in another metrics handler
+   * downstream. See {@link LookmlMetrics} for the metrics recorded. */
+  public static ObjectHandler metrics(ObjectHandler consumer, String stage,
+      LookmlMetrics metrics) {
+    return new MetricsObjectHandler(metrics.stage(stage), 0, consumer);
+  }
+
+  /** Creates a property handler that records metrics about each event;
+   * see {@link #metrics(ObjectHandler, String, LookmlMetrics)}. */
+  public static PropertyHandler metrics(PropertyHandler consumer,
+      String stage, LookmlMetrics metrics) {
+    return new MetricsPropertyHandler(metrics.stage(stage), 0, consumer);
+  }
+
+  /** Creates an error handler that counts each kind of error, then writes
+   * it to {@code consumer}. */
+  public static ErrorHandler metrics(ErrorHandler consumer,
+      LookmlMetrics metrics) {
+    return new MetricsErrorHandler(metrics, consumer);
+  }
+
   /** Creates an object handler that writes each event to a consumer. */
   public static ObjectHandler filter(ObjectHandler consumer) {
     return new FilterObjectHandler(consumer);
   }
 
+  /** Creates an object handler that finds the references, such as
+   * <code>${view.field}</code>, in each code block, passes them to
+   * {@code handler}, and writes each event to a consumer. */
+  public static ObjectHandler codeReferences(ObjectHandler consumer,
+      CodeReference.Handler handler) {
+    return new CodeReferenceHandler(consumer, handler);
+  }
+
   /** Creates a property handler that writes to an object handler. */
   public static PropertyHandler untype(ObjectHandler consumer) {
     return new UntypingHandler(consumer);
   }
 
-  /** Creates a handler that writes each event to several object handlers. */
+  /** Creates a handler that writes each event to several object handlers.
+   *
+   * <p>Consumers are called in turn, in the current thread. The handlers
+   * that the tee returns for sub-objects and sub-lists are reused, so events
+   * must be properly nested, as they are when generated by the parser. */
   public static ObjectHandler tee(ObjectHandler... consumers) {
-    return new TeeObjectHandler(ImmutableList.copyOf(consumers));
+    return TeeObjectHandler.create(ImmutableList.copyOf(consumers));
   }
 
-  /** Creates a handler that writes each event to several property handlers. */
+  /** Creates a handler that writes each event to several property handlers.
+   *
+   * <p>As {@link #tee(ObjectHandler...)}, events must be properly nested. */
   public static PropertyHandler tee(PropertyHandler... consumers) {
-    return new TeePropertyHandler(ImmutableList.copyOf(consumers));
+    return TeePropertyHandler.create(ImmutableList.copyOf(consumers));
+  }
+
+  /** Runs a producer of events in the current thread, and sends each event
+   * to several consumers, each consumer running in its own thread.
+   *
+   * <p>This is a parallel version of {@link #tee(ObjectHandler...)}. Each
+   * consumer has its own ring buffer, as in {@link #pipeline}, and receives
+   * events in the order that they were produced. The producer is held back
+   * only when the buffer of the slowest consumer is full.
+   *
+   * <p>To run a {@link PropertyHandler} in parallel, wrap it in a
+   * {@link #validator(PropertyHandler, LookmlSchema, ErrorHandler)}.
+   *
+   * @param producer Generates events into a handler; for example
+   *   {@code h -> LookmlParsers.parse(h, config)}
+   * @param capacity Number of events that can be buffered for each
+   *   consumer; rounded up to a power of 2
+   * @param executor Executor that runs the consumers; must be able to run
+   *   all of them concurrently, each on a thread other than the calling
+   *   thread, otherwise this method throws
+   *   {@link IllegalArgumentException}
+   * @param consumers Handlers that receive events */
+  public static void parallelTee(Consumer<ObjectHandler> producer,
+      int capacity, Executor executor, ObjectHandler... consumers) {
+    PipelineHandler.run(producer, ImmutableList.copyOf(consumers), capacity,
+        executor);
+  }
+
+  /** Runs a producer of events in the current thread and a consumer of
+   * those events in another thread, passing events between them via a
+   * bounded ring buffer.
+   *
+   * <p>For example, if the producer is the parser and the consumer is a
+   * validator that builds a model, lexing of the document overlaps with
+   * validating and building.
+   *
+   * <p>Returns when the consumer has received all events. An exception in
+   * either the producer or the consumer stops both, and is re-thrown.
+   *
+   * @param producer Generates events into a handler; for example
+   *   {@code h -> LookmlParsers.parse(h, config)}
+   * @param consumer Handler that receives events, in the same order, on a
+   *   thread provided by {@code executor}
+   * @param capacity Number of events that can be buffered; rounded up to a
+   *   power of 2
+   * @param executor Executor that runs the consumer; must run it on a
+   *   thread other than the calling thread, otherwise this method throws
+   *   {@link IllegalArgumentException}
+   */
+  public static void pipeline(Consumer<ObjectHandler> producer,
+      ObjectHandler consumer, int capacity, Executor executor) {
+    PipelineHandler.run(producer, consumer, capacity, executor);
+  }
+
+  /** Runs a producer of events as a task in an executor, and returns the
+   * events as a stream that the caller consumes at its own pace.
+   *
+   * <p>The producer waits whenever {@code capacity} events are waiting to be
+   * consumed, so the stream can be consumed incrementally, with bounded
+   * memory, however large the document. Closing the stream before it is
+   * exhausted stops the producer. An exception thrown by the producer is
+   * re-thrown when the consumer reaches the point where it occurred.
+   *
+   * @param producer Generates events into a handler; for example
+   *   {@code h -> LookmlParsers.parse(h, config)}
+   * @param capacity Maximum number of events waiting to be consumed
+   * @param executor Executor that runs the producer */
+  public static Stream<LookmlEvent> events(Consumer<ObjectHandler> producer,
+      int capacity, Executor executor) {
+    return EventIterator.stream(producer, capacity, executor);
+  }
+
+  /** Creates a handler that converts each call into a {@link LookmlEvent}
+   * and passes it to {@code consumer}.
+   *
+   * <p>This is the inverse of {@link #replay}. As with
+   * {@link #tee(ObjectHandler...)}, events must be properly nested. */
+  public static ObjectHandler eventSink(Consumer<LookmlEvent> consumer) {
+    return new EventSink(consumer).root();
+  }
+
+  /** Sends a sequence of events, such as that returned by
+   * {@link #events}, to a handler. */
+  public static void replay(Iterator<LookmlEvent> events,
+      ObjectHandler consumer) {
+    EventIterator.replay(events, consumer);
   }
 
   /** Creates a handler that validates each event against a
@@ -143,7 +273,10 @@ public static ObjectHandler nullObjectHandler() {
     return NullObjectHandler.INSTANCE;
   }
 
-  /** Creates an ObjectHandler that converts events into a document. */
+  /** Creates an ObjectHandler that converts events into a document.
+   *
+   * <p>The document passed to the consumer, and every object and list
+   * within it, is immutable and sized exactly to its contents. */
   @SuppressWarnings({"unchecked", "rawtypes"})
   public static ObjectHandler build(
       Consumer<PairList<String, Value>> consumer) {
@@ -153,7 +286,11 @@ public static ObjectHandler build(
 
   /** Implementation of {@link ObjectHandler}
    * that builds a list of properties,
-   * then calls a consumer on the completed list. */
+   * then calls a consumer on the completed list.
+   *
+   * <p>On close, the list is frozen into an {@link ImmutablePairList} whose
+   * backing array is exactly the right size, so that a large AST that is
+   * retained in memory does not hold onto spare capacity. */
   static class ObjectBuilder implements ObjectHandler {
     final PairList<String, ValueImpl> properties = PairList.of();
     final Consumer<PairList<String, ValueImpl>> onClose;
@@ -210,13 +347,15 @@ static class ObjectBuilder implements ObjectHandler {
     }
 
     @Override public void close(Pos pos) {
-      onClose.accept(properties);
+      onClose.accept(properties.immutable());
     }
   }
 
   /** Implementation of {@link ListHandler}
    * that builds a list of values,
-   * then calls a consumer when done. */
+   * then calls a consumer when done.
+   *
+   * <p>Like {@link ObjectBuilder}, freezes the list on close. */
   static class ListBuilder implements ListHandler {
     final Consumer<List<ValueImpl>> onClose;
     final List<ValueImpl> list = new ArrayList<>();
@@ -255,7 +394,7 @@ static class ListBuilder implements ListHandler {
     }
 
     @Override public void close(Pos pos) {
-      onClose.accept(list);
+      onClose.accept(ImmutableList.copyOf(list));
     }
   }
 
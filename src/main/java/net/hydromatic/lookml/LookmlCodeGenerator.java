@@ -0,0 +1,808 @@
+/*
+ * Licensed to the LookML Authors under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.
+ * The LookML Authors license this file to you under the Apache
+ * License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License.  You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package net.hydromatic.lookml;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/** Generates Java source code for a typed object model of a
+ * {@link LookmlSchema}.
+ *
+ * <p>For each object type in the schema, the generated code contains an
+ * immutable class with a field for each property; for each enum type, a
+ * Java enum; and a {@link PropertyHandler} that builds instances of those
+ * classes from parse events. The handler dispatches on the property name
+ * and the enum value using {@code switch} statements (which compile to a
+ * switch on the cached hash code of the string), so building the model
+ * involves no map lookups, reflection or case conversion.
+ *
+ * <p>The generated code has the same shape as the hand-written classes in
+ * {@code MiniLookml}; see {@code MiniLookmlAst} in the test suite for an
+ * example.
+ *
+ * <p>To run the generator as part of a build, invoke {@link #main} (for
+ * example via exec-maven-plugin) with arguments
+ * "schema-file package class-name output-directory". */
+public class LookmlCodeGenerator {
+  /** Java keywords and literals, which cannot be used as field names. */
+  private static final Set<String> KEYWORDS =
+      ImmutableSet.of("abstract", "assert", "boolean", "break", "byte",
+          "case", "catch", "char", "class", "const", "continue", "default",
+          "do", "double", "else", "enum", "extends", "final", "finally",
+          "float", "for", "goto", "if", "implements", "import", "instanceof",
+          "int", "interface", "long", "native", "new", "package", "private",
+          "protected", "public", "return", "short", "static", "strictfp",
+          "super", "switch", "synchronized", "this", "throw", "throws",
+          "transient", "try", "void", "volatile", "while", "true", "false",
+          "null");
+
+  /** Names of classes that the generated code uses, and which therefore
+   * cannot be used as the name of a generated class. */
+  private static final Set<String> RESERVED_CLASS_NAMES =
+      ImmutableSet.of("Boolean", "Integer", "Number", "Object", "String",
+          "Override", "Enum", "List", "Map", "ArrayList", "LinkedHashMap",
+          "ImmutableList", "ImmutableMap", "BiConsumer", "Nullable",
+          "ListHandler", "LookmlSchema", "Pos", "PropertyHandler",
+          "NodeBuilder", "NodeHandler", "RootBuilder", "StringListBuilder",
+          "StringMapBuilder");
+
+  /** Maximum length of a line of generated code. */
+  private static final int MAX_LENGTH = 80;
+
+  private final LookmlSchema schema;
+  private final String packageName;
+  private final String className;
+  private final StringBuilder b = new StringBuilder();
+  /** Names of object types that are used as named objects. */
+  private final Set<String> namedTypes = new HashSet<>();
+  private boolean hasList;
+  private boolean hasMap;
+  private boolean hasStringMap;
+
+  private LookmlCodeGenerator(LookmlSchema schema, String packageName,
+      String className) {
+    this.schema = schema;
+    this.packageName = packageName;
+    this.className = className;
+  }
+
+  /** Generates a Java source file for a typed object model of a schema.
+   *
+   * @param schema Schema
+   * @param packageName Package of the generated class
+   * @param className Name of the generated class
+   * @return Contents of the Java source file
+   */
+  public static String generate(LookmlSchema schema, String packageName,
+      String className) {
+    return new LookmlCodeGenerator(schema, packageName, className)
+        .generate();
+  }
+
+  /** Command-line entry point.
+   *
+   * <p>Arguments are the schema file (in Schema LookML format), the
+   * package name, the class name, and the root directory of the generated
+   * sources. */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 4) {
+      throw new IllegalArgumentException("usage: LookmlCodeGenerator "
+          + "schema-file package class-name output-directory");
+    }
+    final LookmlSchema schema =
+        LookmlSchemas.load(Sources.fromUrl(new File(args[0]).toURI().toURL()),
+            SchemaLookml.schema());
+    final String code = generate(schema, args[1], args[2]);
+    final File dir = new File(args[3], args[1].replace('.', '/'));
+    Files.createDirectories(dir.toPath());
+    try (Writer w =
+             new OutputStreamWriter(
+                 Files.newOutputStream(
+                     new File(dir, args[2] + ".java").toPath()),
+                 StandardCharsets.UTF_8)) {
+      w.write(code);
+    }
+  }
+
+  private String generate() {
+    analyze();
+    header();
+    builderMethod();
+    schema.enumTypes().forEach(this::enumType);
+    schema.objectTypes().forEach(this::objectType);
+    schema.objectTypes().forEach(this::objectBuilder);
+    helpers();
+    line(0, "}");
+    line(0, "");
+    line(0, "// End " + className + ".java");
+    return b.toString();
+  }
+
+  /** Finds which object types are named, and which kinds of collection
+   * occur.
+   *
+   * <p>Throws if the schema has a root property that is not an object;
+   * the generated model consists of the objects at the root of each
+   * document. */
+  private void analyze() {
+    schema.rootProperties().values().forEach(property -> {
+      if (!isObject(property.type())) {
+        throw new IllegalArgumentException("root property '"
+            + property.name() + "' has type " + property.type()
+            + "; only object properties are supported at the root");
+      }
+      analyzeProperty(property);
+    });
+    schema.objectTypes().values().forEach(objectType ->
+        objectType.properties().values().forEach(this::analyzeProperty));
+  }
+
+  private void analyzeProperty(LookmlSchema.Property property) {
+    switch (property.type()) {
+    case NAMED_OBJECT:
+      namedTypes.add(property.typeName());
+      hasMap = true;
+      break;
+    case REF_LIST:
+    case STRING_LIST:
+      hasList = true;
+      break;
+    case REF_STRING_MAP:
+      hasMap = true;
+      hasStringMap = true;
+      break;
+    default:
+      break;
+    }
+  }
+
+  private void header() {
+    line(0, "/*");
+    line(0, " * Licensed to the LookML Authors under one or more "
+        + "contributor");
+    line(0, " * license agreements.  See the NOTICE file distributed "
+        + "with this");
+    line(0, " * work for additional information regarding copyright "
+        + "ownership.");
+    line(0, " * The LookML Authors license this file to you under the Apache");
+    line(0, " * License, Version 2.0 (the \"License\"); you may not use this");
+    line(0, " * file except in compliance with the License.  You may obtain a");
+    line(0, " * copy of the License at");
+    line(0, " *");
+    line(0, " * http://www.apache.org/licenses/LICENSE-2.0");
+    line(0, " *");
+    line(0, " * Unless required by applicable law or agreed to in writing,");
+    line(0, " * software distributed under the License is distributed on an");
+    line(0, " * \"AS IS\" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF "
+        + "ANY KIND,");
+    line(0, " * either express or implied.  See the License for the specific");
+    line(0, " * language governing permissions and limitations under the");
+    line(0, " * License.");
+    line(0, " */");
+    line(0, "package " + packageName + ";");
+    line(0, "");
+    if (!packageName.equals("net.hydromatic.lookml")) {
+      line(0, "import net.hydromatic.lookml.ListHandler;");
+      line(0, "import net.hydromatic.lookml.LookmlSchema;");
+      line(0, "import net.hydromatic.lookml.Pos;");
+      line(0, "import net.hydromatic.lookml.PropertyHandler;");
+      line(0, "");
+    }
+    if (hasList) {
+      line(0, "import com.google.common.collect.ImmutableList;");
+    }
+    if (hasMap) {
+      line(0, "import com.google.common.collect.ImmutableMap;");
+    }
+    if (hasList || hasMap) {
+      line(0, "");
+    }
+    line(0, "import org.checkerframework.checker.nullness.qual.Nullable;");
+    line(0, "");
+    if (hasList) {
+      line(0, "import java.util.ArrayList;");
+    }
+    if (hasMap) {
+      line(0, "import java.util.LinkedHashMap;");
+    }
+    if (hasList) {
+      line(0, "import java.util.List;");
+    }
+    if (hasMap) {
+      line(0, "import java.util.Map;");
+    }
+    line(0, "import java.util.function.BiConsumer;");
+    line(0, "");
+    line(0, "/** Typed object model for LookML schema \"" + schema.name()
+        + "\".");
+    line(0, " *");
+    line(0, " * <p>Generated by {@code LookmlCodeGenerator}; do not edit. */");
+    line(0, "public class " + className + " {");
+    line(1, "private " + className + "() {}");
+    line(0, "");
+  }
+
+  private void builderMethod() {
+    line(1, "/** Creates a handler that builds an object for each root "
+        + "property, and");
+    line(1, " * passes it to {@code consumer}. */");
+    line(1, "public static PropertyHandler builder(");
+    line(3, "BiConsumer<String, Object> consumer) {");
+    line(2, "return new NodeHandler(null, \"\", new RootBuilder(consumer));");
+    line(1, "}");
+    line(0, "");
+  }
+
+  private void enumType(String name, LookmlSchema.EnumType enumType) {
+    final String enumName = enumClassName(name);
+    final Map<String, String> constantNames =
+        constantNames(enumType.allowedValues());
+    line(1, "/** Values of enum type \"" + name + "\". */");
+    line(1, "public enum " + enumName + " {");
+    int i = 0;
+    for (String constantName : constantNames.values()) {
+      line(2, constantName
+          + (++i == constantNames.size() ? ";" : ","));
+    }
+    line(0, "");
+    line(2, "/** Returns the constant for a LookML value. */");
+    line(2, "public static " + enumName + " of(String value) {");
+    line(3, "switch (value) {");
+    for (String value : enumType.allowedValues()) {
+      line(3, "case \"" + value + "\":");
+      line(4, "return " + constantNames.get(value) + ";");
+    }
+    line(3, "default:");
+    line(4, "throw new IllegalArgumentException(\"invalid " + name
+        + ": \"");
+    line(6, "+ value);");
+    line(3, "}");
+    line(2, "}");
+    line(1, "}");
+    line(0, "");
+  }
+
+  private void objectType(String name, LookmlSchema.ObjectType objectType) {
+    final String typeName = objectClassName(name);
+    final boolean named = namedTypes.contains(name);
+    line(1, "/** Instance of object type \"" + name + "\". */");
+    line(1, "public static class " + typeName + " {");
+    if (named) {
+      line(2, "public final String name;");
+    }
+    objectType.properties().forEach((propertyName, property) ->
+        line(2, "public final " + fieldType(property) + " "
+            + fieldName(named, property) + ";"));
+    line(0, "");
+    final List<String> params = new ArrayList<>();
+    if (named) {
+      params.add("String name");
+    }
+    objectType.properties().forEach((propertyName, property) ->
+        params.add(fieldType(property) + " " + fieldName(named, property)));
+    list(2, typeName + "(", params, ") {");
+    if (named) {
+      line(3, "this.name = name;");
+    }
+    objectType.properties().forEach((propertyName, property) -> {
+      final String field = fieldName(named, property);
+      line(3, "this." + field + " = " + field + ";");
+    });
+    line(2, "}");
+    line(1, "}");
+    line(0, "");
+  }
+
+  private void objectBuilder(String name, LookmlSchema.ObjectType objectType) {
+    final String typeName = objectClassName(name);
+    final boolean named = namedTypes.contains(name);
+    final Map<String, LookmlSchema.Property> properties =
+        objectType.properties();
+    line(1, "/** Builds a {@link " + typeName + "}. */");
+    line(1, "private static class " + typeName
+        + "Builder extends NodeBuilder {");
+    if (named) {
+      line(2, "private final String name;");
+    }
+    properties.forEach((propertyName, property) -> {
+      final String field = fieldName(named, property);
+      switch (property.type()) {
+      case NAMED_OBJECT:
+      case REF_STRING_MAP:
+        assign(2, "private final " + fieldType(property) + " " + field,
+            "new LinkedHashMap<>()");
+        break;
+      case REF_LIST:
+      case STRING_LIST:
+        assign(2, "private final List<String> " + field,
+            "new ArrayList<>()");
+        break;
+      default:
+        line(2, "private " + fieldType(property) + " " + field + ";");
+      }
+    });
+    if (named) {
+      line(0, "");
+      line(2, typeName + "Builder(String name) {");
+      line(3, "this.name = name;");
+      line(2, "}");
+    }
+
+    // Scalar properties
+    if (properties.values().stream().anyMatch(p -> isScalar(p.type()))) {
+      line(0, "");
+      line(2, "@Override void property(String key, Object value) {");
+      line(3, "switch (key) {");
+      properties.forEach((propertyName, property) -> {
+        if (isScalar(property.type())) {
+          line(3, "case \"" + propertyName + "\":");
+          line(4, fieldName(named, property) + " = "
+              + scalarValue(property) + ";");
+          line(4, "break;");
+        }
+      });
+      line(3, "default:");
+      line(4, "super.property(key, value);");
+      line(3, "}");
+      line(2, "}");
+    }
+
+    // List properties
+    if (properties.values().stream().anyMatch(p -> isList(p.type()))) {
+      line(0, "");
+      line(2, "@Override ListHandler listOpen(String key) {");
+      line(3, "switch (key) {");
+      properties.forEach((propertyName, property) -> {
+        if (isList(property.type())) {
+          line(3, "case \"" + propertyName + "\":");
+          line(4, "return new "
+              + (property.type() == LookmlSchema.Type.REF_STRING_MAP
+                  ? "StringMapBuilder" : "StringListBuilder")
+              + "(" + fieldName(named, property) + ");");
+        }
+      });
+      line(3, "default:");
+      line(4, "return super.listOpen(key);");
+      line(3, "}");
+      line(2, "}");
+    }
+
+    // Object properties
+    if (properties.values().stream().anyMatch(p -> isObject(p.type()))) {
+      line(0, "");
+      line(2, "@Override NodeBuilder objOpen(String key, String name) {");
+      line(3, "switch (key) {");
+      properties.forEach((propertyName, property) -> {
+        if (isObject(property.type())) {
+          line(3, "case \"" + propertyName + "\":");
+          line(4, "return " + newBuilder(property.typeName()) + ";");
+        }
+      });
+      line(3, "default:");
+      line(4, "return super.objOpen(key, name);");
+      line(3, "}");
+      line(2, "}");
+      line(0, "");
+      line(2, "@Override void add(String key, Object node) {");
+      line(3, "switch (key) {");
+      properties.forEach((propertyName, property) -> {
+        if (isObject(property.type())) {
+          final String subTypeName = objectClassName(property.typeName());
+          line(3, "case \"" + propertyName + "\":");
+          if (property.type() == LookmlSchema.Type.NAMED_OBJECT) {
+            line(4, fieldName(named, property) + ".put(((" + subTypeName
+                + ") node).name, (" + subTypeName + ") node);");
+          } else {
+            line(4, fieldName(named, property) + " = (" + subTypeName
+                + ") node;");
+          }
+          line(4, "break;");
+        }
+      });
+      line(3, "default:");
+      line(4, "super.add(key, node);");
+      line(3, "}");
+      line(2, "}");
+    }
+
+    line(0, "");
+    line(2, "@Override " + typeName + " build() {");
+    final List<String> args = new ArrayList<>();
+    if (named) {
+      args.add("name");
+    }
+    properties.forEach((propertyName, property) -> {
+      final String field = fieldName(named, property);
+      switch (property.type()) {
+      case NAMED_OBJECT:
+      case REF_STRING_MAP:
+        args.add("ImmutableMap.copyOf(" + field + ")");
+        break;
+      case REF_LIST:
+      case STRING_LIST:
+        args.add("ImmutableList.copyOf(" + field + ")");
+        break;
+      default:
+        args.add(field);
+      }
+    });
+    list(3, "return new " + typeName + "(", args, ");");
+    line(2, "}");
+    line(1, "}");
+    line(0, "");
+  }
+
+  /** Generates the classes that are the same for every schema. */
+  private void helpers() {
+    line(1, "/** Builds a node of the object model. */");
+    line(1, "private abstract static class NodeBuilder {");
+    line(2, "void property(String key, Object value) {");
+    line(3, "throw new IllegalArgumentException(\"unknown property \" + key);");
+    line(2, "}");
+    line(0, "");
+    line(2, "ListHandler listOpen(String key) {");
+    line(3, "throw new IllegalArgumentException(\"unknown property \" + key);");
+    line(2, "}");
+    line(0, "");
+    line(2, "NodeBuilder objOpen(String key, String name) {");
+    line(3, "throw new IllegalArgumentException(\"unknown property \" + key);");
+    line(2, "}");
+    line(0, "");
+    line(2, "void add(String key, Object node) {");
+    line(3, "throw new IllegalArgumentException(\"unknown property \" + key);");
+    line(2, "}");
+    line(0, "");
+    line(2, "abstract Object build();");
+    line(1, "}");
+    line(0, "");
+    line(1, "/** Builds the root of a document; passes each object to a "
+        + "consumer. */");
+    line(1, "private static class RootBuilder extends NodeBuilder {");
+    line(2, "private final BiConsumer<String, Object> consumer;");
+    line(0, "");
+    line(2, "RootBuilder(BiConsumer<String, Object> consumer) {");
+    line(3, "this.consumer = consumer;");
+    line(2, "}");
+    line(0, "");
+    line(2, "@Override NodeBuilder objOpen(String key, String name) {");
+    line(3, "switch (key) {");
+    schema.rootProperties().forEach((propertyName, property) -> {
+      line(3, "case \"" + propertyName + "\":");
+      line(4, "return " + newBuilder(property.typeName()) + ";");
+    });
+    line(3, "default:");
+    line(4, "return super.objOpen(key, name);");
+    line(3, "}");
+    line(2, "}");
+    line(0, "");
+    line(2, "@Override void add(String key, Object node) {");
+    line(3, "consumer.accept(key, node);");
+    line(2, "}");
+    line(0, "");
+    line(2, "@Override Object build() {");
+    line(3, "throw new UnsupportedOperationException();");
+    line(2, "}");
+    line(1, "}");
+    line(0, "");
+    line(1, "/** Property handler that sends events to a {@link NodeBuilder}, "
+        + "and");
+    line(1, " * when closed, adds the built node to its parent. */");
+    line(1, "private static class NodeHandler implements PropertyHandler {");
+    line(2, "private final @Nullable NodeHandler parent;");
+    line(2, "private final String key;");
+    line(2, "private final NodeBuilder builder;");
+    line(0, "");
+    line(2, "NodeHandler(@Nullable NodeHandler parent, String key,");
+    line(4, "NodeBuilder builder) {");
+    line(3, "this.parent = parent;");
+    line(3, "this.key = key;");
+    line(3, "this.builder = builder;");
+    line(2, "}");
+    line(0, "");
+    line(2, "@Override public PropertyHandler property(Pos pos,");
+    line(4, "LookmlSchema.Property property, Object value) {");
+    line(3, "builder.property(property.name(), value);");
+    line(3, "return this;");
+    line(2, "}");
+    line(0, "");
+    line(2, "@Override public ListHandler listOpen(Pos pos,");
+    line(4, "LookmlSchema.Property property) {");
+    line(3, "return builder.listOpen(property.name());");
+    line(2, "}");
+    line(0, "");
+    line(2, "@Override public PropertyHandler objOpen(Pos pos,");
+    line(4, "LookmlSchema.Property property) {");
+    line(3, "return new NodeHandler(this, property.name(),");
+    line(5, "builder.objOpen(property.name(), \"\"));");
+    line(2, "}");
+    line(0, "");
+    line(2, "@Override public PropertyHandler objOpen(Pos pos,");
+    line(4, "LookmlSchema.Property property, String name) {");
+    line(3, "return new NodeHandler(this, property.name(),");
+    line(5, "builder.objOpen(property.name(), name));");
+    line(2, "}");
+    line(0, "");
+    line(2, "@Override public void close(Pos pos) {");
+    line(3, "if (parent != null) {");
+    line(4, "parent.builder.add(key, builder.build());");
+    line(3, "}");
+    line(2, "}");
+    line(1, "}");
+    if (hasList) {
+      line(0, "");
+      line(1, "/** Adds each identifier or string in a list to a Java "
+          + "list. */");
+      line(1, "private static class StringListBuilder implements "
+          + "ListHandler {");
+      line(2, "private final List<String> list;");
+      line(0, "");
+      line(2, "StringListBuilder(List<String> list) {");
+      line(3, "this.list = list;");
+      line(2, "}");
+      line(0, "");
+      line(2, "@Override public ListHandler identifier(Pos pos, "
+          + "String value) {");
+      line(3, "list.add(value);");
+      line(3, "return this;");
+      line(2, "}");
+      line(0, "");
+      line(2, "@Override public ListHandler string(Pos pos, String value) {");
+      line(3, "list.add(value);");
+      line(3, "return this;");
+      line(2, "}");
+      line(1, "}");
+    }
+    if (hasStringMap) {
+      line(0, "");
+      line(1, "/** Adds each pair in a list to a Java map. */");
+      line(1, "private static class StringMapBuilder implements "
+          + "ListHandler {");
+      line(2, "private final Map<String, String> map;");
+      line(0, "");
+      line(2, "StringMapBuilder(Map<String, String> map) {");
+      line(3, "this.map = map;");
+      line(2, "}");
+      line(0, "");
+      line(2, "@Override public ListHandler pair(Pos pos, String ref,");
+      line(4, "String identifier) {");
+      line(3, "map.put(ref, identifier);");
+      line(3, "return this;");
+      line(2, "}");
+      line(1, "}");
+    }
+  }
+
+  private static boolean isScalar(LookmlSchema.Type type) {
+    switch (type) {
+    case NUMBER:
+    case STRING:
+    case ENUM:
+    case CODE:
+    case REF:
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  private static boolean isList(LookmlSchema.Type type) {
+    return type == LookmlSchema.Type.REF_LIST
+        || type == LookmlSchema.Type.STRING_LIST
+        || type == LookmlSchema.Type.REF_STRING_MAP;
+  }
+
+  private static boolean isObject(LookmlSchema.Type type) {
+    return type == LookmlSchema.Type.OBJECT
+        || type == LookmlSchema.Type.NAMED_OBJECT;
+  }
+
+  /** Returns the Java type of the field that holds a property. */
+  private String fieldType(LookmlSchema.Property property) {
+    switch (property.type()) {
+    case NUMBER:
+      return "@Nullable Number";
+    case STRING:
+    case CODE:
+    case REF:
+      return "@Nullable String";
+    case ENUM:
+      return "@Nullable " + enumClassName(property.typeName());
+    case OBJECT:
+      return "@Nullable " + objectClassName(property.typeName());
+    case NAMED_OBJECT:
+      return "Map<String, " + objectClassName(property.typeName()) + ">";
+    case REF_LIST:
+    case STRING_LIST:
+      return "List<String>";
+    case REF_STRING_MAP:
+      return "Map<String, String>";
+    default:
+      throw new AssertionError(property.type());
+    }
+  }
+
+  /** Returns the expression that converts the value of a scalar property
+   * to the type of its field. */
+  private String scalarValue(LookmlSchema.Property property) {
+    switch (property.type()) {
+    case NUMBER:
+      return "(Number) value";
+    case ENUM:
+      return enumClassName(property.typeName()) + ".of((String) value)";
+    default:
+      return "(String) value";
+    }
+  }
+
+  /** Returns the name of the field that holds a property; for example,
+   * "sqlOn" for "sql_on", and "views" for named-object property "view". */
+  private static String fieldName(boolean named,
+      LookmlSchema.Property property) {
+    String name = camel(property.name(), false);
+    if (property.type() == LookmlSchema.Type.NAMED_OBJECT) {
+      name = plural(name);
+    }
+    if (KEYWORDS.contains(name) || named && name.equals("name")) {
+      name += "_";
+    }
+    return name;
+  }
+
+  private String objectClassName(String typeName) {
+    final String name = camel(typeName, true);
+    return RESERVED_CLASS_NAMES.contains(name)
+        || name.equals(className) ? name + "Type" : name;
+  }
+
+  private String enumClassName(String typeName) {
+    final String name = camel(typeName, true);
+    return RESERVED_CLASS_NAMES.contains(name)
+        || name.equals(className)
+        || schema.objectTypes().containsKey(typeName) ? name + "Enum" : name;
+  }
+
+  /** Returns the name of the Java enum constant for each value of an enum
+   * type. If two values would have the same name (for example, "a-b" and
+   * "a_b" are both "A_B"), appends a suffix to the later ones ("A_B_2"). */
+  private static Map<String, String> constantNames(Iterable<String> values) {
+    final Map<String, String> map = new LinkedHashMap<>();
+    final Set<String> names = new HashSet<>();
+    for (String value : values) {
+      final String name = constantName(value);
+      String uniqueName = name;
+      for (int i = 2; !names.add(uniqueName); i++) {
+        uniqueName = name + "_" + i;
+      }
+      map.put(value, uniqueName);
+    }
+    return map;
+  }
+
+  /** Converts a LookML value to the name of a Java enum constant; for
+   * example, "left_outer" to "LEFT_OUTER". */
+  private static String constantName(String value) {
+    final StringBuilder buf = new StringBuilder();
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      buf.append(Character.isJavaIdentifierPart(c) ? c : '_');
+    }
+    if (buf.length() == 0 || !Character.isJavaIdentifierStart(buf.charAt(0))) {
+      buf.insert(0, '_');
+    }
+    return buf.toString().toUpperCase(Locale.ROOT);
+  }
+
+  /** Converts a LookML name to camel case; for example, "sql_table_name"
+   * to "sqlTableName" or "SqlTableName". */
+  static String camel(String name, boolean upper) {
+    final StringBuilder buf = new StringBuilder();
+    boolean nextUpper = upper;
+    for (int i = 0; i < name.length(); i++) {
+      final char c = name.charAt(i);
+      if (c == '_' || !Character.isJavaIdentifierPart(c)) {
+        nextUpper = buf.length() > 0 || upper;
+      } else if (nextUpper) {
+        buf.append(Character.toUpperCase(c));
+        nextUpper = false;
+      } else {
+        buf.append(c);
+      }
+    }
+    if (buf.length() == 0 || !Character.isJavaIdentifierStart(buf.charAt(0))) {
+      buf.insert(0, '_');
+    }
+    return buf.toString();
+  }
+
+  /** Returns the plural of an English noun; for example, "dimensions" for
+   * "dimension" and "properties" for "property". */
+  static String plural(String name) {
+    if (name.endsWith("s") || name.endsWith("x") || name.endsWith("ch")
+        || name.endsWith("sh")) {
+      return name + "es";
+    }
+    if (name.endsWith("y") && name.length() > 1
+        && "aeiou".indexOf(name.charAt(name.length() - 2)) < 0) {
+      return name.substring(0, name.length() - 1) + "ies";
+    }
+    return name + "s";
+  }
+
+  /** Returns an expression that creates a builder for an object type. */
+  private String newBuilder(String typeName) {
+    return "new " + objectClassName(typeName)
+        + (namedTypes.contains(typeName) ? "Builder(name)" : "Builder()");
+  }
+
+  /** Appends a declaration or assignment, breaking the line after "="
+   * if it is too long. */
+  private void assign(int indent, String left, String right) {
+    if (indent * 2 + left.length() + right.length() + 4 <= MAX_LENGTH) {
+      line(indent, left + " = " + right + ";");
+    } else {
+      line(indent, left + " =");
+      line(indent + 2, right + ";");
+    }
+  }
+
+  /** Appends a comma-separated list of parameters or arguments; on one
+   * line if it fits, otherwise one per line. */
+  private void list(int indent, String prefix, List<String> items,
+      String suffix) {
+    final String joined = String.join(", ", items);
+    if (indent * 2 + prefix.length() + joined.length() + suffix.length()
+        <= MAX_LENGTH) {
+      line(indent, prefix + joined + suffix);
+    } else {
+      line(indent, prefix + String.join(",\n" + spaces(indent + 2), items)
+          + suffix);
+    }
+  }
+
+  private static String spaces(int indent) {
+    final StringBuilder buf = new StringBuilder();
+    for (int i = 0; i < indent; i++) {
+      buf.append("  ");
+    }
+    return buf.toString();
+  }
+
+  /** Appends a line, indented by {@code indent} times two spaces. */
+  private void line(int indent, String s) {
+    if (!s.isEmpty()) {
+      b.append(spaces(indent)).append(s);
+    }
+    b.append('\n');
+  }
+}
+
+// End LookmlCodeGenerator.java
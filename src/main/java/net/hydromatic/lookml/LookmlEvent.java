@@ -0,0 +1,119 @@
+/*
+ * Licensed to the LookML Authors under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.
+ * The LookML Authors license this file to you under the Apache
+ * License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License.  You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package net.hydromatic.lookml;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import static java.util.Objects.requireNonNull;
+
+/** Parse event, as a value.
+ *
+ * <p>Each event corresponds to a call to a method of {@link ObjectHandler}
+ * or {@link ListHandler}. Whereas a handler is called at the producer's
+ * pace, a sequence of events can be consumed at the consumer's pace; see
+ * {@link LaxHandlers#events}.
+ *
+ * <p>Events are properly nested. An {@link Kind#OBJ_OPEN} or
+ * {@link Kind#LIST_OPEN} event at depth {@code d} is followed by events at
+ * depth {@code d + 1}, and then by an {@link Kind#OBJ_CLOSE} or
+ * {@link Kind#LIST_CLOSE} event at depth {@code d + 1}. The last event of a
+ * document is an {@code OBJ_CLOSE} at depth 0. */
+public class LookmlEvent {
+  public final Kind kind;
+  /** Depth of the handler that received the event; 0 is the document. */
+  public final int depth;
+  public final Pos pos;
+  /** Name of the property; null for elements of a list, comments,
+   * and close events. */
+  public final @Nullable String propertyName;
+  /** Name of a named object, or the ref of a pair; otherwise null. */
+  public final @Nullable String name;
+  /** Value of a property or list element, or the text of a comment:
+   * a {@link Number} for {@link Kind#NUMBER}, otherwise a {@link String};
+   * null for open and close events. */
+  public final @Nullable Object value;
+
+  LookmlEvent(Kind kind, int depth, Pos pos, @Nullable String propertyName,
+      @Nullable String name, @Nullable Object value) {
+    this.kind = requireNonNull(kind, "kind");
+    this.depth = depth;
+    this.pos = requireNonNull(pos, "pos");
+    this.propertyName = propertyName;
+    this.name = name;
+    this.value = value;
+  }
+
+  /** {@inheritDoc}
+   *
+   * <p>The format is the same as that of {@link LaxHandlers#logger}; for
+   * example, "{@code number(size, 3)}" or "{@code pair(a, b)}". */
+  @Override public String toString() {
+    final StringBuilder b = new StringBuilder(kind.methodName).append('(');
+    switch (kind) {
+    case PAIR:
+      b.append(name).append(", ").append(value);
+      break;
+    case OBJ_OPEN:
+      b.append(propertyName);
+      if (name != null) {
+        b.append(", ").append(name);
+      }
+      break;
+    case LIST_OPEN:
+      if (propertyName != null) {
+        b.append(propertyName);
+      }
+      break;
+    case LIST_CLOSE:
+    case OBJ_CLOSE:
+      break;
+    default:
+      if (propertyName != null) {
+        b.append(propertyName).append(", ");
+      }
+      b.append(value);
+    }
+    return b.append(')').toString();
+  }
+
+  /** Kind of event. */
+  public enum Kind {
+    COMMENT("comment"),
+    NUMBER("number"),
+    STRING("string"),
+    IDENTIFIER("identifier"),
+    CODE("code"),
+    /** Element of a list that is a pair, such as {@code a: b}. */
+    PAIR("pair"),
+    LIST_OPEN("listOpen"),
+    OBJ_OPEN("objOpen"),
+    LIST_CLOSE("listClose"),
+    OBJ_CLOSE("objClose");
+
+    /** Name of the corresponding method in {@link ObjectHandler} or
+     * {@link ListHandler}. */
+    final String methodName;
+
+    Kind(String methodName) {
+      this.methodName = methodName;
+    }
+  }
+}
+
+// End LookmlEvent.java
@@ -0,0 +1,325 @@
+/*
+ * Licensed to the LookML Authors under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.
+ * The LookML Authors license this file to you under the Apache
+ * License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License.  You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package net.hydromatic.lookml;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/** Registry of metrics collected while parsing, validating, building and
+ * writing LookML.
+ *
+ * <p>A metric is a named counter or maximum. Metrics are created on first
+ * use, and are safe to update from several threads. To collect metrics,
+ * decorate each stage of a pipeline using
+ * {@link LaxHandlers#metrics(ObjectHandler, String, LookmlMetrics)} (or one
+ * of its overloads), and parse using
+ * {@link net.hydromatic.lookml.parse.LookmlParsers#parse(ObjectHandler,
+ * net.hydromatic.lookml.parse.LookmlParsers.Config, LookmlMetrics)}. The
+ * following metrics are collected:
+ *
+ * <ul>
+ *   <li>{@code stage.events.kind}: number of events of each kind
+ *     (for example {@code validate.events.objOpen}) received by a stage;
+ *   <li>{@code stage.properties.name}: number of events for each property
+ *     name (for example {@code validate.properties.dimension});
+ *   <li>{@code stage.depth.max}: maximum nesting depth of objects and lists;
+ *   <li>{@code stage.nanos}: time spent in a stage, not including time spent
+ *     in decorated stages downstream of it;
+ *   <li>{@code lex.nanos}, {@code lex.sources}, {@code lex.bytes} (or
+ *     {@code lex.chars}, if the source is read as characters),
+ *     {@code lex.lines}, {@code lex.tokens}: time spent in the parser
+ *     itself, and the number and size of sources parsed;
+ *   <li>{@code errors.method}: number of calls to each method of
+ *     {@link ErrorHandler} (for example {@code errors.invalidEnumValue}).
+ * </ul>
+ *
+ * <p>To see which files are most expensive, use one instance per file.
+ *
+ * <p>Metrics can be read using {@link #snapshot()} or {@link #toJson()}, or
+ * exported via JMX using {@link #registerMBean(String)}. */
+public class LookmlMetrics {
+  /** Time spent in nested timed calls, for the current thread. */
+  private static final ThreadLocal<Timer> TIMER =
+      ThreadLocal.withInitial(Timer::new);
+
+  private final ConcurrentMap<String, LongAdder> counters =
+      new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, LongAccumulator> maxima =
+      new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Stage> stages =
+      new ConcurrentHashMap<>();
+
+  private LookmlMetrics() {
+  }
+
+  /** Creates an empty registry. */
+  public static LookmlMetrics create() {
+    return new LookmlMetrics();
+  }
+
+  /** Adds 1 to a counter. */
+  public void increment(String name) {
+    counter(name).increment();
+  }
+
+  /** Adds a value to a counter. */
+  public void add(String name, long delta) {
+    counter(name).add(delta);
+  }
+
+  /** Records a value of a maximum. */
+  public void max(String name, long value) {
+    maximum(name).accumulate(value);
+  }
+
+  /** Returns the current value of a metric, or 0 if it does not exist. */
+  public long get(String name) {
+    final LongAdder counter = counters.get(name);
+    if (counter != null) {
+      return counter.sum();
+    }
+    final LongAccumulator maximum = maxima.get(name);
+    return maximum == null ? 0L : maximum.get();
+  }
+
+  /** Returns the sum of the current values of all metrics whose names start
+   * with {@code prefix}; for example, {@code sum("validate.events.")} is the
+   * number of events received by the "validate" stage. */
+  public long sum(String prefix) {
+    long sum = 0L;
+    for (Map.Entry<String, LongAdder> e : counters.entrySet()) {
+      if (e.getKey().startsWith(prefix)) {
+        sum += e.getValue().sum();
+      }
+    }
+    for (Map.Entry<String, LongAccumulator> e : maxima.entrySet()) {
+      if (e.getKey().startsWith(prefix)) {
+        sum += e.getValue().get();
+      }
+    }
+    return sum;
+  }
+
+  /** Runs an action, and adds the time it takes to {@code stage.nanos},
+   * less any time spent in nested stages. */
+  public void time(String stage, Runnable action) {
+    final LongAdder nanos = counter(stage + ".nanos");
+    final long start = enter();
+    try {
+      action.run();
+    } finally {
+      exit(nanos, start);
+    }
+  }
+
+  /** Returns the values of all metrics, sorted by name. */
+  public SortedMap<String, Long> snapshot() {
+    final SortedMap<String, Long> map = new TreeMap<>();
+    counters.forEach((name, counter) -> map.put(name, counter.sum()));
+    maxima.forEach((name, maximum) -> map.put(name, maximum.get()));
+    return map;
+  }
+
+  /** Returns the values of all metrics as a JSON object, sorted by name;
+   * for example <code>{"errors.nameRequired": 2, "lex.lines": 120}</code>.
+   */
+  public String toJson() {
+    final StringBuilder b = new StringBuilder("{");
+    snapshot().forEach((name, value) -> {
+      if (b.length() > 1) {
+        b.append(", ");
+      }
+      appendJsonString(b, name).append(": ").append(value);
+    });
+    return b.append("}").toString();
+  }
+
+  /** Sets all metrics to zero. */
+  public void reset() {
+    counters.values().forEach(LongAdder::reset);
+    maxima.values().forEach(LongAccumulator::reset);
+  }
+
+  /** Registers this registry with the platform MBean server, and returns
+   * its name, which is
+   * "{@code net.hydromatic.lookml:type=LookmlMetrics,name=}<i>name</i>".
+   *
+   * <p>The bean's attributes are {@code Metrics} (a map from metric name to
+   * value) and {@code Json}; its operation is {@code reset}. */
+  public ObjectName registerMBean(String name) throws JMException {
+    final ObjectName objectName =
+        new ObjectName("net.hydromatic.lookml:type=LookmlMetrics,name="
+            + ObjectName.quote(name));
+    final MetricsMXBean bean = new MetricsMXBean() {
+      @Override public Map<String, Long> getMetrics() {
+        return snapshot();
+      }
+
+      @Override public String getJson() {
+        return toJson();
+      }
+
+      @Override public void reset() {
+        LookmlMetrics.this.reset();
+      }
+    };
+    ManagementFactory.getPlatformMBeanServer()
+        .registerMBean(new StandardMBean(bean, MetricsMXBean.class, true),
+            objectName);
+    return objectName;
+  }
+
+  private static StringBuilder appendJsonString(StringBuilder b, String s) {
+    b.append('"');
+    for (int i = 0; i < s.length(); i++) {
+      final char c = s.charAt(i);
+      if (c == '"' || c == '\\') {
+        b.append('\\').append(c);
+      } else if (c < ' ') {
+        b.append(String.format("\\u%04x", (int) c));
+      } else {
+        b.append(c);
+      }
+    }
+    return b.append('"');
+  }
+
+  LongAdder counter(String name) {
+    return counters.computeIfAbsent(name, k -> new LongAdder());
+  }
+
+  LongAccumulator maximum(String name) {
+    return maxima.computeIfAbsent(name,
+        k -> new LongAccumulator(Math::max, 0L));
+  }
+
+  /** Returns the metrics of a stage. */
+  Stage stage(String name) {
+    return stages.computeIfAbsent(name, k -> new Stage(this, k));
+  }
+
+  /** Starts timing a call; returns the start time, to be passed to
+   * {@link #exit}. */
+  static long enter() {
+    final Timer timer = TIMER.get();
+    timer.push();
+    return System.nanoTime();
+  }
+
+  /** Finishes timing a call, and adds the time spent in it, less the time
+   * spent in nested calls, to {@code nanos}. */
+  static void exit(LongAdder nanos, long start) {
+    final long elapsed = System.nanoTime() - start;
+    nanos.add(elapsed - TIMER.get().pop(elapsed));
+  }
+
+  /** MXBean interface of a {@link LookmlMetrics}.
+   *
+   * @see #registerMBean(String) */
+  public interface MetricsMXBean {
+    /** Returns the values of all metrics. */
+    Map<String, Long> getMetrics();
+
+    /** Returns the values of all metrics as JSON. */
+    String getJson();
+
+    /** Sets all metrics to zero. */
+    void reset();
+  }
+
+  /** Stack of the time spent in calls nested inside each active timed call
+   * on a thread. */
+  private static class Timer {
+    private long[] nested = new long[8];
+    private int depth;
+
+    void push() {
+      if (++depth == nested.length) {
+        nested = Arrays.copyOf(nested, depth * 2);
+      }
+      nested[depth] = 0L;
+    }
+
+    /** Pops the innermost call, which took {@code elapsed} nanoseconds, and
+     * returns the time spent in its nested calls. */
+    long pop(long elapsed) {
+      final long nestedNanos = nested[depth--];
+      nested[depth] += elapsed;
+      return nestedNanos;
+    }
+  }
+
+  /** Metrics of one stage of a pipeline.
+   *
+   * <p>Caches the counters that a decorating handler updates for every
+   * event, so that it does not build a metric name each time. */
+  static class Stage {
+    private final LookmlMetrics metrics;
+    private final String prefix;
+    final LongAdder nanos;
+    final LongAccumulator maxDepth;
+    private final @Nullable LongAdder[] kindCounters =
+        new LongAdder[LookmlEvent.Kind.values().length];
+    private final ConcurrentMap<String, LongAdder> propertyCounters =
+        new ConcurrentHashMap<>();
+
+    Stage(LookmlMetrics metrics, String name) {
+      this.metrics = metrics;
+      this.prefix = name + ".";
+      this.nanos = metrics.counter(prefix + "nanos");
+      this.maxDepth = metrics.maximum(prefix + "depth.max");
+    }
+
+    /** Counts an event of a given kind. */
+    void event(LookmlEvent.Kind kind) {
+      LongAdder counter = kindCounters[kind.ordinal()];
+      if (counter == null) {
+        counter = kindCounters[kind.ordinal()] =
+            metrics.counter(prefix + "events." + kind.methodName);
+      }
+      counter.increment();
+    }
+
+    /** Counts an event of a given kind for a given property. */
+    void event(LookmlEvent.Kind kind, String propertyName) {
+      event(kind);
+      LongAdder counter = propertyCounters.get(propertyName);
+      if (counter == null) {
+        counter =
+            propertyCounters.computeIfAbsent(propertyName,
+                k -> metrics.counter(prefix + "properties." + k));
+      }
+      counter.increment();
+    }
+  }
+}
+
+// End LookmlMetrics.java
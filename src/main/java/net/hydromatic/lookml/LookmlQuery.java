@@ -0,0 +1,620 @@
+/*
+ * Licensed to the LookML Authors under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.
+ * The LookML Authors license this file to you under the Apache
+ * License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License.  You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package net.hydromatic.lookml;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/** Path expression that selects properties of a LookML document, such as
+ * <code>model/view[*]/dimension[type=time]/sql</code>.
+ *
+ * <p>A path is a sequence of steps separated by "/". Each step matches a
+ * property by name, or any property if the name is "*", and may have
+ * predicates:
+ * <ul>
+ * <li><code>[*]</code> matches a named object;
+ * <li><code>[orders]</code> matches the named object "orders";
+ * <li><code>[type=time]</code> matches an object whose "type" property
+ *   has value "time"; the value may be quoted, as in
+ *   <code>[label="My view"]</code>.
+ * </ul>
+ *
+ * <p>A step preceded by "//" rather than "/" matches a property at any
+ * depth below the previous step (or below the document, if it is the first
+ * step); so <code>//sql_on</code> matches every "sql_on" property.
+ *
+ * <p>Queries are evaluated on the stream of events, without building a
+ * document. Call {@link #compile(Iterable)} to combine queries into an
+ * {@link Automaton}, in which queries that start with the same steps share
+ * states, and then {@link Automaton#matcher(Handler)} to create a handler
+ * that evaluates all of the queries in one pass over a document. The
+ * matcher ignores the contents of any object in which no query can match.
+ *
+ * <p>A property matches if its value is a number, string, identifier, code
+ * block, object or list; the elements of a list are not matched. If a match
+ * depends on a predicate such as <code>[type=time]</code>, it is reported
+ * when that property is seen, which may be after the properties that
+ * follow the match in the document. */
+public class LookmlQuery {
+  private final String text;
+  private final List<Step> steps;
+
+  private LookmlQuery(String text, List<Step> steps) {
+    this.text = text;
+    this.steps = ImmutableList.copyOf(steps);
+  }
+
+  /** Parses a path.
+   *
+   * @throws IllegalArgumentException if the path is not valid
+   */
+  public static LookmlQuery parse(String text) {
+    return new PathParser(text).parse();
+  }
+
+  /** Combines queries into an automaton. */
+  public static Automaton compile(Iterable<LookmlQuery> queries) {
+    final NodeBuilder root = new NodeBuilder(null);
+    for (LookmlQuery query : queries) {
+      NodeBuilder node = root;
+      for (Step step : query.steps) {
+        node = node.children.computeIfAbsent(step.toString(),
+            k -> new NodeBuilder(step));
+      }
+      node.accepts.add(query);
+    }
+    return new Automaton(root.build());
+  }
+
+  @Override public String toString() {
+    return text;
+  }
+
+  /** Receives the properties that match queries.
+   *
+   * @see Automaton#matcher(Handler) */
+  @FunctionalInterface
+  public interface Handler {
+    /** Called for each property that matches a query.
+     *
+     * @param query Query
+     * @param pos Position of the property
+     * @param propertyName Name of the property
+     * @param value Value of the property: a {@link Number} or
+     *   {@link String} if the property is a number, string, identifier or
+     *   code block; the name of a named object; or null for an object
+     *   without a name or a list
+     */
+    void match(LookmlQuery query, Pos pos, String propertyName,
+        @Nullable Object value);
+  }
+
+  /** Automaton that evaluates several queries at once.
+   *
+   * <p>An automaton is immutable, and may be used to create matchers for
+   * several documents concurrently. */
+  public static class Automaton {
+    private final Node root;
+    private final int stateCount;
+
+    private Automaton(Node root) {
+      this.root = root;
+      this.stateCount = root.count();
+    }
+
+    /** Returns the number of states, not including the initial state;
+     * at most the total number of steps in the queries. */
+    public int stateCount() {
+      return stateCount;
+    }
+
+    /** Returns a handler that evaluates the queries on a document, and
+     * reports each match to {@code handler}. */
+    public ObjectHandler matcher(Handler handler) {
+      requireNonNull(handler, "handler");
+      return new Matcher(handler,
+          ImmutableList.of(new Instance(root, null, false)),
+          ImmutableList.of());
+    }
+  }
+
+  /** Step of a path. */
+  private static class Step {
+    /** Whether the step matches at any depth, i.e. is preceded by
+     * "//". */
+    final boolean descendant;
+    /** Name of the property; null matches any property. */
+    final @Nullable String propertyName;
+    /** Whether the property must be a named object. */
+    final boolean named;
+    /** Required name of the object, or null. */
+    final @Nullable String name;
+    /** Properties that the object must have, and their values. */
+    final Map<String, String> conditions;
+
+    Step(boolean descendant, @Nullable String propertyName, boolean named,
+        @Nullable String name, Map<String, String> conditions) {
+      this.descendant = descendant;
+      this.propertyName = propertyName;
+      this.named = named || name != null;
+      this.name = name;
+      this.conditions = ImmutableMap.copyOf(conditions);
+    }
+
+    /** Returns whether the step can match a property that is not an
+     * object. */
+    boolean matchesValue() {
+      return !named && conditions.isEmpty();
+    }
+
+    /** Returns whether the step matches an object with a given name. */
+    boolean matchesName(@Nullable String objName) {
+      return name != null
+          ? name.equals(objName)
+          : !named || objName != null;
+    }
+
+    @Override public String toString() {
+      final StringBuilder b = new StringBuilder(descendant ? "//" : "/")
+          .append(propertyName == null ? "*" : propertyName);
+      if (name != null) {
+        b.append('[').append(name).append(']');
+      } else if (named) {
+        b.append("[*]");
+      }
+      conditions.forEach((k, v) ->
+          b.append('[').append(k).append("=\"").append(v).append("\"]"));
+      return b.toString();
+    }
+  }
+
+  /** State of an automaton; a step in one or more queries. */
+  private static class Node {
+    final @Nullable Step step;
+    /** Queries that end with this step. */
+    final List<LookmlQuery> accepts;
+    /** Child states that match a particular property name. */
+    final Map<String, List<Node>> childrenByName;
+    /** Child states that match any property name. */
+    final List<Node> wildcardChildren;
+    /** Whether any child state is preceded by "//". */
+    final boolean hasDescendant;
+    final boolean leaf;
+
+    Node(@Nullable Step step, List<LookmlQuery> accepts,
+        Map<String, List<Node>> childrenByName, List<Node> wildcardChildren,
+        boolean hasDescendant, boolean leaf) {
+      this.step = step;
+      this.accepts = ImmutableList.copyOf(accepts);
+      this.childrenByName = ImmutableMap.copyOf(childrenByName);
+      this.wildcardChildren = ImmutableList.copyOf(wildcardChildren);
+      this.hasDescendant = hasDescendant;
+      this.leaf = leaf;
+    }
+
+    int count() {
+      int n = 0;
+      for (List<Node> children : childrenByName.values()) {
+        for (Node child : children) {
+          n += 1 + child.count();
+        }
+      }
+      for (Node child : wildcardChildren) {
+        n += 1 + child.count();
+      }
+      return n;
+    }
+  }
+
+  /** Mutable node, used while compiling queries. */
+  private static class NodeBuilder {
+    final @Nullable Step step;
+    final List<LookmlQuery> accepts = new ArrayList<>();
+    final Map<String, NodeBuilder> children = new LinkedHashMap<>();
+
+    NodeBuilder(@Nullable Step step) {
+      this.step = step;
+    }
+
+    Node build() {
+      final Map<String, List<Node>> childrenByName = new LinkedHashMap<>();
+      final List<Node> wildcardChildren = new ArrayList<>();
+      boolean hasDescendant = false;
+      for (NodeBuilder child : children.values()) {
+        final Step childStep = requireNonNull(child.step);
+        final Node node = child.build();
+        if (childStep.propertyName == null) {
+          wildcardChildren.add(node);
+        } else {
+          childrenByName.computeIfAbsent(childStep.propertyName,
+              k -> new ArrayList<>()).add(node);
+        }
+        hasDescendant |= childStep.descendant;
+      }
+      return new Node(step, accepts, childrenByName, wildcardChildren,
+          hasDescendant, children.isEmpty());
+    }
+  }
+
+  /** Active state of the automaton within an object.
+   *
+   * <p>An instance is "carried" if its node's step has already matched an
+   * ancestor object, and it is present only so that the node's "//"
+   * children can match at this depth. */
+  private static class Instance {
+    final Node node;
+    final @Nullable Guard guard;
+    final boolean carried;
+
+    Instance(Node node, @Nullable Guard guard, boolean carried) {
+      this.node = node;
+      this.guard = guard;
+      this.carried = carried;
+    }
+  }
+
+  /** Condition, such as <code>[type=time]</code>, on an open object, which
+   * holds matches that cannot be reported until it is satisfied. */
+  private static class Guard {
+    /** Guard on the same or an enclosing object, which must also be
+     * satisfied. */
+    final @Nullable Guard parent;
+    final String propertyName;
+    final String value;
+    boolean satisfied;
+    @Nullable List<Match> pending;
+
+    Guard(@Nullable Guard parent, String propertyName, String value) {
+      this.parent = parent;
+      this.propertyName = propertyName;
+      this.value = value;
+    }
+  }
+
+  /** Match that has not been reported yet. */
+  private static class Match {
+    final LookmlQuery query;
+    final Pos pos;
+    final String propertyName;
+    final @Nullable Object value;
+
+    Match(LookmlQuery query, Pos pos, String propertyName,
+        @Nullable Object value) {
+      this.query = query;
+      this.pos = pos;
+      this.propertyName = propertyName;
+      this.value = value;
+    }
+  }
+
+  /** Handler that evaluates an automaton's queries on an object.
+   *
+   * <p>There is one matcher for each open object in which a query might
+   * match; the contents of other objects go to a null handler. */
+  private static class Matcher implements ObjectHandler {
+    private final Handler handler;
+    private final List<Instance> instances;
+    /** Guards on this object. */
+    private final List<Guard> guards;
+
+    Matcher(Handler handler, List<Instance> instances, List<Guard> guards) {
+      this.handler = handler;
+      this.instances = instances;
+      this.guards = guards;
+    }
+
+    /** Reports a match, or if it depends on an unsatisfied guard, adds it
+     * to that guard's pending list. */
+    private void report(Match match, @Nullable Guard guard) {
+      for (Guard g = guard; g != null; g = g.parent) {
+        if (!g.satisfied) {
+          if (g.pending == null) {
+            g.pending = new ArrayList<>();
+          }
+          g.pending.add(match);
+          return;
+        }
+      }
+      handler.match(match.query, match.pos, match.propertyName,
+          match.value);
+    }
+
+    /** Returns the states that can match a property. */
+    private static List<Node> children(Instance instance,
+        String propertyName) {
+      final List<Node> children =
+          instance.node.childrenByName.get(propertyName);
+      if (instance.node.wildcardChildren.isEmpty()) {
+        return children == null ? ImmutableList.of() : children;
+      }
+      if (children == null) {
+        return instance.node.wildcardChildren;
+      }
+      return ImmutableList.<Node>builder().addAll(children)
+          .addAll(instance.node.wildcardChildren).build();
+    }
+
+    private void value(Pos pos, String propertyName,
+        @Nullable Object value) {
+      if (value != null && !guards.isEmpty()) {
+        final String s = value.toString().trim();
+        for (Guard guard : guards) {
+          if (!guard.satisfied
+              && guard.propertyName.equals(propertyName)
+              && guard.value.equals(s)) {
+            guard.satisfied = true;
+            final List<Match> pending = guard.pending;
+            guard.pending = null;
+            if (pending != null) {
+              pending.forEach(match -> report(match, guard.parent));
+            }
+          }
+        }
+      }
+      for (Instance instance : instances) {
+        for (Node child : children(instance, propertyName)) {
+          final Step step = requireNonNull(child.step);
+          if ((step.descendant || !instance.carried)
+              && step.matchesValue()) {
+            for (LookmlQuery query : child.accepts) {
+              report(new Match(query, pos, propertyName, value),
+                  instance.guard);
+            }
+          }
+        }
+      }
+    }
+
+    @Override public ObjectHandler number(Pos pos, String propertyName,
+        Number value) {
+      value(pos, propertyName, value);
+      return this;
+    }
+
+    @Override public ObjectHandler string(Pos pos, String propertyName,
+        String value) {
+      value(pos, propertyName, value);
+      return this;
+    }
+
+    @Override public ObjectHandler identifier(Pos pos, String propertyName,
+        String value) {
+      value(pos, propertyName, value);
+      return this;
+    }
+
+    @Override public ObjectHandler code(Pos pos, String propertyName,
+        String value) {
+      value(pos, propertyName, value);
+      return this;
+    }
+
+    @Override public ListHandler listOpen(Pos pos, String propertyName) {
+      value(pos, propertyName, null);
+      return LaxHandlers.nullListHandler();
+    }
+
+    @Override public ObjectHandler objOpen(Pos pos, String propertyName) {
+      return open(pos, propertyName, null);
+    }
+
+    @Override public ObjectHandler objOpen(Pos pos, String propertyName,
+        String name) {
+      return open(pos, propertyName, name);
+    }
+
+    private ObjectHandler open(Pos pos, String propertyName,
+        @Nullable String name) {
+      List<Instance> childInstances = null;
+      List<Guard> childGuards = null;
+      for (Instance instance : instances) {
+        if (instance.node.hasDescendant) {
+          if (childInstances == null) {
+            childInstances = new ArrayList<>();
+          }
+          add(childInstances, instance.carried ? instance
+              : new Instance(instance.node, instance.guard, true));
+        }
+        for (Node child : children(instance, propertyName)) {
+          final Step step = requireNonNull(child.step);
+          if (instance.carried && !step.descendant
+              || !step.matchesName(name)) {
+            continue;
+          }
+          Guard guard = instance.guard;
+          for (Map.Entry<String, String> e : step.conditions.entrySet()) {
+            guard = new Guard(guard, e.getKey(), e.getValue());
+            if (childGuards == null) {
+              childGuards = new ArrayList<>();
+            }
+            childGuards.add(guard);
+          }
+          for (LookmlQuery query : child.accepts) {
+            report(new Match(query, pos, propertyName, name), guard);
+          }
+          if (!child.leaf) {
+            if (childInstances == null) {
+              childInstances = new ArrayList<>();
+            }
+            add(childInstances, new Instance(child, guard, false));
+          }
+        }
+      }
+      if (childInstances == null && childGuards == null) {
+        // No query can match within this object; skip its contents
+        return LaxHandlers.nullObjectHandler();
+      }
+      return new Matcher(handler,
+          childInstances == null ? ImmutableList.of() : childInstances,
+          childGuards == null ? ImmutableList.of() : childGuards);
+    }
+
+    /** Adds an instance to a list, unless the list already has an instance
+     * of the same node with the same guard.
+     *
+     * <p>A descendant step can reach an object both by carrying an instance
+     * down from an enclosing object and by matching afresh; without this
+     * check, the number of instances, and of reported matches, would grow
+     * with depth. An instance that is not carried can take any step, so it
+     * replaces a carried one. */
+    private static void add(List<Instance> list, Instance instance) {
+      for (int i = 0; i < list.size(); i++) {
+        final Instance instance2 = list.get(i);
+        if (instance2.node == instance.node
+            && instance2.guard == instance.guard) {
+          if (instance2.carried && !instance.carried) {
+            list.set(i, instance);
+          }
+          return;
+        }
+      }
+      list.add(instance);
+    }
+
+    @Override public void close(Pos pos) {
+      // Matches that depend on an unsatisfied guard are discarded
+      for (Guard guard : guards) {
+        guard.pending = null;
+      }
+    }
+  }
+
+  /** Parser for paths. */
+  private static class PathParser {
+    private final String text;
+    private int i;
+
+    PathParser(String text) {
+      this.text = requireNonNull(text, "text");
+    }
+
+    LookmlQuery parse() {
+      final List<Step> steps = new ArrayList<>();
+      boolean descendant = false;
+      if (text.startsWith("//")) {
+        descendant = true;
+        i = 2;
+      } else if (text.startsWith("/")) {
+        i = 1;
+      }
+      for (;;) {
+        steps.add(step(descendant));
+        if (i == text.length()) {
+          return new LookmlQuery(text, steps);
+        }
+        expect('/');
+        descendant = i < text.length() && text.charAt(i) == '/';
+        if (descendant) {
+          ++i;
+        }
+      }
+    }
+
+    private Step step(boolean descendant) {
+      final String propertyName;
+      if (i < text.length() && text.charAt(i) == '*') {
+        ++i;
+        propertyName = null;
+      } else {
+        propertyName = identifier();
+      }
+      boolean named = false;
+      String name = null;
+      final Map<String, String> conditions = new LinkedHashMap<>();
+      while (i < text.length() && text.charAt(i) == '[') {
+        ++i;
+        if (i < text.length() && text.charAt(i) == '*') {
+          ++i;
+          named = true;
+        } else {
+          final String id = identifier();
+          if (i < text.length() && text.charAt(i) == '=') {
+            ++i;
+            conditions.put(id, value());
+          } else {
+            if (name != null && !name.equals(id)) {
+              throw error("conflicting names");
+            }
+            name = id;
+          }
+        }
+        expect(']');
+      }
+      return new Step(descendant, propertyName, named, name, conditions);
+    }
+
+    private String identifier() {
+      final int start = i;
+      while (i < text.length() && isIdentifierChar(text.charAt(i))) {
+        ++i;
+      }
+      if (i == start) {
+        throw error("expected identifier");
+      }
+      return text.substring(start, i);
+    }
+
+    private String value() {
+      if (i < text.length() && text.charAt(i) == '"') {
+        final int end = text.indexOf('"', i + 1);
+        if (end < 0) {
+          throw error("unterminated string");
+        }
+        final String value = text.substring(i + 1, end);
+        i = end + 1;
+        return value;
+      }
+      final int start = i;
+      while (i < text.length() && text.charAt(i) != ']') {
+        ++i;
+      }
+      return text.substring(start, i).trim();
+    }
+
+    private void expect(char c) {
+      if (i >= text.length() || text.charAt(i) != c) {
+        throw error("expected '" + c + "'");
+      }
+      ++i;
+    }
+
+    private IllegalArgumentException error(String message) {
+      return new IllegalArgumentException("invalid path '" + text + "': "
+          + message + " at offset " + i);
+    }
+
+    private static boolean isIdentifierChar(char c) {
+      return c >= 'a' && c <= 'z'
+          || c >= 'A' && c <= 'Z'
+          || c >= '0' && c <= '9'
+          || c == '_';
+    }
+  }
+}
+
+// End LookmlQuery.java
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the LookML Authors under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.
+ * The LookML Authors license this file to you under the Apache
+ * License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License.  You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package net.hydromatic.lookml;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/** Receives a record of each LookML source that is parsed, validated, or
+ * loaded as a schema; for example, to emit profiling events.
+ *
+ * <p>No recorder is installed by default, and then the cost of recording is
+ * one volatile read per source. The recorder is called at the start and end
+ * of each phase for each source, never per parse event.
+ *
+ * <p>On JDK 11 and later, a recorder can emit Java Flight Recorder events,
+ * so that time in a recording is attributed to the files and phases that
+ * took it. (In a real event class, add annotations such as {@code @Label}
+ * and {@code @Timespan} to the fields.)
+ *
+ * <blockquote><pre>{@code
+ * class PhaseEvent extends jdk.jfr.Event {
+ *   String phase;
+ *   String source;
+ *   long bytes;
+ *   long tokens;
+ *   long events;
+ *   long errors;
+ *   long selfNanos;
+ * }
+ *
+ * LookmlRecorder.install((phase, source) -> {
+ *   final PhaseEvent e = new PhaseEvent();
+ *   if (!e.isEnabled()) {
+ *     return LookmlRecorder.Span.EMPTY;
+ *   }
+ *   e.begin();
+ *   return (bytes, tokens, events, errors, selfNanos) -> {
+ *     e.end();
+ *     if (e.shouldCommit()) {
+ *       e.phase = phase.name();
+ *       e.source = source.toString();
+ *       e.bytes = bytes;
+ *       e.tokens = tokens;
+ *       e.events = events;
+ *       e.errors = errors;
+ *       e.selfNanos = selfNanos;
+ *       e.commit();
+ *     }
+ *   };
+ * });
+ * }</pre></blockquote>
+ */
+public interface LookmlRecorder {
+  /** Installs a recorder, replacing any previously installed, or removes
+   * the recorder if {@code recorder} is null. */
+  static void install(@Nullable LookmlRecorder recorder) {
+    Recording.installed = recorder;
+  }
+
+  /** Returns the installed recorder, or null. */
+  static @Nullable LookmlRecorder installed() {
+    return Recording.installed;
+  }
+
+  /** Called when a phase starts processing a source; returns a span whose
+   * {@link Span#end} method will be called when the phase finishes. */
+  Span start(Phase phase, Source source);
+
+  /** Phase of processing a source. */
+  enum Phase {
+    /** Parsing, by
+     * {@link net.hydromatic.lookml.parse.LookmlParsers#parse}. */
+    PARSE,
+
+    /** Validation, by a handler created by {@link LaxHandlers#validator}.
+     * Starts with the first event of a document. */
+    VALIDATE,
+
+    /** Loading a schema, by {@link LookmlSchemas#load(Source, LookmlSchema)};
+     * includes the nested parse and validate phases. */
+    LOAD_SCHEMA
+  }
+
+  /** Processing of a source by a phase. */
+  interface Span {
+    /** Span that ignores its end. */
+    Span EMPTY = (bytes, tokens, events, errors, selfNanos) -> { };
+
+    /** Called when the phase has finished.
+     *
+     * @param bytes Number of bytes (or characters) read, or 0 if not known
+     * @param tokens Number of tokens read by the parser, or 0 if the phase
+     *   does not parse
+     * @param events Number of parse events handled
+     * @param errors Number of errors
+     * @param selfNanos Time spent in the phase itself, excluding handlers
+     *   and phases that it calls */
+    void end(long bytes, long tokens, long events, long errors,
+        long selfNanos);
+  }
+}
+
+// End LookmlRecorder.java
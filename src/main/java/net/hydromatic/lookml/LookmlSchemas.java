@@ -25,10 +25,25 @@
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 
 import org.checkerframework.checker.nullness.qual.Nullable;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
@@ -39,6 +54,7 @@
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -57,21 +73,35 @@ public static SchemaBuilder schemaBuilder() {
     return new SchemaBuilderImpl();
   }
 
-  /** Loads a schema from a file in Schema LookML format. */
+  /** Loads a schema from a file in Schema LookML format.
+   *
+   * <p>If a {@link LookmlRecorder} is installed, reports to it. */
   public static LookmlSchema load(Source source,
       @Nullable LookmlSchema schema) {
+    final LookmlRecorder recorder = LookmlRecorder.installed();
+    if (recorder == null) {
+      return load_(source, schema, new ArrayList<>());
+    }
+    final LookmlRecorder.Span span =
+        recorder.start(LookmlRecorder.Phase.LOAD_SCHEMA, source);
+    final List<String> errorList = new ArrayList<>();
+    final long start = System.nanoTime();
+    try {
+      return load_(source, schema, errorList);
+    } finally {
+      span.end(0L, 0L, 0L, errorList.size(), System.nanoTime() - start);
+    }
+  }
 
+  private static LookmlSchema load_(Source source,
+      @Nullable LookmlSchema schema, List<String> errorList) {
     // Parse the string into an AST
     final List<PairList<String, Value>> list = new ArrayList<>();
-    final List<String> errorList;
     ObjectHandler handler = LaxHandlers.build(list::add);
     if (schema != null) {
-      errorList = new ArrayList<>();
       handler =
           LaxHandlers.validator(handler, schema,
               LaxHandlers.errorLogger(errorList::add));
-    } else {
-      errorList = ImmutableList.of();
     }
     LookmlParsers.parse(handler, LookmlParsers.config().withSource(source));
     if (!errorList.isEmpty()) {
@@ -83,8 +113,149 @@ public static LookmlSchema load(Source source,
     return b.build();
   }
 
-  /** Returns whether two {@link LookmlSchema} instances are equal. */
+  /** Loads a schema from a file in Schema LookML format, using a snapshot
+   * file if it is current.
+   *
+   * <p>If {@code snapshotFile} exists and was written for the same contents
+   * of {@code source} (as determined by {@link #fingerprint(Source)}), reads
+   * the schema from it. Otherwise, parses {@code source} as
+   * {@link #load(Source, LookmlSchema)} does, and tries to replace the
+   * snapshot file; failure to write the snapshot file (say because the
+   * directory is read-only) is not an error. */
+  public static LookmlSchema load(Source source,
+      @Nullable LookmlSchema schema, File snapshotFile) {
+    final String fingerprint = fingerprint(source);
+    if (snapshotFile.isFile()) {
+      try (InputStream in =
+               new BufferedInputStream(new FileInputStream(snapshotFile))) {
+        final LookmlSchema snapshot = readSnapshot(in, fingerprint);
+        if (snapshot != null) {
+          return snapshot;
+        }
+      } catch (IOException | RuntimeException e) {
+        // Snapshot is unreadable or corrupt; fall back to parsing.
+      }
+    }
+    final LookmlSchema loaded = load(source, schema);
+    @Nullable File tempFile = null;
+    try {
+      final File dir = snapshotFile.getAbsoluteFile().getParentFile();
+      tempFile = File.createTempFile(snapshotFile.getName(), ".tmp", dir);
+      try (OutputStream out =
+               new BufferedOutputStream(new FileOutputStream(tempFile))) {
+        writeSnapshot(loaded, fingerprint, out);
+      }
+      Files.move(tempFile.toPath(), snapshotFile.toPath(),
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      // Cannot write snapshot; the schema is still good.
+      if (tempFile != null) {
+        //noinspection ResultOfMethodCallIgnored
+        tempFile.delete();
+      }
+    }
+    return loaded;
+  }
+
+  /** Returns a fingerprint of the contents of a source, suitable as the key
+   * of a snapshot written by
+   * {@link #writeSnapshot(LookmlSchema, String, OutputStream)}. */
+  public static String fingerprint(Source source) {
+    return Hashing.sha256()
+        .hashString(source.contentsAsString(), StandardCharsets.UTF_8)
+        .toString();
+  }
+
+  /** Writes a schema to a binary snapshot.
+   *
+   * <p>The snapshot records {@code fingerprint}, which is usually the
+   * {@link #fingerprint(Source) fingerprint} of the source from which the
+   * schema was loaded, and which must be supplied when the snapshot is
+   * read. */
+  public static void writeSnapshot(LookmlSchema schema, String fingerprint,
+      OutputStream out) throws IOException {
+    new SnapshotWriter(new DataOutputStream(out))
+        .writeSchema(schema, fingerprint);
+  }
+
+  /** Reads a schema from a binary snapshot written by
+   * {@link #writeSnapshot(LookmlSchema, String, OutputStream)}.
+   *
+   * <p>Returns null if the snapshot was written with a different fingerprint
+   * or in a different format. */
+  public static @Nullable LookmlSchema readSnapshot(InputStream in,
+      String fingerprint) throws IOException {
+    return new SnapshotReader(new DataInputStream(in))
+        .readSchema(fingerprint);
+  }
+
+  /** Returns a 128-bit structural fingerprint of a schema, as a string of
+   * 32 hexadecimal digits.
+   *
+   * <p>The fingerprint covers the schema's name, enum types, object types,
+   * and root properties, independent of the order of their maps; two
+   * schemas that are {@link #equal} have the same fingerprint. It is stable
+   * across processes and versions of this library, so it can be part of the
+   * key of a persistent cache (for example, of validation results).
+   *
+   * <p>For schemas created by this library, the fingerprint is computed
+   * once and cached. */
+  public static String fingerprint(LookmlSchema schema) {
+    if (schema instanceof SchemaImpl) {
+      return ((SchemaImpl) schema).fingerprint();
+    }
+    return computeFingerprint(schema);
+  }
+
+  private static String computeFingerprint(LookmlSchema schema) {
+    final Hasher h = Hashing.murmur3_128().newHasher();
+    putString(h, schema.name());
+    h.putInt(schema.enumTypes().size());
+    new TreeMap<>(schema.enumTypes()).forEach((name, enumType) -> {
+      putString(h, name);
+      h.putInt(enumType.allowedValues().size());
+      enumType.allowedValues().forEach(value -> putString(h, value));
+    });
+    h.putInt(schema.objectTypes().size());
+    new TreeMap<>(schema.objectTypes()).forEach((name, objectType) -> {
+      putString(h, name);
+      putProperties(h, objectType.properties());
+    });
+    putProperties(h, schema.rootProperties());
+    return h.hash().toString();
+  }
+
+  private static void putProperties(Hasher h,
+      Map<String, LookmlSchema.Property> properties) {
+    h.putInt(properties.size());
+    new TreeMap<>(properties).forEach((key, property) -> {
+      putString(h, key);
+      putString(h, property.name());
+      putString(h, property.type().name());
+      putString(h, property.typeName());
+    });
+  }
+
+  /** Adds a string to a hasher, preceded by its length, so that the
+   * sequences ("ab", "c") and ("a", "bc") hash differently. */
+  private static void putString(Hasher h, String s) {
+    h.putInt(s.length());
+    h.putString(s, StandardCharsets.UTF_8);
+  }
+
+  /** Returns whether two {@link LookmlSchema} instances are equal.
+   *
+   * <p>If the schemas' {@link #fingerprint fingerprints} differ (which is
+   * cheap to check if they have been computed before), returns false
+   * without comparing the schemas' contents. Equal fingerprints do not
+   * prove that schemas are equal, so in that case compares the contents. */
   public static boolean equal(LookmlSchema schema1, LookmlSchema schema2) {
+    if (schema1 == schema2) {
+      return true;
+    }
+    if (!fingerprint(schema1).equals(fingerprint(schema2))) {
+      return false;
+    }
     return new Comparer(difference -> {}).equalSchema(schema1, schema2);
   }
 
@@ -365,6 +536,9 @@ private static class SchemaImpl implements LookmlSchema {
     final Map<String, ObjectType> objectTypes;
     final Map<String, EnumType> enumTypes;
     final Set<String> codePropertyNames;
+    /** Fingerprint; null until {@link #fingerprint()} is first called.
+     * Racing threads will compute the same value. */
+    private @Nullable String fingerprint;
 
     SchemaImpl(String name,
         Map<String, PropertyImpl> rootPropertyMap,
@@ -398,6 +572,14 @@ public String name() {
     @Override public Set<String> codePropertyNames() {
       return codePropertyNames;
     }
+
+    String fingerprint() {
+      String fingerprint = this.fingerprint;
+      if (fingerprint == null) {
+        this.fingerprint = fingerprint = computeFingerprint(this);
+      }
+      return fingerprint;
+    }
   }
 
   /** Implementation of
@@ -691,12 +873,128 @@ void acceptProperty(ObjectTypeBuilder objectTypeBuilder,
     }
 
     <K, V> V get(PairList<K, V> pairList, K seek) {
-      for (int i = 0; i < pairList.size(); i++) {
-        if (pairList.left(i).equals(seek)) {
-          return pairList.right(i);
+      final int i = pairList.indexOfLeft(seek);
+      if (i < 0) {
+        throw new IllegalArgumentException("not found: " + seek);
+      }
+      return pairList.right(i);
+    }
+  }
+
+  /** Writes a {@link LookmlSchema} in binary snapshot format.
+   *
+   * <p>The format is a header (magic number, format version, fingerprint)
+   * followed by the schema name, enum types, object types, root properties
+   * and code property names, each collection preceded by its size. Maps are
+   * written in iteration order, so a schema read from a snapshot iterates in
+   * the same order as the schema that was written. */
+  private static class SnapshotWriter {
+    static final int MAGIC = 0x4c4b4d4c; // "LKML"
+    static final int VERSION = 1;
+
+    private final DataOutputStream out;
+
+    SnapshotWriter(DataOutputStream out) {
+      this.out = out;
+    }
+
+    void writeSchema(LookmlSchema schema, String fingerprint)
+        throws IOException {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeUTF(fingerprint);
+      out.writeUTF(schema.name());
+      out.writeInt(schema.enumTypes().size());
+      for (Map.Entry<String, LookmlSchema.EnumType> e
+          : schema.enumTypes().entrySet()) {
+        out.writeUTF(e.getKey());
+        writeStrings(e.getValue().allowedValues());
+      }
+      out.writeInt(schema.objectTypes().size());
+      for (Map.Entry<String, LookmlSchema.ObjectType> e
+          : schema.objectTypes().entrySet()) {
+        out.writeUTF(e.getKey());
+        writeProperties(e.getValue().properties());
+      }
+      writeProperties(schema.rootProperties());
+      writeStrings(schema.codePropertyNames());
+      out.flush();
+    }
+
+    private void writeProperties(Map<String, LookmlSchema.Property> map)
+        throws IOException {
+      out.writeInt(map.size());
+      for (LookmlSchema.Property property : map.values()) {
+        out.writeUTF(property.name());
+        out.writeByte(property.type().ordinal());
+        out.writeUTF(property.typeName());
+      }
+    }
+
+    private void writeStrings(Set<String> strings) throws IOException {
+      out.writeInt(strings.size());
+      for (String string : strings) {
+        out.writeUTF(string);
+      }
+    }
+  }
+
+  /** Reads a {@link LookmlSchema} written by {@link SnapshotWriter}.
+   *
+   * <p>Builds the schema's implementation objects directly, rather than via
+   * {@link SchemaBuilder}, because the schema was valid when it was
+   * written. */
+  private static class SnapshotReader {
+    private static final LookmlSchema.Type[] TYPES =
+        LookmlSchema.Type.values();
+
+    private final DataInputStream in;
+
+    SnapshotReader(DataInputStream in) {
+      this.in = in;
+    }
+
+    @Nullable LookmlSchema readSchema(String fingerprint) throws IOException {
+      if (in.readInt() != SnapshotWriter.MAGIC
+          || in.readInt() != SnapshotWriter.VERSION
+          || !in.readUTF().equals(fingerprint)) {
+        return null;
+      }
+      final String name = in.readUTF();
+      final Map<String, EnumTypeImpl> enumTypes = new LinkedHashMap<>();
+      for (int i = 0, n = in.readInt(); i < n; i++) {
+        enumTypes.put(in.readUTF(), new EnumTypeImpl(readStrings()));
+      }
+      final Map<String, ObjectTypeImpl> objectTypes = new LinkedHashMap<>();
+      for (int i = 0, n = in.readInt(); i < n; i++) {
+        objectTypes.put(in.readUTF(), new ObjectTypeImpl(readProperties()));
+      }
+      final Map<String, PropertyImpl> rootProperties = readProperties();
+      final List<String> codePropertyNames = readStrings();
+      return new SchemaImpl(name, rootProperties, objectTypes, enumTypes,
+          codePropertyNames);
+    }
+
+    private Map<String, PropertyImpl> readProperties() throws IOException {
+      final Map<String, PropertyImpl> map = new LinkedHashMap<>();
+      for (int i = 0, n = in.readInt(); i < n; i++) {
+        final String name = in.readUTF();
+        final int ordinal = in.readByte();
+        if (ordinal < 0 || ordinal >= TYPES.length) {
+          throw new IOException("invalid type ordinal " + ordinal);
         }
+        map.put(name, new PropertyImpl(name, TYPES[ordinal], in.readUTF()));
+      }
+      return map;
+    }
+
+    private List<String> readStrings() throws IOException {
+      final int n = in.readInt();
+      final List<String> list = new ArrayList<>(n);
+      for (int i = 0; i < n; i++) {
+        list.add(in.readUTF());
       }
-      throw new IllegalArgumentException("not found: " + seek);
+      return list;
     }
   }
 
@@ -0,0 +1,396 @@
+/*
+ * Licensed to the LookML Authors under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.
+ * The LookML Authors license this file to you under the Apache
+ * License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License.  You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package net.hydromatic.lookml;
+
+import net.hydromatic.lookml.parse.LookmlParsers;
+import net.hydromatic.lookml.parse.TokenMgrError;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.util.Objects.requireNonNull;
+
+/** Validates the LookML files in a directory tree, and re-validates each
+ * file when it changes.
+ *
+ * <p>The watcher keeps the result of validating each file (its errors, and
+ * a fingerprint of its contents) in memory. When a file changes, it
+ * re-parses and re-validates only that file; if the contents are the same
+ * as when it was last validated (say because an editor saved a file without
+ * modifying it), it does nothing.
+ *
+ * <p>Results are pushed to a {@link Listener}, which supplies an
+ * {@link ErrorHandler} for each file that is validated. Call
+ * {@link #validateAll()} to validate every file, then {@link #run()} (or
+ * {@link #poll} in a loop of your own) to wait for changes. A burst of
+ * changes, such as a "git checkout", is processed once it has been quiet
+ * for the debounce interval.
+ *
+ * <p>A file is a LookML file if its name ends with ".lkml". */
+public class LookmlWatcher implements AutoCloseable {
+  private final Path directory;
+  private final LookmlSchema schema;
+  private final LookmlParsers.Config config;
+  private final long debounceMillis;
+  private final Listener listener;
+  private final WatchService watchService;
+  private final ConcurrentMap<Path, FileState> states =
+      new ConcurrentHashMap<>();
+
+  private LookmlWatcher(Path directory, LookmlSchema schema,
+      long debounceMillis, Listener listener, WatchService watchService) {
+    this.directory = requireNonNull(directory, "directory");
+    this.schema = requireNonNull(schema, "schema");
+    this.config =
+        LookmlParsers.config()
+            .withCodePropertyNames(schema.codePropertyNames());
+    this.debounceMillis = debounceMillis;
+    this.listener = requireNonNull(listener, "listener");
+    this.watchService = requireNonNull(watchService, "watchService");
+  }
+
+  /** Creates a watcher, and starts watching {@code directory} and its
+   * sub-directories.
+   *
+   * <p>Does not validate any files; call {@link #validateAll()} to do
+   * that.
+   *
+   * @param directory Root directory of the project
+   * @param schema Schema against which to validate files
+   * @param debounceMillis Milliseconds without a change after which a burst
+   *   of changes is processed
+   * @param listener Receives the results of validation */
+  public static LookmlWatcher create(Path directory, LookmlSchema schema,
+      long debounceMillis, Listener listener) throws IOException {
+    final Path dir = directory.toAbsolutePath().normalize();
+    final LookmlWatcher watcher =
+        new LookmlWatcher(dir, schema, debounceMillis, listener,
+            dir.getFileSystem().newWatchService());
+    watcher.registerAll(dir);
+    return watcher;
+  }
+
+  /** Stops watching. */
+  @Override public void close() throws IOException {
+    watchService.close();
+  }
+
+  /** Returns the files that have been validated and still exist. */
+  public SortedSet<Path> files() {
+    return ImmutableSortedSet.copyOf(states.keySet());
+  }
+
+  /** Sends the errors most recently found in a file to a handler, and
+   * returns the syntax error, if any, that stopped the parser. Returns
+   * null, and sends nothing, if the file has not been validated. */
+  public @Nullable String replay(Path file, ErrorHandler errorHandler) {
+    final FileState state = states.get(resolve(file));
+    if (state == null) {
+      return null;
+    }
+    state.errors.forEach(error -> error.accept(errorHandler));
+    return state.syntaxError;
+  }
+
+  /** Validates every LookML file in the directory tree, and forgets files
+   * that no longer exist. Files whose contents have not changed since they
+   * were last validated are not re-validated. Returns the number of files
+   * validated. */
+  public int validateAll() throws IOException {
+    final Set<Path> files = new LinkedHashSet<>(states.keySet());
+    try (Stream<Path> paths = Files.walk(directory)) {
+      files.addAll(
+          paths.filter(LookmlWatcher::isLookml).collect(Collectors.toList()));
+    }
+    int count = 0;
+    for (Path file : files) {
+      if (validate(file)) {
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  /** Validates a file if its contents have changed since it was last
+   * validated, and returns whether it was validated. If the file no longer
+   * exists, forgets it, and tells the listener. */
+  public boolean validate(Path file) {
+    final Path f = resolve(file);
+    final Source source = source(f);
+    final String fingerprint = fingerprint(f, source);
+    if (fingerprint == null) {
+      // The file was deleted, or cannot be read
+      if (states.remove(f) != null) {
+        listener.fileRemoved(f);
+      }
+      return false;
+    }
+    final FileState previous = states.get(f);
+    if (previous != null && previous.fingerprint.equals(fingerprint)) {
+      return false;
+    }
+
+    final ErrorRecorder recorder = new ErrorRecorder();
+    String syntaxError = null;
+    try {
+      LookmlParsers.parse(
+          LaxHandlers.validator(LaxHandlers.nullObjectHandler(), schema,
+              recorder),
+          config.withSource(source));
+    } catch (RuntimeException | TokenMgrError e) {
+      final Throwable cause = e.getCause() != null ? e.getCause() : e;
+      syntaxError = String.valueOf(cause.getMessage());
+    }
+    final FileState state =
+        new FileState(fingerprint, recorder.errors.build(), syntaxError);
+    states.put(f, state);
+
+    final ErrorHandler errorHandler = listener.fileStarted(f);
+    state.errors.forEach(error -> error.accept(errorHandler));
+    listener.fileFinished(f, syntaxError);
+    return true;
+  }
+
+  /** Waits up to {@code timeout} for a file to change, then waits until
+   * there have been no changes for the debounce interval, and validates the
+   * files that changed. Returns the number of files validated; 0 if there
+   * were no changes. */
+  public int poll(long timeout, TimeUnit unit)
+      throws IOException, InterruptedException {
+    WatchKey key = watchService.poll(timeout, unit);
+    if (key == null) {
+      return 0;
+    }
+    final Set<Path> changed = new LinkedHashSet<>();
+    boolean overflow = false;
+    while (key != null) {
+      overflow |= drain(key, changed);
+      key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+    }
+    if (overflow) {
+      // Some events were lost; check every file
+      return validateAll();
+    }
+    int count = 0;
+    for (Path file : changed) {
+      if (validate(file)) {
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  /** Validates changed files until the watcher is closed or the thread is
+   * interrupted. */
+  public void run() {
+    try {
+      for (;;) {
+        poll(1, TimeUnit.MINUTES);
+      }
+    } catch (ClosedWatchServiceException e) {
+      // The watcher was closed
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Adds the files affected by the events of a key to {@code changed},
+   * and returns whether events were lost. */
+  private boolean drain(WatchKey key, Set<Path> changed) throws IOException {
+    final Path dir = (Path) key.watchable();
+    boolean overflow = false;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+        overflow = true;
+        continue;
+      }
+      final Path path = dir.resolve((Path) event.context());
+      if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+          && Files.isDirectory(path)) {
+        // A new directory may already contain files
+        registerAll(path);
+        try (Stream<Path> paths = Files.walk(path)) {
+          paths.filter(LookmlWatcher::isLookml).forEach(changed::add);
+        }
+      } else if (isLookml(path)) {
+        changed.add(path);
+      }
+    }
+    if (!key.reset()) {
+      // The directory was deleted; so were the files in it
+      for (Path file : states.keySet()) {
+        if (file.startsWith(dir)) {
+          changed.add(file);
+        }
+      }
+    }
+    return overflow;
+  }
+
+  private void registerAll(Path dir) throws IOException {
+    try (Stream<Path> paths = Files.walk(dir)) {
+      for (Path d : paths.filter(Files::isDirectory)
+          .collect(Collectors.toList())) {
+        d.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_DELETE,
+            StandardWatchEventKinds.ENTRY_MODIFY);
+      }
+    }
+  }
+
+  private static Source source(Path file) {
+    try {
+      return Sources.fromUrl(file.toUri().toURL());
+    } catch (MalformedURLException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+
+  /** Returns the fingerprint of a file's contents, or null if it is not a
+   * regular file or cannot be read. */
+  private static @Nullable String fingerprint(Path file, Source source) {
+    if (!Files.isRegularFile(file)) {
+      return null;
+    }
+    try {
+      return LookmlSchemas.fingerprint(source);
+    } catch (RuntimeException e) {
+      return null;
+    }
+  }
+
+  private Path resolve(Path file) {
+    return directory.resolve(file).normalize();
+  }
+
+  private static boolean isLookml(Path path) {
+    return path.getFileName() != null
+        && path.getFileName().toString().endsWith(".lkml")
+        && !Files.isDirectory(path);
+  }
+
+  /** Receives the results of validating files.
+   *
+   * <p>Methods are called in the thread that calls {@link #validate},
+   * {@link #validateAll()}, {@link #poll} or {@link #run()}. */
+  public interface Listener {
+    /** Called when a file has been validated, before its errors are
+     * reported. Returns a handler to receive the errors; they replace any
+     * errors previously reported for the file. */
+    ErrorHandler fileStarted(Path file);
+
+    /** Called after the errors of a file have been reported.
+     *
+     * @param file File
+     * @param syntaxError Message of the syntax error that stopped the
+     *   parser, or null if the file is well-formed */
+    void fileFinished(Path file, @Nullable String syntaxError);
+
+    /** Called when a file that was previously validated has been deleted;
+     * its errors no longer apply. */
+    void fileRemoved(Path file);
+  }
+
+  /** Result of validating a file. */
+  private static class FileState {
+    final String fingerprint;
+    final List<Consumer<ErrorHandler>> errors;
+    final @Nullable String syntaxError;
+
+    FileState(String fingerprint, List<Consumer<ErrorHandler>> errors,
+        @Nullable String syntaxError) {
+      this.fingerprint = fingerprint;
+      this.errors = errors;
+      this.syntaxError = syntaxError;
+    }
+  }
+
+  /** Error handler that records each error as a call that can be
+   * replayed to another error handler. */
+  private static class ErrorRecorder implements ErrorHandler {
+    final ImmutableList.Builder<Consumer<ErrorHandler>> errors =
+        ImmutableList.builder();
+
+    @Override public void invalidRootProperty(String propertyName) {
+      errors.add(h -> h.invalidRootProperty(propertyName));
+    }
+
+    @Override public void invalidPropertyOfParent(String propertyName,
+        String parent) {
+      errors.add(h -> h.invalidPropertyOfParent(propertyName, parent));
+    }
+
+    @Override public void nameRequired(String propertyName) {
+      errors.add(h -> h.nameRequired(propertyName));
+    }
+
+    @Override public void invalidPropertyType(String propertyName,
+        LookmlSchema.Type type, LookmlSchema.Type actualType) {
+      errors.add(h -> h.invalidPropertyType(propertyName, type, actualType));
+    }
+
+    @Override public void invalidEnumValue(String parentTypeName,
+        String propertyName, String typeName, String value) {
+      errors.add(h ->
+          h.invalidEnumValue(parentTypeName, propertyName, typeName, value));
+    }
+
+    @Override public void invalidListElement(String propertyName,
+        LookmlSchema.Type actualElementType, LookmlSchema.Type listType) {
+      errors.add(h ->
+          h.invalidListElement(propertyName, actualElementType, listType));
+    }
+
+    @Override public void duplicateProperty(String propertyName) {
+      errors.add(h -> h.duplicateProperty(propertyName));
+    }
+
+    @Override public void duplicateNamedProperty(String propertyName,
+        String name) {
+      errors.add(h -> h.duplicateNamedProperty(propertyName, name));
+    }
+  }
+}
+
+// End LookmlWatcher.java
@@ -0,0 +1,208 @@
+/*
+ * Licensed to the LookML Authors under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.
+ * The LookML Authors license this file to you under the Apache
+ * License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License.  You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package net.hydromatic.lookml;
+
+import net.hydromatic.lookml.parse.LookmlParsers;
+import net.hydromatic.lookml.parse.TokenMgrError;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.File;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/** Command-line interface.
+ *
+ * <p>Usage:
+ *
+ * <blockquote><pre>
+ * lookml validate [--schema schema] file...
+ * lookml format [--schema schema] file...
+ * </pre></blockquote>
+ *
+ * <p>{@code validate} checks that each file is well-formed and, if a schema
+ * is given, valid against the schema. It prints each error, preceded by
+ * the file name, and exits with status 1 if there were any errors.
+ *
+ * <p>{@code format} prints each file in canonical form.
+ *
+ * <p>A schema is either the name of a bundled schema, or the path of a
+ * file in Schema-LookML format (see {@link SchemaLookml}). The bundled
+ * schemas are "schema", which is Schema-LookML itself, and those named in
+ * the comma-separated {@code lookml.bundle} system property, each of which
+ * is read from the class-path resource
+ * "/lookml/<i>name</i>-schema.lkml". In a native executable, the bundled
+ * schemas are loaded when the image is built, so a command that uses one
+ * does not need to parse it. Without a schema, files must not contain code
+ * blocks, because only a schema says which properties are code.
+ */
+public class Main {
+  private Main() {}
+
+  /** Command-line entry point. */
+  public static void main(String[] args) {
+    final PrintWriter out =
+        new PrintWriter(new OutputStreamWriter(System.out, UTF_8));
+    final PrintWriter err =
+        new PrintWriter(new OutputStreamWriter(System.err, UTF_8));
+    final int status = run(args, out, err);
+    out.flush();
+    err.flush();
+    if (status != 0) {
+      System.exit(status);
+    }
+  }
+
+  /** Runs a command, and returns the exit status: 0 if successful, 1 if
+   * there were errors in the files, 2 if the command was invalid. */
+  public static int run(String[] args, PrintWriter out, PrintWriter err) {
+    final Deque<String> argList = new ArrayDeque<>(Arrays.asList(args));
+    if (argList.isEmpty()) {
+      return usage(err);
+    }
+    final String command = argList.pop();
+    @Nullable LookmlSchema schema = null;
+    if ("--schema".equals(argList.peek())) {
+      argList.pop();
+      if (argList.isEmpty()) {
+        return usage(err);
+      }
+      final String schemaName = argList.pop();
+      try {
+        schema = schema(schemaName);
+      } catch (RuntimeException | TokenMgrError e) {
+        err.println(schemaName + ": " + e.getMessage());
+        return 2;
+      }
+    }
+    if (argList.isEmpty()) {
+      return usage(err);
+    }
+    switch (command) {
+    case "validate":
+    case "format":
+      int errorCount = 0;
+      for (String fileName : argList) {
+        errorCount += process(command, fileName, schema, out);
+      }
+      return errorCount == 0 ? 0 : 1;
+    default:
+      return usage(err);
+    }
+  }
+
+  private static int usage(PrintWriter err) {
+    err.println("Usage: lookml validate [--schema schema] file...");
+    err.println("       lookml format [--schema schema] file...");
+    return 2;
+  }
+
+  /** Returns a bundled schema, or loads a schema from a file. */
+  private static LookmlSchema schema(String name) {
+    final LookmlSchema schema = Bundled.SCHEMAS.get(name);
+    if (schema != null) {
+      return schema;
+    }
+    return LookmlSchemas.load(source(name), SchemaLookml.schema());
+  }
+
+  private static Source source(String fileName) {
+    try {
+      return Sources.fromUrl(new File(fileName).toURI().toURL());
+    } catch (MalformedURLException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+
+  /** Validates or formats a file, and returns the number of errors. */
+  private static int process(String command, String fileName,
+      @Nullable LookmlSchema schema, PrintWriter out) {
+    LookmlParsers.Config config =
+        LookmlParsers.config().withSource(source(fileName));
+    if (schema != null) {
+      config = config.withCodePropertyNames(schema.codePropertyNames());
+    }
+    final int[] errorCount = {0};
+    final StringBuilder buf = new StringBuilder();
+    ObjectHandler handler =
+        command.equals("format")
+            ? LaxHandlers.writer(buf, 2, true)
+            : LaxHandlers.nullObjectHandler();
+    if (schema != null) {
+      handler =
+          LaxHandlers.validator(handler, schema,
+              LaxHandlers.errorLogger(message -> {
+                out.println(fileName + ": " + message);
+                ++errorCount[0];
+              }));
+    }
+    try {
+      LookmlParsers.parse(handler, config);
+    } catch (RuntimeException | TokenMgrError e) {
+      final Throwable cause = e.getCause() != null ? e.getCause() : e;
+      out.println(fileName + ": " + cause.getMessage());
+      return errorCount[0] + 1;
+    }
+    if (command.equals("format") && errorCount[0] == 0) {
+      out.println(buf);
+    }
+    return errorCount[0];
+  }
+
+  /** Schemas that are available by name.
+   *
+   * <p>The native-image build initializes this class when it builds the
+   * image, so the schemas are in the image heap. */
+  private static class Bundled {
+    static final Map<String, LookmlSchema> SCHEMAS = load();
+
+    private static Map<String, LookmlSchema> load() {
+      final ImmutableMap.Builder<String, LookmlSchema> b =
+          ImmutableMap.builder();
+      b.put("schema", SchemaLookml.schema());
+      for (String s : System.getProperty("lookml.bundle", "").split(",")) {
+        final String name = s.trim();
+        if (name.isEmpty()) {
+          continue;
+        }
+        final String resource = "/lookml/" + name + "-schema.lkml";
+        final URL url = Main.class.getResource(resource);
+        if (url == null) {
+          throw new IllegalStateException("bundled schema not found: "
+              + resource);
+        }
+        b.put(name,
+            LookmlSchemas.load(Sources.fromUrl(url), SchemaLookml.schema()));
+      }
+      return b.build();
+    }
+  }
+}
+
+// End Main.java
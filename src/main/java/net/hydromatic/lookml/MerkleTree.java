@@ -0,0 +1,286 @@
+/*
+ * Licensed to the LookML Authors under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.
+ * The LookML Authors license this file to you under the Apache
+ * License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License.  You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package net.hydromatic.lookml;
+
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import static java.util.Objects.requireNonNull;
+
+/** Merkle tree of the named objects in a LookML document or project.
+ *
+ * <p>Each {@link Node} is a named object, such as {@code view: orders} or
+ * {@code dimension: id}. Its {@link Node#contentHash content hash} covers
+ * its own properties, including unnamed objects such as
+ * {@code conditionally_filter: {...}}, but not the named objects it
+ * contains; its {@link Node#hash hash} covers its content and the hashes
+ * of those named objects. Hashes are stable: they ignore comments,
+ * positions, the order of properties and of named objects, and white space
+ * in code blocks; the order of elements in a list is significant.
+ *
+ * <p>Create a tree for a document using the handler returned by
+ * {@link #builder(Consumer)}, and combine the trees of a project's
+ * documents using {@link #project(Map)}. Then call
+ * {@link #diff(MerkleTree, DiffHandler)} to compare two versions. Because
+ * the diff does not descend into subtrees whose hashes are equal, its cost
+ * is proportional to the size of the change, not of the project. */
+public class MerkleTree {
+  /** Root of the tree; a node with empty type and name. */
+  public final Node root;
+
+  private MerkleTree(Node root) {
+    this.root = requireNonNull(root, "root");
+  }
+
+  /** Returns a handler that builds a tree of the named objects in a
+   * document, and passes it to {@code consumer} when the document is
+   * closed. */
+  public static ObjectHandler builder(Consumer<MerkleTree> consumer) {
+    requireNonNull(consumer, "consumer");
+    final NodeBuilder root = new NodeBuilder("", "", Pos.ZERO);
+    return new HashingHandler(root, root.content,
+        () -> consumer.accept(new MerkleTree(root.build())));
+  }
+
+  /** Combines the trees of several documents into the tree of a project.
+   *
+   * <p>The root of each document becomes a node of type "document" whose
+   * name is the document's key (such as its file name), so an object that
+   * moves from one document to another is reported as removed and
+   * added. */
+  public static MerkleTree project(Map<String, MerkleTree> documents) {
+    final NodeBuilder root = new NodeBuilder("", "", Pos.ZERO);
+    documents.forEach((key, tree) ->
+        root.add(
+            new Node("document", key, tree.root.pos,
+                tree.root.contentHash, tree.root.children)));
+    return new MerkleTree(root.build());
+  }
+
+  /** Compares this tree (the old version) with another (the new version),
+   * and reports the differences to a handler.
+   *
+   * <p>If a named object is added or removed, it is reported but its
+   * descendants are not. If both versions contain a named object but its
+   * content hash differs, it is reported as changed; the diff then
+   * descends into its named objects whose hashes differ. */
+  public void diff(MerkleTree other, DiffHandler handler) {
+    diff(root, other.root, handler);
+  }
+
+  private static void diff(Node before, Node after, DiffHandler handler) {
+    if (before.hash.equals(after.hash)) {
+      return;
+    }
+    if (!before.contentHash.equals(after.contentHash)) {
+      handler.changed(before, after);
+    }
+    final Iterator<Node> i = before.children.values().iterator();
+    final Iterator<Node> j = after.children.values().iterator();
+    @Nullable Node b = i.hasNext() ? i.next() : null;
+    @Nullable Node a = j.hasNext() ? j.next() : null;
+    while (b != null || a != null) {
+      final int c =
+          b == null ? 1
+              : a == null ? -1
+              : b.key.compareTo(a.key);
+      if (c < 0) {
+        handler.removed(requireNonNull(b));
+        b = i.hasNext() ? i.next() : null;
+      } else if (c > 0) {
+        handler.added(requireNonNull(a));
+        a = j.hasNext() ? j.next() : null;
+      } else {
+        diff(requireNonNull(b), requireNonNull(a), handler);
+        b = i.hasNext() ? i.next() : null;
+        a = j.hasNext() ? j.next() : null;
+      }
+    }
+  }
+
+  /** Named object in a {@link MerkleTree}. */
+  public static class Node {
+    /** Type of the object, such as "view"; empty for the root. */
+    public final String type;
+    public final String name;
+    /** Position of the object; for a document, the position of the root
+     * of the document's tree. */
+    public final Pos pos;
+    /** Hash of the object's properties, excluding the named objects it
+     * contains. */
+    public final HashCode contentHash;
+    /** Hash of the object's content and of the named objects it
+     * contains. */
+    public final HashCode hash;
+    /** Named objects that this object contains, keyed and sorted by type
+     * and name. */
+    public final SortedMap<String, Node> children;
+    /** Key within the parent's {@link #children}. */
+    final String key;
+
+    Node(String type, String name, Pos pos, HashCode contentHash,
+        Map<String, Node> children) {
+      this(type, name, pos, contentHash, children, type + " " + name);
+    }
+
+    private Node(String type, String name, Pos pos, HashCode contentHash,
+        Map<String, Node> children, String key) {
+      this.type = requireNonNull(type, "type");
+      this.name = requireNonNull(name, "name");
+      this.pos = requireNonNull(pos, "pos");
+      this.contentHash = requireNonNull(contentHash, "contentHash");
+      this.children = ImmutableSortedMap.copyOf(children);
+      this.key = key;
+      final Hasher hasher = Hashing.murmur3_128().newHasher();
+      ContentHash.put(ContentHash.put(hasher, type), name)
+          .putBytes(contentHash.asBytes());
+      this.children.forEach((k, child) ->
+          ContentHash.put(hasher, k).putBytes(child.hash.asBytes()));
+      this.hash = hasher.hash();
+    }
+
+    /** Returns a copy of this node with a different key. */
+    Node withKey(String key) {
+      return new Node(type, name, pos, contentHash, children, key);
+    }
+
+    @Override public String toString() {
+      return key;
+    }
+  }
+
+  /** Receives the differences between two trees.
+   *
+   * @see #diff(MerkleTree, DiffHandler) */
+  public interface DiffHandler {
+    /** Called for a named object that is only in the new tree. */
+    void added(Node after);
+
+    /** Called for a named object that is only in the old tree. */
+    void removed(Node before);
+
+    /** Called for a named object that is in both trees but whose content
+     * differs. */
+    void changed(Node before, Node after);
+  }
+
+  /** Named object whose properties are being hashed. */
+  private static class NodeBuilder {
+    final String type;
+    final String name;
+    final Pos pos;
+    final ContentHash content = new ContentHash();
+    final SortedMap<String, Node> children = new TreeMap<>();
+
+    NodeBuilder(String type, String name, Pos pos) {
+      this.type = type;
+      this.name = name;
+      this.pos = pos;
+    }
+
+    /** Adds a child; if there is already a child with the same type and
+     * name, which is invalid but possible, gives it a distinct key. */
+    void add(Node child) {
+      String key = child.key;
+      for (int i = 2; children.containsKey(key); i++) {
+        key = child.key + " #" + i;
+      }
+      children.put(key, key.equals(child.key) ? child : child.withKey(key));
+    }
+
+    Node build() {
+      return new Node(type, name, pos, content.hash(), children);
+    }
+  }
+
+  /** Handler that hashes the properties of an object.
+   *
+   * <p>The properties of an unnamed object are hashed into a single
+   * property of the innermost enclosing named object. */
+  private static class HashingHandler implements ObjectHandler {
+    /** Innermost enclosing named object. */
+    private final NodeBuilder node;
+    /** Receives the properties. */
+    private final ContentHash content;
+    private final Runnable onClose;
+
+    HashingHandler(NodeBuilder node, ContentHash content,
+        Runnable onClose) {
+      this.node = node;
+      this.content = content;
+      this.onClose = onClose;
+    }
+
+    @Override public ObjectHandler number(Pos pos, String propertyName,
+        Number value) {
+      content.number(propertyName, value);
+      return this;
+    }
+
+    @Override public ObjectHandler string(Pos pos, String propertyName,
+        String value) {
+      content.string(propertyName, value);
+      return this;
+    }
+
+    @Override public ObjectHandler identifier(Pos pos, String propertyName,
+        String value) {
+      content.identifier(propertyName, value);
+      return this;
+    }
+
+    @Override public ObjectHandler code(Pos pos, String propertyName,
+        String value) {
+      content.code(propertyName, value);
+      return this;
+    }
+
+    @Override public ListHandler listOpen(Pos pos, String propertyName) {
+      return content.list(propertyName);
+    }
+
+    @Override public ObjectHandler objOpen(Pos pos, String propertyName) {
+      final ContentHash objContent = content.object(propertyName);
+      return new HashingHandler(node, objContent, objContent::close);
+    }
+
+    @Override public ObjectHandler objOpen(Pos pos, String propertyName,
+        String name) {
+      final NodeBuilder child = new NodeBuilder(propertyName, name, pos);
+      return new HashingHandler(child, child.content,
+          () -> node.add(child.build()));
+    }
+
+    @Override public void close(Pos pos) {
+      onClose.run();
+    }
+  }
+}
+
+// End MerkleTree.java
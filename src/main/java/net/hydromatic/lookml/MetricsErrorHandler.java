@@ -0,0 +1,82 @@
+/*
+ * Licensed to the LookML Authors under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.
+ * The LookML Authors license this file to you under the Apache
+ * License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License.  You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package net.hydromatic.lookml;
+
+import static java.util.Objects.requireNonNull;
+
+/** Error handler that counts calls to each of its methods, as metrics named
+ * "{@code errors.}<i>method</i>", then forwards them to a consumer.
+ *
+ * @see LaxHandlers#metrics(ErrorHandler, LookmlMetrics) */
+class MetricsErrorHandler implements ErrorHandler {
+  private final LookmlMetrics metrics;
+  private final ErrorHandler consumer;
+
+  MetricsErrorHandler(LookmlMetrics metrics, ErrorHandler consumer) {
+    this.metrics = requireNonNull(metrics);
+    this.consumer = requireNonNull(consumer);
+  }
+
+  @Override public void invalidRootProperty(String propertyName) {
+    metrics.increment("errors.invalidRootProperty");
+    consumer.invalidRootProperty(propertyName);
+  }
+
+  @Override public void invalidPropertyOfParent(String propertyName,
+      String parent) {
+    metrics.increment("errors.invalidPropertyOfParent");
+    consumer.invalidPropertyOfParent(propertyName, parent);
+  }
+
+  @Override public void nameRequired(String propertyName) {
+    metrics.increment("errors.nameRequired");
+    consumer.nameRequired(propertyName);
+  }
+
+  @Override public void invalidPropertyType(String propertyName,
+      LookmlSchema.Type type, LookmlSchema.Type actualType) {
+    metrics.increment("errors.invalidPropertyType");
+    consumer.invalidPropertyType(propertyName, type, actualType);
+  }
+
+  @Override public void invalidEnumValue(String parentTypeName,
+      String propertyName, String typeName, String value) {
+    metrics.increment("errors.invalidEnumValue");
+    consumer.invalidEnumValue(parentTypeName, propertyName, typeName, value);
+  }
+
+  @Override public void invalidListElement(String propertyName,
+      LookmlSchema.Type actualElementType, LookmlSchema.Type listType) {
+    metrics.increment("errors.invalidListElement");
+    consumer.invalidListElement(propertyName, actualElementType, listType);
+  }
+
+  @Override public void duplicateProperty(String propertyName) {
+    metrics.increment("errors.duplicateProperty");
+    consumer.duplicateProperty(propertyName);
+  }
+
+  @Override public void duplicateNamedProperty(String propertyName,
+      String name) {
+    metrics.increment("errors.duplicateNamedProperty");
+    consumer.duplicateNamedProperty(propertyName, name);
+  }
+}
+
+// End MetricsErrorHandler.java
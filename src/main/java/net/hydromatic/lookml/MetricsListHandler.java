@@ -0,0 +1,121 @@
+/*
+ * Licensed to the LookML Authors under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.
+ * The LookML Authors license this file to you under the Apache
+ * License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License.  You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package net.hydromatic.lookml;
+
+import static net.hydromatic.lookml.LookmlMetrics.enter;
+import static net.hydromatic.lookml.LookmlMetrics.exit;
+
+/** Implementation of {@link ListHandler} that records metrics about the
+ * events it receives, and the time its consumer spends handling them, then
+ * forwards them to the consumer.
+ *
+ * <p>Created by {@link MetricsObjectHandler} and
+ * {@link MetricsPropertyHandler}. */
+class MetricsListHandler implements ListHandler {
+  private final LookmlMetrics.Stage stage;
+  private final int depth;
+  private final ListHandler consumer;
+
+  MetricsListHandler(LookmlMetrics.Stage stage, int depth,
+      ListHandler consumer) {
+    this.stage = stage;
+    this.depth = depth;
+    this.consumer = consumer;
+  }
+
+  @Override public ListHandler string(Pos pos, String value) {
+    stage.event(LookmlEvent.Kind.STRING);
+    final long start = enter();
+    try {
+      consumer.string(pos, value);
+    } finally {
+      exit(stage.nanos, start);
+    }
+    return this;
+  }
+
+  @Override public ListHandler number(Pos pos, Number value) {
+    stage.event(LookmlEvent.Kind.NUMBER);
+    final long start = enter();
+    try {
+      consumer.number(pos, value);
+    } finally {
+      exit(stage.nanos, start);
+    }
+    return this;
+  }
+
+  @Override public ListHandler identifier(Pos pos, String value) {
+    stage.event(LookmlEvent.Kind.IDENTIFIER);
+    final long start = enter();
+    try {
+      consumer.identifier(pos, value);
+    } finally {
+      exit(stage.nanos, start);
+    }
+    return this;
+  }
+
+  @Override public ListHandler pair(Pos pos, String ref, String identifier) {
+    stage.event(LookmlEvent.Kind.PAIR);
+    final long start = enter();
+    try {
+      consumer.pair(pos, ref, identifier);
+    } finally {
+      exit(stage.nanos, start);
+    }
+    return this;
+  }
+
+  @Override public ListHandler comment(Pos pos, String comment) {
+    stage.event(LookmlEvent.Kind.COMMENT);
+    final long start = enter();
+    try {
+      consumer.comment(pos, comment);
+    } finally {
+      exit(stage.nanos, start);
+    }
+    return this;
+  }
+
+  @Override public ListHandler listOpen(Pos pos) {
+    stage.event(LookmlEvent.Kind.LIST_OPEN);
+    stage.maxDepth.accumulate(depth + 1);
+    final ListHandler listHandler;
+    final long start = enter();
+    try {
+      listHandler = consumer.listOpen(pos);
+    } finally {
+      exit(stage.nanos, start);
+    }
+    return new MetricsListHandler(stage, depth + 1, listHandler);
+  }
+
+  @Override public void close(Pos pos) {
+    stage.event(LookmlEvent.Kind.LIST_CLOSE);
+    final long start = enter();
+    try {
+      consumer.close(pos);
+    } finally {
+      exit(stage.nanos, start);
+    }
+  }
+}
+
+// End MetricsListHandler.java
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the LookML Authors under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.
+ * The LookML Authors license this file to you under the Apache
+ * License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License.  You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package net.hydromatic.lookml;
+
+import static net.hydromatic.lookml.LookmlMetrics.enter;
+import static net.hydromatic.lookml.LookmlMetrics.exit;
+
+/** Implementation of {@link ObjectHandler} that records metrics about the
+ * events it receives, and the time its consumer spends handling them, then
+ * forwards them to the consumer.
+ *
+ * @see LaxHandlers#metrics(ObjectHandler, String, LookmlMetrics) */
+class MetricsObjectHandler implements ObjectHandler {
+  private final LookmlMetrics.Stage stage;
+  private final int depth;
+  private final ObjectHandler consumer;
+
+  MetricsObjectHandler(LookmlMetrics.Stage stage, int depth,
+      ObjectHandler consumer) {
+    this.stage = stage;
+    this.depth = depth;
+    this.consumer = consumer;
+  }
+
+  @Override public ObjectHandler comment(Pos pos, String comment) {
+    stage.event(LookmlEvent.Kind.COMMENT);
+    final long start = enter();
+    try {
+      consumer.comment(pos, comment);
+    } finally {
+      exit(stage.nanos, start);
+    }
+    return this;
+  }
+
+  @Override public ObjectHandler number(Pos pos, String propertyName,
+      Number value) {
+    stage.event(LookmlEvent.Kind.NUMBER, propertyName);
+    final long start = enter();
+    try {
+      consumer.number(pos, propertyName, value);
+    } finally {
+      exit(stage.nanos, start);
+    }
+    return this;
+  }
+
+  @Override public ObjectHandler string(Pos pos, String propertyName,
+      String value) {
+    stage.event(LookmlEvent.Kind.STRING, propertyName);
+    final long start = enter();
+    try {
+      consumer.string(pos, propertyName, value);
+    } finally {
+      exit(stage.nanos, start);
+    }
+    return this;
+  }
+
+  @Override public ObjectHandler identifier(Pos pos, String propertyName,
+      String value) {
+    stage.event(LookmlEvent.Kind.IDENTIFIER, propertyName);
+    final long start = enter();
+    try {
+      consumer.identifier(pos, propertyName, value);
+    } finally {
+      exit(stage.nanos, start);
+    }
+    return this;
+  }
+
+  @Override public ObjectHandler code(Pos pos, String propertyName,
+      String value) {
+    stage.event(LookmlEvent.Kind.CODE, propertyName);
+    final long start = enter();
+    try {
+      consumer.code(pos, propertyName, value);
+    } finally {
+      exit(stage.nanos, start);
+    }
+    return this;
+  }
+
+  @Override public ListHandler listOpen(Pos pos, String propertyName) {
+    stage.event(LookmlEvent.Kind.LIST_OPEN, propertyName);
+    stage.maxDepth.accumulate(depth + 1);
+    final ListHandler listHandler;
+    final long start = enter();
+    try {
+      listHandler = consumer.listOpen(pos, propertyName);
+    } finally {
+      exit(stage.nanos, start);
+    }
+    return new MetricsListHandler(stage, depth + 1, listHandler);
+  }
+
+  @Override public ObjectHandler objOpen(Pos pos, String propertyName) {
+    stage.event(LookmlEvent.Kind.OBJ_OPEN, propertyName);
+    stage.maxDepth.accumulate(depth + 1);
+    final ObjectHandler objectHandler;
+    final long start = enter();
+    try {
+      objectHandler = consumer.objOpen(pos, propertyName);
+    } finally {
+      exit(stage.nanos, start);
+    }
+    return new MetricsObjectHandler(stage, depth + 1, objectHandler);
+  }
+
+  @Override public ObjectHandler objOpen(Pos pos, String propertyName,
+      String name) {
+    stage.event(LookmlEvent.Kind.OBJ_OPEN, propertyName);
+    stage.maxDepth.accumulate(depth + 1);
+    final ObjectHandler objectHandler;
+    final long start = enter();
+    try {
+      objectHandler = consumer.objOpen(pos, propertyName, name);
+    } finally {
+      exit(stage.nanos, start);
+    }
+    return new MetricsObjectHandler(stage, depth + 1, objectHandler);
+  }
+
+  @Override public void close(Pos pos) {
+    stage.event(LookmlEvent.Kind.OBJ_CLOSE);
+    final long start = enter();
+    try {
+      consumer.close(pos);
+    } finally {
+      exit(stage.nanos, start);
+    }
+  }
+}
+
+// End MetricsObjectHandler.java
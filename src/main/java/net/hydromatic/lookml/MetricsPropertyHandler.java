@@ -0,0 +1,120 @@
+/*
+ * Licensed to the LookML Authors under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.
+ * The LookML Authors license this file to you under the Apache
+ * License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License.  You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package net.hydromatic.lookml;
+
+import static net.hydromatic.lookml.LookmlMetrics.enter;
+import static net.hydromatic.lookml.LookmlMetrics.exit;
+
+/** Implementation of {@link PropertyHandler} that records metrics about the
+ * events it receives, and the time its consumer spends handling them, then
+ * forwards them to the consumer.
+ *
+ * @see LaxHandlers#metrics(PropertyHandler, String, LookmlMetrics) */
+class MetricsPropertyHandler implements PropertyHandler {
+  private final LookmlMetrics.Stage stage;
+  private final int depth;
+  private final PropertyHandler consumer;
+
+  MetricsPropertyHandler(LookmlMetrics.Stage stage, int depth,
+      PropertyHandler consumer) {
+    this.stage = stage;
+    this.depth = depth;
+    this.consumer = consumer;
+  }
+
+  /** Returns the kind of event that carries a value of a given type. */
+  private static LookmlEvent.Kind kind(LookmlSchema.Type type) {
+    switch (type) {
+    case NUMBER:
+      return LookmlEvent.Kind.NUMBER;
+    case STRING:
+      return LookmlEvent.Kind.STRING;
+    case CODE:
+      return LookmlEvent.Kind.CODE;
+    default:
+      return LookmlEvent.Kind.IDENTIFIER;
+    }
+  }
+
+  @Override public PropertyHandler property(Pos pos,
+      LookmlSchema.Property property, Object value) {
+    stage.event(kind(property.type()), property.name());
+    final long start = enter();
+    try {
+      consumer.property(pos, property, value);
+    } finally {
+      exit(stage.nanos, start);
+    }
+    return this;
+  }
+
+  @Override public ListHandler listOpen(Pos pos,
+      LookmlSchema.Property property) {
+    stage.event(LookmlEvent.Kind.LIST_OPEN, property.name());
+    stage.maxDepth.accumulate(depth + 1);
+    final ListHandler listHandler;
+    final long start = enter();
+    try {
+      listHandler = consumer.listOpen(pos, property);
+    } finally {
+      exit(stage.nanos, start);
+    }
+    return new MetricsListHandler(stage, depth + 1, listHandler);
+  }
+
+  @Override public PropertyHandler objOpen(Pos pos,
+      LookmlSchema.Property property) {
+    stage.event(LookmlEvent.Kind.OBJ_OPEN, property.name());
+    stage.maxDepth.accumulate(depth + 1);
+    final PropertyHandler propertyHandler;
+    final long start = enter();
+    try {
+      propertyHandler = consumer.objOpen(pos, property);
+    } finally {
+      exit(stage.nanos, start);
+    }
+    return new MetricsPropertyHandler(stage, depth + 1, propertyHandler);
+  }
+
+  @Override public PropertyHandler objOpen(Pos pos,
+      LookmlSchema.Property property, String name) {
+    stage.event(LookmlEvent.Kind.OBJ_OPEN, property.name());
+    stage.maxDepth.accumulate(depth + 1);
+    final PropertyHandler propertyHandler;
+    final long start = enter();
+    try {
+      propertyHandler = consumer.objOpen(pos, property, name);
+    } finally {
+      exit(stage.nanos, start);
+    }
+    return new MetricsPropertyHandler(stage, depth + 1, propertyHandler);
+  }
+
+  @Override public void close(Pos pos) {
+    stage.event(LookmlEvent.Kind.OBJ_CLOSE);
+    final long start = enter();
+    try {
+      consumer.close(pos);
+    } finally {
+      exit(stage.nanos, start);
+    }
+  }
+}
+
+// End MetricsPropertyHandler.java
@@ -0,0 +1,517 @@
+/*
+ * Licensed to the LookML Authors under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.
+ * The LookML Authors license this file to you under the Apache
+ * License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License.  You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package net.hydromatic.lookml;
+
+import com.google.common.collect.ImmutableList;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import static java.util.Objects.requireNonNull;
+
+/** Pipeline that decouples a producer of parse events from their consumer.
+ *
+ * <p>The producer (typically the parser) calls methods on an
+ * {@link ObjectHandler}. Each call is encoded into a slot of a bounded ring
+ * buffer, and a consumer task, running on a different thread, decodes the
+ * slots and replays the calls, in the same order, to a downstream
+ * {@code ObjectHandler}. The downstream handler may be a validator, a builder
+ * or a writer; while it works on one event, the parser can be lexing the
+ * next.
+ *
+ * <p>The ring buffer has exactly one producer thread and one consumer
+ * thread, so it needs no locks. Each side publishes its progress via an
+ * {@link AtomicLong} and, when the buffer is full (or empty), spins and then
+ * parks until the other side catches up. Slots are allocated once and
+ * reused; the producer-side handlers are allocated once per nesting depth
+ * and reused; so the steady state allocates nothing.
+ *
+ * <p>Events must be properly nested, as they are when generated by the
+ * parser: after a handler has opened a sub-object or sub-list, it must not
+ * receive further events until that sub-object or sub-list is closed.
+ *
+ * @see LaxHandlers#pipeline */
+class PipelineHandler {
+  /** Operation codes. Each slot in the ring buffer holds one operation. */
+  private static final byte COMMENT = 0;
+  private static final byte NUMBER = 1;
+  private static final byte STRING = 2;
+  private static final byte IDENTIFIER = 3;
+  private static final byte CODE = 4;
+  private static final byte LIST_OPEN = 5;
+  private static final byte OBJ_OPEN = 6;
+  private static final byte NAMED_OBJ_OPEN = 7;
+  private static final byte OBJ_CLOSE = 8;
+  private static final byte LIST_COMMENT = 9;
+  private static final byte LIST_STRING = 10;
+  private static final byte LIST_NUMBER = 11;
+  private static final byte LIST_IDENTIFIER = 12;
+  private static final byte LIST_PAIR = 13;
+  private static final byte LIST_LIST_OPEN = 14;
+  private static final byte LIST_CLOSE = 15;
+  /** Sent after the producer has finished; stops the consumer. */
+  private static final byte END = 16;
+
+  /** Number of times to spin before yielding, when waiting. */
+  private static final int SPIN_COUNT = 100;
+  /** Number of times to yield before parking, when waiting. */
+  private static final int YIELD_COUNT = 200;
+  /** Nanoseconds to park, when waiting. */
+  private static final long PARK_NANOS = 20_000L;
+
+  private final Slot[] slots;
+  private final int mask;
+
+  /** Number of slots published by the producer. Written only by the
+   * producer. */
+  private final AtomicLong tail = new AtomicLong();
+  /** Number of slots consumed by the consumer. Written only by the
+   * consumer. */
+  private final AtomicLong head = new AtomicLong();
+
+  /** Producer's cached copy of {@link #head}. */
+  private long headCache;
+  /** Consumer's cached copy of {@link #tail}. */
+  private long tailCache;
+
+  /** Producer-side handlers, indexed by depth. */
+  private ObjectProxy[] objectProxies = new ObjectProxy[8];
+  private ListProxy[] listProxies = new ListProxy[8];
+
+  /** Consumer-side handlers, indexed by depth. Each element is an
+   * {@link ObjectHandler} or a {@link ListHandler}. */
+  private Object[] handlers = new Object[8];
+
+  private final CountDownLatch done = new CountDownLatch(1);
+  private volatile @Nullable Throwable failure;
+  private volatile boolean aborted;
+
+  private PipelineHandler(ObjectHandler consumer, int capacity) {
+    checkArgument(capacity > 0, "capacity must be positive");
+    final int size = Integer.highestOneBit(capacity) == capacity
+        ? capacity
+        : Integer.highestOneBit(capacity) << 1;
+    this.slots = new Slot[size];
+    for (int i = 0; i < size; i++) {
+      slots[i] = new Slot();
+    }
+    this.mask = size - 1;
+    this.handlers[0] = requireNonNull(consumer, "consumer");
+  }
+
+  /** Sends the events generated by {@code producer} through a ring buffer
+   * of {@code capacity} slots to {@code consumer}, running the consumer
+   * as a task in {@code executor}.
+   *
+   * <p>The producer runs in the calling thread. This method returns when the
+   * consumer has processed all events. If the producer or consumer throws,
+   * the pipeline is shut down and the exception is re-thrown in the calling
+   * thread. */
+  static void run(Consumer<ObjectHandler> producer, ObjectHandler consumer,
+      int capacity, Executor executor) {
+    run(producer, ImmutableList.of(consumer), capacity, executor);
+  }
+
+  /** Sends the events generated by {@code producer} to each of
+   * {@code consumers}, each through its own ring buffer of {@code capacity}
+   * slots and each running as a separate task in {@code executor}.
+   *
+   * <p>Each consumer receives the events in the order that they were
+   * produced. A slow consumer holds back the producer only when its own
+   * buffer is full.
+   *
+   * <p>The executor must run each consumer on a thread other than the
+   * calling thread. If it runs a consumer in the calling thread (as
+   * {@code MoreExecutors.directExecutor()} does), the consumer would wait
+   * forever for events that the producer cannot produce until the consumer
+   * returns, so this method throws {@link IllegalArgumentException}
+   * instead. */
+  static void run(Consumer<ObjectHandler> producer,
+      List<ObjectHandler> consumers, int capacity, Executor executor) {
+    final Thread caller = Thread.currentThread();
+    final List<PipelineHandler> pipelines = new ArrayList<>();
+    for (ObjectHandler consumer : consumers) {
+      pipelines.add(new PipelineHandler(consumer, capacity));
+    }
+    final List<ObjectHandler> proxies = new ArrayList<>();
+    try {
+      for (PipelineHandler pipeline : pipelines) {
+        executor.execute(() -> {
+          if (Thread.currentThread() == caller) {
+            pipeline.failure =
+                new IllegalArgumentException("executor must run the "
+                    + "consumer on a thread other than the producer's");
+            pipeline.done.countDown();
+            return;
+          }
+          pipeline.drain();
+        });
+        pipeline.checkFailure();
+        proxies.add(pipeline.objectProxy(0));
+      }
+      producer.accept(proxies.size() == 1
+          ? proxies.get(0)
+          : TeeObjectHandler.create(proxies));
+      for (PipelineHandler pipeline : pipelines) {
+        pipeline.claim().op = END;
+        pipeline.publish();
+      }
+    } catch (RuntimeException | Error e) {
+      pipelines.forEach(pipeline -> pipeline.aborted = true);
+      throw e;
+    }
+    try {
+      for (PipelineHandler pipeline : pipelines) {
+        pipeline.done.await();
+      }
+    } catch (InterruptedException e) {
+      pipelines.forEach(pipeline -> pipeline.aborted = true);
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+    pipelines.forEach(PipelineHandler::checkFailure);
+  }
+
+  /** Re-throws, in the producer thread, an exception thrown by the
+   * consumer. */
+  private void checkFailure() {
+    final Throwable e = failure;
+    if (e != null) {
+      if (e instanceof RuntimeException) {
+        throw (RuntimeException) e;
+      }
+      if (e instanceof Error) {
+        throw (Error) e;
+      }
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** Waits a little, spinning at first, then yielding, then parking. */
+  private static int idle(int count) {
+    if (count < SPIN_COUNT) {
+      // spin
+    } else if (count < SPIN_COUNT + YIELD_COUNT) {
+      Thread.yield();
+    } else {
+      LockSupport.parkNanos(PARK_NANOS);
+    }
+    return count + 1;
+  }
+
+  // Producer side
+
+  /** Returns the next free slot, waiting if the buffer is full. */
+  private Slot claim() {
+    final long t = tail.get();
+    if (t - headCache > mask) {
+      for (int count = 0; t - (headCache = head.get()) > mask;) {
+        checkFailure();
+        if (done.getCount() == 0) {
+          throw new IllegalStateException("consumer has stopped");
+        }
+        count = idle(count);
+      }
+    }
+    return slots[(int) t & mask];
+  }
+
+  /** Makes the most recently claimed slot visible to the consumer. */
+  private void publish() {
+    tail.lazySet(tail.get() + 1);
+  }
+
+  private void add(byte op, int depth, Pos pos, @Nullable String name,
+      @Nullable String name2, @Nullable Object value) {
+    final Slot slot = claim();
+    slot.op = op;
+    slot.depth = depth;
+    slot.pos = pos;
+    slot.name = name;
+    slot.name2 = name2;
+    slot.value = value;
+    publish();
+  }
+
+  private ObjectProxy objectProxy(int depth) {
+    if (depth >= objectProxies.length) {
+      objectProxies = Arrays.copyOf(objectProxies, depth * 2);
+    }
+    ObjectProxy proxy = objectProxies[depth];
+    if (proxy == null) {
+      proxy = objectProxies[depth] = new ObjectProxy(depth);
+    }
+    return proxy;
+  }
+
+  private ListProxy listProxy(int depth) {
+    if (depth >= listProxies.length) {
+      listProxies = Arrays.copyOf(listProxies, depth * 2);
+    }
+    ListProxy proxy = listProxies[depth];
+    if (proxy == null) {
+      proxy = listProxies[depth] = new ListProxy(depth);
+    }
+    return proxy;
+  }
+
+  // Consumer side
+
+  /** Consumes slots until it sees {@link #END}, or until the producer
+   * aborts, or until the downstream handler throws.
+   *
+   * <p>Slots are consumed in batches: each time it reads the producer's
+   * position, the consumer replays all slots up to that position, then
+   * publishes its own position once for the whole batch. */
+  private void drain() {
+    try {
+      long h = head.get();
+      for (;;) {
+        if (h == tailCache) {
+          for (int count = 0; h == (tailCache = tail.get());) {
+            if (aborted) {
+              return;
+            }
+            count = idle(count);
+          }
+        }
+        for (final long t = tailCache; h < t; h++) {
+          final Slot slot = slots[(int) h & mask];
+          if (slot.op == END) {
+            head.lazySet(h + 1);
+            return;
+          }
+          replay(slot);
+          slot.clear();
+        }
+        head.lazySet(h);
+      }
+    } catch (Throwable e) {
+      failure = e;
+    } finally {
+      done.countDown();
+    }
+  }
+
+  /** Calls the downstream handler that corresponds to a slot. */
+  @SuppressWarnings("ConstantConditions")
+  private void replay(Slot slot) {
+    final int d = slot.depth;
+    final Pos pos = slot.pos;
+    switch (slot.op) {
+    case COMMENT:
+      ((ObjectHandler) handlers[d]).comment(pos, slot.name);
+      break;
+    case NUMBER:
+      ((ObjectHandler) handlers[d]).number(pos, slot.name,
+          (Number) slot.value);
+      break;
+    case STRING:
+      ((ObjectHandler) handlers[d]).string(pos, slot.name, slot.name2);
+      break;
+    case IDENTIFIER:
+      ((ObjectHandler) handlers[d]).identifier(pos, slot.name, slot.name2);
+      break;
+    case CODE:
+      ((ObjectHandler) handlers[d]).code(pos, slot.name, slot.name2);
+      break;
+    case LIST_OPEN:
+      push(d + 1, ((ObjectHandler) handlers[d]).listOpen(pos, slot.name));
+      break;
+    case OBJ_OPEN:
+      push(d + 1, ((ObjectHandler) handlers[d]).objOpen(pos, slot.name));
+      break;
+    case NAMED_OBJ_OPEN:
+      push(d + 1,
+          ((ObjectHandler) handlers[d]).objOpen(pos, slot.name, slot.name2));
+      break;
+    case OBJ_CLOSE:
+      ((ObjectHandler) handlers[d]).close(pos);
+      handlers[d] = null;
+      break;
+    case LIST_COMMENT:
+      ((ListHandler) handlers[d]).comment(pos, slot.name);
+      break;
+    case LIST_STRING:
+      ((ListHandler) handlers[d]).string(pos, slot.name);
+      break;
+    case LIST_NUMBER:
+      ((ListHandler) handlers[d]).number(pos, (Number) slot.value);
+      break;
+    case LIST_IDENTIFIER:
+      ((ListHandler) handlers[d]).identifier(pos, slot.name);
+      break;
+    case LIST_PAIR:
+      ((ListHandler) handlers[d]).pair(pos, slot.name, slot.name2);
+      break;
+    case LIST_LIST_OPEN:
+      push(d + 1, ((ListHandler) handlers[d]).listOpen(pos));
+      break;
+    case LIST_CLOSE:
+      ((ListHandler) handlers[d]).close(pos);
+      handlers[d] = null;
+      break;
+    default:
+      throw new AssertionError(slot.op);
+    }
+  }
+
+  private void push(int depth, Object handler) {
+    if (depth >= handlers.length) {
+      handlers = Arrays.copyOf(handlers, depth * 2);
+    }
+    handlers[depth] = handler;
+  }
+
+  /** Slot in the ring buffer; an encoded call to a handler method. */
+  private static class Slot {
+    byte op;
+    /** Depth of the handler that received the call; 0 is the root. */
+    int depth;
+    @Nullable Pos pos;
+    /** Property name, or the value of a comment or list element. */
+    @Nullable String name;
+    /** Second string argument, such as the value of a string property. */
+    @Nullable String name2;
+    /** Numeric argument. */
+    @Nullable Object value;
+
+    /** Releases references, so that they can be garbage-collected. */
+    void clear() {
+      pos = null;
+      name = null;
+      name2 = null;
+      value = null;
+    }
+  }
+
+  /** Producer-side implementation of {@link ObjectHandler}. */
+  private class ObjectProxy implements ObjectHandler {
+    private final int depth;
+
+    ObjectProxy(int depth) {
+      this.depth = depth;
+    }
+
+    @Override public ObjectHandler comment(Pos pos, String comment) {
+      add(COMMENT, depth, pos, comment, null, null);
+      return this;
+    }
+
+    @Override public ObjectHandler number(Pos pos, String propertyName,
+        Number value) {
+      add(NUMBER, depth, pos, propertyName, null, value);
+      return this;
+    }
+
+    @Override public ObjectHandler string(Pos pos, String propertyName,
+        String value) {
+      add(STRING, depth, pos, propertyName, value, null);
+      return this;
+    }
+
+    @Override public ObjectHandler identifier(Pos pos, String propertyName,
+        String value) {
+      add(IDENTIFIER, depth, pos, propertyName, value, null);
+      return this;
+    }
+
+    @Override public ObjectHandler code(Pos pos, String propertyName,
+        String value) {
+      add(CODE, depth, pos, propertyName, value, null);
+      return this;
+    }
+
+    @Override public ListHandler listOpen(Pos pos, String propertyName) {
+      add(LIST_OPEN, depth, pos, propertyName, null, null);
+      return listProxy(depth + 1);
+    }
+
+    @Override public ObjectHandler objOpen(Pos pos, String propertyName) {
+      add(OBJ_OPEN, depth, pos, propertyName, null, null);
+      return objectProxy(depth + 1);
+    }
+
+    @Override public ObjectHandler objOpen(Pos pos, String propertyName,
+        String name) {
+      add(NAMED_OBJ_OPEN, depth, pos, propertyName, name, null);
+      return objectProxy(depth + 1);
+    }
+
+    @Override public void close(Pos pos) {
+      add(OBJ_CLOSE, depth, pos, null, null, null);
+    }
+  }
+
+  /** Producer-side implementation of {@link ListHandler}. */
+  private class ListProxy implements ListHandler {
+    private final int depth;
+
+    ListProxy(int depth) {
+      this.depth = depth;
+    }
+
+    @Override public ListHandler comment(Pos pos, String comment) {
+      add(LIST_COMMENT, depth, pos, comment, null, null);
+      return this;
+    }
+
+    @Override public ListHandler string(Pos pos, String value) {
+      add(LIST_STRING, depth, pos, value, null, null);
+      return this;
+    }
+
+    @Override public ListHandler number(Pos pos, Number value) {
+      add(LIST_NUMBER, depth, pos, null, null, value);
+      return this;
+    }
+
+    @Override public ListHandler identifier(Pos pos, String value) {
+      add(LIST_IDENTIFIER, depth, pos, value, null, null);
+      return this;
+    }
+
+    @Override public ListHandler pair(Pos pos, String ref,
+        String identifier) {
+      add(LIST_PAIR, depth, pos, ref, identifier, null);
+      return this;
+    }
+
+    @Override public ListHandler listOpen(Pos pos) {
+      add(LIST_LIST_OPEN, depth, pos, null, null, null);
+      return listProxy(depth + 1);
+    }
+
+    @Override public void close(Pos pos) {
+      add(LIST_CLOSE, depth, pos, null, null, null);
+    }
+  }
+}
+
+// End PipelineHandler.java
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the LookML Authors under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.
+ * The LookML Authors license this file to you under the Apache
+ * License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License.  You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package net.hydromatic.lookml;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/** Support for {@link LookmlRecorder}. */
+class Recording {
+  /** The recorder installed by {@link LookmlRecorder#install}. */
+  static volatile @Nullable LookmlRecorder installed;
+
+  private Recording() {}
+
+  /** Creates a validating handler that reports to a recorder. */
+  static ObjectHandler validator(LookmlRecorder recorder,
+      LookmlSchema schema, PropertyHandler consumer,
+      ErrorHandler errorHandler) {
+    final LookmlMetrics metrics = LookmlMetrics.create();
+    final ObjectHandler validator =
+        new ValidatingHandler.RootValidatingHandler(
+            LaxHandlers.metrics(consumer, "consume", metrics), schema,
+            LaxHandlers.metrics(errorHandler, metrics));
+    return new RootHandler(recorder, metrics,
+        LaxHandlers.metrics(validator, "validate", metrics));
+  }
+
+  /** Handler for the root of a document that starts a
+   * {@link LookmlRecorder.Span} on the first event and ends it on close.
+   *
+   * <p>Its consumer (and the consumer's consumers) record the number of
+   * events, errors, and time in {@code metrics}. */
+  private static class RootHandler implements ObjectHandler {
+    private final LookmlRecorder recorder;
+    private final LookmlMetrics metrics;
+    private final ObjectHandler consumer;
+    private LookmlRecorder.@Nullable Span span;
+
+    RootHandler(LookmlRecorder recorder, LookmlMetrics metrics,
+        ObjectHandler consumer) {
+      this.recorder = recorder;
+      this.metrics = metrics;
+      this.consumer = consumer;
+    }
+
+    private void start(Pos pos) {
+      if (span == null) {
+        span = recorder.start(LookmlRecorder.Phase.VALIDATE, pos.source);
+      }
+    }
+
+    @Override public ObjectHandler comment(Pos pos, String comment) {
+      start(pos);
+      consumer.comment(pos, comment);
+      return this;
+    }
+
+    @Override public ObjectHandler number(Pos pos, String propertyName,
+        Number value) {
+      start(pos);
+      consumer.number(pos, propertyName, value);
+      return this;
+    }
+
+    @Override public ObjectHandler string(Pos pos, String propertyName,
+        String value) {
+      start(pos);
+      consumer.string(pos, propertyName, value);
+      return this;
+    }
+
+    @Override public ObjectHandler identifier(Pos pos, String propertyName,
+        String value) {
+      start(pos);
+      consumer.identifier(pos, propertyName, value);
+      return this;
+    }
+
+    @Override public ObjectHandler code(Pos pos, String propertyName,
+        String value) {
+      start(pos);
+      consumer.code(pos, propertyName, value);
+      return this;
+    }
+
+    @Override public ListHandler listOpen(Pos pos, String propertyName) {
+      start(pos);
+      return consumer.listOpen(pos, propertyName);
+    }
+
+    @Override public ObjectHandler objOpen(Pos pos, String propertyName) {
+      start(pos);
+      return consumer.objOpen(pos, propertyName);
+    }
+
+    @Override public ObjectHandler objOpen(Pos pos, String propertyName,
+        String name) {
+      start(pos);
+      return consumer.objOpen(pos, propertyName, name);
+    }
+
+    @Override public void close(Pos pos) {
+      start(pos);
+      try {
+        consumer.close(pos);
+      } finally {
+        final LookmlRecorder.Span span = this.span;
+        if (span != null) {
+          span.end(0L, 0L, metrics.sum("validate.events."),
+              metrics.sum("errors."), metrics.get("validate.nanos"));
+        }
+      }
+    }
+  }
+}
+
+// End Recording.java
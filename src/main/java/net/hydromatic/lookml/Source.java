@@ -37,7 +37,8 @@ default Reader reader() {
     throw new UnsupportedOperationException();
   }
 
-  /** Opens an input stream from this source. */
+  /** Opens an input stream from this source. The stream must contain
+   * UTF-8 encoded text. */
   default InputStream inputStream() throws IOException {
     throw new UnsupportedOperationException();
   }
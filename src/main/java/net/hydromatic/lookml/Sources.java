@@ -78,7 +78,7 @@ static class UrlSource implements Source {
 
     @Override public String contentsAsString() {
       try (InputStream stream = url.openStream();
-           Reader r = new InputStreamReader(stream, Charsets.ISO_8859_1)) {
+           Reader r = new InputStreamReader(stream, Charsets.UTF_8)) {
         return readerToString(r);
       } catch (IOException e) {
         throw new RuntimeException(e);
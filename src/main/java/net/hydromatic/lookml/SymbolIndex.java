@@ -0,0 +1,294 @@
+/*
+ * Licensed to the LookML Authors under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.
+ * The LookML Authors license this file to you under the Apache
+ * License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License.  You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package net.hydromatic.lookml;
+
+import com.google.common.collect.ImmutableList;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static java.util.Objects.hash;
+import static java.util.Objects.requireNonNull;
+
+/** Index of the named objects in a set of LookML documents, and of the
+ * references between them.
+ *
+ * <p>Each document is indexed by a handler returned from {@link #indexer()},
+ * typically downstream of a validator, so that the properties of type
+ * {@link LookmlSchema.Type#REF REF}, {@link LookmlSchema.Type#REF_LIST
+ * REF_LIST} and {@link LookmlSchema.Type#REF_STRING_MAP REF_STRING_MAP} are
+ * known. Documents may be indexed concurrently, each in its own thread; the
+ * index is a {@link ConcurrentHashMap}, so there is no global lock.
+ *
+ * <p>A named object is indexed by its type (the name of the property that
+ * defines it, such as "view" or "dimension") and its path (its name,
+ * qualified by the names of the named objects that enclose it). For
+ * example, in
+ *
+ * <blockquote><pre>{@code
+ * model: m {
+ *   view: v {
+ *     dimension: d {}
+ *   }
+ * }
+ * }</pre></blockquote>
+ *
+ * <p>the dimension has type "dimension" and path "m.v.d".
+ *
+ * <p>When all documents have been indexed, call
+ * {@link #danglingReferences(Map)} to find references that do not resolve.
+ * A reference resolves if, qualified by the path of the named object in
+ * which it occurs or of any named object that encloses it, it is the path
+ * of a named object. So, within view "v" above, "d" resolves (as "m.v.d"),
+ * and so does "v.d" (as "m.v.d"). */
+public class SymbolIndex {
+  /** Named objects, keyed by type and path. */
+  private final Map<Key, Pos> definitions = new ConcurrentHashMap<>();
+  /** Types of the named objects in {@link #definitions}. */
+  private final Set<String> types = ConcurrentHashMap.newKeySet();
+  /** References, one list per document. */
+  private final Queue<List<Reference>> references =
+      new ConcurrentLinkedQueue<>();
+
+  private SymbolIndex() {
+  }
+
+  /** Creates an empty index. */
+  public static SymbolIndex create() {
+    return new SymbolIndex();
+  }
+
+  /** Returns a handler that adds the named objects and references of a
+   * document to this index.
+   *
+   * <p>Each document needs its own handler; handlers for different documents
+   * may be used concurrently. */
+  public PropertyHandler indexer() {
+    return new IndexingHandler(new Scope(null, ""), new ArrayList<>(), true);
+  }
+
+  /** Returns the position of the named object with a given type and path,
+   * or null if there is no such object. */
+  public @Nullable Pos definition(String type, String path) {
+    return definitions.get(new Key(type, path));
+  }
+
+  /** Returns the number of named objects in this index. */
+  public int definitionCount() {
+    return definitions.size();
+  }
+
+  /** Resolves, in parallel, all references in the indexed documents, and
+   * returns those that do not resolve, sorted by position.
+   *
+   * @param targetTypes Map from the name of a reference property (such as
+   *   "from" or "drill_fields") to the types of the named objects that it
+   *   may reference (such as "view"); if a property is not in the map, it
+   *   may reference a named object of any type
+   */
+  public List<Reference> danglingReferences(
+      Map<String, ? extends Collection<String>> targetTypes) {
+    final List<Reference> list = new ArrayList<>();
+    references.forEach(list::addAll);
+    return list.parallelStream()
+        .filter(r -> !resolves(r, targetTypes.get(r.propertyName)))
+        .sorted(Reference.ORDERING)
+        .collect(ImmutableList.toImmutableList());
+  }
+
+  private boolean resolves(Reference r,
+      @Nullable Collection<String> targetTypes) {
+    final Collection<String> types =
+        targetTypes == null ? this.types : targetTypes;
+    for (Scope scope = r.scope; scope != null; scope = scope.parent) {
+      final String path = scope.qualify(r.name);
+      for (String type : types) {
+        if (definitions.containsKey(new Key(type, path))) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /** Reference from a property to a named object. */
+  public static class Reference {
+    static final Comparator<Reference> ORDERING =
+        Comparator.<Reference, String>comparing(r -> r.pos.source.toString())
+            .thenComparingInt(r -> r.pos.startLine)
+            .thenComparingInt(r -> r.pos.startColumn);
+
+    /** Name of the property, e.g. "from". */
+    public final String propertyName;
+    /** Name of the referenced object, e.g. "orders" or "orders.id". */
+    public final String name;
+    public final Pos pos;
+    private final Scope scope;
+
+    Reference(String propertyName, String name, Pos pos, Scope scope) {
+      this.propertyName = requireNonNull(propertyName, "propertyName");
+      this.name = requireNonNull(name, "name");
+      this.pos = requireNonNull(pos, "pos");
+      this.scope = requireNonNull(scope, "scope");
+    }
+
+    /** Returns the path of the named object in which the reference
+     * occurs; empty if the reference is not within a named object. */
+    public String scopePath() {
+      return scope.path;
+    }
+
+    @Override public String toString() {
+      return propertyName + ": " + name;
+    }
+  }
+
+  /** Named object that may contain references. */
+  private static class Scope {
+    final @Nullable Scope parent;
+    final String path;
+
+    Scope(@Nullable Scope parent, String path) {
+      this.parent = parent;
+      this.path = path;
+    }
+
+    /** Returns a name qualified by the path of this scope. */
+    String qualify(String name) {
+      return path.isEmpty() ? name : path + "." + name;
+    }
+  }
+
+  /** Key of a named object in the index. */
+  private static class Key {
+    final String type;
+    final String path;
+
+    Key(String type, String path) {
+      this.type = type;
+      this.path = path;
+    }
+
+    @Override public int hashCode() {
+      return hash(type, path);
+    }
+
+    @Override public boolean equals(Object o) {
+      return o == this
+          || o instanceof Key
+          && type.equals(((Key) o).type)
+          && path.equals(((Key) o).path);
+    }
+  }
+
+  /** Handler that adds named objects and references to the index.
+   *
+   * <p>References are collected in a list per document, and added to the
+   * index when the document is closed. */
+  private class IndexingHandler implements PropertyHandler {
+    private final Scope scope;
+    private final List<Reference> documentReferences;
+    private final boolean root;
+
+    IndexingHandler(Scope scope, List<Reference> documentReferences,
+        boolean root) {
+      this.scope = scope;
+      this.documentReferences = documentReferences;
+      this.root = root;
+    }
+
+    @Override public PropertyHandler property(Pos pos,
+        LookmlSchema.Property property, Object value) {
+      if (property.type() == LookmlSchema.Type.REF) {
+        documentReferences.add(
+            new Reference(property.name(), (String) value, pos, scope));
+      }
+      return this;
+    }
+
+    @Override public ListHandler listOpen(Pos pos,
+        LookmlSchema.Property property) {
+      switch (property.type()) {
+      case REF_LIST:
+      case REF_STRING_MAP:
+        return new ReferenceListHandler(property.name(), scope,
+            documentReferences);
+      default:
+        return LaxHandlers.nullListHandler();
+      }
+    }
+
+    @Override public PropertyHandler objOpen(Pos pos,
+        LookmlSchema.Property property) {
+      return new IndexingHandler(scope, documentReferences, false);
+    }
+
+    @Override public PropertyHandler objOpen(Pos pos,
+        LookmlSchema.Property property, String name) {
+      final String path = scope.qualify(name);
+      definitions.putIfAbsent(new Key(property.name(), path), pos);
+      types.add(property.name());
+      return new IndexingHandler(new Scope(scope, path), documentReferences,
+          false);
+    }
+
+    @Override public void close(Pos pos) {
+      if (root) {
+        references.add(documentReferences);
+      }
+    }
+  }
+
+  /** Handler that records each element of a list as a reference. */
+  private static class ReferenceListHandler implements ListHandler {
+    private final String propertyName;
+    private final Scope scope;
+    private final List<Reference> documentReferences;
+
+    ReferenceListHandler(String propertyName, Scope scope,
+        List<Reference> documentReferences) {
+      this.propertyName = propertyName;
+      this.scope = scope;
+      this.documentReferences = documentReferences;
+    }
+
+    @Override public ListHandler identifier(Pos pos, String value) {
+      documentReferences.add(
+          new Reference(propertyName, value, pos, scope));
+      return this;
+    }
+
+    @Override public ListHandler pair(Pos pos, String ref,
+        String identifier) {
+      documentReferences.add(new Reference(propertyName, ref, pos, scope));
+      return this;
+    }
+  }
+}
+
+// End SymbolIndex.java
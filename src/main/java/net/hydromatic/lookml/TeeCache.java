@@ -0,0 +1,77 @@
+/*
+ * Licensed to the LookML Authors under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.
+ * The LookML Authors license this file to you under the Apache
+ * License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License.  You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package net.hydromatic.lookml;
+
+import java.util.Arrays;
+
+/** Tee handlers for one stream of events, indexed by depth.
+ *
+ * <p>When a tee opens a sub-object or sub-list, it does not allocate a new
+ * tee; it reuses the tee at the next depth, and overwrites its array of
+ * consumers. This is valid because events are properly nested: after a
+ * handler has opened a sub-object or sub-list, it receives no further events
+ * until that sub-object or sub-list is closed, and by then the tee for the
+ * sub-object or sub-list is no longer needed. */
+class TeeCache {
+  /** Number of consumers. */
+  final int width;
+
+  private TeeObjectHandler[] objectTees = new TeeObjectHandler[8];
+  private TeePropertyHandler[] propertyTees = new TeePropertyHandler[8];
+  private TeeListHandler[] listTees = new TeeListHandler[8];
+
+  TeeCache(int width) {
+    this.width = width;
+  }
+
+  TeeObjectHandler objectTee(int depth) {
+    if (depth >= objectTees.length) {
+      objectTees = Arrays.copyOf(objectTees, depth * 2);
+    }
+    TeeObjectHandler tee = objectTees[depth];
+    if (tee == null) {
+      tee = objectTees[depth] = new TeeObjectHandler(this, depth);
+    }
+    return tee;
+  }
+
+  TeePropertyHandler propertyTee(int depth) {
+    if (depth >= propertyTees.length) {
+      propertyTees = Arrays.copyOf(propertyTees, depth * 2);
+    }
+    TeePropertyHandler tee = propertyTees[depth];
+    if (tee == null) {
+      tee = propertyTees[depth] = new TeePropertyHandler(this, depth);
+    }
+    return tee;
+  }
+
+  TeeListHandler listTee(int depth) {
+    if (depth >= listTees.length) {
+      listTees = Arrays.copyOf(listTees, depth * 2);
+    }
+    TeeListHandler tee = listTees[depth];
+    if (tee == null) {
+      tee = listTees[depth] = new TeeListHandler(this, depth);
+    }
+    return tee;
+  }
+}
+
+// End TeeCache.java
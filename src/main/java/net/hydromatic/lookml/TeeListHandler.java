@@ -18,50 +18,68 @@
  */
 package net.hydromatic.lookml;
 
-import com.google.common.collect.ImmutableList;
-
-/** Implementation of {@link ListHandler} that forwards to several consumers. */
+/** Implementation of {@link ListHandler} that forwards to several consumers.
+ *
+ * <p>Created by {@link TeeObjectHandler} and {@link TeePropertyHandler},
+ * and reused via {@link TeeCache}. */
 class TeeListHandler implements ListHandler {
-  final ImmutableList<ListHandler> consumers;
+  private final TeeCache cache;
+  private final int depth;
+  final ListHandler[] consumers;
 
-  TeeListHandler(ImmutableList<ListHandler> consumers) {
-    this.consumers = consumers;
+  TeeListHandler(TeeCache cache, int depth) {
+    this.cache = cache;
+    this.depth = depth;
+    this.consumers = new ListHandler[cache.width];
   }
 
   @Override public ListHandler string(Pos pos, String value) {
-    consumers.forEach(c -> c.string(pos, value));
+    for (ListHandler c : consumers) {
+      c.string(pos, value);
+    }
     return this;
   }
 
   @Override public ListHandler number(Pos pos, Number value) {
-    consumers.forEach(c -> c.number(pos, value));
+    for (ListHandler c : consumers) {
+      c.number(pos, value);
+    }
     return this;
   }
 
   @Override public ListHandler identifier(Pos pos, String value) {
-    consumers.forEach(c -> c.identifier(pos, value));
+    for (ListHandler c : consumers) {
+      c.identifier(pos, value);
+    }
     return this;
   }
 
   @Override public ListHandler pair(Pos pos, String ref, String identifier) {
-    consumers.forEach(c -> c.pair(pos, ref, identifier));
+    for (ListHandler c : consumers) {
+      c.pair(pos, ref, identifier);
+    }
     return this;
   }
 
   @Override public ListHandler comment(Pos pos, String comment) {
-    consumers.forEach(c -> c.comment(pos, comment));
+    for (ListHandler c : consumers) {
+      c.comment(pos, comment);
+    }
     return this;
   }
 
   @Override public ListHandler listOpen(Pos pos) {
-    final ImmutableList.Builder<ListHandler> newConsumers =
-        ImmutableList.builder();
-    consumers.forEach(c -> newConsumers.add(c.listOpen(pos)));
-    return new TeeListHandler(newConsumers.build());
+    final TeeListHandler tee = cache.listTee(depth + 1);
+    for (int i = 0; i < consumers.length; i++) {
+      tee.consumers[i] = consumers[i].listOpen(pos);
+    }
+    return tee;
   }
 
   @Override public void close(Pos pos) {
-    consumers.forEach(c -> c.close(pos));
+    for (ListHandler c : consumers) {
+      c.close(pos);
+    }
   }
 }
 
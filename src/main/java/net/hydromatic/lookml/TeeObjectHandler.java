@@ -18,73 +18,100 @@
  */
 package net.hydromatic.lookml;
 
-import com.google.common.collect.ImmutableList;
-
 import java.util.List;
 
-/** Object handler that forwards each event to several consumers. */
+/** Object handler that forwards each event to several consumers.
+ *
+ * <p>Consumers are called in order, in the current thread. Tees for
+ * sub-objects and sub-lists are reused (see {@link TeeCache}), so that
+ * forwarding an event does not allocate. */
 class TeeObjectHandler implements ObjectHandler {
-  final List<ObjectHandler> consumers;
+  private final TeeCache cache;
+  private final int depth;
+  final ObjectHandler[] consumers;
+
+  TeeObjectHandler(TeeCache cache, int depth) {
+    this.cache = cache;
+    this.depth = depth;
+    this.consumers = new ObjectHandler[cache.width];
+  }
 
-  TeeObjectHandler(ImmutableList<ObjectHandler> consumers) {
-    this.consumers = consumers;
+  /** Creates a tee at the root of a stream of events. */
+  static TeeObjectHandler create(List<ObjectHandler> consumers) {
+    final TeeObjectHandler tee =
+        new TeeCache(consumers.size()).objectTee(0);
+    consumers.toArray(tee.consumers);
+    return tee;
   }
 
   @Override public ObjectHandler comment(Pos pos, String comment) {
-    consumers.forEach(c -> c.comment(pos, comment));
+    for (ObjectHandler c : consumers) {
+      c.comment(pos, comment);
+    }
     return this;
   }
 
   @Override public ObjectHandler number(Pos pos, String propertyName,
       Number value) {
-    consumers.forEach(c -> c.number(pos, propertyName, value));
+    for (ObjectHandler c : consumers) {
+      c.number(pos, propertyName, value);
+    }
     return this;
   }
 
   @Override public ObjectHandler string(Pos pos, String propertyName,
       String value) {
-    consumers.forEach(c -> c.string(pos, propertyName, value));
+    for (ObjectHandler c : consumers) {
+      c.string(pos, propertyName, value);
+    }
     return this;
   }
 
   @Override public ObjectHandler identifier(Pos pos, String propertyName,
       String value) {
-    consumers.forEach(c -> c.identifier(pos, propertyName, value));
+    for (ObjectHandler c : consumers) {
+      c.identifier(pos, propertyName, value);
+    }
     return this;
   }
 
   @Override public ObjectHandler code(Pos pos, String propertyName,
       String value) {
-    consumers.forEach(c -> c.code(pos, propertyName, value));
+    for (ObjectHandler c : consumers) {
+      c.code(pos, propertyName, value);
+    }
     return this;
   }
 
   @Override public ListHandler listOpen(Pos pos, String propertyName) {
-    final ImmutableList.Builder<ListHandler> newConsumers =
-        ImmutableList.builder();
-    consumers.forEach(c -> newConsumers.add(c.listOpen(pos, propertyName)));
-    return new TeeListHandler(newConsumers.build());
+    final TeeListHandler tee = cache.listTee(depth + 1);
+    for (int i = 0; i < consumers.length; i++) {
+      tee.consumers[i] = consumers[i].listOpen(pos, propertyName);
+    }
+    return tee;
   }
 
   @Override public ObjectHandler objOpen(Pos pos, String propertyName) {
-    final ImmutableList.Builder<ObjectHandler> newConsumers =
-        ImmutableList.builder();
-    consumers.forEach(c ->
-        newConsumers.add(c.objOpen(pos, propertyName)));
-    return new TeeObjectHandler(newConsumers.build());
+    final TeeObjectHandler tee = cache.objectTee(depth + 1);
+    for (int i = 0; i < consumers.length; i++) {
+      tee.consumers[i] = consumers[i].objOpen(pos, propertyName);
+    }
+    return tee;
   }
 
   @Override public ObjectHandler objOpen(Pos pos, String propertyName,
       String name) {
-    final ImmutableList.Builder<ObjectHandler> newConsumers =
-        ImmutableList.builder();
-    consumers.forEach(c ->
-        newConsumers.add(c.objOpen(pos, propertyName, name)));
-    return new TeeObjectHandler(newConsumers.build());
+    final TeeObjectHandler tee = cache.objectTee(depth + 1);
+    for (int i = 0; i < consumers.length; i++) {
+      tee.consumers[i] = consumers[i].objOpen(pos, propertyName, name);
+    }
+    return tee;
   }
 
   @Override public void close(Pos pos) {
-    consumers.forEach(c -> c.close(pos));
+    for (ObjectHandler c : consumers) {
+      c.close(pos);
+    }
   }
 }
 
@@ -18,50 +18,71 @@
  */
 package net.hydromatic.lookml;
 
-import com.google.common.collect.ImmutableList;
-
 import java.util.List;
 
-/** Property handler that forwards each event to several consumers. */
+/** Property handler that forwards each event to several consumers.
+ *
+ * <p>Consumers are called in order, in the current thread. Tees for
+ * sub-objects and sub-lists are reused (see {@link TeeCache}), so that
+ * forwarding an event does not allocate. */
 class TeePropertyHandler implements PropertyHandler {
-  final List<PropertyHandler> consumers;
+  private final TeeCache cache;
+  private final int depth;
+  final PropertyHandler[] consumers;
+
+  TeePropertyHandler(TeeCache cache, int depth) {
+    this.cache = cache;
+    this.depth = depth;
+    this.consumers = new PropertyHandler[cache.width];
+  }
 
-  TeePropertyHandler(ImmutableList<PropertyHandler> consumers) {
-    this.consumers = consumers;
+  /** Creates a tee at the root of a stream of events. */
+  static TeePropertyHandler create(List<PropertyHandler> consumers) {
+    final TeePropertyHandler tee =
+        new TeeCache(consumers.size()).propertyTee(0);
+    consumers.toArray(tee.consumers);
+    return tee;
   }
 
   @Override public PropertyHandler property(Pos pos,
       LookmlSchema.Property property, Object value) {
-    consumers.forEach(c -> c.property(pos, property, value));
+    for (PropertyHandler c : consumers) {
+      c.property(pos, property, value);
+    }
     return this;
   }
 
   @Override public ListHandler listOpen(Pos pos,
       LookmlSchema.Property property) {
-    final ImmutableList.Builder<ListHandler> newConsumers =
-        ImmutableList.builder();
-    consumers.forEach(c -> newConsumers.add(c.listOpen(pos, property)));
-    return new TeeListHandler(newConsumers.build());
+    final TeeListHandler tee = cache.listTee(depth + 1);
+    for (int i = 0; i < consumers.length; i++) {
+      tee.consumers[i] = consumers[i].listOpen(pos, property);
+    }
+    return tee;
   }
 
   @Override public PropertyHandler objOpen(Pos pos,
       LookmlSchema.Property property) {
-    final ImmutableList.Builder<PropertyHandler> newConsumers =
-        ImmutableList.builder();
-    consumers.forEach(c -> newConsumers.add(c.objOpen(pos, property)));
-    return new TeePropertyHandler(newConsumers.build());
+    final TeePropertyHandler tee = cache.propertyTee(depth + 1);
+    for (int i = 0; i < consumers.length; i++) {
+      tee.consumers[i] = consumers[i].objOpen(pos, property);
+    }
+    return tee;
   }
 
   @Override public PropertyHandler objOpen(Pos pos,
       LookmlSchema.Property property, String name) {
-    final ImmutableList.Builder<PropertyHandler> newConsumers =
-        ImmutableList.builder();
-    consumers.forEach(c -> newConsumers.add(c.objOpen(pos, property, name)));
-    return new TeePropertyHandler(newConsumers.build());
+    final TeePropertyHandler tee = cache.propertyTee(depth + 1);
+    for (int i = 0; i < consumers.length; i++) {
+      tee.consumers[i] = consumers[i].objOpen(pos, property, name);
+    }
+    return tee;
   }
 
   @Override public void close(Pos pos) {
-    consumers.forEach(c -> c.close(pos));
+    for (PropertyHandler c : consumers) {
+      c.close(pos);
+    }
   }
 }
 
@@ -48,9 +48,16 @@ abstract class ValidatingHandler implements ObjectHandler {
     this.propertyMap = propertyMap;
   }
 
-  /** Creates a validating handler. */
+  /** Creates a validating handler.
+   *
+   * <p>If a {@link LookmlRecorder} is installed, the handler reports to
+   * it. */
   static ObjectHandler create(LookmlSchema schema,
       PropertyHandler consumer, ErrorHandler errorHandler) {
+    final LookmlRecorder recorder = LookmlRecorder.installed();
+    if (recorder != null) {
+      return Recording.validator(recorder, schema, consumer, errorHandler);
+    }
     return new RootValidatingHandler(consumer, schema, errorHandler);
   }
 
@@ -250,7 +257,7 @@ boolean propertyIsValid(String propertyName,
 
   /** Implementation of {@link ValidatingHandler}
    * that stores the common data in a tree of handlers. */
-  private static class RootValidatingHandler extends ValidatingHandler {
+  static class RootValidatingHandler extends ValidatingHandler {
     private final LookmlSchema schema;
     private final ErrorHandler errorHandler;
     /** Set of enum type names that look like boolean (have allowable values
@@ -21,6 +21,8 @@
 import net.hydromatic.lookml.util.ImmutablePairList;
 import net.hydromatic.lookml.util.PairList;
 
+import com.google.common.collect.ImmutableList;
+
 import java.util.List;
 
 import static java.util.Objects.requireNonNull;
@@ -132,10 +134,10 @@ static class PairValue extends ValueImpl {
 
   /** Value of a property or list element whose value is a list. */
   static class ListValue extends ValueImpl {
-    final List<ValueImpl> list;
+    final ImmutableList<ValueImpl> list;
 
     ListValue(List<ValueImpl> list) {
-      this.list = list;
+      this.list = ImmutableList.copyOf(list);
     }
 
     @Override void write(LookmlWriter writer) {
@@ -0,0 +1,517 @@
+/*
+ * Licensed to the LookML Authors under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.
+ * The LookML Authors license this file to you under the Apache
+ * License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License.  You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package net.hydromatic.lookml.parse;
+
+import net.hydromatic.lookml.ListHandler;
+import net.hydromatic.lookml.ObjectHandler;
+import net.hydromatic.lookml.Pos;
+import net.hydromatic.lookml.Source;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/** Parser for LookML that keeps its state in an explicit stack, rather
+ * than recursing once per level of nesting as the generated parser does.
+ *
+ * <p>It accepts the same language, and calls the handler with the same
+ * events and positions, as the generated parser; but its use of the
+ * thread's stack does not depend on the depth of the document, so it can
+ * safely parse deeply nested input on a thread with a small stack. It
+ * reads the whole document into memory.
+ *
+ * @see LookmlParsers#parseIterative(ObjectHandler, LookmlParsers.Config) */
+class IterativeParser {
+  private final String text;
+  private final Source source;
+  private final Set<String> codePropertyNames;
+  private final int tabSize;
+  private final int maxDepth;
+
+  // Lexer state; line and column are computed as by JavaCC's
+  // SimpleCharStream, so that positions are the same as the generated
+  // parser's.
+  private int offset;
+  private int line = 1;
+  private int column = 0;
+  private boolean prevCharIsCR;
+  private boolean prevCharIsLF;
+
+  /** Last token consumed. */
+  private Token token;
+  /** Next token, if it has been read. */
+  private @Nullable Token lookahead;
+
+  /** Objects and lists that are open, innermost first; does not include
+   * the document. */
+  private final Deque<Frame> stack = new ArrayDeque<>();
+
+  private IterativeParser(String text, LookmlParsers.Config config) {
+    this.text = text;
+    this.source = config.source();
+    this.codePropertyNames = config.codePropertyNames();
+    this.tabSize = config.tabSize();
+    this.maxDepth = config.maxDepth();
+    this.token = new Token(Kind.EOF, "", 1, 0, 1, 0);
+  }
+
+  /** Parses a document. */
+  static void parse(ObjectHandler handler, LookmlParsers.Config config)
+      throws ParseException {
+    final String text = config.source().contentsAsString();
+    new IterativeParser(text, config).document(handler);
+  }
+
+  private void document(ObjectHandler h) throws ParseException {
+    while (la().kind == Kind.COMMENT) {
+      h.comment(pos(next()), token.image);
+    }
+    property(h);
+    while (!stack.isEmpty()) {
+      final Frame frame = stack.peek();
+      if (frame.list != null) {
+        listStep(frame, frame.list);
+      } else {
+        objectStep(requireNonNull(frame.obj));
+      }
+    }
+    while (la().kind == Kind.COMMENT) {
+      h.comment(pos(next()), token.image);
+    }
+    // Like the generated parser, ignore any tokens that follow the
+    // document; but reading one token reports a lexical error.
+    h.close(pos(token));
+  }
+
+  /** Parses the next element of the innermost open object: a comment, a
+   * property, or the closing brace. */
+  private void objectStep(ObjectHandler h) throws ParseException {
+    final Token t = la();
+    switch (t.kind) {
+    case COMMENT:
+      h.comment(pos(next()), token.image);
+      break;
+    case IDENTIFIER:
+      property(h);
+      break;
+    case RBRACE:
+      next();
+      stack.pop();
+      h.close(pos(token));
+      break;
+    default:
+      throw unexpected(t);
+    }
+  }
+
+  /** Parses the next element of the innermost open list: comments and a
+   * value, a comma, or the closing bracket. */
+  private void listStep(Frame frame, ListHandler h) throws ParseException {
+    while (la().kind == Kind.COMMENT) {
+      h.comment(pos(next()), token.image);
+    }
+    final Token t = la();
+    if (t.kind == Kind.RBRACKET) {
+      next();
+      stack.pop();
+      h.close(pos(token));
+      return;
+    }
+    if (frame.hasValue) {
+      if (t.kind != Kind.COMMA) {
+        throw unexpected(t);
+      }
+      next();
+      while (la().kind == Kind.COMMENT) {
+        h.comment(pos(next()), token.image);
+      }
+    }
+    frame.hasValue = true;
+    value(h);
+  }
+
+  /** Parses a property. If its value is an object or list, opens it and
+   * pushes it onto the stack. */
+  private void property(ObjectHandler h) throws ParseException {
+    final String propertyName = expect(Kind.IDENTIFIER).image;
+    final Pos.Builder pb = start(token);
+    expect(Kind.COLON);
+    if (codePropertyNames.contains(propertyName)) {
+      final String code = code();
+      h.code(end(pb), propertyName, code);
+      return;
+    }
+    final Token t = next();
+    switch (t.kind) {
+    case IDENTIFIER:
+      if (la().kind == Kind.LBRACE) {
+        push(next());
+        stack.push(new Frame(h.objOpen(end(pb), propertyName, t.image)));
+      } else {
+        h.identifier(end(pb), propertyName, t.image);
+      }
+      break;
+    case NUMBER:
+      h.number(end(pb), propertyName, new BigDecimal(t.image));
+      break;
+    case STRING:
+      h.string(end(pb), propertyName, unquote(t.image));
+      break;
+    case LBRACKET:
+      push(t);
+      stack.push(new Frame(h.listOpen(end(pb), propertyName)));
+      break;
+    case LBRACE:
+      push(t);
+      stack.push(new Frame(h.objOpen(end(pb), propertyName)));
+      break;
+    default:
+      throw unexpected(t);
+    }
+  }
+
+  /** Parses a value in a list. If it is a list, opens it and pushes it
+   * onto the stack. */
+  private void value(ListHandler h) throws ParseException {
+    final Token t = next();
+    switch (t.kind) {
+    case NUMBER:
+      h.number(pos(t), new BigDecimal(t.image));
+      break;
+    case STRING:
+      h.string(pos(t), unquote(t.image));
+      break;
+    case IDENTIFIER:
+      if (la().kind == Kind.COLON) {
+        final Pos.Builder pb = start(t);
+        next();
+        final String string = unquote(expect(Kind.STRING).image);
+        h.pair(end(pb), t.image, string);
+      } else {
+        h.identifier(pos(t), t.image);
+      }
+      break;
+    case LBRACKET:
+      push(t);
+      stack.push(new Frame(h.listOpen(pos(t))));
+      break;
+    default:
+      throw unexpected(t);
+    }
+  }
+
+  /** Checks that opening an object or list does not exceed the maximum
+   * depth. */
+  private void push(Token t) throws ParseException {
+    if (stack.size() >= maxDepth) {
+      throw new ParseException("Maximum depth " + maxDepth
+          + " exceeded at line " + t.beginLine + ", column "
+          + t.beginColumn + ".");
+    }
+  }
+
+  private static String unquote(String image) {
+    return image.substring(1, image.length() - 1);
+  }
+
+  private Pos pos(Token t) {
+    return new Pos(source, t.beginLine, t.beginColumn, t.endLine,
+        t.endColumn + 1);
+  }
+
+  private Pos.Builder start(Token t) {
+    return Pos.builder(source, t.beginLine, t.beginColumn, t.endLine,
+        t.endColumn + 1);
+  }
+
+  /** Extends a position to the end of the last token consumed. */
+  private Pos end(Pos.Builder pb) {
+    pb.union(token.endLine, token.endColumn + 1);
+    return pb.build();
+  }
+
+  private ParseException unexpected(Token t) {
+    return new ParseException("Encountered \""
+        + (t.kind == Kind.EOF ? "<EOF>" : t.image) + "\" at line "
+        + t.beginLine + ", column " + t.beginColumn + ".");
+  }
+
+  // Lexer
+
+  /** Returns the next token, without consuming it. */
+  private Token la() throws ParseException {
+    if (lookahead == null) {
+      lookahead = lex();
+    }
+    return lookahead;
+  }
+
+  /** Consumes and returns the next token. */
+  private Token next() throws ParseException {
+    final Token t = la();
+    lookahead = null;
+    token = t;
+    return t;
+  }
+
+  private Token expect(Kind kind) throws ParseException {
+    final Token t = next();
+    if (t.kind != kind) {
+      throw unexpected(t);
+    }
+    return t;
+  }
+
+  /** Advances over one character, updating the line and column. */
+  private void advance() {
+    final char c = text.charAt(offset++);
+    ++column;
+    if (prevCharIsLF) {
+      prevCharIsLF = false;
+      line += column = 1;
+    } else if (prevCharIsCR) {
+      prevCharIsCR = false;
+      if (c == '\n') {
+        prevCharIsLF = true;
+      } else {
+        line += column = 1;
+      }
+    }
+    switch (c) {
+    case '\r':
+      prevCharIsCR = true;
+      break;
+    case '\n':
+      prevCharIsLF = true;
+      break;
+    case '\t':
+      --column;
+      column += tabSize - column % tabSize;
+      break;
+    default:
+      break;
+    }
+  }
+
+  private int charAt(int i) {
+    return i < text.length() ? text.charAt(i) : -1;
+  }
+
+  /** Reads the token of a given kind and length, starting at the current
+   * offset. */
+  private Token token(Kind kind, int length) {
+    final int start = offset;
+    advance();
+    final int beginLine = line;
+    final int beginColumn = column;
+    for (int i = 1; i < length; i++) {
+      advance();
+    }
+    return new Token(kind, text.substring(start, offset), beginLine,
+        beginColumn, line, column);
+  }
+
+  /** Reads the body of a code block, up to and including ";;". The
+   * {@code ";;"} becomes the last token consumed. */
+  private String code() throws ParseException {
+    final int end = text.indexOf(";;", offset);
+    if (end < 0) {
+      throw new ParseException("Encountered \"<EOF>\" in code block "
+          + "at line " + line + ", column " + column + ".");
+    }
+    final String code = text.substring(offset, end);
+    while (offset < end) {
+      advance();
+    }
+    token = token(Kind.END_CODE, 2);
+    return code;
+  }
+
+  private Token lex() throws ParseException {
+    for (;;) {
+      final int c = charAt(offset);
+      if (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f') {
+        advance();
+      } else {
+        break;
+      }
+    }
+    final int c = charAt(offset);
+    switch (c) {
+    case -1:
+      return new Token(Kind.EOF, "", line, column, line, column);
+    case ',':
+      return token(Kind.COMMA, 1);
+    case '{':
+      return token(Kind.LBRACE, 1);
+    case '}':
+      return token(Kind.RBRACE, 1);
+    case '[':
+      return token(Kind.LBRACKET, 1);
+    case ']':
+      return token(Kind.RBRACKET, 1);
+    case ':':
+      return token(Kind.COLON, 1);
+    case '#':
+      int i = offset + 1;
+      while (i < text.length() && text.charAt(i) != '\n'
+          && text.charAt(i) != '\r') {
+        ++i;
+      }
+      return token(Kind.COMMENT, i - offset);
+    case '"':
+      return token(Kind.STRING, stringLength());
+    default:
+      if (isLetter(c)) {
+        int j = offset + 1;
+        while (isLetter(charAt(j)) || isDigit(charAt(j))
+            || charAt(j) == '_') {
+          ++j;
+        }
+        return token(Kind.IDENTIFIER, j - offset);
+      }
+      final int n = numberLength();
+      if (n > 0) {
+        return token(Kind.NUMBER, n);
+      }
+      // Report the position of the offending character
+      advance();
+      throw new ParseException("Lexical error at line " + line
+          + ", column " + column + ".  Encountered: \""
+          + (char) c + "\"");
+    }
+  }
+
+  /** Returns the length of the quoted string at the current offset; an
+   * escape is either {@code \"} or {@code \\}. */
+  private int stringLength() throws ParseException {
+    int i = offset + 1;
+    for (;;) {
+      final int c = charAt(i);
+      if (c == '"') {
+        return i + 1 - offset;
+      }
+      if (c == '\\' && (charAt(i + 1) == '"' || charAt(i + 1) == '\\')) {
+        i += 2;
+      } else if (c == '\\' || c < 0) {
+        // Not a valid string; the generated lexer would match just the
+        // double-quote, which is never valid.
+        throw unexpected(token(Kind.STRING, 1));
+      } else {
+        ++i;
+      }
+    }
+  }
+
+  /** Returns the length of the longest number at the current offset,
+   * or 0. */
+  private int numberLength() {
+    int i = offset;
+    if (charAt(i) == '-') {
+      ++i;
+    }
+    final int digits = digits(i);
+    if (digits == 0) {
+      return 0;
+    }
+    i += digits;
+    if (charAt(i) == '.') {
+      final int fraction = digits(i + 1);
+      if (fraction > 0) {
+        i += 1 + fraction;
+      }
+    }
+    if (charAt(i) == 'e' || charAt(i) == 'E') {
+      final int j = charAt(i + 1) == '-' ? i + 2 : i + 1;
+      final int exponent = digits(j);
+      if (exponent > 0) {
+        i = j + exponent;
+      }
+    }
+    return i - offset;
+  }
+
+  private int digits(int i) {
+    int j = i;
+    while (isDigit(charAt(j))) {
+      ++j;
+    }
+    return j - i;
+  }
+
+  private static boolean isLetter(int c) {
+    return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+  }
+
+  private static boolean isDigit(int c) {
+    return c >= '0' && c <= '9';
+  }
+
+  /** Kind of token. */
+  private enum Kind {
+    NUMBER, STRING, IDENTIFIER, COMMENT, COMMA, LBRACE, RBRACE, LBRACKET,
+    RBRACKET, COLON, END_CODE, EOF
+  }
+
+  /** Token. As in JavaCC, columns are 1-based and the end column is
+   * inclusive. */
+  private static class Token {
+    final Kind kind;
+    final String image;
+    final int beginLine;
+    final int beginColumn;
+    final int endLine;
+    final int endColumn;
+
+    Token(Kind kind, String image, int beginLine, int beginColumn,
+        int endLine, int endColumn) {
+      this.kind = kind;
+      this.image = image;
+      this.beginLine = beginLine;
+      this.beginColumn = beginColumn;
+      this.endLine = endLine;
+      this.endColumn = endColumn;
+    }
+  }
+
+  /** Object or list that is open. */
+  private static class Frame {
+    final @Nullable ObjectHandler obj;
+    final @Nullable ListHandler list;
+    /** Whether a list has had at least one value. */
+    boolean hasValue;
+
+    Frame(ObjectHandler obj) {
+      this.obj = obj;
+      this.list = null;
+    }
+
+    Frame(ListHandler list) {
+      this.obj = null;
+      this.list = list;
+    }
+  }
+}
+
+// End IterativeParser.java
@@ -18,19 +18,40 @@
  */
 package net.hydromatic.lookml.parse;
 
+import net.hydromatic.lookml.LaxHandlers;
+import net.hydromatic.lookml.LookmlEvent;
+import net.hydromatic.lookml.LookmlMetrics;
+import net.hydromatic.lookml.LookmlRecorder;
 import net.hydromatic.lookml.ObjectHandler;
 import net.hydromatic.lookml.Source;
 import net.hydromatic.lookml.Sources;
 
 import com.google.common.collect.ImmutableSortedSet;
 
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.FilterInputStream;
+import java.io.FilterReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkArgument;
 
 import static java.util.Objects.requireNonNull;
 
 /** Utilities for parsing LookML. */
 public class LookmlParsers {
+  /** Default value of {@link Config#maxDepth()}; far deeper than any
+   * hand-written LookML, but shallow enough that the recursive parser will
+   * not overflow a thread's stack. */
+  public static final int DEFAULT_MAX_DEPTH = 256;
+
   private LookmlParsers() {}
 
   /**
@@ -39,26 +60,267 @@ private LookmlParsers() {}
    * <p>The parser is push-based, which means that rather than creating an
    * abstract syntax tree (AST) it generates a stream of events.
    *
+   * <p>If a {@link LookmlRecorder} is installed, reports to it.
+   *
    * @param handler Consumer of the events generated by the parser
    * @param config Parser configuration
    */
   public static void parse(ObjectHandler handler, Config config) {
+    final LookmlRecorder recorder = LookmlRecorder.installed();
+    if (recorder == null) {
+      parse_(handler, config, null);
+      return;
+    }
+    final LookmlRecorder.Span span =
+        recorder.start(LookmlRecorder.Phase.PARSE, config.source());
+    final LookmlMetrics metrics = LookmlMetrics.create();
+    boolean ok = false;
+    try {
+      parse(LaxHandlers.metrics(handler, "handle", metrics), config,
+          metrics);
+      ok = true;
+    } finally {
+      span.end(metrics.get("lex.bytes") + metrics.get("lex.chars"),
+          metrics.get("lex.tokens"), metrics.sum("handle.events."),
+          ok ? 0L : 1L,
+          metrics.get("lex.nanos"));
+    }
+  }
+
+  /**
+   * Parses a LookML string, recording metrics.
+   *
+   * <p>Records the time spent in the parser as stage "lex", and the number
+   * of sources, bytes (or characters) and lines read. To exclude the time
+   * spent handling events from "lex", decorate {@code handler} using
+   * {@link LaxHandlers#metrics(ObjectHandler, String, LookmlMetrics)}.
+   *
+   * @param handler Consumer of the events generated by the parser
+   * @param config Parser configuration
+   * @param metrics Metrics registry
+   */
+  public static void parse(ObjectHandler handler, Config config,
+      LookmlMetrics metrics) {
+    metrics.increment("lex.sources");
+    metrics.time("lex", () -> parse_(handler, config, metrics));
+  }
+
+  private static void parse_(ObjectHandler handler, Config config,
+      @Nullable LookmlMetrics metrics) {
     final Source source = config.source();
-    final LookmlParserImpl parser;
+    final Reader reader;
+    final @Nullable Counter counter;
     if (source.preferStream()) {
       try {
-        parser = new LookmlParserImpl(source.inputStream());
+        InputStream in = source.inputStream();
+        if (metrics != null) {
+          final CountingInputStream countingIn = new CountingInputStream(in);
+          counter = countingIn.counter;
+          in = countingIn;
+        } else {
+          counter = null;
+        }
+        // Decode the stream as UTF-8, not the platform's default charset,
+        // so that non-ASCII strings and code blocks are preserved.
+        reader = new InputStreamReader(in, StandardCharsets.UTF_8);
       } catch (IOException e) {
         throw new RuntimeException(e);
       }
     } else {
-      parser = new LookmlParserImpl(source.reader());
+      if (metrics != null) {
+        final CountingReader countingReader =
+            new CountingReader(source.reader());
+        counter = countingReader.counter;
+        reader = countingReader;
+      } else {
+        counter = null;
+        reader = source.reader();
+      }
+    }
+    final LookmlParserImpl parser = new LookmlParserImpl(reader);
+    final @Nullable CountingTokenManager tokenManager;
+    if (metrics != null) {
+      tokenManager = new CountingTokenManager(parser.jj_input_stream);
+      parser.ReInit(tokenManager);
+    } else {
+      tokenManager = null;
     }
     parser.config(config);
     try {
       parser.document(handler);
     } catch (ParseException e) {
       throw new RuntimeException(e);
+    } finally {
+      if (metrics != null && counter != null) {
+        metrics.add(source.preferStream() ? "lex.bytes" : "lex.chars",
+            counter.count);
+        metrics.add("lex.lines", counter.lines());
+      }
+      if (metrics != null && tokenManager != null) {
+        metrics.add("lex.tokens", tokenManager.count);
+      }
+    }
+  }
+
+  /**
+   * Parses a LookML string, returning the events as a stream.
+   *
+   * <p>Unlike {@link #parse(ObjectHandler, Config)}, the consumer sets the
+   * pace: the parser runs in {@code executor}, and pauses whenever
+   * {@code capacity} events are waiting to be consumed. Close the stream to
+   * stop parsing early.
+   *
+   * @param config Parser configuration
+   * @param capacity Maximum number of events waiting to be consumed
+   * @param executor Executor in which to run the parser
+   *
+   * @see LaxHandlers#events
+   */
+  public static Stream<LookmlEvent> parseEvents(Config config, int capacity,
+      Executor executor) {
+    return LaxHandlers.events(h -> parse(h, config), capacity, executor);
+  }
+
+  /**
+   * Parses a LookML document, splitting it into chunks and parsing the
+   * chunks in parallel.
+   *
+   * <p>The handler receives the same events, in the same order and with
+   * the same positions, as from {@link #parse(ObjectHandler, Config)}; it
+   * is called only from the current thread.
+   *
+   * <p>A chunk ends at the line feed after a property of the root object
+   * whose value is an object, so this method is effective for documents,
+   * such as generated models, whose root object contains many views or
+   * explores. (A document has only one root property; as with the
+   * sequential parser, anything after it is ignored, and is never split
+   * into chunks.) The document is read into memory, and the events of up
+   * to {@code parallelism} chunks are buffered.
+   *
+   * @param handler Consumer of the events generated by the parser
+   * @param config Parser configuration
+   * @param chunkSize Minimum number of bytes in a chunk
+   * @param parallelism Maximum number of chunks to parse at a time
+   * @param executor Executor in which to parse chunks
+   */
+  public static void parseParallel(ObjectHandler handler, Config config,
+      int chunkSize, int parallelism, Executor executor) {
+    ParallelParser.parse(handler, config, chunkSize, parallelism, executor);
+  }
+
+  /** Counts the bytes or characters read, and the number of lines. */
+  private static class Counter {
+    long count;
+    long newlines;
+    int last = -1;
+
+    void add(int c) {
+      ++count;
+      if (c == '\n') {
+        ++newlines;
+      }
+      last = c;
+    }
+
+    /** Returns the number of lines, including a last line that has no
+     * line terminator. */
+    long lines() {
+      return count == 0 || last == '\n' ? newlines : newlines + 1;
+    }
+  }
+
+  /** Input stream that counts the bytes and lines it reads. */
+  private static class CountingInputStream extends FilterInputStream {
+    final Counter counter = new Counter();
+
+    CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override public int read() throws IOException {
+      final int c = super.read();
+      if (c >= 0) {
+        counter.add(c);
+      }
+      return c;
+    }
+
+    @Override public int read(byte[] b, int off, int len) throws IOException {
+      final int n = super.read(b, off, len);
+      for (int i = 0; i < n; i++) {
+        counter.add(b[off + i]);
+      }
+      return n;
+    }
+  }
+
+  /** Reader that counts the characters and lines it reads. */
+  private static class CountingReader extends FilterReader {
+    final Counter counter = new Counter();
+
+    CountingReader(Reader in) {
+      super(in);
+    }
+
+    @Override public int read() throws IOException {
+      final int c = super.read();
+      if (c >= 0) {
+        counter.add(c);
+      }
+      return c;
+    }
+
+    @Override public int read(char[] b, int off, int len) throws IOException {
+      final int n = super.read(b, off, len);
+      for (int i = 0; i < n; i++) {
+        counter.add(b[off + i]);
+      }
+      return n;
+    }
+  }
+
+  /** Token manager that counts the tokens it reads, not including the
+   * end of the source. */
+  private static class CountingTokenManager
+      extends LookmlParserImplTokenManager {
+    long count;
+
+    CountingTokenManager(SimpleCharStream stream) {
+      super(stream);
+    }
+
+    @Override public Token getNextToken() {
+      final Token token = super.getNextToken();
+      if (token.kind != EOF) {
+        ++count;
+      }
+      return token;
+    }
+  }
+
+  /**
+   * Parses a LookML document using a parser that keeps its state in an
+   * explicit stack.
+   *
+   * <p>The handler receives the same events, with the same positions, as
+   * from {@link #parse(ObjectHandler, Config)}. But whereas that parser
+   * recurses for each level of nesting, and may overflow the stack if the
+   * document is deeply nested, this parser's use of the stack is bounded,
+   * so it is suitable for threads with small stacks, such as virtual
+   * threads. The document is read into memory.
+   *
+   * <p>If an object or list would be nested more deeply than
+   * {@link Config#maxDepth()}, throws, giving the position of the opening
+   * brace or bracket.
+   *
+   * @param handler Consumer of the events generated by the parser
+   * @param config Parser configuration
+   */
+  public static void parseIterative(ObjectHandler handler, Config config) {
+    try {
+      IterativeParser.parse(handler, config);
+    } catch (ParseException e) {
+      throw new RuntimeException(e);
     }
   }
 
@@ -86,22 +348,34 @@ public interface Config {
 
     /** Sets {@link #tabSize()}. */
     Config withTabSize(int tabSize);
+
+    /** Maximum depth to which objects and lists may be nested; the default
+     * is {@link #DEFAULT_MAX_DEPTH}. The root object of a document is at
+     * depth 1. */
+    int maxDepth();
+
+    /** Sets {@link #maxDepth()}. */
+    Config withMaxDepth(int maxDepth);
   }
 
   /** Implementation of {@link Config}. */
   private static class ConfigImpl implements Config {
     private static final Config DEFAULT =
-        new ConfigImpl(ImmutableSortedSet.of(), Sources.fromString(""), 1);
+        new ConfigImpl(ImmutableSortedSet.of(), Sources.fromString(""), 1,
+            DEFAULT_MAX_DEPTH);
 
     private final Set<String> codePropertyNames;
     private final Source source;
     private final int tabSize;
+    private final int maxDepth;
 
     ConfigImpl(Iterable<String> codePropertyNames, Source source,
-        int tabSize) {
+        int tabSize, int maxDepth) {
+      checkArgument(maxDepth > 0, "maxDepth must be positive");
       this.codePropertyNames = ImmutableSortedSet.copyOf(codePropertyNames);
       this.source = requireNonNull(source);
       this.tabSize = tabSize;
+      this.maxDepth = maxDepth;
     }
 
     @Override public Set<String> codePropertyNames() {
@@ -110,7 +384,7 @@ private static class ConfigImpl implements Config {
 
     @Override public Config withCodePropertyNames(
         Iterable<String> codePropertyNames) {
-      return new ConfigImpl(codePropertyNames, source, tabSize);
+      return new ConfigImpl(codePropertyNames, source, tabSize, maxDepth);
     }
 
     @Override public Source source() {
@@ -118,7 +392,7 @@ private static class ConfigImpl implements Config {
     }
 
     @Override public Config withSource(Source source) {
-      return new ConfigImpl(codePropertyNames, source, tabSize);
+      return new ConfigImpl(codePropertyNames, source, tabSize, maxDepth);
     }
 
     @Override public int tabSize() {
@@ -126,7 +400,15 @@ private static class ConfigImpl implements Config {
     }
 
     @Override public Config withTabSize(int tabSize) {
-      return new ConfigImpl(codePropertyNames, source, tabSize);
+      return new ConfigImpl(codePropertyNames, source, tabSize, maxDepth);
+    }
+
+    @Override public int maxDepth() {
+      return maxDepth;
+    }
+
+    @Override public Config withMaxDepth(int maxDepth) {
+      return new ConfigImpl(codePropertyNames, source, tabSize, maxDepth);
     }
   }
 }
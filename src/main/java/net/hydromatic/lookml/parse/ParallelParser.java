@@ -0,0 +1,308 @@
+/*
+ * Licensed to the LookML Authors under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.
+ * The LookML Authors license this file to you under the Apache
+ * License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License.  You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package net.hydromatic.lookml.parse;
+
+import net.hydromatic.lookml.LaxHandlers;
+import net.hydromatic.lookml.LookmlEvent;
+import net.hydromatic.lookml.ObjectHandler;
+import net.hydromatic.lookml.Source;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.io.ByteStreams;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/** Parses a document by splitting it into chunks and parsing the chunks in
+ * parallel.
+ *
+ * <p>A {@link StructuralIndex} finds the properties of the root object
+ * whose values are objects, such as each {@code view} and {@code explore}
+ * in a model. A chunk ends at the line after the closing brace of such a
+ * property, so never inside a string, comment or code block.
+ *
+ * <p>To make each chunk a valid document, every chunk but the first is
+ * wrapped in a dummy object property, and every chunk but the last is
+ * given a closing brace. Each chunk is parsed into a list of events; the
+ * events of the wrapper are discarded, and the rest are replayed to the
+ * handler in document order. The parser of each chunk numbers lines from
+ * the chunk's first line in the document (counting carriage returns and
+ * line feeds as the parser does), so positions (and the positions in error
+ * messages) are the same as if the document had been parsed in one piece.
+ *
+ * <p>A document has one root property; the parser ignores anything after
+ * it. So chunks are never split at the top level of the document: the
+ * last chunk contains the end of the root object and anything that
+ * follows, which its parser ignores as the sequential parser would. */
+class ParallelParser {
+  private ParallelParser() {}
+
+  static void parse(ObjectHandler handler, LookmlParsers.Config config,
+      int chunkSize, int parallelism, Executor executor) {
+    checkArgument(chunkSize > 0, "chunkSize must be positive");
+    checkArgument(parallelism > 0, "parallelism must be positive");
+    final byte[] bytes = read(config.source());
+    final StructuralIndex index =
+        StructuralIndex.scan(bytes, config.codePropertyNames());
+    final List<Chunk> chunks = split(bytes, index, chunkSize);
+    if (chunks.size() == 1) {
+      parseChunk(bytes, chunks.get(0), "", config, handler);
+      return;
+    }
+
+    String wrapper = "chunk";
+    while (config.codePropertyNames().contains(wrapper)) {
+      wrapper += "_";
+    }
+    final String wrapperName = wrapper;
+    final List<CompletableFuture<Parsed>> futures = new ArrayList<>();
+    for (int i = 0; i < chunks.size(); i++) {
+      futures.add(null);
+    }
+    final Submitter submitter = i -> {
+      final Chunk chunk = chunks.get(i);
+      futures.set(i,
+          CompletableFuture.supplyAsync(() -> {
+            final List<LookmlEvent> events = new ArrayList<>();
+            try {
+              parseChunk(bytes, chunk, wrapperName, config,
+                  LaxHandlers.eventSink(events::add));
+            } catch (RuntimeException | Error e) {
+              return new Parsed(events, chunk.first ? 0 : 1, events.size(),
+                  e);
+            }
+            // Remove the events of the wrapper: the opening of the dummy
+            // property (all but the first chunk), and the closing of the
+            // root object and the document (all but the last chunk)
+            return new Parsed(events, chunk.first ? 0 : 1,
+                chunk.last ? events.size() : events.size() - 2, null);
+          }, executor));
+    };
+    for (int i = 0; i < Math.min(parallelism, chunks.size()); i++) {
+      submitter.submit(i);
+    }
+
+    final Iterator<Iterator<LookmlEvent>> chunkEvents =
+        new AbstractIterator<Iterator<LookmlEvent>>() {
+          int i = 0;
+
+          @Override protected Iterator<LookmlEvent> computeNext() {
+            if (i == chunks.size()) {
+              return endOfData();
+            }
+            final Parsed parsed = futures.get(i).join();
+            futures.set(i, null);
+            if (i + parallelism < chunks.size()) {
+              submitter.submit(i + parallelism);
+            }
+            ++i;
+            return parsed.iterator();
+          }
+        };
+    try {
+      LaxHandlers.replay(Iterators.concat(chunkEvents), handler);
+    } finally {
+      for (CompletableFuture<Parsed> future : futures) {
+        if (future != null) {
+          future.cancel(false);
+        }
+      }
+    }
+  }
+
+  /** Reads the contents of a source as UTF-8 bytes. */
+  private static byte[] read(Source source) {
+    if (!source.preferStream()) {
+      return source.contentsAsString().getBytes(UTF_8);
+    }
+    try (InputStream in = source.inputStream()) {
+      return ByteStreams.toByteArray(in);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** Splits a document into chunks of at least {@code chunkSize} bytes,
+   * except perhaps the last. */
+  static List<Chunk> split(byte[] bytes, StructuralIndex index,
+      int chunkSize) {
+    final List<Chunk> chunks = new ArrayList<>();
+    int start = 0;
+    int line = 1;
+    int depth = 0;
+    // Whether the root object has ended; the parser ignores what follows
+    boolean ended = false;
+    for (int i = 0; i < index.size() && !ended; i++) {
+      final int p = index.position(i);
+      switch (bytes[p]) {
+      case '{':
+      case '[':
+        ++depth;
+        break;
+      case ']':
+        --depth;
+        break;
+      case '}':
+        // A chunk may end after a closing brace that returns to the root
+        // object and is followed only by spaces before the end of the line
+        if (--depth == 1
+            && i + 1 < index.size()
+            && bytes[index.position(i + 1)] == '\n'
+            && isBlank(bytes, p + 1, index.position(i + 1))) {
+          final int next = index.position(i + 1) + 1;
+          if (next - start >= chunkSize && next < bytes.length) {
+            chunks.add(new Chunk(start, next, line, chunks.isEmpty(), false));
+            line += lineCount(bytes, start, next);
+            start = next;
+          }
+        }
+        ended = depth == 0;
+        break;
+      default:
+        break;
+      }
+    }
+    chunks.add(new Chunk(start, bytes.length, line, chunks.isEmpty(), true));
+    return chunks;
+  }
+
+  /** Returns the number of line terminators in a region; as in JavaCC's
+   * {@code SimpleCharStream}, a terminator is a line feed, a carriage
+   * return, or a carriage return followed by a line feed. */
+  private static int lineCount(byte[] bytes, int start, int end) {
+    int n = 0;
+    for (int i = start; i < end; i++) {
+      if (bytes[i] == '\r') {
+        ++n;
+      } else if (bytes[i] == '\n' && (i == start || bytes[i - 1] != '\r')) {
+        ++n;
+      }
+    }
+    return n;
+  }
+
+  private static boolean isBlank(byte[] bytes, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (bytes[i] != ' ' && bytes[i] != '\t' && bytes[i] != '\r') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Parses a chunk, wrapping it if it is not the whole document. */
+  private static void parseChunk(byte[] bytes, Chunk chunk, String wrapper,
+      LookmlParsers.Config config, ObjectHandler handler) {
+    final String prefix = chunk.first ? "" : wrapper + ": {\n";
+    final String suffix = chunk.last ? "" : "}\n";
+    final Reader reader =
+        new InputStreamReader(
+            new SequenceInputStream(
+                new SequenceInputStream(
+                    new ByteArrayInputStream(prefix.getBytes(UTF_8)),
+                    new ByteArrayInputStream(bytes, chunk.start,
+                        chunk.end - chunk.start)),
+                new ByteArrayInputStream(suffix.getBytes(UTF_8))),
+            UTF_8);
+    final LookmlParserImpl parser = new LookmlParserImpl(reader);
+    // The prefix, if any, occupies the line before the chunk's first line
+    parser.startAt(reader, chunk.first ? chunk.line : chunk.line - 1);
+    parser.config(config);
+    try {
+      parser.document(handler);
+    } catch (ParseException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** Events from parsing a chunk, and the exception, if any, that stopped
+   * the parser. */
+  private static class Parsed {
+    final List<LookmlEvent> events;
+    final @Nullable Throwable failure;
+
+    Parsed(List<LookmlEvent> events, int from, int to,
+        @Nullable Throwable failure) {
+      this.events = events.subList(from, to);
+      this.failure = failure;
+    }
+
+    /** Returns an iterator over the events; if parsing failed, the
+     * iterator re-throws the exception after the last event, as the
+     * sequential parser would have. */
+    Iterator<LookmlEvent> iterator() {
+      final Throwable e = failure;
+      if (e == null) {
+        return events.iterator();
+      }
+      return Iterators.concat(events.iterator(),
+          new AbstractIterator<LookmlEvent>() {
+            @Override protected LookmlEvent computeNext() {
+              Throwables.throwIfUnchecked(e);
+              throw new AssertionError(e);
+            }
+          });
+    }
+  }
+
+  /** Starts parsing the chunk with a given ordinal. */
+  @FunctionalInterface
+  private interface Submitter {
+    void submit(int i);
+  }
+
+  /** Region of a document. */
+  static class Chunk {
+    /** Offset of the first byte. */
+    final int start;
+    /** Offset after the last byte. */
+    final int end;
+    /** Line number of the first byte, 1-based. */
+    final int line;
+    final boolean first;
+    final boolean last;
+
+    Chunk(int start, int end, int line, boolean first, boolean last) {
+      this.start = start;
+      this.end = end;
+      this.line = line;
+      this.first = first;
+      this.last = last;
+    }
+  }
+}
+
+// End ParallelParser.java
@@ -0,0 +1,318 @@
+/*
+ * Licensed to the LookML Authors under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.
+ * The LookML Authors license this file to you under the Apache
+ * License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License.  You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package net.hydromatic.lookml.parse;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Index of the structural characters in a LookML document.
+ *
+ * <p>The index is built in a single pass over the UTF-8 encoded document,
+ * independently of the parser, in the manner of the first stage of
+ * <a href="https://github.com/simdjson/simdjson">simdjson</a>. A consumer
+ * can use it to find the boundaries of objects, lists, strings, comments
+ * and code blocks without lexing the whole document.
+ *
+ * <p>The structural characters are
+ * <code>{ } [ ] : ,</code>;
+ * the double-quotes that begin and end a string;
+ * the {@code #} that begins a comment;
+ * the first {@code ;} of the {@code ;;} that ends a code block;
+ * and line feed.
+ * Characters inside a string, comment or code block are not structural,
+ * except for line feed, which is always indexed so that consumers can
+ * compute line numbers.
+ *
+ * <p>The scan reads the document eight bytes at a time, and finds the
+ * candidate characters in each 64-bit word using bitwise arithmetic ("SIMD
+ * within a register"). A scalar pass over the candidates keeps track of
+ * strings, comments and code blocks. Every byte of a multi-byte UTF-8
+ * sequence is 0x80 or greater, so can never be mistaken for a structural
+ * character.
+ */
+public class StructuralIndex {
+  private static final long ONES = 0x0101010101010101L;
+  private static final long LOW7 = 0x7f7f7f7f7f7f7f7fL;
+
+  private final byte[] bytes;
+  private final int[] positions;
+  private final int size;
+
+  private StructuralIndex(byte[] bytes, int[] positions, int size) {
+    this.bytes = bytes;
+    this.positions = positions;
+    this.size = size;
+  }
+
+  /** Creates an index of a document.
+   *
+   * @param bytes UTF-8 encoded document
+   * @param codePropertyNames Names of properties that are followed by a
+   *   code block; see {@link LookmlParsers.Config#codePropertyNames()}
+   */
+  public static StructuralIndex scan(byte[] bytes,
+      Set<String> codePropertyNames) {
+    return scan(bytes, 0, bytes.length, codePropertyNames);
+  }
+
+  /** Creates an index of a region of a document. The region must start
+   * outside any string, comment or code block. */
+  public static StructuralIndex scan(byte[] bytes, int offset, int length,
+      Set<String> codePropertyNames) {
+    final int end = offset + length;
+    if (offset < 0 || length < 0 || end > bytes.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    final Scanner scanner =
+        new Scanner(bytes, offset, end, ImmutableSet.copyOf(codePropertyNames));
+    final ByteBuffer buf =
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    int i = offset;
+    for (; i + 8 <= end; i += 8) {
+      long m = candidates(buf.getLong(i));
+      while (m != 0) {
+        final int p = i + (Long.numberOfTrailingZeros(m) >>> 3);
+        scanner.accept(p, bytes[p]);
+        m &= m - 1;
+      }
+    }
+    for (; i < end; i++) {
+      // A one-byte word; its seven zero bytes never match
+      if (candidates(bytes[i] & 0xff) != 0) {
+        scanner.accept(i, bytes[i]);
+      }
+    }
+    return new StructuralIndex(bytes, scanner.positions, scanner.size);
+  }
+
+  /** Returns a word with the high bit set in each byte of {@code word}
+   * that might be a structural character. */
+  private static long candidates(long word) {
+    return eq(word, '{') | eq(word, '}')
+        | eq(word, '[') | eq(word, ']')
+        | eq(word, ':') | eq(word, ',')
+        | eq(word, '"') | eq(word, '\\')
+        | eq(word, '#') | eq(word, ';')
+        | eq(word, '\n') | eq(word, '\r');
+  }
+
+  /** Returns a word with the high bit set in each byte of {@code word}
+   * that equals {@code c}, and other bits clear.
+   *
+   * <p>After the exclusive-or, matching bytes are zero; adding 0x7f to the
+   * low 7 bits of a byte sets its high bit unless the byte is zero, and no
+   * carry crosses into the next byte. */
+  private static long eq(long word, char c) {
+    final long v = word ^ (c * ONES);
+    return ~(((v & LOW7) + LOW7) | v | LOW7);
+  }
+
+  /** Returns the number of structural characters. */
+  public int size() {
+    return size;
+  }
+
+  /** Returns the byte offset of the {@code i}th structural character. */
+  public int position(int i) {
+    if (i < 0 || i >= size) {
+      throw new IndexOutOfBoundsException("index " + i + ", size " + size);
+    }
+    return positions[i];
+  }
+
+  /** Returns the {@code i}th structural character. */
+  public char charAt(int i) {
+    return (char) bytes[position(i)];
+  }
+
+  /** Returns the byte offsets of the structural characters. */
+  public int[] positions() {
+    return Arrays.copyOf(positions, size);
+  }
+
+  @Override public String toString() {
+    final StringBuilder b = new StringBuilder();
+    for (int i = 0; i < size; i++) {
+      final char c = charAt(i);
+      b.append(c == '\n' ? "\\n" : String.valueOf(c));
+    }
+    return b.toString();
+  }
+
+  /** State of a scan. */
+  private enum State {
+    NORMAL, STRING, COMMENT, CODE
+  }
+
+  /** Filters candidate characters, tracking whether the scan is in a
+   * string, comment or code block, and accumulates structural
+   * characters. */
+  private static class Scanner {
+    final byte[] bytes;
+    final int start;
+    final int end;
+    final Set<String> codePropertyNames;
+    int[] positions;
+    int size;
+    State state = State.NORMAL;
+    /** Candidates before this offset are skipped; set after a backslash
+     * in a string, and after the ";;" that ends a code block. */
+    int skipTo;
+    /** Depth of nested lists; a code block cannot start inside a list. */
+    int listDepth;
+
+    Scanner(byte[] bytes, int start, int end,
+        Set<String> codePropertyNames) {
+      this.bytes = bytes;
+      this.start = start;
+      this.end = end;
+      this.codePropertyNames = codePropertyNames;
+      this.positions = new int[16 + (end - start) / 8];
+    }
+
+    void accept(int p, byte c) {
+      if (p < skipTo) {
+        return;
+      }
+      switch (state) {
+      case NORMAL:
+        switch (c) {
+        case '"':
+          add(p);
+          state = State.STRING;
+          break;
+        case '#':
+          add(p);
+          state = State.COMMENT;
+          break;
+        case ':':
+          add(p);
+          if (listDepth == 0 && isCodeProperty(p)) {
+            state = State.CODE;
+          }
+          break;
+        case '[':
+          ++listDepth;
+          add(p);
+          break;
+        case ']':
+          if (listDepth > 0) {
+            --listDepth;
+          }
+          add(p);
+          break;
+        case '{':
+        case '}':
+        case ',':
+        case '\n':
+          add(p);
+          break;
+        default:
+          break;
+        }
+        break;
+
+      case STRING:
+        switch (c) {
+        case '\\':
+          skipTo = p + 2;
+          break;
+        case '"':
+          add(p);
+          state = State.NORMAL;
+          break;
+        case '\n':
+          add(p);
+          break;
+        default:
+          break;
+        }
+        break;
+
+      case COMMENT:
+        if (c == '\n' || c == '\r') {
+          state = State.NORMAL;
+          if (c == '\n') {
+            add(p);
+          }
+        }
+        break;
+
+      case CODE:
+        if (c == ';' && p + 1 < end && bytes[p + 1] == ';') {
+          add(p);
+          skipTo = p + 2;
+          state = State.NORMAL;
+        } else if (c == '\n') {
+          add(p);
+        }
+        break;
+
+      default:
+        throw new AssertionError(state);
+      }
+    }
+
+    void add(int p) {
+      if (size == positions.length) {
+        positions = Arrays.copyOf(positions, size * 2);
+      }
+      positions[size++] = p;
+    }
+
+    /** Returns whether the colon at offset {@code p} follows the name of a
+     * code property. */
+    boolean isCodeProperty(int p) {
+      if (codePropertyNames.isEmpty()) {
+        return false;
+      }
+      int j = p;
+      while (j > start && isSpace(bytes[j - 1])) {
+        --j;
+      }
+      int i = j;
+      while (i > start && isIdentifierPart(bytes[i - 1])) {
+        --i;
+      }
+      return i < j
+          && codePropertyNames.contains(
+              StandardCharsets.ISO_8859_1
+                  .decode(ByteBuffer.wrap(bytes, i, j - i)).toString());
+    }
+
+    static boolean isSpace(byte c) {
+      return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+
+    static boolean isIdentifierPart(byte c) {
+      return c >= 'a' && c <= 'z'
+          || c >= 'A' && c <= 'Z'
+          || c >= '0' && c <= '9'
+          || c == '_';
+    }
+  }
+}
+
+// End StructuralIndex.java
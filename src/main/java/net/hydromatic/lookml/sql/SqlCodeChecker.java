@@ -0,0 +1,387 @@
+/*
+ * Licensed to the LookML Authors under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.
+ * The LookML Authors license this file to you under the Apache
+ * License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License.  You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package net.hydromatic.lookml.sql;
+
+import net.hydromatic.lookml.CodeReference;
+import net.hydromatic.lookml.FilterObjectHandler;
+import net.hydromatic.lookml.ObjectHandler;
+import net.hydromatic.lookml.Pos;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import org.apache.calcite.sql.SqlNode;
+import org.apache.calcite.sql.parser.SqlParseException;
+import org.apache.calcite.sql.parser.SqlParser;
+import org.apache.calcite.sql.parser.SqlParserPos;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+import static java.util.Objects.requireNonNull;
+
+/** Parses the SQL in the code blocks of LookML documents using Calcite's
+ * {@link SqlParser}.
+ *
+ * <p>The handler returned by {@link #checker(ObjectHandler, Handler)}
+ * submits each code block whose property is in the map of
+ * {@link Kind kinds} (by default, {@code sql}, {@code sql_on} and
+ * {@code sql_table_name}) to an executor, and forwards all events to its
+ * consumer. When the document is closed, it waits for the code blocks to be
+ * parsed, and reports the result of each, in document order, to a
+ * {@link Handler}. The position of a syntax error is mapped back to the
+ * line and column in the LookML document.
+ *
+ * <p>Before parsing, each reference such as <code>${TABLE}</code> or
+ * <code>${view.field}</code> is replaced by an identifier of the same
+ * length, so that positions in the SQL are positions in the code block.
+ * Parse results are cached, keyed by the kind and the resulting text
+ * without leading and trailing white space, because the same snippets
+ * (such as <code>${TABLE}.id</code>) occur many times in a project. A
+ * checker, and its cache, may be shared by documents that are parsed
+ * concurrently. Nodes in the cache are shared, so a handler must not
+ * modify the {@link SqlNode} it is given.
+ *
+ * <p>This package requires Calcite, which is an optional dependency of
+ * this library. */
+public class SqlCodeChecker {
+  /** Kinds of the default code properties: "sql" and "sql_on" are
+   * expressions, and "sql_table_name" is a table. */
+  public static final Map<String, Kind> DEFAULT_KINDS =
+      ImmutableMap.of("sql", Kind.EXPRESSION,
+          "sql_on", Kind.EXPRESSION,
+          "sql_table_name", Kind.TABLE);
+
+  /** Placeholder for the body of a code block that is a table name. */
+  private static final String TABLE_PREFIX = "SELECT * FROM ";
+
+  private final Map<String, Kind> kinds;
+  private final SqlParser.Config parserConfig;
+  private final Executor executor;
+  private final Cache<String, Parsed> cache;
+
+  private SqlCodeChecker(Map<String, Kind> kinds,
+      SqlParser.Config parserConfig, Executor executor, long cacheSize) {
+    this.kinds = ImmutableMap.copyOf(kinds);
+    this.parserConfig = requireNonNull(parserConfig, "parserConfig");
+    this.executor = requireNonNull(executor, "executor");
+    this.cache =
+        CacheBuilder.newBuilder().maximumSize(cacheSize).recordStats()
+            .build();
+  }
+
+  /** Creates a checker.
+   *
+   * @param kinds Map from the name of a code property to the kind of SQL
+   *   it contains, for example {@link #DEFAULT_KINDS}; other code properties
+   *   are not parsed
+   * @param parserConfig Configuration of the SQL parser, such as its
+   *   dialect
+   * @param executor Executor in which to parse code blocks
+   * @param cacheSize Maximum number of parse results to cache
+   */
+  public static SqlCodeChecker create(Map<String, Kind> kinds,
+      SqlParser.Config parserConfig, Executor executor, long cacheSize) {
+    return new SqlCodeChecker(kinds, parserConfig, executor, cacheSize);
+  }
+
+  /** Returns the statistics of the cache of parse results. */
+  public CacheStats cacheStats() {
+    return cache.stats();
+  }
+
+  /** Returns a handler that parses the SQL in each code block, reports the
+   * results to {@code handler} when the document is closed, and forwards
+   * all events to {@code consumer}. */
+  public ObjectHandler checker(ObjectHandler consumer, Handler handler) {
+    return new CheckingHandler(consumer, new Document(handler), true);
+  }
+
+  /** Parses a code block, asynchronously. */
+  private CompletableFuture<Parsed> submit(Kind kind, String code) {
+    return CompletableFuture.supplyAsync(() -> {
+      final String text = substitute(code);
+      int start = 0;
+      int end = text.length();
+      while (start < end && Character.isWhitespace(text.charAt(start))) {
+        ++start;
+      }
+      while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+        --end;
+      }
+      final String trimmed = text.substring(start, end);
+      final Parsed parsed;
+      try {
+        parsed = cache.get(kind.name() + ":" + trimmed,
+            () -> parse(kind, trimmed));
+      } catch (ExecutionException | UncheckedExecutionException e) {
+        throw new RuntimeException(e.getCause());
+      }
+      // Convert an offset in the trimmed text to an offset in the code
+      return parsed.node != null ? parsed : parsed.shift(start);
+    }, executor);
+  }
+
+  /** Parses a snippet of SQL. */
+  private Parsed parse(Kind kind, String text) {
+    final String prefix = kind == Kind.TABLE ? TABLE_PREFIX : "";
+    final SqlParser parser = SqlParser.create(prefix + text, parserConfig);
+    try {
+      final SqlNode node =
+          kind == Kind.EXPRESSION
+              ? parser.parseExpression()
+              : parser.parseQuery();
+      return new Parsed(node, 0, "");
+    } catch (SqlParseException e) {
+      final int offset =
+          offset(prefix + text, e.getPos()) - prefix.length();
+      return new Parsed(null, Math.max(0, Math.min(offset, text.length())),
+          message(e));
+    }
+  }
+
+  /** Replaces each reference in a code block with an identifier of the same
+   * length. */
+  static String substitute(String code) {
+    final char[][] chars = {null};
+    CodeReference.scan(code, reference -> {
+      if (chars[0] == null) {
+        chars[0] = code.toCharArray();
+      }
+      final int offset = reference.offset();
+      chars[0][offset] = 'R';
+      for (int i = 1; i < reference.length(); i++) {
+        chars[0][offset + i] = '_';
+      }
+    });
+    return chars[0] == null ? code : String.valueOf(chars[0]);
+  }
+
+  /** Converts a line and column (both 1-based) in a string to an
+   * offset. */
+  private static int offset(String s, @Nullable SqlParserPos pos) {
+    if (pos == null) {
+      return 0;
+    }
+    int offset = 0;
+    for (int line = 1; line < pos.getLineNum(); line++) {
+      final int newline = s.indexOf('\n', offset);
+      if (newline < 0) {
+        return s.length();
+      }
+      offset = newline + 1;
+    }
+    return offset + pos.getColumnNum() - 1;
+  }
+
+  /** Returns the first line of a parser's error message, without the
+   * position, which is relative to the code block. */
+  private static String message(SqlParseException e) {
+    String message = String.valueOf(e.getMessage());
+    final int newline = message.indexOf('\n');
+    if (newline >= 0) {
+      message = message.substring(0, newline);
+    }
+    return message.replaceAll(" at line [0-9]+, column [0-9]+", "");
+  }
+
+  /** Returns the position, in the LookML document, of a character in a
+   * code block.
+   *
+   * <p>The code block ends just before the ";;" at the end of the code
+   * property, so the position is computed backwards from there. */
+  static Pos pos(Pos pos, String propertyName, String code, int offset) {
+    int newlines = 0;
+    for (int i = offset; i < code.length(); i++) {
+      if (code.charAt(i) == '\n') {
+        ++newlines;
+      }
+    }
+    final int line = pos.endLine - newlines;
+    final int lineStart = code.lastIndexOf('\n', offset - 1);
+    final int column;
+    if (newlines == 0) {
+      column = pos.endColumn - 2 - (code.length() - offset);
+    } else if (lineStart >= 0) {
+      column = offset - lineStart;
+    } else {
+      // The error is on the first line of a code block that spans several
+      // lines; the code block starts after "sql:".
+      column = pos.startColumn + propertyName.length() + 1 + offset;
+    }
+    return new Pos(pos.source, line, column, line, column + 1);
+  }
+
+  /** Kind of SQL in a code property. */
+  public enum Kind {
+    /** An expression, such as "${TABLE}.id + 1". */
+    EXPRESSION,
+    /** A query, such as "SELECT * FROM t". */
+    QUERY,
+    /** The name of a table, such as "schema.t". */
+    TABLE
+  }
+
+  /** Receives the results of parsing the code blocks in a document. */
+  public interface Handler {
+    /** Called when a code block has been parsed successfully.
+     *
+     * <p>The default implementation does nothing.
+     *
+     * @param pos Position of the code property
+     * @param propertyName Name of the code property, e.g. "sql"
+     * @param node Parse tree; must not be modified
+     */
+    default void parsed(Pos pos, String propertyName, SqlNode node) {
+    }
+
+    /** Called when a code block has a syntax error.
+     *
+     * @param pos Position of the error
+     * @param propertyName Name of the code property, e.g. "sql"
+     * @param message Error message
+     */
+    void error(Pos pos, String propertyName, String message);
+  }
+
+  /** Result of parsing a code block; either a node or an error. */
+  private static class Parsed {
+    final @Nullable SqlNode node;
+    /** Offset of the error. */
+    final int offset;
+    final String message;
+
+    Parsed(@Nullable SqlNode node, int offset, String message) {
+      this.node = node;
+      this.offset = offset;
+      this.message = message;
+    }
+
+    Parsed shift(int delta) {
+      return delta == 0 ? this : new Parsed(node, offset + delta, message);
+    }
+  }
+
+  /** Code blocks of a document that are being parsed. */
+  private class Document {
+    final Handler handler;
+    final List<Task> tasks = new ArrayList<>();
+
+    Document(Handler handler) {
+      this.handler = requireNonNull(handler, "handler");
+    }
+
+    void add(Pos pos, String propertyName, String code, Kind kind) {
+      tasks.add(new Task(pos, propertyName, code, submit(kind, code)));
+    }
+
+    /** Waits for each code block to be parsed, and reports the results. */
+    void finish() {
+      for (Task task : tasks) {
+        final Parsed parsed;
+        try {
+          parsed = task.future.join();
+        } catch (CompletionException e) {
+          final Throwable cause = e.getCause();
+          if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          }
+          throw e;
+        }
+        if (parsed.node != null) {
+          handler.parsed(task.pos, task.propertyName, parsed.node);
+        } else {
+          handler.error(
+              pos(task.pos, task.propertyName, task.code, parsed.offset),
+              task.propertyName, parsed.message);
+        }
+      }
+      tasks.clear();
+    }
+  }
+
+  /** Code block that is being parsed. */
+  private static class Task {
+    final Pos pos;
+    final String propertyName;
+    final String code;
+    final CompletableFuture<Parsed> future;
+
+    Task(Pos pos, String propertyName, String code,
+        CompletableFuture<Parsed> future) {
+      this.pos = pos;
+      this.propertyName = propertyName;
+      this.code = code;
+      this.future = future;
+    }
+  }
+
+  /** Handler that submits code blocks to be parsed. */
+  private class CheckingHandler extends FilterObjectHandler {
+    private final ObjectHandler consumer;
+    private final Document document;
+    private final boolean root;
+
+    CheckingHandler(ObjectHandler consumer, Document document,
+        boolean root) {
+      super(consumer);
+      this.consumer = consumer;
+      this.document = document;
+      this.root = root;
+    }
+
+    @Override public ObjectHandler code(Pos pos, String propertyName,
+        String value) {
+      final Kind kind = kinds.get(propertyName);
+      if (kind != null) {
+        document.add(pos, propertyName, value, kind);
+      }
+      return super.code(pos, propertyName, value);
+    }
+
+    @Override public ObjectHandler objOpen(Pos pos, String propertyName) {
+      return new CheckingHandler(consumer.objOpen(pos, propertyName),
+          document, false);
+    }
+
+    @Override public ObjectHandler objOpen(Pos pos, String propertyName,
+        String name) {
+      return new CheckingHandler(consumer.objOpen(pos, propertyName, name),
+          document, false);
+    }
+
+    @Override public void close(Pos pos) {
+      if (root) {
+        document.finish();
+      }
+      super.close(pos);
+    }
+  }
+}
+
+// End SqlCodeChecker.java
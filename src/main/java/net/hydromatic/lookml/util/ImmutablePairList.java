@@ -32,6 +32,10 @@
 import static java.util.Objects.requireNonNull;
 
 /** Immutable list of pairs.
+ *
+ * <p>Lookups by left part ({@link #indexOfLeft}, {@link #rightOf},
+ * {@link #rightsOf}) on a large immutable list take constant time: the
+ * first lookup builds a hash index, which is then reused.
  *
  * @param <T> First type
  * @param <U> Second type
@@ -28,6 +28,7 @@
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.BiPredicate;
@@ -131,6 +132,40 @@ default Map.Entry<T, U> set(int index, T t, U u) {
   /** Returns the right part of the {@code index}th pair. */
   U right(int index);
 
+  /** Returns the index of the first pair whose left part is equal to
+   * {@code left}, or -1 if there is no such pair.
+   *
+   * <p>The default implementation scans the list; some implementations (see
+   * {@link ImmutablePairList}) use a hash index. */
+  default int indexOfLeft(Object left) {
+    for (int i = 0, n = size(); i < n; i++) {
+      if (left.equals(left(i))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /** Returns the right part of the first pair whose left part is equal to
+   * {@code left}, or null if there is no such pair. */
+  default @Nullable U rightOf(Object left) {
+    final int i = indexOfLeft(left);
+    return i < 0 ? null : right(i);
+  }
+
+  /** Returns the right parts of all pairs whose left part is equal to
+   * {@code left}, in order; for example, all "dimension" properties of a
+   * view. */
+  default List<U> rightsOf(Object left) {
+    final List<U> list = new ArrayList<>();
+    for (int i = 0, n = size(); i < n; i++) {
+      if (left.equals(left(i))) {
+        list.add(right(i));
+      }
+    }
+    return list;
+  }
+
   /** Returns an unmodifiable list view consisting of the left entry of each
    * pair. */
   List<T> leftList();
@@ -145,6 +180,30 @@ default Map.Entry<T, U> set(int index, T t, U u) {
   /** Calls a BiConsumer with each pair in this list. */
   void forEachIndexed(IndexedBiConsumer<T, U> consumer);
 
+  /** Calls a BiConsumer with each pair in this list, using multiple threads
+   * in the common {@link java.util.concurrent.ForkJoinPool}.
+   *
+   * <p>Unlike {@code parallelStream().forEach}, does not create a
+   * {@link Map.Entry} for each pair. The order of calls is unspecified, and
+   * the consumer must be thread-safe. */
+  default void parallelForEach(BiConsumer<T, U> consumer) {
+    PairLists.parallelForEach(spliterator(), consumer);
+  }
+
+  /** Returns a spliterator over the pairs in this list.
+   *
+   * <p>The spliterator splits its range in half, on a pair boundary, so it
+   * is suitable for parallel streams; and via
+   * {@link PairSpliterator#tryAdvance(BiConsumer)} it can traverse pairs
+   * without creating an entry for each.
+   *
+   * <p>The default implementation accesses pairs by index, using
+   * {@link #left(int)} and {@link #right(int)}; the lists created by this
+   * library override it to report their characteristics. */
+  @Override default PairSpliterator<T, U> spliterator() {
+    return new PairLists.IndexPairSpliterator<>(this, 0, size(), 0);
+  }
+
   /** Creates an {@link ImmutableMap} whose entries are the pairs in this list.
    * Throws if keys are not unique. */
   default ImmutableMap<T, U> toImmutableMap() {
@@ -209,6 +268,28 @@ default void reverse() {
     void accept(int index, T t, U u);
   }
 
+  /** Spliterator over the pairs of a {@link PairList}.
+   *
+   * @param <T> First type
+   * @param <U> Second type
+   *
+   * @see PairList#spliterator()
+   */
+  interface PairSpliterator<T, U> extends Spliterator<Map.Entry<T, U>> {
+    /** If a pair remains, calls the action with it and returns true;
+     * otherwise returns false. */
+    boolean tryAdvance(BiConsumer<? super T, ? super U> action);
+
+    /** Calls the action with each remaining pair. */
+    default void forEachRemaining(BiConsumer<? super T, ? super U> action) {
+      while (tryAdvance(action)) {
+        // keep going
+      }
+    }
+
+    @Override @Nullable PairSpliterator<T, U> trySplit();
+  }
+
   /** Builds a PairList.
    *
    * @param <T> First type
@@ -26,13 +26,18 @@
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 import java.util.AbstractList;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.BiPredicate;
+import java.util.function.Consumer;
 
 import static net.hydromatic.lookml.util.Nullness.castNonNull;
 import static net.hydromatic.lookml.util.Nullness.castNonNullArray;
@@ -93,6 +98,13 @@ static void checkElementNotNull(int i, @Nullable Object element) {
     @Override public abstract PairList<T, U> subList(int fromIndex,
         int toIndex);
 
+    @Override public PairSpliterator<T, U> spliterator() {
+      return new IndexPairSpliterator<>(this, 0, size(),
+          this instanceof ImmutablePairList
+              ? Spliterator.IMMUTABLE | Spliterator.NONNULL
+              : 0);
+    }
+
     static void subListRangeCheck(int fromIndex, int toIndex, int size) {
       if (fromIndex < 0) {
         throw new IndexOutOfBoundsException("fromIndex = " + fromIndex);
@@ -547,6 +559,175 @@ static void subListRangeCheck(int fromIndex, int toIndex, int size) {
    * @param <E> Element type */
   abstract static class RandomAccessList<E>
       extends AbstractList<E> implements RandomAccess {
+    @Override public Spliterator<E> spliterator() {
+      return new IndexSpliterator<>(this, 0, size());
+    }
+  }
+
+  /** Calls a consumer with each pair of a spliterator, splitting it into
+   * tasks that run in the common fork-join pool. */
+  static <T, U> void parallelForEach(PairList.PairSpliterator<T, U> spliterator,
+      BiConsumer<T, U> consumer) {
+    final long size = spliterator.estimateSize();
+    final long threshold =
+        Math.max(1, size / (ForkJoinPool.getCommonPoolParallelism() * 4L));
+    ForkJoinPool.commonPool()
+        .invoke(new ForEachTask<>(spliterator, consumer, threshold));
+  }
+
+  /** Task that calls a consumer with each pair of a spliterator, first
+   * forking tasks for the prefixes that it splits off.
+   *
+   * @param <T> First type
+   * @param <U> Second type
+   */
+  @SuppressWarnings("serial")
+  private static class ForEachTask<T, U> extends RecursiveAction {
+    private final PairList.PairSpliterator<T, U> spliterator;
+    private final BiConsumer<T, U> consumer;
+    private final long threshold;
+
+    ForEachTask(PairList.PairSpliterator<T, U> spliterator,
+        BiConsumer<T, U> consumer, long threshold) {
+      this.spliterator = spliterator;
+      this.consumer = consumer;
+      this.threshold = threshold;
+    }
+
+    @Override protected void compute() {
+      final List<ForEachTask<T, U>> forks = new ArrayList<>();
+      PairList.PairSpliterator<T, U> prefix;
+      while (spliterator.estimateSize() > threshold
+          && (prefix = spliterator.trySplit()) != null) {
+        final ForEachTask<T, U> task =
+            new ForEachTask<>(prefix, consumer, threshold);
+        task.fork();
+        forks.add(task);
+      }
+      spliterator.forEachRemaining(consumer);
+      for (ForEachTask<T, U> task : forks) {
+        task.join();
+      }
+    }
+  }
+
+  /** Spliterator over a range of pairs in a {@link PairList}, that splits
+   * the range in half.
+   *
+   * @param <T> First type
+   * @param <U> Second type
+   */
+  static class IndexPairSpliterator<T, U>
+      implements PairList.PairSpliterator<T, U> {
+    private final PairList<T, U> list;
+    private int index;
+    private final int end;
+    private final int characteristics;
+
+    IndexPairSpliterator(PairList<T, U> list, int index, int end,
+        int characteristics) {
+      this.list = list;
+      this.index = index;
+      this.end = end;
+      this.characteristics = characteristics;
+    }
+
+    @Override public boolean tryAdvance(
+        BiConsumer<? super T, ? super U> action) {
+      if (index >= end) {
+        return false;
+      }
+      final int i = index++;
+      action.accept(list.left(i), list.right(i));
+      return true;
+    }
+
+    @Override public void forEachRemaining(
+        BiConsumer<? super T, ? super U> action) {
+      for (int i = index; i < end; i++) {
+        action.accept(list.left(i), list.right(i));
+      }
+      index = end;
+    }
+
+    @Override public boolean tryAdvance(
+        Consumer<? super Map.Entry<T, U>> action) {
+      if (index >= end) {
+        return false;
+      }
+      action.accept(list.get(index++));
+      return true;
+    }
+
+    @Override public PairList.@Nullable PairSpliterator<T, U> trySplit() {
+      final int mid = (index + end) >>> 1;
+      if (mid <= index) {
+        return null;
+      }
+      final IndexPairSpliterator<T, U> prefix =
+          new IndexPairSpliterator<>(list, index, mid, characteristics);
+      index = mid;
+      return prefix;
+    }
+
+    @Override public long estimateSize() {
+      return end - index;
+    }
+
+    @Override public int characteristics() {
+      return characteristics | Spliterator.ORDERED | Spliterator.SIZED
+          | Spliterator.SUBSIZED;
+    }
+  }
+
+  /** Spliterator over a range of elements in a {@link RandomAccess} list,
+   * that splits the range in half.
+   *
+   * @param <E> Element type
+   */
+  static class IndexSpliterator<E> implements Spliterator<E> {
+    private final List<E> list;
+    private int index;
+    private final int end;
+
+    IndexSpliterator(List<E> list, int index, int end) {
+      this.list = list;
+      this.index = index;
+      this.end = end;
+    }
+
+    @Override public boolean tryAdvance(Consumer<? super E> action) {
+      if (index >= end) {
+        return false;
+      }
+      action.accept(list.get(index++));
+      return true;
+    }
+
+    @Override public void forEachRemaining(Consumer<? super E> action) {
+      for (int i = index; i < end; i++) {
+        action.accept(list.get(i));
+      }
+      index = end;
+    }
+
+    @Override public @Nullable Spliterator<E> trySplit() {
+      final int mid = (index + end) >>> 1;
+      if (mid <= index) {
+        return null;
+      }
+      final Spliterator<E> prefix = new IndexSpliterator<>(list, index, mid);
+      index = mid;
+      return prefix;
+    }
+
+    @Override public long estimateSize() {
+      return end - index;
+    }
+
+    @Override public int characteristics() {
+      return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED;
+    }
   }
 
   /** Immutable list of pairs backed by an array.
@@ -557,8 +738,17 @@ static void subListRangeCheck(int fromIndex, int toIndex, int size) {
   static class ArrayImmutablePairList<T, U>
       extends AbstractPairList<T, U>
       implements ImmutablePairList<T, U> {
+    /** Lists with more than this many pairs build a hash index on their first
+     * lookup by left part; smaller lists are scanned. */
+    static final int INDEX_THRESHOLD = 8;
+
     private final Object[] elements;
 
+    /** Hash index of left parts; null until the first lookup. Not volatile:
+     * {@link LeftIndex} has only final fields, so a thread that sees a
+     * partially-published reference will at worst build its own copy. */
+    private @Nullable LeftIndex index;
+
     /** Creates an ArrayImmutablePairList.
      *
      * <p>Does not copy the {@code elements} array. Assumes that the caller has
@@ -622,6 +812,48 @@ static void subListRangeCheck(int fromIndex, int toIndex, int size) {
       };
     }
 
+    @Override public int indexOfLeft(Object left) {
+      if (elements.length <= INDEX_THRESHOLD * 2) {
+        for (int x = 0; x < elements.length; x += 2) {
+          if (left.equals(elements[x])) {
+            return x / 2;
+          }
+        }
+        return -1;
+      }
+      return leftIndex().first(elements, left);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override public List<U> rightsOf(Object left) {
+      final int first = indexOfLeft(left);
+      if (first < 0) {
+        return ImmutableList.of();
+      }
+      final ImmutableList.Builder<U> b = ImmutableList.builder();
+      if (elements.length <= INDEX_THRESHOLD * 2) {
+        for (int x = first * 2; x < elements.length; x += 2) {
+          if (left.equals(elements[x])) {
+            b.add((U) elements[x + 1]);
+          }
+        }
+      } else {
+        final int[] next = leftIndex().next;
+        for (int i = first; i >= 0; i = next[i] - 1) {
+          b.add((U) elements[i * 2 + 1]);
+        }
+      }
+      return b.build();
+    }
+
+    private LeftIndex leftIndex() {
+      LeftIndex index = this.index;
+      if (index == null) {
+        this.index = index = new LeftIndex(elements);
+      }
+      return index;
+    }
+
     @SuppressWarnings("unchecked")
     @Override public void forEach(BiConsumer<T, U> consumer) {
       for (int x = 0; x < elements.length;) {
@@ -735,6 +967,59 @@ static void subListRangeCheck(int fromIndex, int toIndex, int size) {
       return true;
     }
   }
+
+  /** Open-addressing hash index over the left parts of an array of pairs.
+   *
+   * <p>{@code table} maps a hash slot to one plus the index of the first pair
+   * with a given left part (zero means the slot is empty); {@code next} maps
+   * each pair to one plus the index of the next pair with the same left
+   * part. */
+  static class LeftIndex {
+    private final int[] table;
+    final int[] next;
+
+    LeftIndex(Object[] elements) {
+      final int n = elements.length / 2;
+      final int[] table = new int[Integer.highestOneBit(n * 2 - 1) << 1];
+      final int mask = table.length - 1;
+      final int[] next = new int[n];
+      final int[] last = new int[n];
+      for (int i = 0; i < n; i++) {
+        final Object left = elements[i * 2];
+        for (int h = spread(left.hashCode()) & mask;; h = (h + 1) & mask) {
+          final int j = table[h] - 1;
+          if (j < 0) {
+            table[h] = i + 1;
+            last[i] = i;
+            break;
+          }
+          if (left.equals(elements[j * 2])) {
+            next[last[j]] = i + 1;
+            last[j] = i;
+            break;
+          }
+        }
+      }
+      this.table = table;
+      this.next = next;
+    }
+
+    private static int spread(int h) {
+      return h ^ (h >>> 16);
+    }
+
+    /** Returns the index of the first pair whose left part is
+     * {@code left}, or -1. */
+    int first(Object[] elements, Object left) {
+      final int mask = table.length - 1;
+      for (int h = spread(left.hashCode()) & mask;; h = (h + 1) & mask) {
+        final int j = table[h] - 1;
+        if (j < 0 || left.equals(elements[j * 2])) {
+          return j;
+        }
+      }
+    }
+  }
 }
 
 // End PairLists.java
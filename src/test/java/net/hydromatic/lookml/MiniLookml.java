@@ -26,15 +26,26 @@
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
+import static java.util.Objects.requireNonNull;
+
 /** Defines a very small subset of LookML, called Mini-LookML.
  *
  * <p>Mini-LookML is used for testing and also as an example for creating
@@ -49,7 +60,10 @@
  * {@link Model}, {@link Explore}, {@link View}, {@link Dimension},
  * {@link Measure}, created via the {@link #builder(LookmlSchema, BiConsumer)}
  * method. The object model is written by hand, but tests verify that it is
- * synchronized with the schema. */
+ * synchronized with the schema.
+ *
+ * <p>{@link MiniLookmlAst} is an equivalent object model that is generated
+ * from the schema by {@link LookmlCodeGenerator}. */
 public class MiniLookml {
   private MiniLookml() {}
 
@@ -166,6 +180,18 @@ public static Source getSchemaSource() {
         LaxTest.class.getResource("/lookml/mini-lookml-schema.lkml"));
   }
 
+  /** Returns the properties of an object value created by
+   * {@link LaxHandlers#build(Consumer)}. */
+  public static PairList<String, ? extends Value> properties(Value value) {
+    return ((Values.ObjectValue) value).properties;
+  }
+
+  /** Returns the elements of a list value created by
+   * {@link LaxHandlers#build(Consumer)}. */
+  public static List<? extends Value> elements(Value value) {
+    return ((Values.ListValue) value).list;
+  }
+
   /** Creates a builder for Mini-LookML's AST.
    *
    * <p>The builder implements the {@link PropertyHandler} interface so that it
@@ -175,10 +201,218 @@ public static PropertyHandler builder(LookmlSchema ignore,
     return new RootBuilder(consumer, TEMPLATE_SUPPLIER.get());
   }
 
-  /** Validates a Mini-LookML AST. */
+  /** Validates a Mini-LookML AST.
+   *
+   * <p>Checks that:
+   * <ul>
+   * <li>each explore, and each join, refers to a view that exists, and the
+   *   aliases in an explore are unique;
+   * <li>each reference (such as <code>${view.field}</code>) in a join's
+   *   {@code sql_on} refers to a field of a view in the explore;
+   * <li>the fields in an explore's {@code conditionally_filter} exist;
+   * <li>a view has at most one primary key, and a view joined with
+   *   relationship {@code many_to_one} or {@code one_to_one} has one;
+   * <li>if a {@code many_to_one} or {@code one_to_one} join's
+   *   {@code sql_on} references fields of the joined view, one of them is
+   *   its primary key;
+   * <li>each reference in a field's SQL to another field of the same view
+   *   refers to a field that exists.
+   * </ul>
+   *
+   * <p>Each explore and each view is checked by a separate task in a
+   * {@link ForkJoinPool}. The tasks share a read-only index of the views,
+   * built once per model. Errors are reported in a deterministic order:
+   * views in model order, then explores in model order. */
   public static class Validator {
+    private final ForkJoinPool pool;
+
+    /** Creates a validator that uses the common fork-join pool. */
+    public Validator() {
+      this(ForkJoinPool.commonPool());
+    }
+
+    /** Creates a validator that runs its tasks in a given pool. */
+    public Validator(ForkJoinPool pool) {
+      this.pool = requireNonNull(pool, "pool");
+    }
+
     public void validate(Model model,
         List<String> errorList) {
+      final ViewIndex index = new ViewIndex(model);
+      final List<ForkJoinTask<List<String>>> tasks = new ArrayList<>();
+      model.views.values().forEach(view ->
+          tasks.add(task(() -> validateView(index, view))));
+      model.explores.values().forEach(explore ->
+          tasks.add(task(() -> validateExplore(index, explore))));
+      pool.invoke(task(() -> {
+        ForkJoinTask.invokeAll(tasks);
+        return ImmutableList.of();
+      }));
+      tasks.forEach(task -> errorList.addAll(task.join()));
+    }
+
+    private static ForkJoinTask<List<String>> task(
+        Supplier<List<String>> supplier) {
+      return ForkJoinTask.adapt(supplier::get);
+    }
+
+    /** Checks a view's primary keys and the references between its
+     * fields. */
+    private static List<String> validateView(ViewIndex index, View view) {
+      final List<String> errors = new ArrayList<>();
+      final List<String> primaryKeys = index.primaryKeys.get(view.name);
+      if (primaryKeys.size() > 1) {
+        errors.add("multiplePrimaryKeys(" + view.name + ", " + primaryKeys
+            + ")");
+      }
+      final BiConsumer<String, String> checkSql = (fieldName, sql) -> {
+        if (sql != null) {
+          CodeReference.scan(sql, r -> {
+            if (r.partCount() == 1
+                && !r.isTable()
+                && !index.hasField(view.name, r.part(0))) {
+              errors.add("fieldNotFound(" + view.name + "." + fieldName
+                  + ", " + r + ")");
+            }
+          });
+        }
+      };
+      view.dimensions.values().forEach(d -> checkSql.accept(d.name, d.sql));
+      view.measures.values().forEach(m -> checkSql.accept(m.name, m.sql));
+      return errors;
+    }
+
+    /** Checks an explore's views, joins and filters. */
+    private static List<String> validateExplore(ViewIndex index,
+        Explore explore) {
+      final List<String> errors = new ArrayList<>();
+
+      // Map each alias to the name of its view
+      final Map<String, String> aliases = new LinkedHashMap<>();
+      final String baseAlias =
+          explore.viewName != null ? explore.viewName : explore.name;
+      final String baseView =
+          explore.from != null ? explore.from : baseAlias;
+      if (!index.views.containsKey(baseView)) {
+        errors.add("viewNotFound(" + explore.name + ", " + baseView + ")");
+      }
+      aliases.put(baseAlias, baseView);
+      explore.joins.values().forEach(join -> {
+        final String viewName = join.from != null ? join.from : join.name;
+        if (!index.views.containsKey(viewName)) {
+          errors.add("viewNotFound(" + explore.name + "." + join.name
+              + ", " + viewName + ")");
+        }
+        if (aliases.put(join.name, viewName) != null) {
+          errors.add("duplicateAlias(" + explore.name + ", " + join.name
+              + ")");
+        }
+      });
+
+      // Resolves "alias.field", or "field" in the base view; returns
+      // whether the field exists. Does not report a field of a missing
+      // view, because the view has already been reported.
+      final BiPredicate<String, String> hasField = (alias, field) -> {
+        final String viewName = aliases.get(alias);
+        return viewName != null
+            && (!index.views.containsKey(viewName)
+                || index.hasField(viewName, field));
+      };
+
+      for (Join join : explore.joins.values()) {
+        final String viewName = requireNonNull(aliases.get(join.name));
+        final Set<String> joinedFields = new LinkedHashSet<>();
+        if (join.sqlOn != null) {
+          CodeReference.scan(join.sqlOn, r -> {
+            final String alias;
+            final String field;
+            if (r.partCount() == 1) {
+              if (r.isTable()) {
+                return;
+              }
+              alias = join.name;
+              field = r.part(0);
+            } else if (r.partCount() == 2) {
+              if (r.partEquals(1, "SQL_TABLE_NAME")) {
+                return;
+              }
+              alias = r.part(0);
+              field = r.part(1);
+            } else {
+              errors.add("fieldNotFound(" + explore.name + "." + join.name
+                  + ", " + r + ")");
+              return;
+            }
+            if (!hasField.test(alias, field)) {
+              errors.add("fieldNotFound(" + explore.name + "." + join.name
+                  + ", " + r + ")");
+            } else if (alias.equals(join.name)) {
+              joinedFields.add(field);
+            }
+          });
+        }
+        if ((join.relationship == RelationshipType.MANY_TO_ONE
+                || join.relationship == RelationshipType.ONE_TO_ONE)
+            && index.views.containsKey(viewName)) {
+          final List<String> primaryKeys = index.primaryKeys.get(viewName);
+          if (primaryKeys.isEmpty()) {
+            errors.add("primaryKeyRequired(" + explore.name + "."
+                + join.name + ", " + viewName + ")");
+          } else if (!joinedFields.isEmpty()
+              && Collections.disjoint(joinedFields, primaryKeys)) {
+            errors.add("relationshipInconsistent(" + explore.name + "."
+                + join.name + ", "
+                + join.relationship.name().toLowerCase(Locale.ROOT) + ", "
+                + joinedFields + ")");
+          }
+        }
+      }
+
+      if (explore.conditionallyFilter != null) {
+        final Consumer<String> checkFilter = name -> {
+          final int dot = name.indexOf('.');
+          final boolean found =
+              dot < 0
+                  ? hasField.test(baseAlias, name)
+                  : hasField.test(name.substring(0, dot),
+                      name.substring(dot + 1));
+          if (!found) {
+            errors.add("filterFieldNotFound(" + explore.name + ", " + name
+                + ")");
+          }
+        };
+        explore.conditionallyFilter.filters.leftList().forEach(checkFilter);
+        explore.conditionallyFilter.unless.forEach(checkFilter);
+      }
+      return errors;
+    }
+  }
+
+  /** Read-only index of the views in a model, shared by the tasks of a
+   * {@link Validator}. */
+  private static class ViewIndex {
+    final Map<String, View> views;
+    /** Names of the primary key dimensions of each view. */
+    final Map<String, List<String>> primaryKeys;
+
+    ViewIndex(Model model) {
+      this.views = model.views;
+      final ImmutableMap.Builder<String, List<String>> b =
+          ImmutableMap.builder();
+      model.views.forEach((name, view) ->
+          b.put(name,
+              view.dimensions.values().stream()
+                  .filter(d -> d.primaryKey)
+                  .map(d -> d.name)
+                  .collect(ImmutableList.toImmutableList())));
+      this.primaryKeys = b.build();
+    }
+
+    /** Returns whether a view, which must exist, has a given field. */
+    boolean hasField(String viewName, String fieldName) {
+      final View view = requireNonNull(views.get(viewName));
+      return view.dimensions.containsKey(fieldName)
+          || view.measures.containsKey(fieldName);
     }
   }
 
@@ -466,7 +700,8 @@ private static class ExploreBuilder extends NodeBuilder {
     private final String name;
     private String from;
     private String viewName;
-    private Join join;
+    private final ImmutableMap.Builder<String, Join> joins =
+        ImmutableMap.builder();
     private ConditionallyFilter conditionallyFilter;
 
     ExploreBuilder(String name) {
@@ -482,7 +717,8 @@ void accept(String key, Object value) {
         viewName = (String) value;
         break;
       case "join":
-        join = (Join) value;
+        Join join = (Join) value;
+        joins.put(join.name, join);
         break;
       case "conditionally_filter":
         conditionallyFilter = (ConditionallyFilter) value;
@@ -493,7 +729,8 @@ void accept(String key, Object value) {
     }
 
     Explore build() {
-      return new Explore(name, from, viewName, join, conditionallyFilter);
+      return new Explore(name, from, viewName, joins.build(),
+          conditionallyFilter);
     }
   }
 
@@ -502,15 +739,15 @@ public static class Explore {
     public final String name;
     public final String from;
     public final String viewName;
-    public final Join join;
+    public final Map<String, Join> joins;
     public final ConditionallyFilter conditionallyFilter;
 
-    Explore(String name, String from, String viewName, Join join,
-        ConditionallyFilter conditionallyFilter) {
+    Explore(String name, String from, String viewName,
+        Map<String, Join> joins, ConditionallyFilter conditionallyFilter) {
       this.name = name;
       this.from = from;
       this.viewName = viewName;
-      this.join = join;
+      this.joins = joins;
       this.conditionallyFilter = conditionallyFilter;
     }
   }
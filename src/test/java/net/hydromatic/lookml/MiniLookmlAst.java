@@ -0,0 +1,824 @@
+/*
+ * Licensed to the LookML Authors under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.
+ * The LookML Authors license this file to you under the Apache
+ * License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License.  You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package net.hydromatic.lookml;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/** Typed object model for LookML schema "mini".
+ *
+ * <p>Generated by {@code LookmlCodeGenerator}; do not edit. */
+public class MiniLookmlAst {
+  private MiniLookmlAst() {}
+
+  /** Creates a handler that builds an object for each root property, and
+   * passes it to {@code consumer}. */
+  public static PropertyHandler builder(
+      BiConsumer<String, Object> consumer) {
+    return new NodeHandler(null, "", new RootBuilder(consumer));
+  }
+
+  /** Values of enum type "boolean". */
+  public enum BooleanEnum {
+    FALSE,
+    TRUE;
+
+    /** Returns the constant for a LookML value. */
+    public static BooleanEnum of(String value) {
+      switch (value) {
+      case "false":
+        return FALSE;
+      case "true":
+        return TRUE;
+      default:
+        throw new IllegalArgumentException("invalid boolean: "
+            + value);
+      }
+    }
+  }
+
+  /** Values of enum type "join_type". */
+  public enum JoinType {
+    CROSS,
+    FULL_OUTER,
+    INNER,
+    LEFT_OUTER;
+
+    /** Returns the constant for a LookML value. */
+    public static JoinType of(String value) {
+      switch (value) {
+      case "cross":
+        return CROSS;
+      case "full_outer":
+        return FULL_OUTER;
+      case "inner":
+        return INNER;
+      case "left_outer":
+        return LEFT_OUTER;
+      default:
+        throw new IllegalArgumentException("invalid join_type: "
+            + value);
+      }
+    }
+  }
+
+  /** Values of enum type "relationship_type". */
+  public enum RelationshipType {
+    MANY_TO_MANY,
+    MANY_TO_ONE,
+    ONE_TO_MANY,
+    ONE_TO_ONE;
+
+    /** Returns the constant for a LookML value. */
+    public static RelationshipType of(String value) {
+      switch (value) {
+      case "many_to_many":
+        return MANY_TO_MANY;
+      case "many_to_one":
+        return MANY_TO_ONE;
+      case "one_to_many":
+        return ONE_TO_MANY;
+      case "one_to_one":
+        return ONE_TO_ONE;
+      default:
+        throw new IllegalArgumentException("invalid relationship_type: "
+            + value);
+      }
+    }
+  }
+
+  /** Values of enum type "dimension_field_type". */
+  public enum DimensionFieldType {
+    BIN,
+    DATE,
+    DATE_TIME,
+    DISTANCE,
+    DURATION,
+    LOCATION,
+    NUMBER,
+    STRING,
+    TIER,
+    TIME,
+    UNQUOTED,
+    YESNO,
+    ZIPCODE;
+
+    /** Returns the constant for a LookML value. */
+    public static DimensionFieldType of(String value) {
+      switch (value) {
+      case "bin":
+        return BIN;
+      case "date":
+        return DATE;
+      case "date_time":
+        return DATE_TIME;
+      case "distance":
+        return DISTANCE;
+      case "duration":
+        return DURATION;
+      case "location":
+        return LOCATION;
+      case "number":
+        return NUMBER;
+      case "string":
+        return STRING;
+      case "tier":
+        return TIER;
+      case "time":
+        return TIME;
+      case "unquoted":
+        return UNQUOTED;
+      case "yesno":
+        return YESNO;
+      case "zipcode":
+        return ZIPCODE;
+      default:
+        throw new IllegalArgumentException("invalid dimension_field_type: "
+            + value);
+      }
+    }
+  }
+
+  /** Values of enum type "measure_field_type". */
+  public enum MeasureFieldType {
+    AVERAGE,
+    AVERAGE_DISTINCT,
+    COUNT,
+    COUNT_DISTINCT,
+    DATE,
+    LIST,
+    MAX,
+    MEDIAN,
+    MEDIAN_DISTINCT,
+    MIN,
+    NUMBER,
+    PERCENT_OF_PREVIOUS,
+    PERCENT_OF_TOTAL,
+    PERCENTILE,
+    PERCENTILE_DISTINCT,
+    RUNNING_TOTAL,
+    STRING,
+    SUM,
+    SUM_DISTINCT,
+    YESNO;
+
+    /** Returns the constant for a LookML value. */
+    public static MeasureFieldType of(String value) {
+      switch (value) {
+      case "average":
+        return AVERAGE;
+      case "average_distinct":
+        return AVERAGE_DISTINCT;
+      case "count":
+        return COUNT;
+      case "count_distinct":
+        return COUNT_DISTINCT;
+      case "date":
+        return DATE;
+      case "list":
+        return LIST;
+      case "max":
+        return MAX;
+      case "median":
+        return MEDIAN;
+      case "median_distinct":
+        return MEDIAN_DISTINCT;
+      case "min":
+        return MIN;
+      case "number":
+        return NUMBER;
+      case "percent_of_previous":
+        return PERCENT_OF_PREVIOUS;
+      case "percent_of_total":
+        return PERCENT_OF_TOTAL;
+      case "percentile":
+        return PERCENTILE;
+      case "percentile_distinct":
+        return PERCENTILE_DISTINCT;
+      case "running_total":
+        return RUNNING_TOTAL;
+      case "string":
+        return STRING;
+      case "sum":
+        return SUM;
+      case "sum_distinct":
+        return SUM_DISTINCT;
+      case "yesno":
+        return YESNO;
+      default:
+        throw new IllegalArgumentException("invalid measure_field_type: "
+            + value);
+      }
+    }
+  }
+
+  /** Instance of object type "conditionally_filter". */
+  public static class ConditionallyFilter {
+    public final Map<String, String> filters;
+    public final List<String> unless;
+
+    ConditionallyFilter(Map<String, String> filters, List<String> unless) {
+      this.filters = filters;
+      this.unless = unless;
+    }
+  }
+
+  /** Instance of object type "dimension". */
+  public static class Dimension {
+    public final String name;
+    public final @Nullable String label;
+    public final @Nullable BooleanEnum primaryKey;
+    public final @Nullable String sql;
+    public final List<String> tags;
+    public final @Nullable DimensionFieldType type;
+
+    Dimension(String name,
+        @Nullable String label,
+        @Nullable BooleanEnum primaryKey,
+        @Nullable String sql,
+        List<String> tags,
+        @Nullable DimensionFieldType type) {
+      this.name = name;
+      this.label = label;
+      this.primaryKey = primaryKey;
+      this.sql = sql;
+      this.tags = tags;
+      this.type = type;
+    }
+  }
+
+  /** Instance of object type "measure". */
+  public static class Measure {
+    public final String name;
+    public final @Nullable String label;
+    public final @Nullable String sql;
+    public final @Nullable MeasureFieldType type;
+
+    Measure(String name,
+        @Nullable String label,
+        @Nullable String sql,
+        @Nullable MeasureFieldType type) {
+      this.name = name;
+      this.label = label;
+      this.sql = sql;
+      this.type = type;
+    }
+  }
+
+  /** Instance of object type "view". */
+  public static class View {
+    public final String name;
+    public final Map<String, Dimension> dimensions;
+    public final List<String> drillFields;
+    public final @Nullable String from;
+    public final @Nullable String label;
+    public final Map<String, Measure> measures;
+    public final @Nullable String sqlTableName;
+
+    View(String name,
+        Map<String, Dimension> dimensions,
+        List<String> drillFields,
+        @Nullable String from,
+        @Nullable String label,
+        Map<String, Measure> measures,
+        @Nullable String sqlTableName) {
+      this.name = name;
+      this.dimensions = dimensions;
+      this.drillFields = drillFields;
+      this.from = from;
+      this.label = label;
+      this.measures = measures;
+      this.sqlTableName = sqlTableName;
+    }
+  }
+
+  /** Instance of object type "join". */
+  public static class Join {
+    public final String name;
+    public final @Nullable String from;
+    public final @Nullable RelationshipType relationship;
+    public final @Nullable String sqlOn;
+
+    Join(String name,
+        @Nullable String from,
+        @Nullable RelationshipType relationship,
+        @Nullable String sqlOn) {
+      this.name = name;
+      this.from = from;
+      this.relationship = relationship;
+      this.sqlOn = sqlOn;
+    }
+  }
+
+  /** Instance of object type "explore". */
+  public static class Explore {
+    public final String name;
+    public final @Nullable ConditionallyFilter conditionallyFilter;
+    public final @Nullable String from;
+    public final Map<String, Join> joins;
+    public final @Nullable String viewName;
+
+    Explore(String name,
+        @Nullable ConditionallyFilter conditionallyFilter,
+        @Nullable String from,
+        Map<String, Join> joins,
+        @Nullable String viewName) {
+      this.name = name;
+      this.conditionallyFilter = conditionallyFilter;
+      this.from = from;
+      this.joins = joins;
+      this.viewName = viewName;
+    }
+  }
+
+  /** Instance of object type "model". */
+  public static class Model {
+    public final String name;
+    public final Map<String, Explore> explores;
+    public final @Nullable Number fiscalMonthOffset;
+    public final Map<String, View> views;
+
+    Model(String name,
+        Map<String, Explore> explores,
+        @Nullable Number fiscalMonthOffset,
+        Map<String, View> views) {
+      this.name = name;
+      this.explores = explores;
+      this.fiscalMonthOffset = fiscalMonthOffset;
+      this.views = views;
+    }
+  }
+
+  /** Builds a {@link ConditionallyFilter}. */
+  private static class ConditionallyFilterBuilder extends NodeBuilder {
+    private final Map<String, String> filters = new LinkedHashMap<>();
+    private final List<String> unless = new ArrayList<>();
+
+    @Override ListHandler listOpen(String key) {
+      switch (key) {
+      case "filters":
+        return new StringMapBuilder(filters);
+      case "unless":
+        return new StringListBuilder(unless);
+      default:
+        return super.listOpen(key);
+      }
+    }
+
+    @Override ConditionallyFilter build() {
+      return new ConditionallyFilter(ImmutableMap.copyOf(filters),
+          ImmutableList.copyOf(unless));
+    }
+  }
+
+  /** Builds a {@link Dimension}. */
+  private static class DimensionBuilder extends NodeBuilder {
+    private final String name;
+    private @Nullable String label;
+    private @Nullable BooleanEnum primaryKey;
+    private @Nullable String sql;
+    private final List<String> tags = new ArrayList<>();
+    private @Nullable DimensionFieldType type;
+
+    DimensionBuilder(String name) {
+      this.name = name;
+    }
+
+    @Override void property(String key, Object value) {
+      switch (key) {
+      case "label":
+        label = (String) value;
+        break;
+      case "primary_key":
+        primaryKey = BooleanEnum.of((String) value);
+        break;
+      case "sql":
+        sql = (String) value;
+        break;
+      case "type":
+        type = DimensionFieldType.of((String) value);
+        break;
+      default:
+        super.property(key, value);
+      }
+    }
+
+    @Override ListHandler listOpen(String key) {
+      switch (key) {
+      case "tags":
+        return new StringListBuilder(tags);
+      default:
+        return super.listOpen(key);
+      }
+    }
+
+    @Override Dimension build() {
+      return new Dimension(name,
+          label,
+          primaryKey,
+          sql,
+          ImmutableList.copyOf(tags),
+          type);
+    }
+  }
+
+  /** Builds a {@link Measure}. */
+  private static class MeasureBuilder extends NodeBuilder {
+    private final String name;
+    private @Nullable String label;
+    private @Nullable String sql;
+    private @Nullable MeasureFieldType type;
+
+    MeasureBuilder(String name) {
+      this.name = name;
+    }
+
+    @Override void property(String key, Object value) {
+      switch (key) {
+      case "label":
+        label = (String) value;
+        break;
+      case "sql":
+        sql = (String) value;
+        break;
+      case "type":
+        type = MeasureFieldType.of((String) value);
+        break;
+      default:
+        super.property(key, value);
+      }
+    }
+
+    @Override Measure build() {
+      return new Measure(name, label, sql, type);
+    }
+  }
+
+  /** Builds a {@link View}. */
+  private static class ViewBuilder extends NodeBuilder {
+    private final String name;
+    private final Map<String, Dimension> dimensions = new LinkedHashMap<>();
+    private final List<String> drillFields = new ArrayList<>();
+    private @Nullable String from;
+    private @Nullable String label;
+    private final Map<String, Measure> measures = new LinkedHashMap<>();
+    private @Nullable String sqlTableName;
+
+    ViewBuilder(String name) {
+      this.name = name;
+    }
+
+    @Override void property(String key, Object value) {
+      switch (key) {
+      case "from":
+        from = (String) value;
+        break;
+      case "label":
+        label = (String) value;
+        break;
+      case "sql_table_name":
+        sqlTableName = (String) value;
+        break;
+      default:
+        super.property(key, value);
+      }
+    }
+
+    @Override ListHandler listOpen(String key) {
+      switch (key) {
+      case "drill_fields":
+        return new StringListBuilder(drillFields);
+      default:
+        return super.listOpen(key);
+      }
+    }
+
+    @Override NodeBuilder objOpen(String key, String name) {
+      switch (key) {
+      case "dimension":
+        return new DimensionBuilder(name);
+      case "measure":
+        return new MeasureBuilder(name);
+      default:
+        return super.objOpen(key, name);
+      }
+    }
+
+    @Override void add(String key, Object node) {
+      switch (key) {
+      case "dimension":
+        dimensions.put(((Dimension) node).name, (Dimension) node);
+        break;
+      case "measure":
+        measures.put(((Measure) node).name, (Measure) node);
+        break;
+      default:
+        super.add(key, node);
+      }
+    }
+
+    @Override View build() {
+      return new View(name,
+          ImmutableMap.copyOf(dimensions),
+          ImmutableList.copyOf(drillFields),
+          from,
+          label,
+          ImmutableMap.copyOf(measures),
+          sqlTableName);
+    }
+  }
+
+  /** Builds a {@link Join}. */
+  private static class JoinBuilder extends NodeBuilder {
+    private final String name;
+    private @Nullable String from;
+    private @Nullable RelationshipType relationship;
+    private @Nullable String sqlOn;
+
+    JoinBuilder(String name) {
+      this.name = name;
+    }
+
+    @Override void property(String key, Object value) {
+      switch (key) {
+      case "from":
+        from = (String) value;
+        break;
+      case "relationship":
+        relationship = RelationshipType.of((String) value);
+        break;
+      case "sql_on":
+        sqlOn = (String) value;
+        break;
+      default:
+        super.property(key, value);
+      }
+    }
+
+    @Override Join build() {
+      return new Join(name, from, relationship, sqlOn);
+    }
+  }
+
+  /** Builds a {@link Explore}. */
+  private static class ExploreBuilder extends NodeBuilder {
+    private final String name;
+    private @Nullable ConditionallyFilter conditionallyFilter;
+    private @Nullable String from;
+    private final Map<String, Join> joins = new LinkedHashMap<>();
+    private @Nullable String viewName;
+
+    ExploreBuilder(String name) {
+      this.name = name;
+    }
+
+    @Override void property(String key, Object value) {
+      switch (key) {
+      case "from":
+        from = (String) value;
+        break;
+      case "view_name":
+        viewName = (String) value;
+        break;
+      default:
+        super.property(key, value);
+      }
+    }
+
+    @Override NodeBuilder objOpen(String key, String name) {
+      switch (key) {
+      case "conditionally_filter":
+        return new ConditionallyFilterBuilder();
+      case "join":
+        return new JoinBuilder(name);
+      default:
+        return super.objOpen(key, name);
+      }
+    }
+
+    @Override void add(String key, Object node) {
+      switch (key) {
+      case "conditionally_filter":
+        conditionallyFilter = (ConditionallyFilter) node;
+        break;
+      case "join":
+        joins.put(((Join) node).name, (Join) node);
+        break;
+      default:
+        super.add(key, node);
+      }
+    }
+
+    @Override Explore build() {
+      return new Explore(name,
+          conditionallyFilter,
+          from,
+          ImmutableMap.copyOf(joins),
+          viewName);
+    }
+  }
+
+  /** Builds a {@link Model}. */
+  private static class ModelBuilder extends NodeBuilder {
+    private final String name;
+    private final Map<String, Explore> explores = new LinkedHashMap<>();
+    private @Nullable Number fiscalMonthOffset;
+    private final Map<String, View> views = new LinkedHashMap<>();
+
+    ModelBuilder(String name) {
+      this.name = name;
+    }
+
+    @Override void property(String key, Object value) {
+      switch (key) {
+      case "fiscal_month_offset":
+        fiscalMonthOffset = (Number) value;
+        break;
+      default:
+        super.property(key, value);
+      }
+    }
+
+    @Override NodeBuilder objOpen(String key, String name) {
+      switch (key) {
+      case "explore":
+        return new ExploreBuilder(name);
+      case "view":
+        return new ViewBuilder(name);
+      default:
+        return super.objOpen(key, name);
+      }
+    }
+
+    @Override void add(String key, Object node) {
+      switch (key) {
+      case "explore":
+        explores.put(((Explore) node).name, (Explore) node);
+        break;
+      case "view":
+        views.put(((View) node).name, (View) node);
+        break;
+      default:
+        super.add(key, node);
+      }
+    }
+
+    @Override Model build() {
+      return new Model(name,
+          ImmutableMap.copyOf(explores),
+          fiscalMonthOffset,
+          ImmutableMap.copyOf(views));
+    }
+  }
+
+  /** Builds a node of the object model. */
+  private abstract static class NodeBuilder {
+    void property(String key, Object value) {
+      throw new IllegalArgumentException("unknown property " + key);
+    }
+
+    ListHandler listOpen(String key) {
+      throw new IllegalArgumentException("unknown property " + key);
+    }
+
+    NodeBuilder objOpen(String key, String name) {
+      throw new IllegalArgumentException("unknown property " + key);
+    }
+
+    void add(String key, Object node) {
+      throw new IllegalArgumentException("unknown property " + key);
+    }
+
+    abstract Object build();
+  }
+
+  /** Builds the root of a document; passes each object to a consumer. */
+  private static class RootBuilder extends NodeBuilder {
+    private final BiConsumer<String, Object> consumer;
+
+    RootBuilder(BiConsumer<String, Object> consumer) {
+      this.consumer = consumer;
+    }
+
+    @Override NodeBuilder objOpen(String key, String name) {
+      switch (key) {
+      case "model":
+        return new ModelBuilder(name);
+      default:
+        return super.objOpen(key, name);
+      }
+    }
+
+    @Override void add(String key, Object node) {
+      consumer.accept(key, node);
+    }
+
+    @Override Object build() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  /** Property handler that sends events to a {@link NodeBuilder}, and
+   * when closed, adds the built node to its parent. */
+  private static class NodeHandler implements PropertyHandler {
+    private final @Nullable NodeHandler parent;
+    private final String key;
+    private final NodeBuilder builder;
+
+    NodeHandler(@Nullable NodeHandler parent, String key,
+        NodeBuilder builder) {
+      this.parent = parent;
+      this.key = key;
+      this.builder = builder;
+    }
+
+    @Override public PropertyHandler property(Pos pos,
+        LookmlSchema.Property property, Object value) {
+      builder.property(property.name(), value);
+      return this;
+    }
+
+    @Override public ListHandler listOpen(Pos pos,
+        LookmlSchema.Property property) {
+      return builder.listOpen(property.name());
+    }
+
+    @Override public PropertyHandler objOpen(Pos pos,
+        LookmlSchema.Property property) {
+      return new NodeHandler(this, property.name(),
+          builder.objOpen(property.name(), ""));
+    }
+
+    @Override public PropertyHandler objOpen(Pos pos,
+        LookmlSchema.Property property, String name) {
+      return new NodeHandler(this, property.name(),
+          builder.objOpen(property.name(), name));
+    }
+
+    @Override public void close(Pos pos) {
+      if (parent != null) {
+        parent.builder.add(key, builder.build());
+      }
+    }
+  }
+
+  /** Adds each identifier or string in a list to a Java list. */
+  private static class StringListBuilder implements ListHandler {
+    private final List<String> list;
+
+    StringListBuilder(List<String> list) {
+      this.list = list;
+    }
+
+    @Override public ListHandler identifier(Pos pos, String value) {
+      list.add(value);
+      return this;
+    }
+
+    @Override public ListHandler string(Pos pos, String value) {
+      list.add(value);
+      return this;
+    }
+  }
+
+  /** Adds each pair in a list to a Java map. */
+  private static class StringMapBuilder implements ListHandler {
+    private final Map<String, String> map;
+
+    StringMapBuilder(Map<String, String> map) {
+      this.map = map;
+    }
+
+    @Override public ListHandler pair(Pos pos, String ref,
+        String identifier) {
+      map.put(ref, identifier);
+      return this;
+    }
+  }
+}
+
+// End MiniLookmlAst.java
@@ -0,0 +1,473 @@
+/*
+ * Licensed to the LookML Authors under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.
+ * The LookML Authors license this file to you under the Apache
+ * License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License.  You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package net.hydromatic.lookml;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import static java.util.Objects.requireNonNull;
+
+/** Generates SQL for queries on the explores of a Mini-LookML
+ * {@link MiniLookml.Model model}.
+ *
+ * <p>A {@link Query} names an explore, the fields to select (each of the
+ * form "view.field", where "view" is the explore's base view or one of its
+ * joins), and filters, each of which requires a field to equal a value.
+ *
+ * <p>The generated query joins only the views that it needs: those whose
+ * fields it uses, directly or via a <code>${view.field}</code> reference,
+ * and the views that their {@code sql_on} conditions reference. Dimensions
+ * are grouped, and filters on measures become a {@code HAVING} clause.
+ *
+ * <p>Work is memoized at two levels. For each explore, the generator
+ * remembers the SQL of each field, and the joins that each view requires
+ * (the "join path"). For each query signature (the explore, the fields,
+ * and the names of the filtered fields, but not the filter values), it
+ * caches a template, so that generating SQL for a query whose signature
+ * has been seen is just a matter of substituting the filter values.
+ *
+ * <p>A generator is safe for use by several threads concurrently. */
+public class MiniLookmlSqlGenerator {
+  private final MiniLookml.Model model;
+  private final Map<String, ExplorePlan> plans = new ConcurrentHashMap<>();
+  private final Cache<String, Template> templates;
+
+  private MiniLookmlSqlGenerator(MiniLookml.Model model, long cacheSize) {
+    this.model = requireNonNull(model, "model");
+    this.templates =
+        CacheBuilder.newBuilder().maximumSize(cacheSize).recordStats()
+            .build();
+  }
+
+  /** Creates a generator.
+   *
+   * @param model Model
+   * @param cacheSize Maximum number of templates to cache
+   */
+  public static MiniLookmlSqlGenerator create(MiniLookml.Model model,
+      long cacheSize) {
+    return new MiniLookmlSqlGenerator(model, cacheSize);
+  }
+
+  /** Returns the statistics of the template cache. */
+  public CacheStats cacheStats() {
+    return templates.stats();
+  }
+
+  /** Generates SQL for a query.
+   *
+   * @throws IllegalArgumentException if the query references an explore,
+   *   view or field that does not exist
+   */
+  public String generate(Query query) {
+    final Template template;
+    try {
+      template =
+          templates.get(query.signature(),
+              () -> plan(query.explore).template(query));
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    }
+    return template.bind(query.filters);
+  }
+
+  private ExplorePlan plan(String exploreName) {
+    final MiniLookml.Explore explore = model.explores.get(exploreName);
+    if (explore == null) {
+      throw new IllegalArgumentException("unknown explore '" + exploreName
+          + "'");
+    }
+    return plans.computeIfAbsent(exploreName, n -> new ExplorePlan(explore));
+  }
+
+  /** Converts a string to a SQL character literal. */
+  private static String quote(String s) {
+    return "'" + s.replace("'", "''") + "'";
+  }
+
+  /** Query on an explore. */
+  public static class Query {
+    public final String explore;
+    /** Fields to select, each of the form "view.field". */
+    public final List<String> fields;
+    /** Filters; each key is a field of the form "view.field", and each
+     * value is the value the field must equal. */
+    public final Map<String, String> filters;
+
+    private Query(String explore, List<String> fields,
+        Map<String, String> filters) {
+      this.explore = requireNonNull(explore, "explore");
+      this.fields = ImmutableList.copyOf(fields);
+      this.filters = ImmutableSortedMap.copyOf(filters);
+    }
+
+    /** Creates a query. */
+    public static Query of(String explore, List<String> fields,
+        Map<String, String> filters) {
+      return new Query(explore, fields, filters);
+    }
+
+    /** Returns the signature of this query; queries that differ only in
+     * the values of their filters have the same signature. */
+    String signature() {
+      return explore + "\0" + String.join(",", fields) + "\0"
+          + String.join(",", filters.keySet());
+    }
+  }
+
+  /** SQL expression of a field, and the views it requires. */
+  private static class Expr {
+    final String sql;
+    final Set<String> aliases;
+    final boolean measure;
+
+    Expr(String sql, Set<String> aliases, boolean measure) {
+      this.sql = sql;
+      this.aliases = ImmutableSet.copyOf(aliases);
+      this.measure = measure;
+    }
+  }
+
+  /** SQL with a slot for each filter value. */
+  private static class Template {
+    /** Fragments of SQL; there is one more fragment than slots. */
+    final List<String> fragments;
+    /** Field whose filter value fills each slot. */
+    final List<String> slots;
+
+    Template(List<String> fragments, List<String> slots) {
+      this.fragments = ImmutableList.copyOf(fragments);
+      this.slots = ImmutableList.copyOf(slots);
+    }
+
+    String bind(Map<String, String> filters) {
+      final StringBuilder b = new StringBuilder(fragments.get(0));
+      for (int i = 0; i < slots.size(); i++) {
+        b.append(quote(requireNonNull(filters.get(slots.get(i)))))
+            .append(fragments.get(i + 1));
+      }
+      return b.toString();
+    }
+  }
+
+  /** Memoized information about an explore: the view behind each alias,
+   * the SQL of each field, and the join path of each alias. */
+  private class ExplorePlan {
+    final MiniLookml.Explore explore;
+    /** Alias of the base view. */
+    final String baseAlias;
+    /** Name of the view for each alias; the base view first, then the
+     * joins in the order they are declared. */
+    final Map<String, String> views = new LinkedHashMap<>();
+    /** SQL of each field, keyed by "alias.field". */
+    final Map<String, Expr> fields = new ConcurrentHashMap<>();
+    /** Aliases that must be joined in order to join each alias,
+     * including the alias itself. */
+    final Map<String, Set<String>> joinPaths = new ConcurrentHashMap<>();
+
+    ExplorePlan(MiniLookml.Explore explore) {
+      this.explore = explore;
+      this.baseAlias =
+          explore.viewName != null ? explore.viewName : explore.name;
+      views.put(baseAlias, explore.from != null ? explore.from : baseAlias);
+      explore.joins.forEach((name, join) ->
+          views.put(name, join.from != null ? join.from : name));
+    }
+
+    MiniLookml.View view(String alias) {
+      final String viewName = views.get(alias);
+      if (viewName == null) {
+        throw new IllegalArgumentException("unknown view '" + alias
+            + "' in explore '" + explore.name + "'");
+      }
+      final MiniLookml.View view = model.views.get(viewName);
+      if (view == null) {
+        throw new IllegalArgumentException("unknown view '" + viewName
+            + "'");
+      }
+      return view;
+    }
+
+    String table(String alias) {
+      final MiniLookml.View view = view(alias);
+      return view.sqlTableName != null
+          ? view.sqlTableName.trim()
+          : view.name;
+    }
+
+    /** Returns the expression for a field of the form "alias.field". */
+    Expr field(String qualifiedName) {
+      final int dot = qualifiedName.indexOf('.');
+      if (dot < 0) {
+        throw new IllegalArgumentException("field '" + qualifiedName
+            + "' must be of the form 'view.field'");
+      }
+      return field(qualifiedName.substring(0, dot),
+          qualifiedName.substring(dot + 1), new HashSet<>());
+    }
+
+    /** Returns the expression for a field, computing and memoizing it if
+     * necessary.
+     *
+     * <p>Does not use {@link Map#computeIfAbsent} because computing a
+     * field may compute the fields it references. If two threads compute
+     * the same field at the same time, they get equal results. */
+    Expr field(String alias, String name, Set<String> active) {
+      final String key = alias + "." + name;
+      final Expr expr = fields.get(key);
+      if (expr != null) {
+        return expr;
+      }
+      if (!active.add(key)) {
+        throw new IllegalArgumentException("cyclic reference to field '"
+            + key + "' in explore '" + explore.name + "'");
+      }
+      final MiniLookml.View view = view(alias);
+      final Set<String> aliases = new LinkedHashSet<>();
+      aliases.add(alias);
+      final Expr newExpr;
+      final MiniLookml.Dimension dimension = view.dimensions.get(name);
+      final MiniLookml.Measure measure = view.measures.get(name);
+      if (dimension != null) {
+        final String sql =
+            expand(alias, dimension.sql, name, aliases, active);
+        newExpr = new Expr(sql, aliases, false);
+      } else if (measure != null) {
+        final String sql = expand(alias, measure.sql, name, aliases, active);
+        newExpr = new Expr(aggregate(measure, sql), aliases, true);
+      } else {
+        throw new IllegalArgumentException("unknown field '" + key
+            + "' in explore '" + explore.name + "'");
+      }
+      active.remove(key);
+      final Expr previous = fields.putIfAbsent(key, newExpr);
+      return previous != null ? previous : newExpr;
+    }
+
+    /** Expands the references in the SQL of a field; the default SQL is
+     * <code>${TABLE}.name</code>. */
+    String expand(String alias, @Nullable String sql, String name,
+        Set<String> aliases, Set<String> active) {
+      final String code = sql == null ? "${TABLE}." + name : sql.trim();
+      final StringBuilder b = new StringBuilder();
+      final int[] end = {0};
+      CodeReference.scan(code, r -> {
+        b.append(code, end[0], r.offset());
+        end[0] = r.offset() + r.length();
+        if (r.isTable()) {
+          b.append(alias);
+        } else if (r.partCount() == 1) {
+          final Expr expr = field(alias, r.part(0), active);
+          aliases.addAll(expr.aliases);
+          b.append(expr.sql);
+        } else if (r.partCount() == 2
+            && r.partEquals(1, "SQL_TABLE_NAME")) {
+          b.append(table(r.part(0)));
+        } else if (r.partCount() == 2) {
+          final Expr expr = field(r.part(0), r.part(1), active);
+          aliases.addAll(expr.aliases);
+          b.append(expr.sql);
+        } else {
+          throw new IllegalArgumentException("invalid reference " + r
+              + " in explore '" + explore.name + "'");
+        }
+      });
+      return b.append(code, end[0], code.length()).toString();
+    }
+
+    /** Applies a measure's aggregate function to its expression. */
+    String aggregate(MiniLookml.Measure measure, String sql) {
+      final MiniLookml.MeasureType type =
+          measure.type != null ? measure.type : MiniLookml.MeasureType.NUMBER;
+      switch (type) {
+      case COUNT:
+        return "COUNT(*)";
+      case COUNT_DISTINCT:
+        return "COUNT(DISTINCT " + sql + ")";
+      case SUM:
+        return "SUM(" + sql + ")";
+      case AVERAGE:
+        return "AVG(" + sql + ")";
+      case MIN:
+        return "MIN(" + sql + ")";
+      case MAX:
+        return "MAX(" + sql + ")";
+      case NUMBER:
+        return sql;
+      default:
+        throw new IllegalArgumentException("measure '" + measure.name
+            + "' has unsupported type " + type);
+      }
+    }
+
+    /** Returns the aliases that must be joined before an alias can be
+     * joined, including the alias itself; memoized. */
+    Set<String> joinPath(String alias) {
+      final Set<String> path = joinPaths.get(alias);
+      if (path != null) {
+        return path;
+      }
+      final Set<String> newPath = new LinkedHashSet<>();
+      joinPath(alias, newPath);
+      final Set<String> previous =
+          joinPaths.putIfAbsent(alias, ImmutableSet.copyOf(newPath));
+      return previous != null ? previous : joinPaths.get(alias);
+    }
+
+    /** Adds to {@code path} the aliases needed to join an alias, each
+     * after the aliases it needs. */
+    private void joinPath(String alias, Set<String> path) {
+      if (alias.equals(baseAlias) || path.contains(alias)) {
+        return;
+      }
+      final MiniLookml.Join join = explore.joins.get(alias);
+      if (join == null) {
+        throw new IllegalArgumentException("unknown view '" + alias
+            + "' in explore '" + explore.name + "'");
+      }
+      // Mark the alias as visited before its dependencies, so that a cycle
+      // terminates, then move it after them.
+      path.add(alias);
+      for (String a : on(alias).aliases) {
+        if (!a.equals(alias)) {
+          joinPath(a, path);
+        }
+      }
+      path.remove(alias);
+      path.add(alias);
+    }
+
+    /** Returns the expanded join condition of an alias. */
+    Expr on(String alias) {
+      final MiniLookml.Join join = requireNonNull(explore.joins.get(alias));
+      final Set<String> aliases = new LinkedHashSet<>();
+      final String sql =
+          join.sqlOn == null
+              ? ""
+              : expand(alias, join.sqlOn, alias, aliases, new HashSet<>());
+      return new Expr(sql, aliases, false);
+    }
+
+    /** Creates a template for a query. */
+    Template template(Query query) {
+      final List<Expr> select = new ArrayList<>();
+      final Set<String> aliases = new LinkedHashSet<>();
+      for (String field : query.fields) {
+        final Expr expr = field(field);
+        select.add(expr);
+        aliases.addAll(expr.aliases);
+      }
+      final Map<String, Expr> filters = new LinkedHashMap<>();
+      for (String field : query.filters.keySet()) {
+        final Expr expr = field(field);
+        filters.put(field, expr);
+        aliases.addAll(expr.aliases);
+      }
+
+      // Join the required aliases, each after the aliases it depends on,
+      // in declaration order where possible
+      final Set<String> joins = new LinkedHashSet<>();
+      for (String alias : views.keySet()) {
+        if (aliases.contains(alias)) {
+          joins.addAll(joinPath(alias));
+        }
+      }
+
+      final List<String> fragments = new ArrayList<>();
+      final List<String> slots = new ArrayList<>();
+      final StringBuilder b = new StringBuilder("SELECT ");
+      final List<Integer> groupBy = new ArrayList<>();
+      boolean hasMeasure = false;
+      for (int i = 0; i < select.size(); i++) {
+        final Expr expr = select.get(i);
+        if (i > 0) {
+          b.append(", ");
+        }
+        b.append(expr.sql).append(" AS \"").append(query.fields.get(i))
+            .append('"');
+        if (expr.measure) {
+          hasMeasure = true;
+        } else {
+          groupBy.add(i + 1);
+        }
+      }
+      b.append("\nFROM ").append(table(baseAlias)).append(" AS ")
+          .append(baseAlias);
+      for (String alias : joins) {
+        final Expr on = on(alias);
+        if (on.sql.isEmpty()) {
+          b.append("\nCROSS JOIN ").append(table(alias)).append(" AS ")
+              .append(alias);
+        } else {
+          b.append("\nLEFT JOIN ").append(table(alias)).append(" AS ")
+              .append(alias).append(" ON ").append(on.sql);
+        }
+      }
+      appendConditions(b, "\nWHERE ", filters, false, fragments, slots);
+      if (hasMeasure && !groupBy.isEmpty()) {
+        b.append("\nGROUP BY ");
+        for (int i = 0; i < groupBy.size(); i++) {
+          b.append(i > 0 ? ", " : "").append(groupBy.get(i));
+        }
+      }
+      appendConditions(b, "\nHAVING ", filters, true, fragments, slots);
+      fragments.add(b.toString());
+      return new Template(fragments, slots);
+    }
+
+    /** Appends the filters on dimensions (or on measures), each followed by
+     * a slot for its value. */
+    private void appendConditions(StringBuilder b, String keyword,
+        Map<String, Expr> filters, boolean measures, List<String> fragments,
+        List<String> slots) {
+      String sep = keyword;
+      for (Map.Entry<String, Expr> entry : filters.entrySet()) {
+        if (entry.getValue().measure == measures) {
+          b.append(sep).append(entry.getValue().sql).append(" = ");
+          fragments.add(b.toString());
+          slots.add(entry.getKey());
+          b.setLength(0);
+          sep = " AND ";
+        }
+      }
+    }
+  }
+}
+
+// End MiniLookmlSqlGenerator.java
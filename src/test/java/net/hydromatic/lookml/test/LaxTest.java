@@ -18,42 +18,107 @@
  */
 package net.hydromatic.lookml.test;
 
+import net.hydromatic.lookml.CodeReference;
+import net.hydromatic.lookml.DependencyGraph;
+import net.hydromatic.lookml.ErrorHandler;
 import net.hydromatic.lookml.LaxHandlers;
+import net.hydromatic.lookml.ListHandler;
+import net.hydromatic.lookml.LookmlCodeGenerator;
+import net.hydromatic.lookml.LookmlEvent;
+import net.hydromatic.lookml.LookmlMetrics;
+import net.hydromatic.lookml.LookmlQuery;
+import net.hydromatic.lookml.LookmlRecorder;
 import net.hydromatic.lookml.LookmlSchema;
 import net.hydromatic.lookml.LookmlSchemas;
+import net.hydromatic.lookml.LookmlWatcher;
+import net.hydromatic.lookml.MerkleTree;
 import net.hydromatic.lookml.MiniLookml;
+import net.hydromatic.lookml.MiniLookmlAst;
+import net.hydromatic.lookml.MiniLookmlSqlGenerator;
 import net.hydromatic.lookml.ObjectHandler;
 import net.hydromatic.lookml.Pos;
 import net.hydromatic.lookml.SchemaLookml;
 import net.hydromatic.lookml.Source;
 import net.hydromatic.lookml.Sources;
+import net.hydromatic.lookml.SymbolIndex;
+import net.hydromatic.lookml.Value;
 import net.hydromatic.lookml.parse.LookmlParsers;
+import net.hydromatic.lookml.parse.StructuralIndex;
+import net.hydromatic.lookml.sql.SqlCodeChecker;
+import net.hydromatic.lookml.util.ImmutablePairList;
+import net.hydromatic.lookml.util.PairList;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
 
+import org.apache.calcite.sql.SqlNode;
+import org.apache.calcite.sql.parser.SqlParser;
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.hamcrest.Matcher;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import static net.hydromatic.lookml.test.ParseFixture.minus;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.aMapWithSize;
 import static org.hamcrest.Matchers.anEmptyMap;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.hasToString;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.Matchers.startsWith;
 import static org.hamcrest.core.Is.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
 /** Tests for the LookML event-based parser. */
 public class LaxTest {
 
@@ -171,6 +236,950 @@ private static void assertParseThrows(String s, Matcher<Throwable> matcher) {
     assertThat(list2, hasToString(list.toString()));
   }
 
+  /** Tests that the same events come out of a pipeline
+   * ({@link LaxHandlers#pipeline}) as go into it, and in the same order,
+   * even if the ring buffer is much smaller than the number of events. */
+  @Test void testPipeline() {
+    final List<String> list = new ArrayList<>();
+    generateSampleEvents(LaxHandlers.logger(list::add));
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      for (int capacity : new int[] {1, 3, 1024}) {
+        final List<String> list2 = new ArrayList<>();
+        LaxHandlers.pipeline(LaxTest::generateSampleEvents,
+            LaxHandlers.logger(list2::add), capacity, executor);
+        assertThat(list2, hasToString(list.toString()));
+      }
+
+      // Parse the example model, and validate it in another thread.
+      final LookmlSchema schema = MiniLookml.schema();
+      final LookmlParsers.Config config =
+          LookmlParsers.config()
+              .withCodePropertyNames(schema.codePropertyNames())
+              .withSource(Sources.fromString(MiniLookml.exampleModel()));
+      final List<String> list3 = new ArrayList<>();
+      final List<String> errorList = new ArrayList<>();
+      LookmlParsers.parse(
+          LaxHandlers.validator(LaxHandlers.logger(list3::add), schema,
+              LaxHandlers.errorLogger(errorList::add)),
+          config);
+      final List<String> list4 = new ArrayList<>();
+      final List<String> errorList4 = new ArrayList<>();
+      LaxHandlers.pipeline(h -> LookmlParsers.parse(h, config),
+          LaxHandlers.validator(LaxHandlers.logger(list4::add), schema,
+              LaxHandlers.errorLogger(errorList4::add)),
+          16, executor);
+      assertThat(errorList4, hasToString(errorList.toString()));
+      assertThat(list4, hasToString(list3.toString()));
+      assertThat(list4.isEmpty(), is(false));
+
+      // An exception in the consumer is re-thrown in the producer.
+      try {
+        LaxHandlers.pipeline(LaxTest::generateSampleEvents,
+            new ObjectHandler() {
+              @Override public ObjectHandler code(Pos pos,
+                  String propertyName, String value) {
+                throw new IllegalStateException("bad code " + value);
+              }
+            }, 2, executor);
+        fail("expected error");
+      } catch (IllegalStateException e) {
+        assertThat(e.getMessage(), is("bad code VALUES 1"));
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    // An executor that runs the consumer in the producer's thread would
+    // hang; it is rejected.
+    try {
+      LaxHandlers.pipeline(LaxTest::generateSampleEvents,
+          LaxHandlers.nullObjectHandler(), 16, Runnable::run);
+      fail("expected error");
+    } catch (IllegalArgumentException e) {
+      assertThat(e.getMessage(),
+          is("executor must run the consumer on a thread other than the "
+              + "producer's"));
+    }
+  }
+
+  /** Tests {@link LaxHandlers#tee(ObjectHandler...)} and
+   * {@link LaxHandlers#parallelTee}; each consumer should see the same
+   * events as if it were the only consumer. */
+  @Test void testTee() {
+    final List<String> list = new ArrayList<>();
+    generateSampleEvents(LaxHandlers.logger(list::add));
+
+    final List<String> list1 = new ArrayList<>();
+    final List<String> list2 = new ArrayList<>();
+    generateSampleEvents(
+        LaxHandlers.tee(LaxHandlers.logger(list1::add),
+            LaxHandlers.logger(list2::add)));
+    assertThat(list1, hasToString(list.toString()));
+    assertThat(list2, hasToString(list.toString()));
+
+    final ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      for (int capacity : new int[] {1, 1024}) {
+        final List<String> list3 = new ArrayList<>();
+        final List<String> list4 = new ArrayList<>();
+        final List<String> list5 = new ArrayList<>();
+        LaxHandlers.parallelTee(LaxTest::generateSampleEvents, capacity,
+            executor, LaxHandlers.logger(list3::add),
+            LaxHandlers.logger(list4::add), LaxHandlers.logger(list5::add));
+        assertThat(list3, hasToString(list.toString()));
+        assertThat(list4, hasToString(list.toString()));
+        assertThat(list5, hasToString(list.toString()));
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    // An executor that runs consumers in the producer's thread is rejected
+    try {
+      LaxHandlers.parallelTee(LaxTest::generateSampleEvents, 16,
+          Runnable::run, LaxHandlers.nullObjectHandler(),
+          LaxHandlers.nullObjectHandler());
+      fail("expected error");
+    } catch (IllegalArgumentException e) {
+      assertThat(e.getMessage(), startsWith("executor must run"));
+    }
+  }
+
+  /** Tests {@link LaxHandlers#events}, which converts a push-based producer
+   * of events into a stream that is consumed at the consumer's pace. */
+  @Test void testEvents() throws Exception {
+    final List<String> list = new ArrayList<>();
+    generateSampleEvents(LaxHandlers.logger(list::add));
+
+    final ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      // Replaying the stream into a logger gives the same result as
+      // logging directly, however small the buffer.
+      for (int capacity : new int[] {1, 1024}) {
+        final List<String> list2 = new ArrayList<>();
+        try (Stream<LookmlEvent> events =
+                 LaxHandlers.events(LaxTest::generateSampleEvents, capacity,
+                     executor)) {
+          LaxHandlers.replay(events.iterator(),
+              LaxHandlers.logger(list2::add));
+        }
+        assertThat(list2, hasToString(list.toString()));
+      }
+
+      // The consumer may stop early.
+      try (Stream<LookmlEvent> events =
+               LaxHandlers.events(LaxTest::generateSampleEvents, 2,
+                   executor)) {
+        final List<String> list3 =
+            events.limit(3).map(LookmlEvent::toString)
+                .collect(Collectors.toList());
+        assertThat(list3,
+            hasToString("[objOpen(model, m), number(n, 1), "
+                + "string(s, hello)]"));
+      }
+
+      // An exception in the producer is re-thrown to the consumer.
+      try (Stream<LookmlEvent> events =
+               LaxHandlers.events(h -> {
+                 generateSampleEvents(h);
+                 throw new IllegalStateException("producer failed");
+               }, 2, executor)) {
+        final long count = events.count();
+        fail("expected error, got " + count);
+      } catch (IllegalStateException e) {
+        assertThat(e.getMessage(), is("producer failed"));
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    // Closing the stream stops a producer that is waiting for space in the
+    // queue, and leaves the executor's thread uninterrupted.
+    final ExecutorService executor2 = Executors.newSingleThreadExecutor();
+    try {
+      final CountDownLatch stopped = new CountDownLatch(1);
+      try (Stream<LookmlEvent> events =
+               LaxHandlers.events(h -> {
+                 try {
+                   for (;;) {
+                     h.comment(Pos.ZERO, "x");
+                   }
+                 } finally {
+                   stopped.countDown();
+                 }
+               }, 1, executor2)) {
+        assertThat(events.iterator().hasNext(), is(true));
+      }
+      assertThat(stopped.await(10, TimeUnit.SECONDS), is(true));
+      assertThat(
+          executor2.submit(() -> Thread.currentThread().isInterrupted())
+              .get(),
+          is(false));
+    } finally {
+      executor2.shutdown();
+    }
+  }
+
+  /** Tests {@link SymbolIndex}, indexing two documents concurrently and
+   * then looking for references that do not resolve. */
+  @Test void testSymbolIndex() {
+    final LookmlSchema schema = MiniLookml.schema();
+    final LookmlParsers.Config config =
+        LookmlParsers.config()
+            .withCodePropertyNames(schema.codePropertyNames());
+    final List<String> errorList =
+        Collections.synchronizedList(new ArrayList<>());
+    final SymbolIndex index = SymbolIndex.create();
+    ImmutableList.of(MiniLookml.exampleModel(),
+            "model: m {\n"
+                + "  view: my_table {\n"
+                + "    drill_fields: [d2, d]\n"
+                + "    dimension: d2 {\n"
+                + "    }\n"
+                + "  }\n"
+                + "}\n")
+        .parallelStream()
+        .forEach(document ->
+            LookmlParsers.parse(
+                LaxHandlers.validator(index.indexer(), schema,
+                    LaxHandlers.errorLogger(errorList::add)),
+                config.withSource(Sources.fromString(document))));
+    assertThat(errorList, empty());
+
+    // model "m", explore "e", join "v", view "v", dimension "d",
+    // measure "m", view "my_table", dimension "d2"
+    assertThat(index.definitionCount(), is(8));
+    assertThat(index.definition("view", "m.v"), notNullValue());
+    assertThat(index.definition("dimension", "m.v.d"), notNullValue());
+    assertThat(index.definition("dimension", "v.d"), nullValue());
+    assertThat(index.definition("dimension", "m.my_table.d2"),
+        notNullValue());
+
+    // "from: v" and "view_name: v" resolve to view "m.v", and "from:
+    // my_table" to view "m.my_table", through the enclosing model; "d2" in
+    // view "my_table" resolves to dimension "m.my_table.d2" through the
+    // enclosing view. The filters, and "d" in view "my_table", are dangling;
+    // "d" is only defined in view "v".
+    final ImmutableMap<String, ImmutableList<String>> targetTypes =
+        ImmutableMap.of("from", ImmutableList.of("view"),
+            "view_name", ImmutableList.of("view"),
+            "drill_fields", ImmutableList.of("dimension", "measure"),
+            "filters", ImmutableList.of("dimension", "measure"),
+            "unless", ImmutableList.of("dimension", "measure"));
+    assertThat(index.danglingReferences(targetTypes),
+        hasToString("[drill_fields: d, filters: f1, filters: f2, "
+            + "unless: f3, unless: f4]"));
+  }
+
+  /** Tests {@link LookmlParsers#parseIterative}: it generates the same
+   * events as the recursive parser, parses a deeply nested document on a
+   * thread with a small stack, and enforces the maximum depth. */
+  @Test void testParseIterative() throws InterruptedException {
+    final LookmlParsers.Config config =
+        LookmlParsers.config()
+            .withCodePropertyNames(
+                ImmutableList.of("sql", "sql_on", "sql_table_name"));
+    final String s = "# leading comment\n"
+        + "model: m {\r\n"
+        + "\tview: v {\r\n"
+        + "\t\tsql: select\r\n"
+        + "\t\t  1;;\r\n"
+        + "\t\tdrill_fields: [a, # comment\n"
+        + "  b: \"x\", [1, -2.5e3, []], \"q\\\"\"]\n"
+        + "  }\n"
+        + "  n: -7 s: \"\"\n"
+        + "  o: {}\n"
+        + "}\n"
+        + "# trailing comment\n";
+    for (String document : ImmutableList.of(s, MiniLookml.exampleModel())) {
+      for (int tabSize : new int[] {1, 4}) {
+        final LookmlParsers.Config config2 =
+            config.withSource(Sources.fromString(document))
+                .withTabSize(tabSize);
+        final List<String> list = new ArrayList<>();
+        LookmlParsers.parse(LaxHandlers.logger(list::add, true), config2);
+        final List<String> list2 = new ArrayList<>();
+        LookmlParsers.parseIterative(LaxHandlers.logger(list2::add, true),
+            config2);
+        assertThat(list2, is(list));
+      }
+    }
+
+    // A document nested 10,000 deep, parsed on a thread whose stack is
+    // too small for the recursive parser
+    final int depth = 10_000;
+    final StringBuilder b = new StringBuilder("model: m {");
+    for (int i = 1; i < depth; i++) {
+      b.append("a: {");
+    }
+    for (int i = 0; i < depth; i++) {
+      b.append('}');
+    }
+    final int[] counts = {0, 0};
+    final ObjectHandler counter = new ObjectHandler() {
+      @Override public ObjectHandler objOpen(Pos pos, String propertyName) {
+        ++counts[0];
+        return this;
+      }
+
+      @Override public ObjectHandler objOpen(Pos pos, String propertyName,
+          String name) {
+        ++counts[0];
+        return this;
+      }
+
+      @Override public void close(Pos pos) {
+        ++counts[1];
+      }
+    };
+    final Thread thread =
+        new Thread(null, () ->
+            LookmlParsers.parseIterative(counter,
+                config.withSource(Sources.fromString(b.toString()))
+                    .withMaxDepth(depth)),
+            "small-stack", 64 * 1024);
+    thread.start();
+    thread.join();
+    assertThat(counts[0], is(depth));
+    assertThat(counts[1], is(depth + 1));
+
+    // One level too deep; both parsers fail at the innermost "[", or at
+    // the "{" of a named object
+    assertBothParsersThrow(
+        config.withMaxDepth(3)
+            .withSource(
+                Sources.fromString("model: m {\n"
+                    + "  a: {\n"
+                    + "    b: [[1]]\n"
+                    + "  }\n"
+                    + "}")),
+        "Maximum depth 3 exceeded at line 3, column 9.");
+    assertBothParsersThrow(
+        config.withMaxDepth(1)
+            .withSource(
+                Sources.fromString("model: m {\n"
+                    + "  view:   v {\n"
+                    + "  }\n"
+                    + "}")),
+        "Maximum depth 1 exceeded at line 2, column 13.");
+  }
+
+  /** Checks that the recursive and iterative parsers both fail with a
+   * given message. */
+  private static void assertBothParsersThrow(LookmlParsers.Config config,
+      String message) {
+    for (boolean iterative : new boolean[] {false, true}) {
+      try {
+        if (iterative) {
+          LookmlParsers.parseIterative(LaxHandlers.nullObjectHandler(),
+              config);
+        } else {
+          LookmlParsers.parse(LaxHandlers.nullObjectHandler(), config);
+        }
+        fail("expected error");
+      } catch (RuntimeException e) {
+        assertThat(requireNonNull(e.getCause()).getMessage(), is(message));
+      }
+    }
+  }
+
+  /** Tests {@link MerkleTree}, comparing two versions of a project. */
+  @Test void testMerkleTree() {
+    final LookmlParsers.Config config =
+        LookmlParsers.config()
+            .withCodePropertyNames(MiniLookml.schema().codePropertyNames());
+    final Function<String, MerkleTree> build = s -> {
+      final List<MerkleTree> trees = new ArrayList<>();
+      LookmlParsers.parse(MerkleTree.builder(trees::add),
+          config.withSource(Sources.fromString(s)));
+      return trees.get(0);
+    };
+    final String a1 = "model: m {\n"
+        + "  # orders\n"
+        + "  view: orders {\n"
+        + "    sql_table_name: sales.orders;;\n"
+        + "    dimension: id {\n"
+        + "      sql: ${TABLE}.id;;\n"
+        + "    }\n"
+        + "    dimension: amount {\n"
+        + "      sql: ${TABLE}.amount;;\n"
+        + "    }\n"
+        + "  }\n"
+        + "  view: customers {\n"
+        + "    dimension: id {}\n"
+        + "  }\n"
+        + "}";
+    // Same as a1, but with different comments, formatting and order
+    final String a2 = "model: m {\n"
+        + "  view: orders {\n"
+        + "    dimension: amount { sql: ${TABLE}.amount ;; }\n"
+        + "    dimension: id {\n"
+        + "      sql:\n"
+        + "        ${TABLE}.id;;\n"
+        + "    }\n"
+        + "    sql_table_name: sales.orders;;\n"
+        + "  }\n"
+        + "  view: customers { dimension: id {} }\n"
+        + "}";
+    // Changes a1: "amount" changes, "customers" is removed, "regions" is
+    // added
+    final String a3 = "model: m {\n"
+        + "  view: orders {\n"
+        + "    sql_table_name: sales.orders;;\n"
+        + "    dimension: id {\n"
+        + "      sql: ${TABLE}.id;;\n"
+        + "    }\n"
+        + "    dimension: amount {\n"
+        + "      sql: ${TABLE}.total;;\n"
+        + "    }\n"
+        + "  }\n"
+        + "  view: regions {}\n"
+        + "}";
+    final String b = "model: m {\n"
+        + "  explore: orders {}\n"
+        + "}";
+    assertThat(build.apply(a2).root.hash, is(build.apply(a1).root.hash));
+    assertThat(build.apply(a3).root.hash.equals(build.apply(a1).root.hash),
+        is(false));
+
+    // White space in code is normalized, except inside quotes
+    final Function<String, HashCode> sqlHash = sql ->
+        build.apply("model: m {\n"
+            + "  view: v {\n"
+            + "    dimension: d { sql: " + sql + " ;; }\n"
+            + "  }\n"
+            + "}").root.hash;
+    assertThat(sqlHash.apply("\n  CASE  WHEN x = 'a b'\n  THEN 1 END "),
+        is(sqlHash.apply("CASE WHEN x = 'a b' THEN 1 END")));
+    assertThat(sqlHash.apply("x = 'a  b'").equals(sqlHash.apply("x = 'a b'")),
+        is(false));
+    assertThat(sqlHash.apply("\"a  b\" + 'it''s  x'")
+            .equals(sqlHash.apply("\"a  b\" + 'it''s x'")),
+        is(false));
+
+    final MerkleTree before =
+        MerkleTree.project(
+            ImmutableMap.of("a.lkml", build.apply(a1),
+                "b.lkml", build.apply(b)));
+    final MerkleTree after =
+        MerkleTree.project(
+            ImmutableMap.of("a.lkml", build.apply(a3),
+                "b.lkml", build.apply(b)));
+    assertThat(before.root.children.keySet(),
+        hasToString("[document a.lkml, document b.lkml]"));
+
+    final List<String> list = new ArrayList<>();
+    before.diff(after, new MerkleTree.DiffHandler() {
+      @Override public void added(MerkleTree.Node node) {
+        list.add("added " + node + " at " + node.pos.startLine);
+      }
+
+      @Override public void removed(MerkleTree.Node node) {
+        list.add("removed " + node + " at " + node.pos.startLine);
+      }
+
+      @Override public void changed(MerkleTree.Node node,
+          MerkleTree.Node node2) {
+        list.add("changed " + node + " at " + node.pos.startLine
+            + " and " + node2.pos.startLine);
+      }
+    });
+    assertThat(list,
+        hasToString("[removed view customers at 12, "
+            + "changed dimension amount at 8 and 7, "
+            + "added view regions at 11]"));
+
+    final List<String> list2 = new ArrayList<>();
+    before.diff(before, new MerkleTree.DiffHandler() {
+      @Override public void added(MerkleTree.Node node) {
+        list2.add("added " + node);
+      }
+
+      @Override public void removed(MerkleTree.Node node) {
+        list2.add("removed " + node);
+      }
+
+      @Override public void changed(MerkleTree.Node node,
+          MerkleTree.Node node2) {
+        list2.add("changed " + node);
+      }
+    });
+    assertThat(list2, empty());
+  }
+
+  /** Tests {@link LookmlQuery}, evaluating several queries in one pass
+   * over a document. */
+  @Test void testQuery() {
+    final List<LookmlQuery> queries =
+        Stream.of("model/view[*]/dimension[type=time]/sql",
+                "model/view[*]/dimension/sql",
+                "//sql_on",
+                "model/explore[orders]",
+                "model/view[orders]/drill_fields",
+                "model/view[label=\"All orders\"]/*[*]",
+                "//dimension[type=number]")
+            .map(LookmlQuery::parse)
+            .collect(Collectors.toList());
+    final LookmlQuery.Automaton automaton = LookmlQuery.compile(queries);
+    // The first two queries share the states "model" and "view[*]"; all
+    // queries share "model"
+    assertThat(automaton.stateCount(), is(13));
+
+    final List<String> list = new ArrayList<>();
+    final ObjectHandler matcher =
+        automaton.matcher((query, pos, propertyName, value) ->
+            list.add(queries.indexOf(query) + " " + pos.startLine + ":"
+                + pos.startColumn + " " + propertyName + " "
+                + (value instanceof String ? ((String) value).trim()
+                    : value)));
+    final LookmlSchema schema = MiniLookml.schema();
+    LookmlParsers.parse(matcher,
+        LookmlParsers.config()
+            .withCodePropertyNames(schema.codePropertyNames())
+            .withSource(
+                Sources.fromString("model: m {\n"
+                    + "  view: orders {\n"
+                    + "    dimension: id {\n"
+                    + "      sql: ${TABLE}.id;;\n"
+                    + "      type: number\n"
+                    + "    }\n"
+                    + "    dimension: created {\n"
+                    + "      sql: ${TABLE}.created_at;;\n"
+                    + "      type: time\n"
+                    + "    }\n"
+                    + "    measure: count {\n"
+                    + "      type: count\n"
+                    + "    }\n"
+                    + "    drill_fields: [id]\n"
+                    + "    label: \"All orders\"\n"
+                    + "  }\n"
+                    + "  explore: orders {\n"
+                    + "    join: customers {\n"
+                    + "      sql_on: ${orders.customer_id}"
+                    + " = ${customers.id};;\n"
+                    + "    }\n"
+                    + "  }\n"
+                    + "}")));
+    // Matches that depend on a predicate are reported when the predicate
+    // is satisfied; for example, the matches of query 6 are reported when
+    // "label" is seen
+    assertThat(list,
+        hasToString("[1 4:7 sql ${TABLE}.id, "
+            + "6 3:5 dimension id, "
+            + "1 8:7 sql ${TABLE}.created_at, "
+            + "0 8:7 sql ${TABLE}.created_at, "
+            + "4 14:5 drill_fields null, "
+            + "5 3:5 dimension id, "
+            + "5 7:5 dimension created, "
+            + "5 11:5 measure count, "
+            + "3 17:3 explore orders, "
+            + "2 19:7 sql_on ${orders.customer_id} = ${customers.id}]"));
+
+    // Objects in which no query can match are skipped. (A query that
+    // starts with "//" can match anywhere, so is omitted.)
+    final ObjectHandler matcher2 =
+        LookmlQuery.compile(queries.subList(0, 2))
+            .matcher((query, pos, propertyName, value) -> list.add("?"));
+    assertThat(matcher2.objOpen(Pos.ZERO, "explore", "e"),
+        sameInstance(LaxHandlers.nullObjectHandler()));
+    assertThat(matcher2.objOpen(Pos.ZERO, "model", "m")
+            .objOpen(Pos.ZERO, "explore", "e"),
+        sameInstance(LaxHandlers.nullObjectHandler()));
+
+    // Nested wildcard and descendant steps report each property once, no
+    // matter how deep it is
+    final List<LookmlQuery> queries3 =
+        Stream.of("//*//sql_on", "//*[*]", "model/*//sql_on")
+            .map(LookmlQuery::parse)
+            .collect(Collectors.toList());
+    final List<String> list3 = new ArrayList<>();
+    LookmlParsers.parse(
+        LookmlQuery.compile(queries3)
+            .matcher((query, pos, propertyName, value) ->
+                list3.add(queries3.indexOf(query) + " " + propertyName)),
+        LookmlParsers.config()
+            .withCodePropertyNames(schema.codePropertyNames())
+            .withSource(
+                Sources.fromString("model: m {\n"
+                    + "  explore: e {\n"
+                    + "    join: j {\n"
+                    + "      sql_on: x;;\n"
+                    + "    }\n"
+                    + "  }\n"
+                    + "}")));
+    assertThat(list3,
+        hasToString("[1 model, 1 explore, 1 join, 0 sql_on, 2 sql_on]"));
+
+    try {
+      final LookmlQuery query = LookmlQuery.parse("model/view[");
+      fail("expected error, got " + query);
+    } catch (IllegalArgumentException e) {
+      assertThat(e.getMessage(),
+          is("invalid path 'model/view[': expected identifier "
+              + "at offset 11"));
+    }
+  }
+
+  /** Tests {@link CodeReference#scan}, and a handler that finds the
+   * references in each code block of a document. */
+  @Test void testCodeReference() {
+    final String code = "select ${TABLE}.id, ${v.f} + ${f}\n"
+        + "from ${v.SQL_TABLE_NAME} ${} $x ${unterminated";
+    final List<CodeReference> references = new ArrayList<>();
+    CodeReference.scan(code, r -> references.add(r.copy()));
+    assertThat(references,
+        hasToString("[${TABLE}, ${v.f}, ${f}, ${v.SQL_TABLE_NAME}]"));
+    assertThat(references.get(0).isTable(), is(true));
+    assertThat(references.get(2).isTable(), is(false));
+
+    final CodeReference r = references.get(1);
+    assertThat(r.offset(), is(20));
+    assertThat(r.length(), is(6));
+    assertThat(code.substring(r.offset(), r.offset() + r.length()),
+        is("${v.f}"));
+    assertThat(r.name(), is("v.f"));
+    assertThat(r.partCount(), is(2));
+    assertThat(r.part(0), is("v"));
+    assertThat(r.part(1), is("f"));
+    assertThat(r.partOffset(1), is(24));
+    assertThat(r.partLength(1), is(1));
+    assertThat(r.partEquals(1, "f"), is(true));
+    assertThat(r.partEquals(1, "ff"), is(false));
+    assertThat(references.get(3).part(1), is("SQL_TABLE_NAME"));
+
+    // Many parts, and no references
+    final List<String> parts = new ArrayList<>();
+    CodeReference.scan("${a.b.c.d.e.f}", r2 -> {
+      for (int i = 0; i < r2.partCount(); i++) {
+        parts.add(r2.part(i));
+      }
+    });
+    assertThat(parts, hasToString("[a, b, c, d, e, f]"));
+    CodeReference.scan("select 1", r2 -> parts.add("unexpected"));
+    assertThat(parts, hasSize(6));
+
+    // Find the references in a document, and pass its events on
+    final LookmlSchema schema = MiniLookml.schema();
+    final List<String> list = new ArrayList<>();
+    LookmlParsers.parse(
+        LaxHandlers.codeReferences(LaxHandlers.logger(list::add),
+            (pos, propertyName, reference) ->
+                list.add(propertyName + " " + reference + " at line "
+                    + pos.startLine)),
+        LookmlParsers.config()
+            .withCodePropertyNames(schema.codePropertyNames())
+            .withSource(
+                Sources.fromString("model: m {\n"
+                    + "  view: v {\n"
+                    + "    dimension: d {\n"
+                    + "      sql: ${TABLE}.d + ${e} ;;\n"
+                    + "    }\n"
+                    + "  }\n"
+                    + "}\n")));
+    assertThat(list,
+        hasToString("[objOpen(model, m), objOpen(view, v), "
+            + "objOpen(dimension, d), "
+            + "sql ${TABLE} at line 4, sql ${e} at line 4, "
+            + "code(sql,  ${TABLE}.d + ${e} ), objClose(), objClose(), "
+            + "objClose()]"));
+  }
+
+  /** Tests {@link SqlCodeChecker}, which parses the SQL in code blocks. */
+  @Test void testSqlCodeChecker() {
+    final LookmlSchema schema = MiniLookml.schema();
+    final LookmlParsers.Config config =
+        LookmlParsers.config()
+            .withCodePropertyNames(schema.codePropertyNames())
+            .withSource(
+                Sources.fromString("model: m {\n"
+                    + "  view: v {\n"
+                    + "    sql_table_name: catalog.v;;\n"
+                    + "    dimension: d {\n"
+                    + "      sql: ${TABLE}.d + 1;;\n"
+                    + "    }\n"
+                    + "    dimension: d2 {\n"
+                    + "      sql: ${d} + ) ;;\n"
+                    + "    }\n"
+                    + "    dimension: d3 {\n"
+                    + "      sql:  ${TABLE}.d + 1 ;;\n"
+                    + "    }\n"
+                    + "    measure: m {\n"
+                    + "      sql: sum(\n"
+                    + "        ${d} ) ) ;;\n"
+                    + "    }\n"
+                    + "  }\n"
+                    + "}\n"));
+    // In "${d} + )", Calcite reports the tokens "+ )", starting at the "+"
+    // in column 17; in "${d} ) )", the second ")" in column 16.
+    final String expected = "[parsed sql_table_name at 3.5, "
+        + "parsed sql at 5.7, "
+        + "error in sql at 8.17: Encountered \"+ )\", "
+        + "parsed sql at 11.7, "
+        + "error in sql at 15.16: Encountered \")\"]";
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      // First in the current thread, then in a pool
+      for (Executor e : ImmutableList.<Executor>of(Runnable::run, executor)) {
+        final SqlCodeChecker checker =
+            SqlCodeChecker.create(SqlCodeChecker.DEFAULT_KINDS,
+                SqlParser.config(), e, 100);
+        final List<String> list = new ArrayList<>();
+        final List<String> events = new ArrayList<>();
+        LookmlParsers.parse(
+            checker.checker(LaxHandlers.logger(events::add),
+                new SqlCodeChecker.Handler() {
+                  @Override public void parsed(Pos pos, String propertyName,
+                      SqlNode node) {
+                    list.add("parsed " + propertyName + " at "
+                        + pos.startLine + "." + pos.startColumn);
+                  }
+
+                  @Override public void error(Pos pos, String propertyName,
+                      String message) {
+                    list.add("error in " + propertyName + " at "
+                        + pos.startLine + "." + pos.startColumn + ": "
+                        + message.replaceAll("\\. *$", ""));
+                  }
+                }),
+            config);
+        assertThat(list, hasToString(expected));
+        assertThat(events, hasSize(17));
+
+        // "${TABLE}.d + 1" occurs twice, with different white space
+        assertThat(checker.cacheStats().loadCount(), is(4L));
+        assertThat(checker.cacheStats().hitCount(), is(1L));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /** Tests {@link DependencyGraph}, updating one document at a time and
+   * checking which nodes are invalidated. */
+  @Test void testDependencyGraph() {
+    final LookmlSchema schema = MiniLookml.schema();
+    final LookmlParsers.Config config =
+        LookmlParsers.config()
+            .withCodePropertyNames(schema.codePropertyNames());
+    final List<String> errorList = new ArrayList<>();
+    final ImmutableList<String> fields =
+        ImmutableList.of("dimension", "measure");
+    final DependencyGraph graph =
+        DependencyGraph.create(
+            ImmutableMap.of("view_name", ImmutableList.of("view"),
+                "sql", fields, "sql_on", fields));
+    final List<String> invalidated = new ArrayList<>();
+    final Consumer<String> views = document ->
+        LookmlParsers.parse(
+            LaxHandlers.validator(
+                graph.indexer("views",
+                    nodes -> invalidated.add(new TreeSet<>(nodes).toString())),
+                schema, LaxHandlers.errorLogger(errorList::add)),
+            config.withSource(Sources.fromString(document)));
+    final String viewsDocument = "model: m {\n"
+        + "  view: orders {\n"
+        + "    dimension: id {\n"
+        + "      sql: ${TABLE}.id ;;\n"
+        + "      type: number\n"
+        + "    }\n"
+        + "    dimension: customer_id {}\n"
+        + "    measure: total {\n"
+        + "      sql: ${id} ;;\n"
+        + "    }\n"
+        + "  }\n"
+        + "  view: customers {\n"
+        + "    dimension: id {}\n"
+        + "  }\n"
+        + "}\n";
+    views.accept(viewsDocument);
+    assertThat(invalidated,
+        hasToString("[[model m, view m.customers, dimension m.customers.id, "
+            + "view m.orders, dimension m.orders.customer_id, "
+            + "dimension m.orders.id, measure m.orders.total]]"));
+    assertThat(graph.edgeCount(), is(1));
+
+    // Add the explore; only its nodes, and the model that contains them, are
+    // invalidated
+    invalidated.clear();
+    LookmlParsers.parse(
+        LaxHandlers.validator(
+            graph.indexer("explores",
+                nodes -> invalidated.add(new TreeSet<>(nodes).toString())),
+            schema, LaxHandlers.errorLogger(errorList::add)),
+        config.withSource(
+            Sources.fromString("model: m {\n"
+                + "  explore: orders {\n"
+                + "    view_name: orders\n"
+                + "    join: customers {\n"
+                + "      sql_on: ${orders.customer_id} = ${customers.id} ;;\n"
+                + "    }\n"
+                + "  }\n"
+                + "}\n")));
+    assertThat(invalidated,
+        hasToString("[[model m, explore m.orders, join m.orders.customers]]"));
+    assertThat(graph.nodeCount(), is(9));
+    assertThat(graph.edgeCount(), is(4));
+    final DependencyGraph.Node join =
+        new DependencyGraph.Node("join", "m.orders.customers");
+    assertThat(graph.dependencies(join),
+        hasToString("[dimension m.customers.id, "
+            + "dimension m.orders.customer_id]"));
+    assertThat(
+        graph.dependents(new DependencyGraph.Node("view", "m.orders")),
+        hasToString("[explore m.orders]"));
+
+    // Re-index the same document; nothing is invalidated
+    invalidated.clear();
+    views.accept(viewsDocument);
+    assertThat(invalidated, hasToString("[[]]"));
+
+    // Re-index with properties in a different order, and different white
+    // space in a code block; the content hashes are the same, so nothing is
+    // invalidated
+    invalidated.clear();
+    views.accept(
+        viewsDocument.replace(
+            "      sql: ${TABLE}.id ;;\n      type: number\n",
+            "      type: number\n      sql:   ${TABLE}.id;;\n"));
+    assertThat(invalidated, hasToString("[[]]"));
+
+    // Change a dimension of "customers". The join that references the
+    // dimension, and the explore that contains the join, are invalidated,
+    // but not view "orders".
+    invalidated.clear();
+    views.accept(viewsDocument.replace("dimension: id {}",
+        "dimension: id {\n      label: \"Id\"\n    }"));
+    assertThat(invalidated,
+        hasToString("[[model m, view m.customers, dimension m.customers.id, "
+            + "explore m.orders, join m.orders.customers]]"));
+
+    // Remove dimension "customer_id"; the join's reference no longer
+    // resolves
+    invalidated.clear();
+    views.accept(viewsDocument.replace("dimension: customer_id {}", ""));
+    assertThat(invalidated,
+        hasToString("[[model m, view m.customers, dimension m.customers.id, "
+            + "explore m.orders, view m.orders, "
+            + "dimension m.orders.customer_id, join m.orders.customers]]"));
+    assertThat(graph.dependencies(join),
+        hasToString("[dimension m.customers.id]"));
+
+    // Remove the explores
+    assertThat(new TreeSet<>(graph.remove("explores")),
+        hasToString("[model m, explore m.orders, join m.orders.customers]"));
+    assertThat(graph.nodeCount(), is(6));
+    assertThat(graph.edgeCount(), is(1));
+    assertThat(graph.remove("explores"), empty());
+    assertThat(errorList, empty());
+  }
+
+  /** Tests that {@link MiniLookmlAst}, which was generated by
+   * {@link LookmlCodeGenerator} from {@link MiniLookml#schema()}, is up to
+   * date, and that it builds the example model. */
+  @Test void testCodeGenerator() throws IOException {
+    final LookmlSchema schema = MiniLookml.schema();
+    final String code =
+        LookmlCodeGenerator.generate(schema, "net.hydromatic.lookml",
+            "MiniLookmlAst");
+    final File file =
+        new File(Tests.getBaseDir(LaxTest.class),
+            "src/test/java/net/hydromatic/lookml/MiniLookmlAst.java");
+    final String expected =
+        Sources.fromUrl(file.toURI().toURL()).contentsAsString();
+    assertThat("MiniLookmlAst.java is out of date; regenerate it",
+        code, is(expected));
+
+    final Map<String, Object> map = new LinkedHashMap<>();
+    final List<String> errorList = new ArrayList<>();
+    final LookmlParsers.Config config =
+        LookmlParsers.config()
+            .withCodePropertyNames(schema.codePropertyNames())
+            .withSource(Sources.fromString(MiniLookml.exampleModel()));
+    LookmlParsers.parse(
+        LaxHandlers.validator(MiniLookmlAst.builder(map::put), schema,
+            LaxHandlers.errorLogger(errorList::add)),
+        config);
+    assertThat(errorList, empty());
+    assertThat(map.keySet(), hasToString("[model]"));
+    final MiniLookmlAst.Model model = (MiniLookmlAst.Model) map.get("model");
+    assertThat(model.name, is("m"));
+    assertThat(model.fiscalMonthOffset, hasToString("3"));
+    final MiniLookmlAst.Explore explore = model.explores.get("e");
+    assertThat(explore.viewName, is("v"));
+    assertThat(explore.joins.get("v").relationship,
+        is(MiniLookmlAst.RelationshipType.MANY_TO_ONE));
+    assertThat(explore.conditionallyFilter.filters,
+        hasToString("{f1=123, f2=abc}"));
+    assertThat(explore.conditionallyFilter.unless, hasToString("[f3, f4]"));
+    final MiniLookmlAst.View view = model.views.get("v");
+    // Code blocks keep the white space that follows the colon
+    assertThat(view.sqlTableName, is(" catalog.v"));
+    assertThat(view.dimensions.get("d").primaryKey,
+        is(MiniLookmlAst.BooleanEnum.TRUE));
+    assertThat(view.measures.get("m").type,
+        is(MiniLookmlAst.MeasureFieldType.SUM));
+
+    // Enum values that map to the same Java name get distinct constants
+    final LookmlSchema schema2 =
+        LookmlSchemas.schemaBuilder()
+            .setName("s")
+            .addEnum("e", "a-b", "a_b", "A_B")
+            .addNamedObjectProperty("o", b ->
+                b.addEnumProperty("e", "e").build())
+            .build();
+    final String code2 =
+        LookmlCodeGenerator.generate(schema2, "p", "S");
+    assertThat(code2,
+        containsString("    A_B,\n    A_B_2,\n    A_B_3;\n"));
+    assertThat(code2,
+        containsString("      case \"a-b\":\n        return A_B_2;\n"));
+
+    // A root property that is not an object is rejected
+    final LookmlSchema schema3 = new LookmlSchema() {
+      @Override public String name() {
+        return schema.name();
+      }
+
+      @Override public Map<String, LookmlSchema.Property> rootProperties() {
+        final Map<String, LookmlSchema.Property> map =
+            new LinkedHashMap<>(schema.rootProperties());
+        map.put("connection", new LookmlSchema.Property() {
+          @Override public String name() {
+            return "connection";
+          }
+
+          @Override public LookmlSchema.Type type() {
+            return LookmlSchema.Type.STRING;
+          }
+
+          @Override public String typeName() {
+            return "";
+          }
+        });
+        return map;
+      }
+
+      @Override public Map<String, LookmlSchema.ObjectType> objectTypes() {
+        return schema.objectTypes();
+      }
+
+      @Override public Map<String, LookmlSchema.EnumType> enumTypes() {
+        return schema.enumTypes();
+      }
+
+      @Override public Set<String> codePropertyNames() {
+        return schema.codePropertyNames();
+      }
+    };
+    final IllegalArgumentException e =
+        assertThrows(IllegalArgumentException.class, () ->
+            LookmlCodeGenerator.generate(schema3, "p", "S"));
+    assertThat(e.getMessage(),
+        is("root property 'connection' has type STRING; "
+            + "only object properties are supported at the root"));
+  }
+
   @Test void testParse() {
     assertParse("model: m {}",
         hasToString("[objOpen(model, m),"
@@ -349,6 +1358,136 @@ private void checkParsePosition(boolean withSchema) {
     assertThat(parsed.list, hasToString(expectedToString));
   }
 
+  /** Tests {@link StructuralIndex}. Characters inside strings, comments and
+   * code blocks are not structural; line feeds always are. A code block
+   * cannot start inside a list. */
+  @Test void testStructuralIndex() {
+    final String ml = "model: m {\n"
+        + "  sql: select \"{\" ;;\n"
+        + "  label: \"a\\\"b}\" # c {\n"
+        + "  x: [1, sql: \"z\"]\n"
+        + "  y: \"\u00e9\u20ac\"\n"
+        + "}\n";
+    final byte[] bytes = ml.getBytes(UTF_8);
+    final StructuralIndex index =
+        StructuralIndex.scan(bytes, Collections.singleton("sql"));
+    assertThat(index,
+        hasToString(":{\\n:;\\n:\"\"#\\n:[,:\"\"]\\n:\"\"\\n}\\n"));
+    assertThat(index.size(), is(25));
+    assertThat(index.position(0), is(ml.indexOf(':')));
+    assertThat(index.charAt(4), is(';'));
+    assertThat(index.position(4), is(ml.indexOf(";;")));
+
+    // Without code properties, the code block is scanned as if it were
+    // LookML; "{" is a string
+    final StructuralIndex index2 =
+        StructuralIndex.scan(bytes, Collections.emptySet());
+    assertThat(index2.toString(), startsWith(":{\\n:\"\"\\n:"));
+
+    // A region of the document
+    final int start = ml.indexOf("  x:");
+    final StructuralIndex index3 =
+        StructuralIndex.scan(bytes, start, bytes.length - start,
+            Collections.singleton("sql"));
+    assertThat(index3, hasToString(":[,:\"\"]\\n:\"\"\\n}\\n"));
+    assertThat(index3.position(0), is(start + 3));
+  }
+
+  /** Tests {@link LookmlParsers#parseParallel}; it should produce the same
+   * events, with the same positions, as the sequential parser, however the
+   * document is split into chunks. */
+  @Test void testParseParallel() {
+    final StringBuilder b = new StringBuilder("# header\nmodel: m {\n");
+    for (int i = 0; i < 20; i++) {
+      b.append("  view: v").append(i).append(" {\n")
+          .append("    sql: select \"}\n}\" ;;\n")
+          .append("    label: \"a}\\\"b\" # c }\n")
+          .append("    drill_fields: [x, y]\n")
+          .append("  }\n");
+      if (i % 3 == 0) {
+        b.append("\texplore: e").append(i).append(" {} # not a boundary\n");
+      }
+    }
+    b.append("}\n# trailer\n");
+    final LookmlParsers.Config config =
+        LookmlParsers.config()
+            .withCodePropertyNames(Collections.singleton("sql"))
+            .withTabSize(4)
+            .withSource(Sources.fromString(b.toString()));
+    final List<String> list = new ArrayList<>();
+    LookmlParsers.parse(LaxHandlers.logger(list::add, true), config);
+    assertThat(list.get(list.size() - 1),
+        is("comment(# trailer) at 131.1-131.10"));
+
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      for (int chunkSize : new int[] {1, 100, 1_000, 1_000_000}) {
+        for (int parallelism : new int[] {1, 3}) {
+          final List<String> list2 = new ArrayList<>();
+          LookmlParsers.parseParallel(LaxHandlers.logger(list2::add, true),
+              config, chunkSize, parallelism, executor);
+          assertThat(list2, is(list));
+        }
+      }
+
+      // An error in a chunk is thrown after the events that precede it,
+      // and its position is relative to the whole document.
+      final String bad =
+          b.toString().replace("view: v15 {\n", "view: v15 {\n  :\n");
+      final List<String> list3 = new ArrayList<>();
+      try {
+        LookmlParsers.parseParallel(LaxHandlers.logger(list3::add, true),
+            config.withSource(Sources.fromString(bad)), 100, 3, executor);
+        fail("expected error");
+      } catch (RuntimeException e) {
+        assertThat(e.getCause().getMessage(),
+            containsString("at line 99, column 3."));
+      }
+      assertThat(list3.get(list3.size() - 1),
+          is("objOpen(view, v15) at 98.3-98.14"));
+
+      // Lines that end with carriage returns count as line terminators.
+      // The parser ignores properties after the root property, and so
+      // does not split them into chunks.
+      final StringBuilder b2 = new StringBuilder("model: m {\n");
+      for (int i = 0; i < 10; i++) {
+        b2.append("  view: v").append(i).append(" {\r")
+            .append("    sql: x ;;\r")
+            .append("  }\n");
+      }
+      b2.append("}\n");
+      for (int i = 0; i < 3; i++) {
+        b2.append("model: m").append(i).append(" {\n")
+            .append("  view: w {\n")
+            .append("  }\n")
+            .append("}\n");
+      }
+      final LookmlParsers.Config config2 =
+          config.withSource(Sources.fromString(b2.toString()));
+      final List<String> list4 = new ArrayList<>();
+      LookmlParsers.parse(LaxHandlers.logger(list4::add, true), config2);
+      assertThat(list4.get(list4.size() - 1), is("objClose() at 32.1"));
+      final AtomicInteger taskCount = new AtomicInteger();
+      final Executor countingExecutor = task -> {
+        taskCount.incrementAndGet();
+        executor.execute(task);
+      };
+      // Chunk sizes, and the number of chunks parsed by the executor (a
+      // document with only one chunk is parsed in the current thread)
+      final int[][] chunkSizeCounts = {{1, 11}, {100, 3}, {1_000_000, 0}};
+      for (int[] chunkSizeCount : chunkSizeCounts) {
+        taskCount.set(0);
+        final List<String> list5 = new ArrayList<>();
+        LookmlParsers.parseParallel(LaxHandlers.logger(list5::add, true),
+            config2, chunkSizeCount[0], 3, countingExecutor);
+        assertThat(list5, is(list4));
+        assertThat(taskCount.get(), is(chunkSizeCount[1]));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
   /** Tests building a simple schema with one enum type. */
   @Test void testSchemaBuilder() {
     LookmlSchema s =
@@ -625,6 +1764,137 @@ private void checkParsePosition(boolean withSchema) {
     assertThat(LookmlSchemas.equal(schema, miniSchema), is(true));
   }
 
+  /** Tests {@link LookmlSchemas#fingerprint(LookmlSchema)}. */
+  @Test void testSchemaFingerprint() throws IOException {
+    final LookmlSchema miniSchema = MiniLookml.schema();
+    final String fingerprint = LookmlSchemas.fingerprint(miniSchema);
+    // The fingerprint is stable across processes and releases; if this
+    // value changes, so will the keys of any persistent caches.
+    assertThat(fingerprint, is("3dd618cee3285b07c3720d4c5da971a1"));
+    assertThat(LookmlSchemas.fingerprint(MiniLookml.schema()),
+        is(fingerprint));
+    assertThat(LookmlSchemas.fingerprint(SchemaLookml.schema()).equals(
+        fingerprint), is(false));
+
+    // A schema read from a snapshot has the same fingerprint.
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    LookmlSchemas.writeSnapshot(miniSchema, "abc", out);
+    final LookmlSchema schema =
+        requireNonNull(
+            LookmlSchemas.readSnapshot(
+                new ByteArrayInputStream(out.toByteArray()), "abc"));
+    assertThat(LookmlSchemas.fingerprint(schema), is(fingerprint));
+
+    // The fingerprint does not depend on the order in which types were
+    // added, but does depend on their contents.
+    final Function<String, LookmlSchema> build = type ->
+        LookmlSchemas.schemaBuilder()
+            .setName("s")
+            .addEnum("e1", "a", "b")
+            .addEnum("e2", "c")
+            .addNamedObjectProperty("model",
+                b -> b.addEnumProperty("p", type).build())
+            .build();
+    final Function<String, LookmlSchema> buildReversed = type ->
+        LookmlSchemas.schemaBuilder()
+            .setName("s")
+            .addEnum("e2", "c")
+            .addEnum("e1", "b", "a")
+            .addNamedObjectProperty("model",
+                b -> b.addEnumProperty("p", type).build())
+            .build();
+    final LookmlSchema s1 = build.apply("e1");
+    assertThat(LookmlSchemas.fingerprint(buildReversed.apply("e1")),
+        is(LookmlSchemas.fingerprint(s1)));
+    assertThat(LookmlSchemas.equal(buildReversed.apply("e1"), s1), is(true));
+
+    final LookmlSchema s2 = build.apply("e2");
+    assertThat(LookmlSchemas.fingerprint(s2).equals(
+        LookmlSchemas.fingerprint(s1)), is(false));
+    assertThat(LookmlSchemas.equal(s1, s2), is(false));
+    assertThat(LookmlSchemas.compare(s1, s2),
+        hasToString("[object type, value 'model', value 'p' type name "
+            + "(e1 vs e2), "
+            + "object type, value 'model', value 'p' "
+            + "(property 'p' vs property 'p'), "
+            + "object type, value 'model' "
+            + "([property 'p'] vs [property 'p'])]"));
+
+    // Equal fingerprints do not make schemas equal. An unpaired surrogate
+    // is encoded as '?' in UTF-8, so these schemas have the same
+    // fingerprint, but they differ.
+    final LookmlSchema s3 =
+        LookmlSchemas.schemaBuilder().setName("s").addEnum("e", "?").build();
+    final LookmlSchema s4 =
+        LookmlSchemas.schemaBuilder().setName("s").addEnum("e", "\uD800")
+            .build();
+    assertThat(LookmlSchemas.fingerprint(s3),
+        is(LookmlSchemas.fingerprint(s4)));
+    assertThat(LookmlSchemas.equal(s3, s4), is(false));
+    assertThat(LookmlSchemas.compare(s3, s4), hasSize(2));
+  }
+
+  /** Tests writing a schema to a binary snapshot and reading it back, and
+   * loading a schema via a snapshot file. */
+  @Test void testSchemaSnapshot() throws IOException {
+    final LookmlSchema miniSchema = MiniLookml.schema();
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    LookmlSchemas.writeSnapshot(miniSchema, "abc", out);
+    final byte[] bytes = out.toByteArray();
+
+    final LookmlSchema schema =
+        LookmlSchemas.readSnapshot(new ByteArrayInputStream(bytes), "abc");
+    assertThat(schema, notNullValue());
+    assertThat(LookmlSchemas.compare(schema, miniSchema), empty());
+    assertThat(schema.objectTypes().keySet(),
+        is(miniSchema.objectTypes().keySet()));
+    assertThat(schema.codePropertyNames(), is(miniSchema.codePropertyNames()));
+
+    // Wrong fingerprint, or not a snapshot
+    assertThat(
+        LookmlSchemas.readSnapshot(new ByteArrayInputStream(bytes), "xyz"),
+        nullValue());
+    assertThat(
+        LookmlSchemas.readSnapshot(
+            new ByteArrayInputStream("model: m {}".getBytes(UTF_8)), "abc"),
+        nullValue());
+
+    // Loading via a snapshot file that does not exist parses the source and
+    // writes the file.
+    final Source source = MiniLookml.getSchemaSource();
+    final File file = File.createTempFile("mini", ".snapshot");
+    assertThat(file.delete(), is(true));
+    final LookmlSchema schema2 =
+        LookmlSchemas.load(source, SchemaLookml.schema(), file);
+    assertThat(LookmlSchemas.equal(schema2, miniSchema), is(true));
+    assertThat(file.isFile(), is(true));
+
+    // If the snapshot has the right fingerprint, loading uses it. (To prove
+    // it, we put a different schema in the snapshot.)
+    final String fingerprint = LookmlSchemas.fingerprint(source);
+    try (OutputStream out2 = new FileOutputStream(file)) {
+      LookmlSchemas.writeSnapshot(SchemaLookml.schema(), fingerprint, out2);
+    }
+    final LookmlSchema schema3 =
+        LookmlSchemas.load(source, SchemaLookml.schema(), file);
+    assertThat(LookmlSchemas.equal(schema3, SchemaLookml.schema()), is(true));
+
+    // If the fingerprint does not match, loading parses the source and
+    // replaces the snapshot.
+    try (OutputStream out2 = new FileOutputStream(file)) {
+      LookmlSchemas.writeSnapshot(SchemaLookml.schema(), "stale", out2);
+    }
+    final LookmlSchema schema4 =
+        LookmlSchemas.load(source, SchemaLookml.schema(), file);
+    assertThat(LookmlSchemas.equal(schema4, miniSchema), is(true));
+    try (InputStream in = new FileInputStream(file)) {
+      final LookmlSchema schema5 = LookmlSchemas.readSnapshot(in, fingerprint);
+      assertThat(schema5, notNullValue());
+      assertThat(LookmlSchemas.equal(schema5, miniSchema), is(true));
+    }
+    assertThat(file.delete(), is(true));
+  }
+
   /** Tests that the example document for the Mini-LookML schema contains at
    * least one instance of each property. */
   @Test void testCheckMiniExampleCompleteness() {
@@ -653,7 +1923,7 @@ private void checkParsePosition(boolean withSchema) {
         + "}");
     assertThat(f1.errorList, empty());
     ParseFixture.Validated f2 = f1.validate();
-    assertThat(f2.list, empty());
+    assertThat(f2.list, hasToString("[viewNotFound(e, e)]"));
     assertThat(f2.model, notNullValue());
   }
 
@@ -674,10 +1944,326 @@ private void checkParsePosition(boolean withSchema) {
     ParseFixture.Parsed f1 = f0.parse(MiniLookml.exampleModel());
     assertThat(f1.errorList, empty());
     ParseFixture.Validated f2 = f1.validate();
-    assertThat(f2.list, empty());
+    // The example model is syntactically complete, but not semantically
+    // valid
+    assertThat(f2.list,
+        hasToString("[viewNotFound(e, my_table), duplicateAlias(e, v), "
+            + "filterFieldNotFound(e, f1), filterFieldNotFound(e, f2), "
+            + "filterFieldNotFound(e, f3), filterFieldNotFound(e, f4)]"));
     assertThat(f2.model, notNullValue());
   }
 
+  /** Tests {@link MiniLookmlSqlGenerator}. */
+  @Test void testSqlGenerator() {
+    final ParseFixture f0 = ParseFixture.of().withSchema(MiniLookml.schema());
+    final MiniLookml.Model model =
+        f0.parse("model: m {\n"
+            + "  view: orders {\n"
+            + "    sql_table_name: sales.orders;;\n"
+            + "    dimension: id {}\n"
+            + "    dimension: customer_id {}\n"
+            + "    measure: count {\n"
+            + "      type: count\n"
+            + "    }\n"
+            + "    measure: total {\n"
+            + "      type: sum\n"
+            + "      sql: ${TABLE}.amount;;\n"
+            + "    }\n"
+            + "  }\n"
+            + "  view: customers {\n"
+            + "    dimension: id {}\n"
+            + "    dimension: name {}\n"
+            + "    dimension: region_id {}\n"
+            + "  }\n"
+            + "  view: regions {\n"
+            + "    dimension: id {}\n"
+            + "    dimension: name {\n"
+            + "      sql: UPPER(${TABLE}.name);;\n"
+            + "    }\n"
+            + "  }\n"
+            + "  explore: orders {\n"
+            + "    join: customers {\n"
+            + "      sql_on: ${orders.customer_id} = ${customers.id};;\n"
+            + "    }\n"
+            + "    join: regions {\n"
+            + "      sql_on: ${customers.region_id} = ${regions.id};;\n"
+            + "    }\n"
+            + "  }\n"
+            + "}").build();
+    final MiniLookmlSqlGenerator generator =
+        MiniLookmlSqlGenerator.create(model, 100);
+
+    // A query on the base view needs no joins
+    final String sql =
+        generator.generate(
+            MiniLookmlSqlGenerator.Query.of("orders",
+                ImmutableList.of("orders.id", "orders.count"),
+                ImmutableMap.of()));
+    assertThat(sql,
+        is("SELECT orders.id AS \"orders.id\", "
+            + "COUNT(*) AS \"orders.count\"\n"
+            + "FROM sales.orders AS orders\n"
+            + "GROUP BY 1"));
+
+    // Selecting a field of "regions" requires "customers", because the
+    // join condition of "regions" references it; the filter value is
+    // quoted
+    final String sql2 =
+        generator.generate(
+            MiniLookmlSqlGenerator.Query.of("orders",
+                ImmutableList.of("regions.name", "orders.total"),
+                ImmutableMap.of("customers.name", "O'Brien")));
+    assertThat(sql2,
+        is("SELECT UPPER(regions.name) AS \"regions.name\", "
+            + "SUM(orders.amount) AS \"orders.total\"\n"
+            + "FROM sales.orders AS orders\n"
+            + "LEFT JOIN customers AS customers"
+            + " ON orders.customer_id = customers.id\n"
+            + "LEFT JOIN regions AS regions"
+            + " ON customers.region_id = regions.id\n"
+            + "WHERE customers.name = 'O''Brien'\n"
+            + "GROUP BY 1"));
+    assertThat(generator.cacheStats().hitCount(), is(0L));
+
+    // Same signature, different filter value; uses the cached template
+    final String sql3 =
+        generator.generate(
+            MiniLookmlSqlGenerator.Query.of("orders",
+                ImmutableList.of("regions.name", "orders.total"),
+                ImmutableMap.of("customers.name", "Smith")));
+    assertThat(sql3, is(sql2.replace("'O''Brien'", "'Smith'")));
+    assertThat(generator.cacheStats().hitCount(), is(1L));
+    assertThat(generator.cacheStats().missCount(), is(2L));
+
+    // A filter on a measure becomes HAVING
+    final String sql4 =
+        generator.generate(
+            MiniLookmlSqlGenerator.Query.of("orders",
+                ImmutableList.of("customers.name"),
+                ImmutableMap.of("orders.count", "3",
+                    "customers.region_id", "7")));
+    assertThat(sql4,
+        is("SELECT customers.name AS \"customers.name\"\n"
+            + "FROM sales.orders AS orders\n"
+            + "LEFT JOIN customers AS customers"
+            + " ON orders.customer_id = customers.id\n"
+            + "WHERE customers.region_id = '7'\n"
+            + "HAVING COUNT(*) = '3'"));
+
+    try {
+      final String sql5 =
+          generator.generate(
+              MiniLookmlSqlGenerator.Query.of("orders",
+                  ImmutableList.of("customers.age"), ImmutableMap.of()));
+      fail("expected error, got " + sql5);
+    } catch (IllegalArgumentException e) {
+      assertThat(e.getMessage(),
+          is("unknown field 'customers.age' in explore 'orders'"));
+    }
+
+    // Many threads generating the same queries get the same SQL
+    final List<String> sqls =
+        IntStream.range(0, 1_000).parallel()
+            .mapToObj(i ->
+                generator.generate(
+                    MiniLookmlSqlGenerator.Query.of("orders",
+                        ImmutableList.of("regions.name", "orders.total"),
+                        ImmutableMap.of("customers.name",
+                            i % 2 == 0 ? "O'Brien" : "Smith"))))
+            .distinct()
+            .sorted()
+            .collect(Collectors.toList());
+    assertThat(sqls, is(ImmutableList.of(sql2, sql3)));
+  }
+
+  /** Tests that {@link LaxHandlers#build} freezes each document, object and
+   * list into a right-sized immutable list, over a large generated corpus,
+   * and that empty documents share a single instance. */
+  @Test void testBuildFreezes() {
+    final List<PairList<String, Value>> documents = new ArrayList<>();
+    final ObjectHandler builder = LaxHandlers.build(documents::add);
+    final Pos pos = Pos.ZERO;
+    final int viewCount = 2_000;
+    for (int i = 0; i < viewCount; i++) {
+      final ObjectHandler view = builder.objOpen(pos, "view", "v" + i);
+      view.code(pos, "sql_table_name", "t" + i);
+      for (int j = 0; j < i % 5; j++) {
+        final ObjectHandler dimension =
+            view.objOpen(pos, "dimension", "d" + j);
+        dimension.identifier(pos, "type", "string");
+        dimension.code(pos, "sql", "c" + j);
+        dimension.close(pos);
+      }
+      final ListHandler drillFields = view.listOpen(pos, "drill_fields");
+      for (int j = 0; j < i % 3; j++) {
+        drillFields.identifier(pos, "d" + j);
+      }
+      drillFields.close(pos);
+      view.close(pos);
+    }
+    builder.close(pos);
+    LaxHandlers.build(documents::add).close(pos);
+
+    assertThat(documents, hasSize(2));
+    assertThat(documents.get(0), instanceOf(ImmutablePairList.class));
+    assertThat(documents.get(0), hasSize(viewCount));
+    assertThat(documents.get(1), sameInstance(ImmutablePairList.of()));
+
+    // Nested objects and lists are frozen too. View "v4" has properties
+    // "sql_table_name", 4 dimensions and "drill_fields".
+    final PairList<String, ? extends Value> view =
+        MiniLookml.properties(documents.get(0).right(4));
+    assertThat(view, instanceOf(ImmutablePairList.class));
+    assertThat(view, hasSize(6));
+    final PairList<String, ? extends Value> dimension =
+        MiniLookml.properties(view.right(1));
+    assertThat(dimension, instanceOf(ImmutablePairList.class));
+    assertThat(dimension.leftList(), hasToString("[type, sql]"));
+    assertThrows(UnsupportedOperationException.class,
+        () -> dimension.leftList().remove(0));
+    final List<? extends Value> drillFields =
+        MiniLookml.elements(view.right(5));
+    assertThat(drillFields, instanceOf(ImmutableList.class));
+    assertThat(drillFields, hasSize(1));
+    assertThrows(UnsupportedOperationException.class,
+        () -> drillFields.remove(0));
+  }
+
+  /** Tests {@link LookmlMetrics} and the handlers created by
+   * {@link LaxHandlers#metrics}. */
+  @Test void testMetrics() throws JMException {
+    final LookmlMetrics metrics = LookmlMetrics.create();
+    final List<String> errors = new ArrayList<>();
+    final List<PairList<String, Value>> documents = new ArrayList<>();
+    final ObjectHandler root =
+        LaxHandlers.metrics(
+            LaxHandlers.validator(
+                LaxHandlers.metrics(LaxHandlers.build(documents::add),
+                    "build", metrics),
+                MiniLookml.schema(),
+                LaxHandlers.metrics(LaxHandlers.errorLogger(errors::add),
+                    metrics)),
+            "validate", metrics);
+    final Pos pos = Pos.ZERO;
+    final ObjectHandler model = root.objOpen(pos, "model", "m");
+    final ObjectHandler view = model.objOpen(pos, "view", "v");
+    view.objOpen(pos, "dimension", "d")
+        .code(pos, "sql", "x")
+        .close(pos);
+    view.identifier(pos, "foo", "bar");
+    view.listOpen(pos, "drill_fields")
+        .identifier(pos, "d")
+        .close(pos);
+    view.close(pos);
+    model.close(pos);
+    root.close(pos);
+    assertThat(errors, hasToString("[invalidPropertyOfParent(foo, view)]"));
+    assertThat(documents, hasSize(1));
+
+    // The validator does not pass the invalid property "foo" to the builder.
+    final SortedMap<String, Long> snapshot = metrics.snapshot();
+    assertThat(snapshot.get("build.nanos"), notNullValue());
+    assertThat(snapshot.get("validate.nanos"), notNullValue());
+    snapshot.keySet().removeIf(name -> name.endsWith(".nanos"));
+    assertThat(snapshot,
+        hasToString("{build.depth.max=3, build.events.code=1, "
+            + "build.events.identifier=1, build.events.listClose=1, "
+            + "build.events.listOpen=1, build.events.objClose=4, "
+            + "build.events.objOpen=3, build.properties.dimension=1, "
+            + "build.properties.drill_fields=1, build.properties.model=1, "
+            + "build.properties.sql=1, build.properties.view=1, "
+            + "errors.invalidPropertyOfParent=1, validate.depth.max=3, "
+            + "validate.events.code=1, validate.events.identifier=2, "
+            + "validate.events.listClose=1, validate.events.listOpen=1, "
+            + "validate.events.objClose=4, validate.events.objOpen=3, "
+            + "validate.properties.dimension=1, "
+            + "validate.properties.drill_fields=1, "
+            + "validate.properties.foo=1, validate.properties.model=1, "
+            + "validate.properties.sql=1, validate.properties.view=1}"));
+    assertThat(metrics.toJson(),
+        startsWith("{\"build.depth.max\": 3, \"build.events.code\": 1, "));
+
+    // Export via JMX
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    final ObjectName name = metrics.registerMBean("testMetrics");
+    try {
+      assertThat(name,
+          hasToString("net.hydromatic.lookml:type=LookmlMetrics,"
+              + "name=\"testMetrics\""));
+      assertThat(server.getAttribute(name, "Json"), is(metrics.toJson()));
+      server.invoke(name, "reset", new Object[0], new String[0]);
+      assertThat(metrics.get("validate.events.objOpen"), is(0L));
+      assertThat(metrics.get("validate.depth.max"), is(0L));
+    } finally {
+      server.unregisterMBean(name);
+    }
+
+    // Parse, recording lex metrics
+    final String ml = "model: m {\n"
+        + "  view: v {}\n"
+        + "}";
+    LookmlParsers.parse(
+        LaxHandlers.metrics(LaxHandlers.nullObjectHandler(), "handle",
+            metrics),
+        LookmlParsers.config().withSource(Sources.fromString(ml)), metrics);
+    assertThat(metrics.get("lex.sources"), is(1L));
+    assertThat(metrics.get("lex.chars"), is((long) ml.length()));
+    assertThat(metrics.get("lex.lines"), is(3L));
+    assertThat(metrics.get("lex.tokens"), is(10L));
+    assertThat(metrics.get("handle.events.objOpen"), is(2L));
+    assertThat(metrics.get("handle.depth.max"), is(2L));
+  }
+
+  /** Tests that parsing and validation report to an installed
+   * {@link LookmlRecorder}. */
+  @Test void testRecorder() {
+    // Other tests may be running concurrently, so only record events for
+    // our own sources.
+    final String ml = "model: m {\n"
+        + "  view: v {}\n"
+        + "}";
+    final Source source = Sources.fromString(ml);
+    final List<String> records = new ArrayList<>();
+    LookmlRecorder.install((phase, source2) -> {
+      if (source2 != source) {
+        return LookmlRecorder.Span.EMPTY;
+      }
+      records.add("start " + phase + " " + source2);
+      return (bytes, tokens, events, errors, selfNanos) ->
+          records.add("end " + phase + " bytes=" + bytes
+              + " tokens=" + tokens + " events=" + events
+              + " errors=" + errors);
+    });
+    try {
+      final List<String> errors = new ArrayList<>();
+      final ObjectHandler root =
+          LaxHandlers.validator(LaxHandlers.nullObjectHandler(),
+              MiniLookml.schema(), LaxHandlers.errorLogger(errors::add));
+      final Pos pos = new Pos(source, 1, 1, 1, 1);
+      final ObjectHandler model = root.objOpen(pos, "model", "m");
+      model.objOpen(pos, "view", "v")
+          .identifier(pos, "foo", "bar")
+          .close(pos);
+      model.close(pos);
+      root.close(pos);
+      assertThat(errors, hasToString("[invalidPropertyOfParent(foo, view)]"));
+      assertThat(records,
+          hasToString("[start VALIDATE <inline>, "
+              + "end VALIDATE bytes=0 tokens=0 events=6 errors=1]"));
+
+      records.clear();
+      LookmlParsers.parse(LaxHandlers.nullObjectHandler(),
+          LookmlParsers.config().withSource(source));
+      assertThat(records,
+          hasToString("[start PARSE <inline>, "
+              + "end PARSE bytes=" + ml.length() + " tokens=10 events=5"
+              + " errors=0]"));
+    } finally {
+      LookmlRecorder.install(null);
+    }
+    assertThat(LookmlRecorder.installed(), nullValue());
+  }
+
   /** Validates a model. */
   @Test void testValidate() {
     final ParseFixture f0 = ParseFixture.of().withSchema(MiniLookml.schema());
@@ -689,7 +2275,210 @@ private void checkParsePosition(boolean withSchema) {
         + "}");
     assertThat(f1.errorList, empty());
     ParseFixture.Validated f2 = f1.validate();
-    assertThat(f2.list, empty());
+    assertThat(f2.list, hasToString("[viewNotFound(e, v2)]"));
+  }
+
+  /** Tests each of the checks made by {@link MiniLookml.Validator}, running
+   * it in a pool of its own. */
+  @Test void testValidateSemantics() {
+    final ParseFixture f0 = ParseFixture.of().withSchema(MiniLookml.schema());
+    final MiniLookml.Model model =
+        f0.parse("model: m {\n"
+            + "  view: orders {\n"
+            + "    dimension: id {\n"
+            + "      primary_key: true\n"
+            + "    }\n"
+            + "    dimension: customer_id {}\n"
+            + "    measure: total {\n"
+            + "      type: sum\n"
+            + "      sql: ${amount};;\n"
+            + "    }\n"
+            + "  }\n"
+            + "  view: customers {\n"
+            + "    dimension: id {\n"
+            + "      primary_key: true\n"
+            + "    }\n"
+            + "    dimension: code {\n"
+            + "      primary_key: true\n"
+            + "    }\n"
+            + "    dimension: name {}\n"
+            + "  }\n"
+            + "  view: notes {\n"
+            + "    dimension: order_id {}\n"
+            + "  }\n"
+            + "  explore: orders {\n"
+            + "    conditionally_filter: {\n"
+            + "      filters: [customer_id: \"x\", status: \"y\"]\n"
+            + "      unless: [id]\n"
+            + "    }\n"
+            + "    join: customers {\n"
+            + "      relationship: many_to_one\n"
+            + "      sql_on: ${orders.customer_id} = ${customers.name};;\n"
+            + "    }\n"
+            + "    join: notes {\n"
+            + "      relationship: one_to_one\n"
+            + "      sql_on: ${orders.id} = ${notes.order_id};;\n"
+            + "    }\n"
+            + "    join: returns {\n"
+            + "      sql_on: ${orders.refund} = ${returns.id};;\n"
+            + "    }\n"
+            + "  }\n"
+            + "}").build();
+    final List<String> errorList = new ArrayList<>();
+    final ForkJoinPool pool = new ForkJoinPool(3);
+    try {
+      new MiniLookml.Validator(pool).validate(model, errorList);
+    } finally {
+      pool.shutdown();
+    }
+    assertThat(errorList,
+        hasToString("[fieldNotFound(orders.total, ${amount}), "
+            + "multiplePrimaryKeys(customers, [id, code]), "
+            + "viewNotFound(orders.returns, returns), "
+            + "relationshipInconsistent(orders.customers, many_to_one, "
+            + "[name]), "
+            + "primaryKeyRequired(orders.notes, notes), "
+            + "fieldNotFound(orders.returns, ${orders.refund}), "
+            + "filterFieldNotFound(orders, status)]"));
+  }
+
+  /** Tests {@link LookmlWatcher}. Calls {@link LookmlWatcher#validate} and
+   * {@link LookmlWatcher#validateAll()} directly, rather than waiting for
+   * the file system to report changes. */
+  @Test void testWatcher(@TempDir File dir) throws IOException {
+    final Path root = dir.toPath();
+    final Path sub = Files.createDirectory(root.resolve("views"));
+    final Path model = root.resolve("m.model.lkml");
+    final Path view = sub.resolve("v.view.lkml");
+    Files.write(model, "model: m {\n  explore: e {}\n}\n".getBytes(UTF_8));
+    Files.write(view,
+        "model: m {\n  view: v {\n    bad: 1\n  }\n}\n".getBytes(UTF_8));
+    Files.write(root.resolve("notes.txt"), "x".getBytes(UTF_8));
+
+    final List<String> log = new ArrayList<>();
+    final LookmlWatcher.Listener listener = new LookmlWatcher.Listener() {
+      @Override public ErrorHandler fileStarted(Path file) {
+        log.add("start " + root.relativize(file));
+        return LaxHandlers.errorLogger(log::add);
+      }
+
+      @Override public void fileFinished(Path file,
+          @Nullable String syntaxError) {
+        log.add("finish " + root.relativize(file) + " " + syntaxError);
+      }
+
+      @Override public void fileRemoved(Path file) {
+        log.add("remove " + root.relativize(file));
+      }
+    };
+    try (LookmlWatcher watcher =
+             LookmlWatcher.create(root, MiniLookml.schema(), 10, listener)) {
+      assertThat(watcher.validateAll(), is(2));
+      assertThat(watcher.files(), hasSize(2));
+      assertThat(log, hasSize(5));
+      assertThat(log.contains("invalidPropertyOfParent(bad, view)"),
+          is(true));
+      assertThat(log.contains("finish m.model.lkml null"), is(true));
+
+      // Contents have not changed, so nothing is re-validated
+      log.clear();
+      assertThat(watcher.validateAll(), is(0));
+      assertThat(watcher.validate(view), is(false));
+      assertThat(log, empty());
+
+      // Errors of the most recent validation can be replayed
+      final List<String> errors = new ArrayList<>();
+      assertThat(watcher.replay(view, LaxHandlers.errorLogger(errors::add)),
+          nullValue());
+      assertThat(errors, hasToString("[invalidPropertyOfParent(bad, view)]"));
+
+      // Fix one file and break the other; only they are re-validated, and
+      // a relative path is resolved against the directory
+      Files.write(view,
+          "model: m {\n  view: v {\n  }\n}\n".getBytes(UTF_8));
+      assertThat(watcher.validate(root.relativize(view)), is(true));
+      assertThat(log, hasToString("[start views/v.view.lkml, "
+          + "finish views/v.view.lkml null]"));
+      Files.write(model, "model: m {\n  explore: e {\n".getBytes(UTF_8));
+      log.clear();
+      assertThat(watcher.validate(model), is(true));
+      assertThat(log, hasSize(2));
+      assertThat(log.get(1), containsString("finish m.model.lkml "));
+      assertThat(log.get(1).endsWith(" null"), is(false));
+
+      // Delete a file
+      log.clear();
+      Files.delete(view);
+      assertThat(watcher.validateAll(), is(0));
+      assertThat(log, hasToString("[remove views/v.view.lkml]"));
+      assertThat(watcher.files(), hasSize(1));
+      assertThat(watcher.replay(view, LaxHandlers.errorLogger(errors::add)),
+          nullValue());
+    }
+  }
+
+  /** Tests {@link LookmlWatcher#poll} and {@link LookmlWatcher#run()},
+   * which wait for the file system to report changes. */
+  @Test void testWatcherPoll(@TempDir File dir) throws Exception {
+    final Path root = dir.toPath();
+    final Path model = root.resolve("m.model.lkml");
+    Files.write(model, "model: m {\n}\n".getBytes(UTF_8));
+
+    final BlockingQueue<String> log = new LinkedBlockingQueue<>();
+    final LookmlWatcher.Listener listener = new LookmlWatcher.Listener() {
+      @Override public ErrorHandler fileStarted(Path file) {
+        return LaxHandlers.errorLogger(log::add);
+      }
+
+      @Override public void fileFinished(Path file,
+          @Nullable String syntaxError) {
+        log.add("finish " + root.relativize(file));
+      }
+
+      @Override public void fileRemoved(Path file) {
+        log.add("remove " + root.relativize(file));
+      }
+    };
+    try (LookmlWatcher watcher =
+             LookmlWatcher.create(root, MiniLookml.schema(), 200, listener)) {
+      assertThat(watcher.validateAll(), is(1));
+      log.clear();
+
+      // Nothing has changed, so poll times out
+      assertThat(watcher.poll(100, TimeUnit.MILLISECONDS), is(0));
+
+      // A burst of writes to one file, and a new file in a new directory,
+      // are processed together once the burst is over; the file that was
+      // written three times is validated once
+      for (int i = 0; i < 3; i++) {
+        Files.write(model,
+            ("model: m {\n  bad" + i + ": 1\n}\n").getBytes(UTF_8));
+      }
+      final Path sub = Files.createDirectory(root.resolve("views"));
+      final Path view = sub.resolve("v.view.lkml");
+      Files.write(view, "model: m {\n  view: v {\n  }\n}\n".getBytes(UTF_8));
+      assertThat(watcher.poll(10, TimeUnit.SECONDS), is(2));
+      assertThat(new TreeSet<>(log),
+          hasToString("[finish m.model.lkml, finish views/v.view.lkml, "
+              + "invalidPropertyOfParent(bad2, model)]"));
+      log.clear();
+
+      // Deleting a file is reported, but nothing is validated
+      Files.delete(view);
+      assertThat(watcher.poll(10, TimeUnit.SECONDS), is(0));
+      assertThat(log, hasToString("[remove views/v.view.lkml]"));
+      log.clear();
+
+      // "run" validates changes on another thread until the watcher is
+      // closed
+      final Thread thread = new Thread(watcher::run);
+      thread.start();
+      Files.write(model, "model: m {\n}\n".getBytes(UTF_8));
+      assertThat(log.poll(10, TimeUnit.SECONDS), is("finish m.model.lkml"));
+      watcher.close();
+      thread.join(10_000);
+      assertThat(thread.isAlive(), is(false));
+    }
   }
 }
 
@@ -35,7 +35,9 @@
 import java.util.Map;
 import java.util.Objects;
 import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiPredicate;
+import java.util.stream.Collectors;
 
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
@@ -47,6 +49,8 @@
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import static java.util.Objects.requireNonNull;
+
 /** Unit test for {@code PairList}. */
 public class PairListTest {
   /** Equivalent to {@link Map.Entry#getKey()} but without calling
@@ -463,6 +467,92 @@ private <T, U> void validate(PairList<T, U> pairList,
     assertThat(list.reversed().reversed(), is(list));
   }
 
+  /** Tests {@link PairList#indexOfLeft}, {@link PairList#rightOf} and
+   * {@link PairList#rightsOf}, on small lists (which are scanned) and large
+   * immutable lists (which use a hash index). */
+  @Test void testLookupByLeft() {
+    for (int n : new int[] {0, 1, 3, 8, 9, 100}) {
+      final PairList<String, Integer> list = PairList.of();
+      for (int i = 0; i < n; i++) {
+        list.add("k" + (i % 7 == 6 ? 0 : i), i);
+      }
+      checkLookupByLeft(n, list);
+      checkLookupByLeft(n, list.immutable());
+      checkLookupByLeft(n, list.immutable());
+    }
+  }
+
+  private static void checkLookupByLeft(int n,
+      PairList<String, Integer> list) {
+    assertThat(list.indexOfLeft("missing"), is(-1));
+    assertThat(list.rightOf("missing") == null, is(true));
+    assertThat(list.rightsOf("missing"), empty());
+    for (int i = 0; i < n; i++) {
+      final String k = list.left(i);
+      assertThat(list.indexOfLeft(k), is(k.equals("k0") ? 0 : i));
+      assertThat(list.rightOf(k), is(k.equals("k0") ? 0 : i));
+    }
+    if (n > 0) {
+      // "k0" occurs at 0, 6, 13, 20, ...
+      final List<Integer> expected = new ArrayList<>();
+      for (int i = 0; i < n; i++) {
+        if (i == 0 || i % 7 == 6) {
+          expected.add(i);
+        }
+      }
+      assertThat(list.rightsOf("k0"), is(expected));
+      assertThat(list.rightsOf("k1"),
+          is(n > 1 ? ImmutableList.of(1) : ImmutableList.of()));
+    }
+  }
+
+  /** Tests {@link PairList#spliterator()}, {@link PairList#parallelForEach}
+   * and parallel streams over a PairList and its left and right views. */
+  @Test void testSpliterator() {
+    final int n = 10_000;
+    final PairList<Integer, String> list = PairList.of();
+    for (int i = 0; i < n; i++) {
+      list.add(i, "v" + i);
+    }
+    final long expectedSum = (long) n * (n - 1) / 2;
+    for (PairList<Integer, String> list2
+        : Arrays.asList(list, list.immutable())) {
+      final PairList.PairSpliterator<Integer, String> spliterator =
+          list2.spliterator();
+      assertThat(spliterator.estimateSize(), is((long) n));
+      final PairList.PairSpliterator<Integer, String> prefix =
+          requireNonNull(spliterator.trySplit());
+      assertThat(prefix.estimateSize(), is((long) n / 2));
+      assertThat(spliterator.estimateSize(), is((long) n / 2));
+      final StringBuilder b = new StringBuilder();
+      assertThat(spliterator.tryAdvance((i, s) -> b.append(i).append(s)),
+          is(true));
+      assertThat(b, hasToString("5000v5000"));
+
+      final AtomicLong sum = new AtomicLong();
+      list2.parallelForEach((i, s) -> {
+        assertThat(s, is("v" + i));
+        sum.addAndGet(i);
+      });
+      assertThat(sum.get(), is(expectedSum));
+
+      assertThat(list2.parallelStream().mapToLong(Map.Entry::getKey).sum(),
+          is(expectedSum));
+      assertThat(list2.leftList().parallelStream().mapToLong(i -> i).sum(),
+          is(expectedSum));
+      assertThat(
+          list2.rightList().parallelStream().collect(Collectors.toList()),
+          is(list2.rightList()));
+    }
+
+    final AtomicLong count = new AtomicLong();
+    PairList.<Integer, String>of().parallelForEach((i, s) ->
+        count.incrementAndGet());
+    PairList.of(1, "a").immutable().parallelForEach((i, s) ->
+        count.incrementAndGet());
+    assertThat(count.get(), is(1L));
+  }
+
   /** Simple implementation of {@link Map.Entry}. */
   static class Pair<T, U> implements Map.Entry<T, U> {
     final T t;
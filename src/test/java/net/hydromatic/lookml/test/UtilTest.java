@@ -18,11 +18,24 @@
  */
 package net.hydromatic.lookml.test;
 
+import net.hydromatic.lookml.LaxHandlers;
+import net.hydromatic.lookml.Main;
 import net.hydromatic.lookml.MiniLookml;
 import net.hydromatic.lookml.Source;
 import net.hydromatic.lookml.Sources;
+import net.hydromatic.lookml.parse.LookmlParsers;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
@@ -48,6 +61,77 @@ public class UtilTest {
     assertThat(source2.contentsAsString(), startsWith("# Licensed to "));
     assertThat(source2.contentsAsString(), containsString("schema: mini"));
   }
+
+  /** Tests that a {@link Source} backed by a file decodes it as UTF-8, both
+   * in {@link Source#contentsAsString()} and when parsed. */
+  @Test void testSourceUtf8(@TempDir File dir) throws IOException {
+    final String label = "Gr\u00f6\u00dfe \u20ac \u65e5\u672c";
+    final String ml = "model: m {\n"
+        + "  label: \"" + label + "\"\n"
+        + "}\n";
+    final File file = new File(dir, "m.model.lkml");
+    Files.write(file.toPath(), ml.getBytes(StandardCharsets.UTF_8));
+
+    final Source source = Sources.fromUrl(file.toURI().toURL());
+    assertThat(source.preferStream(), is(true));
+    assertThat(source.contentsAsString(), is(ml));
+
+    final List<String> list = new ArrayList<>();
+    LookmlParsers.parse(LaxHandlers.logger(list::add),
+        LookmlParsers.config().withSource(source));
+    assertThat(list, hasToString(containsString("string(label, " + label)));
+  }
+
+  /** Tests {@link Main}, the command-line interface. */
+  @Test void testMain(@TempDir File dir) throws IOException {
+    final File schemaFile = new File(dir, "s.lkml");
+    Files.write(schemaFile.toPath(),
+        ("schema: s {\n"
+            + "  object_type: model {\n"
+            + "    property: explore { type: named_object }\n"
+            + "  }\n"
+            + "  object_type: explore {\n"
+            + "    property: sql { type: code }\n"
+            + "  }\n"
+            + "  root_properties: [model]\n"
+            + "}\n").getBytes(StandardCharsets.UTF_8));
+    final File goodFile = new File(dir, "good.lkml");
+    Files.write(goodFile.toPath(),
+        "model: m { explore: e { sql:x;; } }\n"
+            .getBytes(StandardCharsets.UTF_8));
+    final File badFile = new File(dir, "bad.lkml");
+    Files.write(badFile.toPath(),
+        "model: m { explore: e { foo: 1 } }\n"
+            .getBytes(StandardCharsets.UTF_8));
+    final String schema = schemaFile.getPath();
+    final String good = goodFile.getPath();
+    final String bad = badFile.getPath();
+
+    // The schema file is valid Schema-LookML
+    assertThat(run("validate", "--schema", "schema", schema), is("0:"));
+    assertThat(run("validate", "--schema", schema, good, bad),
+        is("1:" + bad + ": invalidPropertyOfParent(foo, explore)\n"));
+    assertThat(run("format", "--schema", schema, good),
+        is("0:model: m {\n"
+            + "  explore: e {\n"
+            + "    sql: x;;\n"
+            + "  }\n"
+            + "}\n"));
+
+    // Without a schema, only checks that the file is well-formed
+    assertThat(run("validate", bad), is("0:"));
+    assertThat(run("format"), startsWith("2:Usage: lookml validate"));
+  }
+
+  /** Runs a command, and returns its exit status and output. */
+  private static String run(String... args) {
+    final StringWriter sw = new StringWriter();
+    try (PrintWriter pw = new PrintWriter(sw)) {
+      final int status = Main.run(args, pw, pw);
+      pw.flush();
+      return status + ":" + sw.toString().replace(System.lineSeparator(), "\n");
+    }
+  }
 }
 
 // End UtilTest.java